@@ -0,0 +1,60 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing and assembling generated sources, from the size of a student exercise to that
+ * of machine generated code.  The sources mix labels with forward and backward references,
+ * pseudo-instructions, loads and stores and data directives.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int lines;
+
+    private String source;
+    private Program program;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        StringBuilder s = new StringBuilder("\t.text\n");
+        int blocks = Math.max(lines / 16, 1);
+        for (int i = 0; i < blocks; i++) {
+            String next = i + 1 < blocks ? "block" + (i + 1) : "done";
+            s.append("block").append(i).append(":\n")
+                    .append("\tli\tt0, ").append(i * 37 % 5000).append('\n')
+                    .append("\tla\tt1, value").append(i).append('\n')
+                    .append("\tlw\tt2, 0(t1)\n")
+                    .append("\tadd\tt2, t2, t0\n")
+                    .append("\tsw\tt2, 0(t1)\n")
+                    .append("\taddi\tt3, t2, -").append(i % 100).append('\n')
+                    .append("\tslli\tt4, t3, 2\n")
+                    .append("\txor\tt5, t4, t2\n")
+                    .append("\tbeq\tt5, zero, block").append(i).append('\n')
+                    .append("\tbne\tt5, t0, ").append(next).append('\n')
+                    .append("\tmul\tt6, t5, t3\n")
+                    .append("\t.data\n")
+                    .append("value").append(i).append(":\t.word\t").append(i).append('\n')
+                    .append("\t.text\n");
+        }
+        s.append("done:\n\tli\ta7, 10\n\tecall\n");
+        source = s.toString();
+        program = new Program(new Options());
+    }
+
+    @Benchmark
+    public Program assemble() throws AssemblyException {
+        program.assembleString(source);
+        return program;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.api.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Floating point instruction throughput, in single and double precision.  These instructions
+ * go through the soft float library, so they cost far more than integer ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloatingPointBenchmark {
+    @Param({"float", "double"})
+    public String kernel;
+
+    private Program program;
+
+    @Setup(Level.Trial)
+    public void assemble() throws IOException, AssemblyException {
+        program = Kernels.assemble(kernel);
+    }
+
+    @Benchmark
+    public long run(RetiredInstructions retired) throws SimulationException {
+        long instructions = Kernels.run(program, "");
+        retired.instructions += instructions;
+        return instructions;
+    }
+}
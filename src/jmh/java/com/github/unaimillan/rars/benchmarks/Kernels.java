@@ -0,0 +1,53 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.hardware.ControlAndStatusRegisterFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The guest programs run by the benchmarks, kept as resources under kernels/.  Each ends by
+ * calling exit, so one simulation runs the whole kernel.
+ */
+final class Kernels {
+    private Kernels() {
+    }
+
+    static String source(String kernel) throws IOException {
+        try (InputStream in = Kernels.class.getResourceAsStream("/kernels/" + kernel + ".s")) {
+            if (in == null) {
+                throw new IOException("No kernel " + kernel);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+
+    static Program assemble(String kernel) throws IOException, AssemblyException {
+        Program program = new Program(new Options());
+        program.assembleString(source(kernel));
+        return program;
+    }
+
+    /**
+     * Runs an assembled kernel from the start.
+     *
+     * @return the number of instructions retired
+     */
+    static long run(Program program, String stdin) throws SimulationException {
+        program.setup(new ArrayList<>(), stdin);
+        program.simulate();
+        return ControlAndStatusRegisterFile.getValueNoNotify("instret");
+    }
+}
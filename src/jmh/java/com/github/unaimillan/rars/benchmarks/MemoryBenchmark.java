@@ -0,0 +1,119 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory reads and writes of each width in each segment, as the load and store instructions
+ * and system calls make them.  Every operation sweeps the same 4KB, so the times are per access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+    private static final int SPAN = 4096; // bytes swept by one operation
+
+    @Param({"data", "heap", "stack", "mmio"})
+    public String segment;
+
+    private Memory memory;
+    private int base;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Globals.initialize();
+        memory = new Memory();
+        switch (segment) {
+            case "data":
+                base = Memory.dataBaseAddress;
+                break;
+            case "heap":
+                base = Memory.heapBaseAddress;
+                break;
+            case "stack":
+                base = Memory.stackPointer - SPAN;
+                break;
+            default:
+                base = Memory.memoryMapBaseAddress;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN)
+    public int readByte() throws AddressErrorException {
+        int sum = 0;
+        for (int i = 0; i < SPAN; i++) {
+            sum += memory.getByte(base + i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 2)
+    public int readHalf() throws AddressErrorException {
+        int sum = 0;
+        for (int i = 0; i < SPAN; i += 2) {
+            sum += memory.getHalf(base + i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 4)
+    public int readWord() throws AddressErrorException {
+        int sum = 0;
+        for (int i = 0; i < SPAN; i += 4) {
+            sum += memory.getWord(base + i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 8)
+    public long readDoubleWord() throws AddressErrorException {
+        long sum = 0;
+        for (int i = 0; i < SPAN; i += 8) {
+            sum += memory.getDoubleWord(base + i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN)
+    public void writeByte() throws AddressErrorException {
+        for (int i = 0; i < SPAN; i++) {
+            memory.setByte(base + i, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 2)
+    public void writeHalf() throws AddressErrorException {
+        for (int i = 0; i < SPAN; i += 2) {
+            memory.setHalf(base + i, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 4)
+    public void writeWord() throws AddressErrorException {
+        for (int i = 0; i < SPAN; i += 4) {
+            memory.setWord(base + i, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPAN / 8)
+    public void writeDoubleWord() throws AddressErrorException {
+        for (int i = 0; i < SPAN; i += 8) {
+            memory.setDoubleWord(base + i, i);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the guest instructions a benchmark retires, so that JMH reports simulated
+ * instructions per second next to the time per run.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class RetiredInstructions {
+    public long instructions;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        instructions = 0;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a command line run pays before the program's first instruction.  The cold benchmarks
+ * are measured once in each of several fresh JVMs; populate is measured warm, as the server
+ * and batch modes pay it whenever the instruction set changes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @Benchmark
+    public InstructionSet initialize() {
+        Globals.initialize();
+        return Globals.instructionSet;
+    }
+
+    @Benchmark
+    public int firstProgram() throws AssemblyException, SimulationException {
+        Program program = new Program(new Options());
+        program.assembleString("\tli\ta0, 42\n\tli\ta7, 93\n\tecall\n");
+        program.setup(new ArrayList<>(), "");
+        program.simulate();
+        return program.getExitCode();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public InstructionSet populate() {
+        Globals.initialize();
+        Globals.instructionSet.populate();
+        return Globals.instructionSet;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.api.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A program that spends its time in system calls, reading integers from stdin and printing
+ * them, with stdin and stdout kept in memory as api.Program does for graders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyscallBenchmark {
+    @Param({"100", "10000"})
+    public int values;
+
+    private Program program;
+    private String stdin;
+
+    @Setup(Level.Trial)
+    public void assemble() throws IOException, AssemblyException {
+        program = Kernels.assemble("syscalls");
+        StringBuilder input = new StringBuilder().append(values).append('\n');
+        for (int i = 0; i < values; i++) {
+            input.append(i * 7 - 5000).append('\n');
+        }
+        stdin = input.toString();
+    }
+
+    @Benchmark
+    public int run(RetiredInstructions retired) throws SimulationException {
+        retired.instructions += Kernels.run(program, stdin);
+        return program.getSTDOUT().length();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.unaimillan.rars.benchmarks;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.RISCVprogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing generated sources on their own, without assembling them.  Many lines use names
+ * defined with .eqv, so substitution is measured along with scanning and classifying tokens.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    @Param({"10000", "100000"})
+    public int lines;
+
+    private RISCVprogram program;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Globals.initialize();
+        StringBuilder s = new StringBuilder()
+                .append(".eqv\tSTEP, 4\n")
+                .append(".eqv\tLIMIT, -2048\n")
+                .append(".eqv\tCOUNT, t0\n")
+                .append("\t.text\n");
+        int blocks = Math.max(lines / 10, 1);
+        for (int i = 0; i < blocks; i++) {
+            s.append("loop").append(i).append(":\n")
+                    .append("\taddi\tCOUNT, COUNT, -STEP\n")
+                    .append("\tli\tt1, LIMIT\n")
+                    .append("\tlw\tt2, STEP(sp)\t# load the next word\n")
+                    .append("\tsw\tt2, -").append(i % 2048).append("(sp)\n")
+                    .append("\tslli\tt3, COUNT, 2\n")
+                    .append("\tfadd.s\tft0, ft1, ft2\n")
+                    .append("\tbge\tCOUNT, t1, loop").append(i).append('\n')
+                    .append("\t.data\n")
+                    .append("value").append(i).append(":\t.word\t0x").append(Integer.toHexString(i * 31))
+                    .append(", 1.5e3, 'a'\n")
+                    .append("\t.text\n");
+        }
+        program = new RISCVprogram();
+        program.fromString(s.toString());
+    }
+
+    @Benchmark
+    public RISCVprogram tokenize() throws AssemblyException {
+        program.tokenize();
+        return program;
+    }
+}
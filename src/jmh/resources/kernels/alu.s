@@ -0,0 +1,20 @@
+# Integer arithmetic: adds, logic, shifts and multiplies in a tight loop
+	.text
+main:
+	li	t0, 100000		# iterations
+	li	t1, 0x12345678
+	li	t2, 0
+loop:
+	add	t2, t2, t1
+	xor	t1, t1, t2
+	slli	t3, t1, 3
+	srli	t4, t2, 5
+	or	t3, t3, t4
+	mul	t5, t3, t0
+	sub	t2, t2, t5
+	andi	t6, t2, 0xff
+	add	t1, t1, t6
+	addi	t0, t0, -1
+	bnez	t0, loop
+	li	a7, 10
+	ecall
@@ -0,0 +1,22 @@
+# Branches and division: counts the primes below a limit by trial division
+	.text
+main:
+	li	s0, 2			# candidate
+	li	s1, 6000		# limit
+	li	s2, 0			# primes found
+next:
+	li	t0, 2
+try:
+	mul	t1, t0, t0
+	bgt	t1, s0, prime
+	rem	t2, s0, t0
+	beqz	t2, composite
+	addi	t0, t0, 1
+	j	try
+prime:
+	addi	s2, s2, 1
+composite:
+	addi	s0, s0, 1
+	blt	s0, s1, next
+	li	a7, 10
+	ecall
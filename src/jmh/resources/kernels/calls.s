@@ -0,0 +1,26 @@
+# Calls and the stack: naive recursive Fibonacci
+	.text
+main:
+	li	a0, 22
+	jal	fib
+	li	a7, 10
+	ecall
+
+fib:
+	li	t0, 2
+	blt	a0, t0, done
+	addi	sp, sp, -12
+	sw	ra, 8(sp)
+	sw	a0, 4(sp)
+	addi	a0, a0, -1
+	jal	fib
+	sw	a0, 0(sp)
+	lw	a0, 4(sp)
+	addi	a0, a0, -2
+	jal	fib
+	lw	t1, 0(sp)
+	add	a0, a0, t1
+	lw	ra, 8(sp)
+	addi	sp, sp, 12
+done:
+	ret
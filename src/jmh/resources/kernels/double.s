@@ -0,0 +1,22 @@
+# Double precision arithmetic: a chain of dependent adds, multiplies, divides and square roots
+	.text
+main:
+	li	t0, 50000		# iterations
+	li	t1, 3
+	fcvt.d.w	ft0, t1
+	li	t1, 2
+	fcvt.d.w	ft2, t1
+	li	t1, 1
+	fcvt.d.w	ft1, t1
+loop:
+	fmul.d	ft3, ft1, ft0
+	fadd.d	ft1, ft3, ft2
+	fdiv.d	ft1, ft1, ft0
+	fsub.d	ft4, ft1, ft2
+	fmadd.d	ft5, ft4, ft2, ft0
+	fsqrt.d	ft5, ft5
+	fadd.d	ft1, ft1, ft5
+	addi	t0, t0, -1
+	bnez	t0, loop
+	li	a7, 10
+	ecall
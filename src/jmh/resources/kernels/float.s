@@ -0,0 +1,22 @@
+# Single precision arithmetic: a chain of dependent adds, multiplies, divides and square roots
+	.text
+main:
+	li	t0, 50000		# iterations
+	li	t1, 3
+	fcvt.s.w	ft0, t1
+	li	t1, 2
+	fcvt.s.w	ft2, t1
+	li	t1, 1
+	fcvt.s.w	ft1, t1
+loop:
+	fmul.s	ft3, ft1, ft0
+	fadd.s	ft1, ft3, ft2
+	fdiv.s	ft1, ft1, ft0
+	fsub.s	ft4, ft1, ft2
+	fmadd.s	ft5, ft4, ft2, ft0
+	fsqrt.s	ft5, ft5
+	fadd.s	ft1, ft1, ft5
+	addi	t0, t0, -1
+	bnez	t0, loop
+	li	a7, 10
+	ecall
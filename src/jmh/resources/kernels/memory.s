@@ -0,0 +1,33 @@
+# Loads and stores: fills an array of words, then sums it as words, bytes and halves
+	.data
+array:	.space	16384
+	.text
+main:
+	li	s0, 20			# passes
+pass:
+	la	t0, array
+	li	t1, 4096
+	li	t2, 0
+fill:
+	sw	t2, 0(t0)
+	addi	t2, t2, 1
+	addi	t0, t0, 4
+	addi	t1, t1, -1
+	bnez	t1, fill
+	la	t0, array
+	li	t1, 4096
+	li	t3, 0
+sum:
+	lw	t4, 0(t0)
+	add	t3, t3, t4
+	lbu	t5, 1(t0)
+	add	t3, t3, t5
+	lh	t5, 2(t0)
+	add	t3, t3, t5
+	addi	t0, t0, 4
+	addi	t1, t1, -1
+	bnez	t1, sum
+	addi	s0, s0, -1
+	bnez	s0, pass
+	li	a7, 10
+	ecall
@@ -0,0 +1,27 @@
+# System calls: reads a count and that many integers, printing each doubled on its own line
+	.data
+label:	.asciz	"value: "
+	.text
+main:
+	li	a7, 5			# ReadInt
+	ecall
+	mv	s0, a0
+loop:
+	beqz	s0, end
+	li	a7, 5			# ReadInt
+	ecall
+	slli	s1, a0, 1
+	la	a0, label
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, s1
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	addi	s0, s0, -1
+	j	loop
+end:
+	li	a7, 10
+	ecall
@@ -95,6 +95,17 @@ public class ErrorList {
         add(mess, messages.size());
     }
 
+    /**
+     * Add all messages of another list to the end of this list, keeping their order.
+     *
+     * @param other ErrorList whose messages are to be appended.
+     **/
+    public void addAll(ErrorList other) {
+        for (ErrorMessage mess : other.messages) {
+            add(mess);
+        }
+    }
+
     /**
      * Add new error message at specified index position.
      *
@@ -1,12 +1,25 @@
 package com.github.unaimillan.rars;
 
+import com.github.unaimillan.rars.api.BatchRunner;
+import com.github.unaimillan.rars.api.GdbServer;
+import com.github.unaimillan.rars.api.ImageCache;
 import com.github.unaimillan.rars.api.Options;
 import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.api.SimulationServer;
+import com.github.unaimillan.rars.assembler.ElfLoader;
+import com.github.unaimillan.rars.assembler.ObjectFile;
+import com.github.unaimillan.rars.assembler.TokenCache;
 import com.github.unaimillan.rars.riscv.InstructionSet;
 import com.github.unaimillan.rars.riscv.dump.DumpFormat;
 import com.github.unaimillan.rars.riscv.dump.DumpFormatLoader;
 import com.github.unaimillan.rars.riscv.hardware.*;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
 import com.github.unaimillan.rars.simulator.Simulator;
+import com.github.unaimillan.rars.simulator.branch.BranchPredictorEvaluation;
+import com.github.unaimillan.rars.simulator.cache.CacheHierarchy;
+import com.github.unaimillan.rars.simulator.cache.StackDistanceSweep;
+import com.github.unaimillan.rars.simulator.pipeline.PipelineModel;
+import com.github.unaimillan.rars.simulator.trace.MemoryTraceWriter;
 import com.github.unaimillan.rars.util.Binary;
 import com.github.unaimillan.rars.util.FilenameFinder;
 import com.github.unaimillan.rars.util.MemoryDump;
@@ -18,7 +31,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /*
 Copyright (c) 2003-2012,  Pete Sanderson and Kenneth Vollmar
@@ -60,12 +75,22 @@ public class Launch {
     /**
      * Main takes a number of command line arguments.<br>
      * Usage:  rars  [options] filename<br>
+     * The file may also be a statically linked RISC-V ELF executable, which is loaded instead of assembled.<br>
      * Valid options (not case sensitive, separate by spaces) are:<br>
      * a  -- assemble only, do not simulate<br>
      * ad  -- both a and d<br>
      * ae<n>  -- terminate RARS with integer exit code <n> if an assemble error occurs.<br>
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
+     * batch  -- run the jobs of a manifest and write one JSON line of results per job.  Option has 1 argument,<br>
+     * e.g. <tt>batch &lt;manifest&gt;</tt>; see {@link BatchRunner} for the format<br>
+     * bpred  -- compare branch predictors and report their accuracy.  Option has 1 argument, the predictors as<br>
+     * described by {@link BranchPredictorEvaluation}, or <tt>default</tt><br>
+     * cache  -- keep assembled images in a directory and reuse them for unchanged sources.  Option has 1 argument,<br>
+     * e.g. <tt>cache &lt;dir&gt;</tt><br>
+     * cachesim  -- simulate caches and report their hits and misses.  Option has 1 argument, the levels as<br>
+     * described by {@link CacheHierarchy}, or <tt>default</tt><br>
+     * cachesweep  -- report the miss rates of a range of LRU cache sizes, associativities and block sizes<br>
      * d  -- print debugging statements<br>
      * da  -- both a and d<br>
      * dec  -- display memory or register contents in decimal.<br>
@@ -75,9 +100,12 @@ public class Launch {
      * segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
      * are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
      * g  -- force GUI mode
+     * gdb  -- let GDB debug the program over its remote serial protocol on port 1234 of the loopback<br>
+     * interface, or on port <n> if given as <tt>gdb&lt;n&gt;</tt>; see {@link GdbServer}<br>
      * h  -- display help.  Use by itself and with no filename</br>
      * hex  -- display memory or register contents in hexadecimal (default)<br>
      * ic  -- display count of basic instructions 'executed'");
+     * j<n>  -- run batch jobs or server requests in <n> worker JVMs at a time<br>
      * mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
      * <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
      * for the RARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
@@ -86,10 +114,20 @@ public class Launch {
      * me  -- display RARS messages to standard err instead of standard out. Can separate via redirection.</br>
      * nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
+     * o  -- assemble into a relocatable object file instead of running.  Option has 1 argument,<br>
+     * e.g. <tt>o &lt;file&gt;</tt>.  Object files (".o") given as filenames are linked with the program.<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
+     * pipeline  -- time the program on an in-order 5 stage pipeline, counted in the cycle register, and report<br>
+     * where the cycles went.  Option has 1 argument, the parameters as described by {@link PipelineModel},<br>
+     * or <tt>default</tt>.  Cache misses are charged for the caches of cachesim, if given<br>
      * se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.<br>
+     * server  -- stay resident and answer JSON requests to assemble and run programs on standard in and out,<br>
+     * or on port <n> of the loopback interface if given as <tt>server&lt;n&gt;</tt>; see {@link SimulationServer}<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * trace  -- write the program's instruction fetches, loads and stores to a file.  Option has 3 arguments,<br>
+     * e.g. <tt>trace &lt;segment&gt; &lt;format&gt; &lt;file&gt;</tt>, see {@link MemoryTraceWriter}<br>
+     * watch  -- reassemble and rerun whenever one of the source files changes<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -114,7 +152,28 @@ public class Launch {
     private boolean verbose;  // display register name or address along with contents
     private boolean assembleProject; // assemble only the given file or all files in its directory
     private boolean countInstructions; // Whether to count and report number of instructions executed
+    private boolean watch; // rerun whenever a source file changes, until interrupted
+    private ArrayList<String> watchedFiles; // files assembled by the latest run, including .include'd ones
+    private ImageCache imageCache; // where to keep assembled images, or null to always assemble
+    private String objectOutput; // where to write a relocatable object instead of running, or null
+    private String batchManifest; // jobs to run instead of the given files, or null
+    private int batchWorkers; // how many batch jobs to run at a time
+    private int serverPort; // port to answer requests on, 0 for standard in and out, -1 for no server
+    private int gdbPort; // port to wait for GDB on instead of running the program, -1 for none
+    private String cacheSpec; // caches to simulate, see CacheHierarchy, or null for none
+    private boolean cacheSweep; // whether to sweep cache sizes and associativities
+    private String branchSpec; // branch predictors to compare, see BranchPredictorEvaluation, or null for none
+    private String pipelineSpec; // pipeline to time the program on, see PipelineModel, or null for none
+    private ArrayList<ExecutionListener> analyses; // models following the current run
+    private CacheHierarchy cacheHierarchy; // of the current run, or null
+    private ArrayList<StackDistanceSweep> cacheSweeps; // of the current run
+    private BranchPredictorEvaluation branchEvaluation; // of the current run, or null
+    private PipelineModel pipelineModel; // of the current run, or null
+    private String[] traceTriple; // segment, format and file of the trace option, or null for none
+    private MemoryTraceWriter traceWriter; // of the current run, or null
     private static final String rangeSeparator = "-";
+    private static final int WATCH_POLL_INTERVAL = 250; // milliseconds between checks in watch mode
+    private static final int GDB_DEFAULT_PORT = 1234;
     private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
     private static final int DECIMAL = 0; // memory and register display format
     private static final int HEXADECIMAL = 1;// memory and register display format
@@ -143,6 +202,10 @@ public class Launch {
         verbose = true;
         assembleProject = false;
         countInstructions = false;
+        watch = false;
+        batchWorkers = 1;
+        serverPort = -1;
+        gdbPort = -1;
         instructionCount = 0;
         assembleErrorExitCode = 0;
         simulateErrorExitCode = 0;
@@ -162,11 +225,120 @@ public class Launch {
             // assure command mode works in headless environment (generates exception if not)
             System.setProperty("java.awt.headless", "true");
 
-            dumpSegments(runCommand());
+            if (serverPort >= 0) {
+                serverCommand();
+            } else if (batchManifest != null) {
+                batchCommand();
+            } else if (watch) {
+                watchCommand();
+            } else {
+                dumpSegments(runCommand());
+            }
             System.exit(Globals.exitCode);
         }
     }
 
+    //////////////////////////////////////////////////////////////////////
+    // Carry out the rars command over and over, each time one of the
+    // assembled files (or a file they .include) is modified.  Files that
+    // did not change are not tokenized again, see TokenCache.
+
+    private void watchCommand() {
+        while (true) {
+            dumpSegments(runCommand());
+            if (watchedFiles == null) {
+                return;
+            }
+            HashMap<String, Long> lastModified = lastModified(watchedFiles);
+            out.println("\nWatching " + lastModified.size() + " file(s) for changes...");
+            do {
+                try {
+                    Thread.sleep(WATCH_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } while (!changed(lastModified));
+            out.println();
+        }
+    }
+
+    // The files a run assembled or linked: the sources and everything they .include or
+    // .incbin, and the object files.  A program from the image cache was not tokenized, so
+    // TokenCache knows nothing of its includes; the image recorded them instead.
+    static ArrayList<String> filesToWatch(Program program, ArrayList<String> sources, ArrayList<String> objectFiles) {
+        ArrayList<String> files = new ArrayList<>(objectFiles);
+        for (String file : sources) {
+            files.addAll(TokenCache.getDependencies(file));
+        }
+        ArrayList<String> included = program.getIncludedFiles();
+        if (included != null) {
+            for (String file : included) {
+                if (!files.contains(file)) files.add(file);
+            }
+        }
+        return files;
+    }
+
+    static HashMap<String, Long> lastModified(ArrayList<String> files) {
+        HashMap<String, Long> lastModified = new HashMap<>();
+        for (String file : files) {
+            lastModified.put(file, new File(file).lastModified());
+        }
+        return lastModified;
+    }
+
+    static boolean changed(Map<String, Long> lastModified) {
+        for (Map.Entry<String, Long> file : lastModified.entrySet()) {
+            if (new File(file.getKey()).lastModified() != file.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Run the jobs of a batch manifest, see BatchRunner.  Results go to
+    // standard out; the exit code is 1 if a job did not meet its expectations.
+
+    private void batchCommand() {
+        selectInstructionSet();
+        ArrayList<BatchRunner.Job> jobs;
+        try {
+            jobs = BatchRunner.readManifest(new File(batchManifest), options.maxSteps);
+        } catch (IOException e) {
+            out.println(e.getMessage());
+            Globals.exitCode = 1;
+            return;
+        }
+        int failures = new BatchRunner(options, System.out, batchWorkers).run(jobs);
+        Globals.exitCode = failures > 0 ? 1 : 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Answer requests until standard in ends or, when serving on a port,
+    // until stopped.  See SimulationServer.  The programs it runs set the
+    // exit code as they finish, so it is reset once the server stops: 0 if
+    // it stopped cleanly, 1 if it could not serve.
+
+    private void serverCommand() {
+        selectInstructionSet();
+        SimulationServer server = new SimulationServer(new BatchRunner(options, System.out, batchWorkers), batchWorkers);
+        try {
+            if (serverPort == 0) {
+                PrintStream responses = System.out;
+                System.setOut(System.err); // nothing else may get mixed up with the responses
+                server.serve(System.in, responses);
+            } else {
+                out.println("Listening on port " + serverPort);
+                server.listen(serverPort);
+            }
+            Globals.exitCode = 0;
+        } catch (IOException e) {
+            out.println(e.getMessage());
+            Globals.exitCode = 1;
+        }
+    }
+
     private void displayAllPostMortem(Program program) {
         displayMiscellaneousPostMortem(program);
         displayRegistersPostMortem(program);
@@ -300,6 +472,108 @@ public class Launch {
                 }
                 continue;
             }
+            if (args[i].equalsIgnoreCase("cache")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Cache command line argument requires a directory name.");
+                    argsOK = false;
+                } else {
+                    imageCache = new ImageCache(new File(args[++i]));
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("cachesim")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Cachesim command line argument requires cache levels or default.");
+                    argsOK = false;
+                } else {
+                    cacheSpec = args[++i];
+                    if (cacheSpec.equalsIgnoreCase("default")) {
+                        cacheSpec = CacheHierarchy.DEFAULT;
+                    }
+                    try {
+                        CacheHierarchy.parse(cacheSpec);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid cachesim levels: " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("bpred")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Bpred command line argument requires branch predictors or default.");
+                    argsOK = false;
+                } else {
+                    branchSpec = args[++i];
+                    if (branchSpec.equalsIgnoreCase("default")) {
+                        branchSpec = BranchPredictorEvaluation.DEFAULT;
+                    }
+                    try {
+                        BranchPredictorEvaluation.parse(branchSpec);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid bpred predictors: " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("pipeline")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Pipeline command line argument requires parameters or default.");
+                    argsOK = false;
+                } else {
+                    pipelineSpec = args[++i];
+                    if (pipelineSpec.equalsIgnoreCase("default")) {
+                        pipelineSpec = PipelineModel.DEFAULT;
+                    }
+                    try {
+                        PipelineModel.parse(pipelineSpec, null);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid pipeline parameters: " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("trace")) {
+                if (args.length <= (i + 3)) {
+                    out.println("Trace command line argument requires a segment, format and file name.");
+                    argsOK = false;
+                } else {
+                    traceTriple = new String[]{args[++i], args[++i], args[++i]};
+                    try {
+                        MemoryTraceWriter.Filter.parse(traceTriple[0]);
+                        MemoryTraceWriter.format(traceTriple[1]);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Invalid trace: " + e.getMessage());
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("cachesweep")) {
+                cacheSweep = true;
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("batch")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Batch command line argument requires a manifest file name.");
+                    argsOK = false;
+                } else {
+                    batchManifest = args[++i];
+                }
+                continue;
+            }
+            if (args[i].equalsIgnoreCase("o")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Object command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    objectOutput = args[++i];
+                    simulate = false;
+                }
+                continue;
+            }
             if (args[i].equalsIgnoreCase("mc")) {
                 String configName = args[++i];
                 MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -331,6 +605,36 @@ public class Launch {
                     // Let it fall thru and get handled by catch-all
                 }
             }
+            // Serve requests, on a port if one is given
+            if (args[i].toLowerCase().indexOf("server") == 0) {
+                String s = args[i].substring(6);
+                try {
+                    serverPort = s.isEmpty() ? 0 : Integer.decode(s);
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            // Let GDB drive the simulation
+            if (args[i].toLowerCase().indexOf("gdb") == 0) {
+                String s = args[i].substring(3);
+                try {
+                    gdbPort = s.isEmpty() ? GDB_DEFAULT_PORT : Integer.decode(s);
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            // Set number of batch workers
+            if (args[i].toLowerCase().indexOf("j") == 0) {
+                String s = args[i].substring(1);
+                try {
+                    batchWorkers = Integer.decode(s);
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
             if (args[i].equalsIgnoreCase("d")) {
                 Globals.debug = true;
                 continue;
@@ -373,6 +677,10 @@ public class Launch {
                 options.pseudo = false;
                 continue;
             }
+            if (args[i].equalsIgnoreCase("watch")) {
+                watch = true;
+                continue;
+            }
             if (args[i].equalsIgnoreCase("we")) { // added 14-July-2008 DPS
                 options.warningsAreErrors = true;
                 continue;
@@ -451,9 +759,7 @@ public class Launch {
             return null;
         }
 
-        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
-        InstructionSet.rv64 = rv64;
-        Globals.instructionSet.populate();
+        selectInstructionSet();
 
         File mainFile = new File(filenameList.get(0)).getAbsoluteFile();// First file is "main" file
         ArrayList<String> filesToAssemble;
@@ -462,8 +768,9 @@ public class Launch {
             if (filenameList.size() > 1) {
                 // Using "p" project option PLUS listing more than one filename on command line.
                 // Add the additional files, avoiding duplicates.
-                filenameList.remove(0); // first one has already been processed
-                ArrayList<String> moreFilesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
+                // First one has already been processed.  Copied since watch mode runs this again.
+                ArrayList<String> moreFilenames = new ArrayList<>(filenameList.subList(1, filenameList.size()));
+                ArrayList<String> moreFilesToAssemble = FilenameFinder.getFilenameList(moreFilenames, FilenameFinder.MATCH_ALL_EXTENSIONS);
                 // Remove any duplicates then merge the two lists.
                 for (int index2 = 0; index2 < moreFilesToAssemble.size(); index2++) {
                     for (int index1 = 0; index1 < filesToAssemble.size(); index1++) {
@@ -479,12 +786,34 @@ public class Launch {
         } else {
             filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
         }
+        // Object files are linked with the assembled sources rather than assembled.
+        ArrayList<String> objectFiles = new ArrayList<>();
+        for (int i = filesToAssemble.size() - 1; i >= 0; i--) {
+            if (filesToAssemble.get(i).endsWith("." + ObjectFile.EXTENSION)) {
+                objectFiles.add(0, filesToAssemble.remove(i));
+            }
+        }
         Program program = new Program(options);
         try {
             if (Globals.debug) {
                 out.println("---  TOKENIZING & ASSEMBLY BEGINS  ---");
             }
-            ErrorList warnings = program.assemble(filesToAssemble, mainFile.getAbsolutePath());
+            ErrorList warnings;
+            try {
+                if (filesToAssemble.size() == 1 && objectFiles.isEmpty() && objectOutput == null
+                        && ElfLoader.isElf(new File(filesToAssemble.get(0)))) {
+                    program.loadExecutable(filesToAssemble.get(0));
+                    warnings = null;
+                } else if (objectOutput != null || !objectFiles.isEmpty()) {
+                    warnings = assembleAndLink(program, filesToAssemble, objectFiles, mainFile.getAbsolutePath());
+                } else if (imageCache == null) {
+                    warnings = program.assemble(filesToAssemble, mainFile.getAbsolutePath());
+                } else {
+                    warnings = program.assemble(filesToAssemble, mainFile.getAbsolutePath(), imageCache);
+                }
+            } finally {
+                watchedFiles = filesToWatch(program, filesToAssemble, objectFiles);
+            }
             if (warnings != null && warnings.warningsOccurred()) {
                 out.println(warnings.generateWarningReport());
             }
@@ -493,13 +822,24 @@ public class Launch {
             out.println(e.errors().generateErrorAndWarningReport());
             out.println("Processing terminated due to errors.");
             return null;
+        } catch (IOException e) {
+            Globals.exitCode = assembleErrorExitCode;
+            out.println(e.getMessage());
+            out.println("Processing terminated due to errors.");
+            return null;
+        }
+        if (objectOutput != null) {
+            return null;
         }
         // Setup for program simulation even if just assembling to prepare memory dumps
         program.setup(programArgumentList, null);
-        if (simulate) {
+        if (simulate && gdbPort >= 0) {
+            debugCommand(program);
+        } else if (simulate) {
             if (Globals.debug) {
                 out.println("--------  SIMULATION BEGINS  -----------");
             }
+            startAnalyses();
             try {
                 while (true) {
                     Simulator.Reason done = program.simulate();
@@ -523,6 +863,7 @@ public class Launch {
                 out.println("Simulation terminated due to errors.");
             }
             displayAllPostMortem(program);
+            stopAnalyses();
         }
         if (Globals.debug) {
             out.println("\n--------  ALL PROCESSING COMPLETE  -----------");
@@ -531,6 +872,130 @@ public class Launch {
     }
 
 
+    //////////////////////////////////////////////////////////////////////
+    // Models of the hardware that follow the simulation as the cachesim,
+    // cachesweep, bpred and pipeline options ask, and the trace option's
+    // writer.  They start afresh with every run.  The pipeline passes
+    // memory accesses on to the caches itself, to see which miss.
+
+    private void startAnalyses() {
+        analyses = new ArrayList<>();
+        cacheHierarchy = null;
+        cacheSweeps = new ArrayList<>();
+        if (cacheSpec != null) {
+            cacheHierarchy = CacheHierarchy.parse(cacheSpec);
+            analyses.add(cacheHierarchy);
+        }
+        if (cacheSweep) {
+            cacheSweeps.add(StackDistanceSweep.firstLevel("Instruction", true, false));
+            cacheSweeps.add(StackDistanceSweep.firstLevel("Data", false, true));
+            analyses.addAll(cacheSweeps);
+        }
+        branchEvaluation = null;
+        if (branchSpec != null) {
+            branchEvaluation = BranchPredictorEvaluation.parse(branchSpec);
+            analyses.add(branchEvaluation);
+        }
+        traceWriter = null;
+        if (traceTriple != null) {
+            try {
+                traceWriter = MemoryTraceWriter.open(new File(traceTriple[2]),
+                        MemoryTraceWriter.format(traceTriple[1]), MemoryTraceWriter.Filter.parse(traceTriple[0]));
+                analyses.add(traceWriter);
+            } catch (IOException e) {
+                out.println("Could not write trace to " + traceTriple[2] + ": " + e.getMessage());
+            }
+        }
+        for (ExecutionListener analysis : analyses) {
+            Simulator.getInstance().addExecutionListener(analysis);
+        }
+        pipelineModel = null;
+        if (pipelineSpec != null) {
+            pipelineModel = PipelineModel.parse(pipelineSpec, cacheHierarchy);
+            if (cacheHierarchy != null) {
+                Simulator.getInstance().removeExecutionListener(cacheHierarchy);
+            }
+            Simulator.getInstance().setTimingModel(pipelineModel);
+        }
+    }
+
+    private void stopAnalyses() {
+        for (ExecutionListener analysis : analyses) {
+            Simulator.getInstance().removeExecutionListener(analysis);
+        }
+        Simulator.getInstance().setTimingModel(null);
+        if (traceWriter != null) {
+            try {
+                traceWriter.close();
+            } catch (IOException e) {
+                out.println("Could not write trace to " + traceTriple[2] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Let GDB drive the simulation of the program, see GdbServer.  The
+    // program's own I/O stays on the standard streams.
+
+    private void debugCommand(Program program) {
+        out.println("Waiting for GDB on port " + gdbPort);
+        try {
+            new GdbServer(program).listen(gdbPort);
+        } catch (IOException e) {
+            out.println(e.getMessage());
+            Globals.exitCode = 1;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Switch to RV32 or RV64 as the rv64 option says.
+
+    private void selectInstructionSet() {
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+        // Globals.initialize() has already populated the instruction set from the saved setting
+        if (InstructionSet.rv64 != rv64) {
+            InstructionSet.rv64 = rv64;
+            Globals.instructionSet.populate();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Assembles the sources into a relocatable object, which is either written to the file
+    // given by the "o" option or linked with the object files, the main file's object first.
+
+    private ErrorList assembleAndLink(Program program, ArrayList<String> sources, ArrayList<String> objectFiles,
+                                      String main) throws AssemblyException, IOException {
+        ArrayList<ObjectFile> objects = new ArrayList<>();
+        ErrorList warnings = null;
+        if (!sources.isEmpty()) {
+            String sourceMain = sources.get(0);
+            for (String source : sources) {
+                if (new File(source).getAbsolutePath().equals(main)) {
+                    sourceMain = source;
+                }
+            }
+            ObjectFile object = program.assembleObject(sources, sourceMain);
+            warnings = object.getWarnings();
+            if (objectOutput != null) {
+                object.write(new File(objectOutput));
+                return warnings;
+            }
+            objects.add(object);
+        } else if (objectOutput != null) {
+            throw new IOException("No source files to assemble into " + objectOutput);
+        }
+        for (String file : objectFiles) {
+            ObjectFile object = ObjectFile.read(new File(file));
+            if (new File(file).getAbsolutePath().equals(main)) {
+                objects.add(0, object);
+            } else {
+                objects.add(object);
+            }
+        }
+        program.link(objects);
+        return warnings;
+    }
+
     //////////////////////////////////////////////////////////////////////
     // Check for memory address subrange.  Has to be two integers separated
     // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -561,7 +1026,25 @@ public class Launch {
     // DPS 19 July 2012
     private void displayMiscellaneousPostMortem(Program program) {
         if (countInstructions) {
-            out.println("\n" + program.getRegisterValue("cycle"));
+            out.println("\n" + program.getRegisterValue("instret"));
+        }
+        if (cacheHierarchy != null) {
+            out.println();
+            cacheHierarchy.report(out);
+        }
+        if (cacheSweeps != null) {
+            for (StackDistanceSweep sweep : cacheSweeps) {
+                out.println();
+                sweep.report(out);
+            }
+        }
+        if (branchEvaluation != null) {
+            out.println();
+            branchEvaluation.report(out);
+        }
+        if (pipelineModel != null) {
+            out.println();
+            pipelineModel.report(out);
         }
     }
 
@@ -716,6 +1199,21 @@ public class Launch {
         out.println("  ae<n>  -- terminate RARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("  batch <manifest>  -- run the jobs listed in file <manifest>, one JSON object per");
+        out.println("            line giving files, stdin, args, limits and expected output, and write");
+        out.println("            one JSON line of results per job to standard out (use with nc).");
+        out.println("  bpred <predictors>  -- compare branch predictors on the program's branches and report");
+        out.println("            their accuracy overall and for the most mispredicted branches.  <predictors> is");
+        out.println("            default (" + BranchPredictorEvaluation.DEFAULT + ") or a list like");
+        out.println("            bimodal:4096,gshare:12,tournament:4096,tage:10,btb:512,ras:16 giving sizes");
+        out.println("  cache <dir>  -- keep assembled images in directory <dir> and reuse them when");
+        out.println("            the same unchanged sources are assembled again with the same options.");
+        out.println("  cachesim <levels>  -- simulate caches and report their hits and misses.  <levels> is");
+        out.println("            default (" + CacheHierarchy.DEFAULT + ") or levels like");
+        out.println("            l1i=8k:2:32,l1d=8k:4:32:wt:nwa,l2=256k:8:64:plru giving size:ways:block and any");
+        out.println("            of lru/fifo/random/plru, wb/wt (write-back/through), wa/nwa (write-allocate)");
+        out.println(" cachesweep  -- report the miss rates of LRU instruction and data caches of 1KB to");
+        out.println("            256KB, 1 to 16 ways and 16 to 128 byte blocks, all from one run.");
         out.println("      d  -- display RARS debugging statements");
         out.println("    dec  -- display memory or register contents in decimal.");
         out.println("   dump <segment> <format> <file> -- memory dump of specified memory segment");
@@ -725,9 +1223,13 @@ public class Launch {
         out.println("            <segment> = " + segments + ", or a range like 0x400000-0x10000000");
         out.println("            <format> = " + formats);
         out.println("      g  -- force GUI mode");
+        out.println("    gdb  -- wait for GDB to debug the program over its remote protocol on port 1234");
+        out.println("            of the loopback interface (target remote :1234).  gdb<n> uses port <n>.");
         out.println("      h  -- display this help.  Use by itself with no filename.");
         out.println("    hex  -- display memory or register contents in hexadecimal (default)");
         out.println("     ic  -- display count of basic instructions 'executed'");
+        out.println("    j<n>  -- run batch jobs or server requests in <n> separate worker JVMs at a time");
+        out.println("            (default 1: in this one)");
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
         out.println("            case-sensitive and possible values are: Default for the default");
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -737,10 +1239,27 @@ public class Launch {
         out.println("            Can separate messages from program output using redirection");
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
+        out.println("  o <file>  -- assemble into relocatable object <file> instead of running.  Object");
+        out.println("            files (.o) given as filenames are linked with the other files' object.");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+        out.println("  pipeline <parameters>  -- time the program on an in-order 5 stage pipeline, kept in the");
+        out.println("            cycle register, and report CPI and its causes overall and by label.");
+        out.println("            <parameters> is default or a list like bp=tage,branch=3,div=20 changing any of");
+        out.println("            " + PipelineModel.DEFAULT);
+        out.println("            (bp=none predicts no branch taken).  Cache misses cost l2 or mem cycles if");
+        out.println("            cachesim is given too.");
         out.println("  se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.");
+        out.println(" server  -- stay resident and answer requests to assemble and run programs, one JSON");
+        out.println("            object per line, on standard in and out (use with nc).  server<n> listens");
+        out.println("            on port <n> of the loopback interface instead.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("  trace <segment> <format> <file>  -- write the program's instruction fetches, loads and");
+        out.println("            stores in <segment> to <file> as they happen, gzipped if <file> ends in .gz.");
+        out.println("            <segment> = all, .text, .data, or a range like 0x10010000-0x1001ffff");
+        out.println("            <format> = din (Dinero IV: a line of label and hex address per access, 0 read,");
+        out.println("            1 write, 2 fetch) or bin (a byte of label and 4 of address, big-endian)");
+        out.println("  watch  -- reassemble and rerun whenever a source file changes, until interrupted");
         out.println("    rv64 -- Enables 64 bit assembly and executables (Not fully compatible with rv32)");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
@@ -758,6 +1277,9 @@ public class Launch {
         out.println("If more than one filename is listed, the first is assumed to be the main");
         out.println("unless the global statement label 'main' is defined in one of the files.");
         out.println("Exception handler not automatically assembled.  Add it to the file list.");
+        out.println("A single filename may also be a statically linked RISC-V ELF executable linked for");
+        out.println("the RARS memory layout (e.g. -Wl,-Ttext=0x400000 -Wl,-Tdata=0x10010000), which is");
+        out.println("loaded and run instead of assembled.");
         out.println("Options used here do not affect RARS Settings menu values and vice versa.");
     }
 
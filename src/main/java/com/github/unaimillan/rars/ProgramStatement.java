@@ -1,5 +1,6 @@
 package com.github.unaimillan.rars;
 
+import com.github.unaimillan.rars.assembler.Relocation;
 import com.github.unaimillan.rars.assembler.SymbolTable;
 import com.github.unaimillan.rars.assembler.Token;
 import com.github.unaimillan.rars.assembler.TokenList;
@@ -14,7 +15,7 @@ import com.github.unaimillan.rars.riscv.hardware.RegisterFile;
 import com.github.unaimillan.rars.util.Binary;
 import com.github.unaimillan.rars.venus.NumberDisplayBaseChooser;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -48,6 +49,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * Represents one assembly/machine statement.  This represents the "bare machine" level.
  * Pseudo-instructions have already been processed at this point and each assembly
  * statement generated by them is one of these.
+ * <p>
+ * A program may consist of hundreds of thousands of statements, so beyond what simulation
+ * needs (the binary code, the instruction and its operands) a statement keeps little: the
+ * basic assembly statement is packed into a single long from which its text is generated
+ * when asked, and the token lists are only kept until the statement is in memory.
  *
  * @author Pete Sanderson and Jason Bumgarner
  * @version August 2003
@@ -56,10 +62,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class ProgramStatement implements Comparable<ProgramStatement> {
     private final RISCVprogram sourceProgram;
-    private String source, basicAssemblyStatement, machineStatement;
-    private final TokenList originalTokenList;
-    private final TokenList strippedTokenList;
-    private final BasicStatementList basicStatementList;
+    private String source;
+    private TokenList originalTokenList;
+    private TokenList strippedTokenList;
+    private long basicLayout;       // elements of the basic statement, see BasicStatementBuilder
+    private String[] basicStrings;  // text of its STRING elements, or null if there are none
+    private boolean basicBuilt, machineBuilt;
     private final int[] operands;
     private int numOperands;
     private final Instruction instruction;
@@ -67,7 +75,9 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     private int sourceLine;
     private int binaryStatement;
     private final boolean altered;
+    private Relocation relocation;
     private static final String invalidOperator = "<INVALID>";
+    private static final String[] roundingModes = {"rne", "rtz", "rdn", "rup", "rmm", "invalid", "invalid", "dyn"};
 
     //////////////////////////////////////////////////////////////////////////////////
 
@@ -94,9 +104,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         this.instruction = inst;
         this.textAddress = textAddress;
         this.sourceLine = sourceLine;
-        this.basicAssemblyStatement = null;
-        this.basicStatementList = new BasicStatementList();
-        this.machineStatement = null;
         this.binaryStatement = 0;  // nop, or sll $0, $0, 0  (32 bits of 0's)
         this.altered = false;
     }
@@ -116,12 +123,28 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      *                        is stored.
      **/
     public ProgramStatement(int binaryStatement, int textAddress) {
-        this.sourceProgram = null;
+        this(null, "", 0, binaryStatement, textAddress);
+    }
+
+    /**
+     * Constructor for ProgramStatement used when reloading previously assembled machine
+     * code.  The instruction is decoded from its binary form as for self-modifying code,
+     * but keeps the source line it was assembled from for error messages and displays.
+     *
+     * @param sourceProgram   The RISCVprogram object for the file this statement came from, or null
+     * @param source          The corresponding RISCV source statement.
+     * @param sourceLine      The line number of the source statement.
+     * @param binaryStatement The 32-bit machine code.
+     * @param textAddress     The Text Segment address in memory where the binary machine code for this statement
+     *                        is stored.
+     **/
+    public ProgramStatement(RISCVprogram sourceProgram, String source, int sourceLine, int binaryStatement, int textAddress) {
+        this.sourceProgram = sourceProgram;
         this.binaryStatement = binaryStatement;
         this.textAddress = textAddress;
+        this.sourceLine = sourceLine;
         this.originalTokenList = this.strippedTokenList = null;
-        this.source = "";
-        this.machineStatement = this.basicAssemblyStatement = null;
+        this.source = source;
         BasicInstruction instr = Globals.instructionSet.findByBinaryCode(binaryStatement);
         if (instr == null) {
             this.operands = null;
@@ -129,30 +152,11 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
             this.instruction = null;
         } else {
             this.operands = new int[5];
-            this.numOperands = 0;
+            this.numOperands = instr.decodeOperands(binaryStatement, this.operands);
             this.instruction = instr;
-            String mask = instr.getOperationMask();
-            BasicInstructionFormat format = instr.getInstructionFormat();
-            if (format == BasicInstructionFormat.J_FORMAT) {
-                this.operands[0] = this.readBinaryCode(mask, Instruction.operandMask[0], binaryStatement);
-                this.operands[1] = fromJumpImmediate(this.readBinaryCode(mask, Instruction.operandMask[1], binaryStatement));
-                this.numOperands = 2;
-            } else if (format == BasicInstructionFormat.B_FORMAT) {
-                this.operands[0] = this.readBinaryCode(mask, Instruction.operandMask[0], binaryStatement);
-                this.operands[1] = this.readBinaryCode(mask, Instruction.operandMask[1], binaryStatement);
-                this.operands[2] = fromBranchImmediate(this.readBinaryCode(mask, Instruction.operandMask[2], binaryStatement));
-                this.numOperands = 3;
-            } else {  // Everything else is normal
-                for (int i = 0; i < 5; i++) {
-                    if (mask.indexOf(Instruction.operandMask[i]) != -1) {
-                        this.operands[i] = this.readBinaryCode(mask, Instruction.operandMask[i], binaryStatement);
-                        this.numOperands++;
-                    }
-                }
-            }
         }
         this.altered = false;
-        this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
+        buildBasicStatementFromBinaryCode(instr);
     }
 
     public int compareTo(ProgramStatement obj1) {
@@ -171,11 +175,25 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      * @param errors The list of assembly errors encountered so far.  May add to it here.
      **/
     public void buildBasicStatementFromBasicInstruction(ErrorList errors) {
-        Token token = strippedTokenList.get(0);
-        String basicStatementElement = token.getValue() + " ";
+        buildBasicStatementFromBasicInstruction(errors, false);
+    }
 
-        String basic = basicStatementElement;
-        basicStatementList.addString(basicStatementElement); // the operator
+    /**
+     * As {@link #buildBasicStatementFromBasicInstruction(ErrorList)}, optionally for a relocatable
+     * object.  Then labels that are not defined may be defined in another object, and a branch or
+     * jump to a label records a {@link Relocation} for the linker.
+     *
+     * @param errors      The list of assembly errors encountered so far.  May add to it here.
+     * @param relocatable true if assembling a relocatable object
+     **/
+    public void buildBasicStatementFromBasicInstruction(ErrorList errors, boolean relocatable) {
+        Token token = strippedTokenList.get(0);
+        BasicStatementBuilder basic = new BasicStatementBuilder();
+        if (instruction != null && token.getValue().equals(instruction.getName())) {
+            basic.add(OPERATOR);
+        } else {
+            basic.addString(token.getValue() + " ");
+        }
         TokenTypes tokenType, nextTokenType;
         String tokenValue;
         int registerNumber;
@@ -185,9 +203,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
             tokenType = token.getType();
             tokenValue = token.getValue();
             if (tokenType == TokenTypes.REGISTER_NUMBER) {
-                basicStatementElement = tokenValue;
-                basic += basicStatementElement;
-                basicStatementList.addString(basicStatementElement);
                 try {
                     registerNumber = RegisterFile.getRegister(tokenValue).getNumber();
                 } catch (Exception e) {
@@ -196,17 +211,21 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     return;
                 }
                 this.operands[this.numOperands++] = registerNumber;
+                // shown as written, which is usually but not necessarily x and the number
+                if (tokenValue.equals("x" + registerNumber)) {
+                    basic.add(REGISTER);
+                } else {
+                    basic.addOperandString(tokenValue);
+                }
             } else if (tokenType == TokenTypes.REGISTER_NAME) {
                 registerNumber = RegisterFile.getRegister(tokenValue).getNumber();
-                basicStatementElement = "x" + registerNumber;
-                basic += basicStatementElement;
-                basicStatementList.addString(basicStatementElement);
                 if (registerNumber < 0) {
                     // should never happen; should be caught before now...
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid register name"));
                     return;
                 }
                 this.operands[this.numOperands++] = registerNumber;
+                basic.add(REGISTER);
             } else if (tokenType == TokenTypes.CSR_NAME) {
                 // Little bit of a hack because CSRFile doesn't supoprt getRegister(strinug)
                 Register[] regs = ControlAndStatusRegisterFile.getRegisters();
@@ -222,20 +241,17 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid CSR name"));
                     return;
                 }
-                basic += registerNumber;
-                basicStatementList.addString("" + registerNumber);
                 this.operands[this.numOperands++] = registerNumber;
+                basic.add(NUMBER);
             } else if (tokenType == TokenTypes.FP_REGISTER_NAME) {
                 registerNumber = FloatingPointRegisterFile.getRegister(tokenValue).getNumber();
-                basicStatementElement = "f" + registerNumber;
-                basic += basicStatementElement;
-                basicStatementList.addString(basicStatementElement);
                 if (registerNumber < 0) {
                     // should never happen; should be caught before now...
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid FPU register name"));
                     return;
                 }
                 this.operands[this.numOperands++] = registerNumber;
+                basic.add(FP_REGISTER);
             } else if (tokenType == TokenTypes.ROUNDING_MODE) {
                 int rounding_mode = -1;
                 if (tokenValue.equals("rne")) {
@@ -255,12 +271,29 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid rounding mode"));
                     return;
                 }
-                basic += tokenValue;
-                basicStatementList.addString(tokenValue);
                 this.operands[this.numOperands++] = rounding_mode;
+                basic.add(ROUNDING_MODE);
             } else if (tokenType == TokenTypes.IDENTIFIER) {
 
                 int address = this.sourceProgram.getLocalSymbolTable().getAddressLocalOrGlobal(tokenValue);
+                if (relocatable && instruction instanceof BasicInstruction) {
+                    BasicInstructionFormat format = ((BasicInstruction) instruction).getInstructionFormat();
+                    if (format == BasicInstructionFormat.B_FORMAT) {
+                        this.relocation = new Relocation(Relocation.Kind.BRANCH, this.textAddress, this.textAddress, 0,
+                                tokenValue, 0, this.sourceProgram);
+                    } else if (format == BasicInstructionFormat.J_FORMAT) {
+                        this.relocation = new Relocation(Relocation.Kind.JAL, this.textAddress, this.textAddress, 0,
+                                tokenValue, 0, this.sourceProgram);
+                    } else {
+                        errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(),
+                                "Symbol \"" + tokenValue + "\" cannot be relocated in this instruction."));
+                        return;
+                    }
+                }
+                if (relocatable && address == SymbolTable.NOT_FOUND) {
+                    // left for the linker; encode as a branch to itself until then
+                    address = (this.relocation != null) ? this.textAddress : 0;
+                }
                 if (address == SymbolTable.NOT_FOUND) { // symbol used without being defined
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(),
                             "Symbol \"" + tokenValue + "\" not found in symbol table."));
@@ -290,13 +323,9 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     }
                 }
                 //////////////////////////////////////////////////////////////////////
-                basic += address;
-                if (absoluteAddress) { // record as address if absolute, value if relative
-                    basicStatementList.addAddress(address);
-                } else {
-                    basicStatementList.addValue(address);
-                }
                 this.operands[this.numOperands++] = address;
+                // record as address if absolute, value if relative
+                basic.add(absoluteAddress ? ADDRESS : VALUE);
             } else if (tokenType == TokenTypes.INTEGER_5 || tokenType == TokenTypes.INTEGER_6 || tokenType == TokenTypes.INTEGER_12 ||
                     tokenType == TokenTypes.INTEGER_12U || tokenType == TokenTypes.INTEGER_20 || tokenType == TokenTypes.INTEGER_32) {
 
@@ -343,18 +372,15 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                  *        }
                  **************************  END DPS 3-July-2008 COMMENTS *******************************/
 
-                basic += tempNumeric;
-                if (tokenType == TokenTypes.INTEGER_5) {
-                    basicStatementList.addShortValue(tempNumeric);
-                } else {
-                    basicStatementList.addValue(tempNumeric);
-                }
                 this.operands[this.numOperands++] = tempNumeric;
+                basic.add((tokenType == TokenTypes.INTEGER_5) ? NUMBER : VALUE);
                 ///// End modification 1/7/05 KENV   ///////////////////////////////////////////
+            } else if (tokenType == TokenTypes.LEFT_PAREN && tokenValue.equals("(")) {
+                basic.add(LEFT_PAREN);
+            } else if (tokenType == TokenTypes.RIGHT_PAREN && tokenValue.equals(")")) {
+                basic.add(RIGHT_PAREN);
             } else {
-                basicStatementElement = tokenValue;
-                basic += basicStatementElement;
-                basicStatementList.addString(basicStatementElement);
+                basic.addString(tokenValue);
             }
             // add separator if not at end of token list AND neither current nor 
             // next token is a parenthesis
@@ -362,13 +388,11 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 nextTokenType = strippedTokenList.get(i + 1).getType();
                 if (tokenType != TokenTypes.LEFT_PAREN && tokenType != TokenTypes.RIGHT_PAREN &&
                         nextTokenType != TokenTypes.LEFT_PAREN && nextTokenType != TokenTypes.RIGHT_PAREN) {
-                    basicStatementElement = ",";
-                    basic += basicStatementElement;
-                    basicStatementList.addString(basicStatementElement);
+                    basic.add(COMMA);
                 }
             }
         }
-        this.basicAssemblyStatement = basic;
+        this.basicBuilt = true;
     } //buildBasicStatementFromBasicInstruction()
 
 
@@ -391,21 +415,23 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         }
 
         //mask indicates bit positions for 'f'irst, 's'econd, 't'hird operand
-        this.machineStatement = ((BasicInstruction) instruction).getOperationMask();
-        BasicInstructionFormat format = ((BasicInstruction) instruction).getInstructionFormat();
+        BasicInstruction basicInstruction = (BasicInstruction) instruction;
+        BasicInstructionFormat format = basicInstruction.getInstructionFormat();
+        int binary = basicInstruction.getOpcodeMatch();
 
         if (format == BasicInstructionFormat.J_FORMAT) {
-            this.insertBinaryCode(this.operands[0], Instruction.operandMask[0], errors);
-            this.insertBinaryCode(toJumpImmediate(this.operands[1]), Instruction.operandMask[1], errors);
+            binary |= this.insertBinaryCode(basicInstruction, 0, this.operands[0], errors);
+            binary |= this.insertBinaryCode(basicInstruction, 1, toJumpImmediate(this.operands[1]), errors);
         } else if (format == BasicInstructionFormat.B_FORMAT) {
-            this.insertBinaryCode(this.operands[0], Instruction.operandMask[0], errors);
-            this.insertBinaryCode(this.operands[1], Instruction.operandMask[1], errors);
-            this.insertBinaryCode(toBranchImmediate(this.operands[2]), Instruction.operandMask[2], errors);
+            binary |= this.insertBinaryCode(basicInstruction, 0, this.operands[0], errors);
+            binary |= this.insertBinaryCode(basicInstruction, 1, this.operands[1], errors);
+            binary |= this.insertBinaryCode(basicInstruction, 2, toBranchImmediate(this.operands[2]), errors);
         } else {  // Everything else is normal
             for (int i = 0; i < this.numOperands; i++)
-                this.insertBinaryCode(this.operands[i], Instruction.operandMask[i], errors);
+                binary |= this.insertBinaryCode(basicInstruction, i, this.operands[i], errors);
         }
-        this.binaryStatement = Binary.binaryStringToInt(this.machineStatement);
+        this.binaryStatement = binary;
+        this.machineBuilt = true;
     }
 
 
@@ -418,15 +444,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 ((address & 0x7F800) >> 11);   // move address[19:12] to the right place
     }
 
-    private int fromJumpImmediate(int immediate) {
-        // trying to produce address[20:0] where immediate = address[20|10:1|11|19:12]
-        int tmp = ((immediate) & (1 << 19)) |    // keep the top bit in the same place
-                ((immediate & 0x7FE00) >> 9) | // move address[10:1] to the right place
-                ((immediate & (1 << 8)) << 2) |// move address[11] to the right place
-                ((immediate & 0xFF) << 11);   // move address[19:12] to the right place
-        return (tmp << 12) >> 11; // sign-extend and add extra 0
-    }
-
     private int toBranchImmediate(int address) {
         // trying to produce imm[12:1] where immediate = address[12|10:1|11]
         address = address >> 1; // Shift it down one byte
@@ -435,14 +452,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 ((address & (1 << 10)) >> 10); // move address[11] to the right place
     }
 
-    private int fromBranchImmediate(int immediate) {
-        // trying to produce address[12:0] where immediate = address[12|10:1|11]
-        int tmp = (immediate & (1 << 11)) |  // keep the top bit in the same place
-                ((immediate & 0x7FE) >> 1) | // move address[10:1] to the right place
-                ((immediate & 1) << 10);     // move address[11] to the right place
-        return (tmp << 20) >> 19; // sign-extend and add extra 0
-    }
-
     /**
      * Crude attempt at building String representation of this complex structure.
      *
@@ -453,10 +462,11 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         // a crude attempt at string formatting.  Where's C when you need it?
         String blanks = "                               ";
         String result = "[" + this.textAddress + "]";
-        if (this.basicAssemblyStatement != null) {
-            int firstSpace = this.basicAssemblyStatement.indexOf(" ");
-            result += blanks.substring(0, 16 - result.length()) + this.basicAssemblyStatement.substring(0, firstSpace);
-            result += blanks.substring(0, 24 - result.length()) + this.basicAssemblyStatement.substring(firstSpace + 1);
+        String basicAssemblyStatement = getBasicAssemblyStatement();
+        if (basicAssemblyStatement != null) {
+            int firstSpace = basicAssemblyStatement.indexOf(" ");
+            result += blanks.substring(0, 16 - result.length()) + basicAssemblyStatement.substring(0, firstSpace);
+            result += blanks.substring(0, 24 - result.length()) + basicAssemblyStatement.substring(firstSpace + 1);
         } else {
             result += blanks.substring(0, 16 - result.length()) + "0x" + Integer.toString(this.binaryStatement, 16);
         }
@@ -466,34 +476,39 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 // result += operands[i] + " ";
                 result += Integer.toString(operands[i], 16) + " ";
         }
-        if (this.machineStatement != null) {
-            result += "[" + Binary.binaryStringToHexString(this.machineStatement) + "]";
-            result += "  " + this.machineStatement.substring(0, 6) + "|" + this.machineStatement.substring(6, 11) + "|" +
-                    this.machineStatement.substring(11, 16) + "|" + this.machineStatement.substring(16, 21) + "|" +
-                    this.machineStatement.substring(21, 26) + "|" + this.machineStatement.substring(26, 32);
+        String machineStatement = getMachineStatement();
+        if (machineStatement != null) {
+            result += "[" + Binary.binaryStringToHexString(machineStatement) + "]";
+            result += "  " + machineStatement.substring(0, 6) + "|" + machineStatement.substring(6, 11) + "|" +
+                    machineStatement.substring(11, 16) + "|" + machineStatement.substring(16, 21) + "|" +
+                    machineStatement.substring(21, 26) + "|" + machineStatement.substring(26, 32);
         }
         return result;
     } // toString()
 
     /**
      * Assigns given String to be Basic Assembly statement equivalent to this source line.
+     * It is shown as it is, whatever the number display settings.
      *
      * @param statement A String containing equivalent Basic Assembly statement.
      **/
 
     public void setBasicAssemblyStatement(String statement) {
-        basicAssemblyStatement = statement;
+        basicLayout = STRING;
+        basicStrings = new String[]{statement};
+        basicBuilt = true;
     }
 
     /**
      * Assigns given String to be binary machine code (32 characters, all of them 0 or 1)
-     * equivalent to this source line.
+     * equivalent to this source line.  This sets the binary machine code as well.
      *
      * @param statement A String containing equivalent machine code.
      **/
 
     public void setMachineStatement(String statement) {
-        machineStatement = statement;
+        binaryStatement = Binary.binaryStringToInt(statement);
+        machineBuilt = true;
     }
 
     /**
@@ -566,7 +581,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      **/
 
     public String getBasicAssemblyStatement() {
-        return basicAssemblyStatement;
+        return basicBuilt ? renderBasicStatement(NumberDisplayBaseChooser.DECIMAL, NumberDisplayBaseChooser.DECIMAL) : null;
     }
 
     /**
@@ -578,7 +593,9 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      * @return The Basic Assembly statement.
      **/
     public String getPrintableBasicAssemblyStatement() {
-        return basicStatementList.toString();
+        int addressBase = (Globals.getSettings().getBooleanSetting(Settings.Bool.DISPLAY_ADDRESSES_IN_HEX)) ? NumberDisplayBaseChooser.HEXADECIMAL : NumberDisplayBaseChooser.DECIMAL;
+        int valueBase = (Globals.getSettings().getBooleanSetting(Settings.Bool.DISPLAY_VALUES_IN_HEX)) ? NumberDisplayBaseChooser.HEXADECIMAL : NumberDisplayBaseChooser.DECIMAL;
+        return renderBasicStatement(addressBase, valueBase);
     }
 
     /**
@@ -588,7 +605,26 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      **/
 
     public String getMachineStatement() {
-        return machineStatement;
+        return machineBuilt ? Binary.intToBinaryString(binaryStatement) : null;
+    }
+
+    /**
+     * Produces the relocation needed to link this statement, if it was assembled into a
+     * relocatable object and refers to a label.
+     *
+     * @return the relocation, or null if there is none
+     **/
+    public Relocation getRelocation() {
+        return relocation;
+    }
+
+    /**
+     * Records the relocation needed to link this statement.
+     *
+     * @param relocation the relocation
+     **/
+    public void setRelocation(Relocation relocation) {
+        this.relocation = relocation;
     }
 
     /**
@@ -603,7 +639,8 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     /**
      * Produces token list generated from original source statement.
      *
-     * @return The TokenList of Token objects generated from original source.
+     * @return The TokenList of Token objects generated from original source, or null once
+     * the token lists have been released.
      **/
     public TokenList getOriginalTokenList() {
         return originalTokenList;
@@ -613,12 +650,20 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      * Produces token list stripped of all but operator and operand tokens.
      *
      * @return The TokenList of Token objects generated by stripping original list of all
-     * except operator and operand tokens.
+     * except operator and operand tokens, or null once the token lists have been released.
      **/
     public TokenList getStrippedTokenList() {
         return strippedTokenList;
     }
 
+    /**
+     * Lets go of the token lists.  The assembler calls this once the statement has been
+     * translated and stored, as they are not needed for simulating or displaying it.
+     **/
+    public void releaseTokenLists() {
+        originalTokenList = strippedTokenList = null;
+    }
+
     /**
      * Produces Instruction object corresponding to this statement's operator.
      *
@@ -661,145 +706,95 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     }
 
     /**
-     * Reads an operand from a binary statement according to a mask and format
-     * <p>
-     * i.e.
-     * <pre>
-     * 0b01001 == readBinaryCode("ttttttttttttttsssss010fffff1101001",'f',
-     *                          0b0101000001000001000010010011101001)</pre>
+     * Given operand (register or integer) and its position, generate the bits of the
+     * machine code that hold it, as marked in the operation mask by the position's mask
+     * character ('f', 's', 't', ...).
      *
-     * @param format          the format of the full binary statement (all operands present)
-     * @param mask            the value (f,s, or t) to mask out
-     * @param binaryStatement the binary statement to read from
-     * @return the bits read pushed to the right
-     */
-    private int readBinaryCode(String format, char mask, int binaryStatement) {
-        int out = 0;
-        for (int i = 0; i < 32; i++) {
-            if (format.charAt(i) == mask) {
-                // if the mask says to read, shift the output left and add substitute bit i
-                out = (out << 1) | ((binaryStatement >> (31 - i)) & 1);
-            }
-        }
-        return out;
-    }
-
-    /**
-     * Given operand (register or integer) and mask character ('f', 's', or 't'),
-     * generate the correct sequence of bits and replace the mask with them.
-     *
-     * @param value  the value to be masked in (will be converted to binary)
-     * @param mask   the value (f,s, or t) to mask out
+     * @param instr  the instruction, whose operation mask is used
+     * @param i      the operand position
+     * @param value  the value to be masked in
      * @param errors error list to append errors to in the event of unrecoverable errors
+     * @return the bits, to be or-ed into the machine code
      */
-    private void insertBinaryCode(int value, char mask, ErrorList errors) {
-        StringBuilder state = new StringBuilder(this.machineStatement);
-
-
-        // Just counts the number of occurrences of the mask in machineStatement.
-        // This could be done with a method from StringUtils, but I didn't think
-        // bringing in another dependency was worth it.
-        int length = 0;
-        for (int i = 0; i < state.length(); i++) {
-            if (state.charAt(i) == mask) length++;
-        }
-
+    private int insertBinaryCode(BasicInstruction instr, int i, int value, ErrorList errors) {
         // should NEVER occur
         // if it does, then one of the BasicInstructions is malformed
-        if (length == 0) {
+        if (!instr.hasOperand(i)) {
             errors.add(new ErrorMessage(this.sourceProgram, this.sourceLine, 0,
                     "INTERNAL ERROR: mismatch in number of operands in statement vs mask"));
-            return;
+            return 0;
         }
-
-        // Replace the mask bit for bit with the binary version of the value
-        // The old version of this function assumed that the mask was continuous
-        String bitString = Binary.intToBinaryString(value, length);
-        int valueIndex = 0;
-        for (int i = 0; i < state.length(); i++) {
-            if (state.charAt(i) == mask) {
-                state.setCharAt(i, bitString.charAt(valueIndex));
-                valueIndex++;
-            }
-        }
-
-        this.machineStatement = state.toString();
+        return instr.encodeOperand(i, value);
     }
 
 
     //////////////////////////////////////////////////////////////////////////////
     /*
-     *   Given a model BasicInstruction and the assembled (not source) operand array for a statement,
-     *   this method will construct the corresponding basic instruction list.  This method is
+     *   Given a model BasicInstruction and the assembled (not source) operands of this statement,
+     *   this method will construct the corresponding basic statement.  This method is
      *   used by the constructor that is given only the int address and binary code.  It is not
      *   intended to be used when source code is available.  DPS 11-July-2013
      */
-    private BasicStatementList buildBasicStatementListFromBinaryCode(int binary, BasicInstruction instr, int[] operands, int numOperands) {
-        BasicStatementList statementList = new BasicStatementList();
+    private void buildBasicStatementFromBinaryCode(BasicInstruction instr) {
+        BasicStatementBuilder statement = new BasicStatementBuilder();
         int tokenListCounter = 1;  // index 0 is operator; operands start at index 1
         if (instr == null) {
-            statementList.addString(invalidOperator);
-            return statementList;
+            statement.addString(invalidOperator);
+            return;
         } else {
-            statementList.addString(instr.getName() + " ");
+            statement.add(OPERATOR);
         }
+        TokenList tokens = instr.getTokenList();
         for (int i = 0; i < numOperands; i++) {
             // add separator if not at end of token list AND neither current nor 
             // next token is a parenthesis
-            if (tokenListCounter > 1 && tokenListCounter < instr.getTokenList().size()) {
-                TokenTypes thisTokenType = instr.getTokenList().get(tokenListCounter).getType();
+            if (tokenListCounter > 1 && tokenListCounter < tokens.size()) {
+                TokenTypes thisTokenType = tokens.get(tokenListCounter).getType();
                 if (thisTokenType != TokenTypes.LEFT_PAREN && thisTokenType != TokenTypes.RIGHT_PAREN) {
-                    statementList.addString(",");
+                    statement.add(COMMA);
                 }
             }
             boolean notOperand = true;
-            while (notOperand && tokenListCounter < instr.getTokenList().size()) {
-                TokenTypes tokenType = instr.getTokenList().get(tokenListCounter).getType();
+            while (notOperand && tokenListCounter < tokens.size()) {
+                TokenTypes tokenType = tokens.get(tokenListCounter).getType();
                 if (tokenType.equals(TokenTypes.LEFT_PAREN)) {
-                    statementList.addString("(");
+                    statement.add(LEFT_PAREN);
                 } else if (tokenType.equals(TokenTypes.RIGHT_PAREN)) {
-                    statementList.addString(")");
+                    statement.add(RIGHT_PAREN);
                 } else if (tokenType.toString().contains("REGISTER")) {
-                    String marker = (tokenType.toString().contains("FP_REGISTER")) ? "f" : "x";
-                    statementList.addString(marker + operands[i]);
+                    statement.add((tokenType.toString().contains("FP_REGISTER")) ? FP_REGISTER : REGISTER);
                     notOperand = false;
                 } else if (tokenType.equals(TokenTypes.INTEGER_12)) {
-                    statementList.addValue((operands[i] << 20) >> 20);
+                    statement.add(VALUE_12);
                     notOperand = false;
                 } else if (tokenType.equals(TokenTypes.ROUNDING_MODE)) {
-                    String[] modes = new String[]{"rne", "rtz", "rdn", "rup", "rmm", "invalid", "invalid", "dyn"};
-                    String value = "invalid";
-                    if (operands[i] >= 0 && operands[i] < 8) {
-                        value = modes[operands[i]];
-                    }
-                    statementList.addString(value);
+                    statement.add(ROUNDING_MODE);
                     notOperand = false;
                 } else {
-                    statementList.addValue(operands[i]);
+                    statement.add(VALUE);
                     notOperand = false;
                 }
                 tokenListCounter++;
             }
         }
-        while (tokenListCounter < instr.getTokenList().size()) {
-            TokenTypes tokenType = instr.getTokenList().get(tokenListCounter).getType();
+        while (tokenListCounter < tokens.size()) {
+            TokenTypes tokenType = tokens.get(tokenListCounter).getType();
             if (tokenType.equals(TokenTypes.LEFT_PAREN)) {
-                statementList.addString("(");
+                statement.add(LEFT_PAREN);
             } else if (tokenType.equals(TokenTypes.RIGHT_PAREN)) {
-                statementList.addString(")");
+                statement.add(RIGHT_PAREN);
             }
             tokenListCounter++;
         }
-        return statementList;
-    } // buildBasicStatementListFromBinaryCode()
+    } // buildBasicStatementFromBinaryCode()
 
 
     //////////////////////////////////////////////////////////
     //
-    //  Little class to represent basic statement as list
+    //  The basic statement is represented as a list
     //  of elements.  Each element is either a string, an
-    //  address or a value.  The toString() method will
-    //  return a string representation of the basic statement
+    //  address or a value.  It is rendered as a string
+    //  representation of the basic statement
     //  in which any addresses or values are rendered in the
     //  current number format (e.g. decimal or hex).
     //
@@ -808,71 +803,130 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     //  are relative to the PC.
     //
     //  DPS 29-July-2010
-
-    private class BasicStatementList {
-
-        private final ArrayList<ListElement> list;
-
-        BasicStatementList() {
-            list = new ArrayList<>();
-        }
-
-        void addString(String string) {
-            list.add(new ListElement(0, string, 0));
+    //
+    //  The kinds of the elements are packed 4 bits each into basicLayout, the first in the
+    //  lowest bits.  Those that stand for an operand take it from the operands array in turn,
+    //  and the text of those that are strings is kept in basicStrings.  A statement thereby
+    //  needs no objects for its basic statement unless some of it is spelled unusually.
+
+    private static final int STRING = 1;          // next of basicStrings
+    private static final int OPERATOR = 2;        // name of the instruction and a blank
+    private static final int COMMA = 3;
+    private static final int LEFT_PAREN = 4;
+    private static final int RIGHT_PAREN = 5;
+    // Each of the following stands for the next operand.
+    private static final int OPERAND_STRING = 6;  // next of basicStrings
+    private static final int REGISTER = 7;
+    private static final int FP_REGISTER = 8;
+    private static final int NUMBER = 9;          // always in decimal
+    private static final int ROUNDING_MODE = 10;
+    private static final int ADDRESS = 11;
+    private static final int VALUE = 12;
+    private static final int VALUE_12 = 13;       // sign-extended from 12 bits
+    private static final int MAX_ELEMENTS = 16;
+
+    private class BasicStatementBuilder {
+        private int elements; // number of elements in basicLayout
+        private int operand;  // number of operands they stand for
+        private boolean full; // all elements have been rendered into basicStrings[0]
+
+        BasicStatementBuilder() {
+            basicLayout = 0;
+            basicStrings = null;
         }
 
-        void addAddress(int address) {
-            list.add(new ListElement(1, null, address));
+        void add(int kind) {
+            add(kind, null);
         }
 
-        void addValue(int value) {
-            list.add(new ListElement(2, null, value));
+        void addString(String string) {
+            add(STRING, string);
         }
 
-        void addShortValue(int value) {
-            list.add(new ListElement(3, null, value));
+        void addOperandString(String string) {
+            add(OPERAND_STRING, string);
         }
 
-        public String toString() {
-            int addressBase = (Globals.getSettings().getBooleanSetting(Settings.Bool.DISPLAY_ADDRESSES_IN_HEX)) ? NumberDisplayBaseChooser.HEXADECIMAL : NumberDisplayBaseChooser.DECIMAL;
-            int valueBase = (Globals.getSettings().getBooleanSetting(Settings.Bool.DISPLAY_VALUES_IN_HEX)) ? NumberDisplayBaseChooser.HEXADECIMAL : NumberDisplayBaseChooser.DECIMAL;
-
-            StringBuffer result = new StringBuffer();
-            for (ListElement e : list) {
-                switch (e.type) {
-                    case 0:
-                        result.append(e.sValue);
-                        break;
-                    case 1:
-                        result.append(NumberDisplayBaseChooser.formatNumber(e.iValue, addressBase));
-                        break;
-                    case 2:
-                        if (valueBase == NumberDisplayBaseChooser.HEXADECIMAL) {
-                            result.append(Binary.intToHexString(e.iValue)); // 13-July-2011, was: intToHalfHexString()
-                        } else {
-                            result.append(NumberDisplayBaseChooser.formatNumber(e.iValue, valueBase));
-                        }
-                        break;
-                    case 3:
-                        result.append(e.iValue);
-                        break;
-                    default:
-                        break;
+        private void add(int kind, String string) {
+            if (elements == MAX_ELEMENTS && !full) {
+                // No instruction comes near this, but should one: it is shown in decimal throughout.
+                basicStrings = new String[]{renderBasicStatement(NumberDisplayBaseChooser.DECIMAL, NumberDisplayBaseChooser.DECIMAL)};
+                basicLayout = STRING;
+                full = true;
+            }
+            int value = (kind >= OPERAND_STRING) ? operands[operand++] : 0;
+            if (full) {
+                StringBuilder text = new StringBuilder(basicStrings[0]);
+                appendElement(text, kind, string, value, NumberDisplayBaseChooser.DECIMAL, NumberDisplayBaseChooser.DECIMAL);
+                basicStrings[0] = text.toString();
+                return;
+            }
+            if (string != null) {
+                if (basicStrings == null) {
+                    basicStrings = new String[]{string};
+                } else {
+                    basicStrings = Arrays.copyOf(basicStrings, basicStrings.length + 1);
+                    basicStrings[basicStrings.length - 1] = string;
                 }
             }
-            return result.toString();
+            basicLayout |= (long) kind << (4 * elements++);
         }
+    }
 
-        private class ListElement {
-            int type;
-            String sValue;
-            int iValue;
+    private String renderBasicStatement(int addressBase, int valueBase) {
+        StringBuilder result = new StringBuilder();
+        int operand = 0;
+        int string = 0;
+        for (long layout = basicLayout; layout != 0; layout >>>= 4) {
+            int kind = (int) (layout & 0xF);
+            appendElement(result, kind,
+                    (kind == STRING || kind == OPERAND_STRING) ? basicStrings[string++] : null,
+                    (kind >= OPERAND_STRING) ? operands[operand++] : 0, addressBase, valueBase);
+        }
+        return result.toString();
+    }
 
-            ListElement(int type, String sValue, int iValue) {
-                this.type = type;
-                this.sValue = sValue;
-                this.iValue = iValue;
-            }
+    private void appendElement(StringBuilder result, int kind, String string, int value, int addressBase, int valueBase) {
+        switch (kind) {
+            case STRING:
+            case OPERAND_STRING:
+                result.append(string);
+                break;
+            case OPERATOR:
+                result.append(instruction.getName()).append(' ');
+                break;
+            case COMMA:
+                result.append(',');
+                break;
+            case LEFT_PAREN:
+                result.append('(');
+                break;
+            case RIGHT_PAREN:
+                result.append(')');
+                break;
+            case REGISTER:
+                result.append('x').append(value);
+                break;
+            case FP_REGISTER:
+                result.append('f').append(value);
+                break;
+            case NUMBER:
+                result.append(value);
+                break;
+            case ROUNDING_MODE:
+                result.append((value >= 0 && value < roundingModes.length) ? roundingModes[value] : "invalid");
+                break;
+            case ADDRESS:
+                result.append(NumberDisplayBaseChooser.formatNumber(value, addressBase));
+                break;
+            case VALUE:
+                result.append(NumberDisplayBaseChooser.formatNumber(value, valueBase)); // 13-July-2011, was: intToHalfHexString()
+                break;
+            case VALUE_12:
+                result.append(NumberDisplayBaseChooser.formatNumber((value << 20) >> 20, valueBase));
+                break;
+            default:
+                break;
         }
     }
 
@@ -1,6 +1,7 @@
 package com.github.unaimillan.rars;
 
 import com.github.unaimillan.rars.assembler.*;
+import com.github.unaimillan.rars.jfr.TokenizeEvent;
 import com.github.unaimillan.rars.riscv.hardware.RegisterFile;
 import com.github.unaimillan.rars.simulator.BackStepper;
 import com.github.unaimillan.rars.simulator.Simulator;
@@ -9,6 +10,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -63,6 +65,22 @@ public class RISCVprogram {
     private ArrayList<SourceLine> sourceLineList;
     private Tokenizer tokenizer;
 
+    /**
+     * Creates an empty program; use {@link #readSource(String)} or {@link #fromString(String)} to fill it.
+     */
+    public RISCVprogram() {
+    }
+
+    /**
+     * Creates a program that only records which file it came from.  Used for statements loaded
+     * from an assembled image, which have no source or tokens to refer back to.
+     *
+     * @param filename name of the source file
+     */
+    public RISCVprogram(String filename) {
+        this.filename = filename;
+    }
+
     /**
      * Produces list of source statements that comprise the program.
      *
@@ -258,9 +276,60 @@ public class RISCVprogram {
      **/
 
     public void tokenize() throws AssemblyException {
+        TokenizeEvent event = new TokenizeEvent();
+        event.begin();
         this.tokenizer = new Tokenizer();
         this.tokenList = tokenizer.tokenize(this);
         this.localSymbolTable = new SymbolTable(this.filename); // prepare for assembly
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.lines = tokenList.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Copies the result of {@link #tokenize()} into a new program, whose tokens, source lines and
+     * tokenizer refer to the copy instead of this one.  Assembling either program changes neither
+     * the other nor its tokens.  Lines from included files still refer to the programs they were
+     * read into, which are not changed by assembly.
+     *
+     * @return the copy, ready to be assembled
+     */
+    public RISCVprogram copyTokenizedSource() {
+        RISCVprogram copy = new RISCVprogram(filename);
+        copy.sourceList = new ArrayList<>(sourceList);
+        copy.sourceLineList = new ArrayList<>(sourceLineList.size());
+        for (SourceLine line : sourceLineList) {
+            copy.sourceLineList.add(line.getRISCVprogram() != this ? line
+                    : new SourceLine(line.getSource(), copy, line.getLineNumber()));
+        }
+        copy.tokenList = new ArrayList<>(tokenList.size());
+        for (TokenList tokens : tokenList) {
+            TokenList copied = new TokenList();
+            for (Token token : tokens) {
+                copied.add(new Token(token.getType(), token.getValue(),
+                        token.getSourceProgram() == this ? copy : token.getSourceProgram(),
+                        token.getSourceLine(), token.getStartPos()));
+            }
+            copied.setProcessedLine(tokens.getProcessedLine());
+            copy.tokenList.add(copied);
+        }
+        copy.tokenizer = tokenizer.copyFor(copy);
+        copy.localSymbolTable = new SymbolTable(filename);
+        return copy;
+    }
+
+    // Makes "this" stand in for a copy of a cached program of the lead file.  The copy is what
+    // gets assembled, since its tokens refer back to it; "this" shares its source and symbol
+    // table so that the IDE and LabelsWindow see the same results.
+    private void shareTokenizedSource(RISCVprogram other) {
+        this.filename = other.filename;
+        this.sourceList = other.sourceList;
+        this.sourceLineList = other.sourceLineList;
+        this.tokenList = other.tokenList;
+        this.tokenizer = other.tokenizer;
+        this.localSymbolTable = other.localSymbolTable;
     }
 
     /**
@@ -286,12 +355,44 @@ public class RISCVprogram {
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
         }
-        for (String filename : filenames) {
-            RISCVprogram preparee = (filename.equals(leadFilename)) ? this : new RISCVprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+        // Files that are unchanged since they were last tokenized are taken from the TokenCache;
+        // the rest are read and tokenized in parallel since they are independent of each other.
+        // If several fail, report the first in list order as if they had been prepared one at a time.
+        RISCVprogram[] preparees = new RISCVprogram[filenames.size()];
+        AssemblyException[] failures = new AssemblyException[preparees.length];
+        IntStream stream = IntStream.range(0, preparees.length);
+        (preparees.length > 1 ? stream.parallel() : stream).forEach(i -> {
+            String filename = filenames.get(i);
+            boolean lead = filename.equals(leadFilename);
+            byte[] digest = TokenCache.digest(filename);
+            RISCVprogram cached = TokenCache.lookup(filename, digest);
+            if (cached != null) {
+                preparees[i] = cached;
+                return;
+            }
+            RISCVprogram preparee = lead ? this : new RISCVprogram();
+            try {
+                preparee.readSource(filename);
+                preparee.tokenize();
+                TokenCache.store(preparee, digest);
+            } catch (AssemblyException e) {
+                failures[i] = e;
+            }
+            preparees[i] = preparee;
+        });
+        for (AssemblyException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        for (int i = 0; i < preparees.length; i++) {
+            RISCVprogram preparee = preparees[i];
+            boolean lead = filenames.get(i).equals(leadFilename);
+            if (lead && preparee != this) {
+                shareTokenizedSource(preparee);
+            }
             // I want "this" RISCVprogram to be the first in the list...except for exception handler
-            if (preparee == this && programsToAssemble.size() > 0) {
+            if (lead && programsToAssemble.size() > 0) {
                 programsToAssemble.add(leadFilePosition, preparee);
             } else {
                 programsToAssemble.add(preparee);
@@ -338,6 +439,52 @@ public class RISCVprogram {
         return asm.getErrorList();
     }
 
+    /**
+     * Assembles the RISCV source program into a relocatable object rather than a program ready
+     * to run.  All files comprising the program must have already been tokenized.
+     *
+     * @param programsToAssemble       ArrayList of RISCVprogram objects, each representing a tokenized source file.
+     * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+     *                                 are permitted in source code and false means they are to be flagged as errors
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be considered errors and terminate
+     *                                 the assemble; false means the assembler will produce warning message but otherwise ignore warnings.
+     * @return the object; its warnings are available from {@link ObjectFile#getWarnings()}
+     * @throws AssemblyException Will throw exception if errors occurred while assembling.
+     **/
+    public ObjectFile assembleObject(ArrayList<RISCVprogram> programsToAssemble, boolean extendedAssemblerEnabled,
+                                     boolean warningsAreErrors) throws AssemblyException {
+        return new Assembler().assembleObject(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
+    }
+
+    /**
+     * Links relocatable objects into memory, after which the program can be simulated as if it
+     * had been assembled.
+     *
+     * @param objects the objects to link, the one containing the main program first
+     * @throws AssemblyException Will throw exception if the objects cannot be linked.
+     **/
+    public void link(ArrayList<ObjectFile> objects) throws AssemblyException {
+        this.backStepper = null;
+        this.machineList = new Linker().link(objects);
+        this.backStepper = new BackStepper();
+    }
+
+    /**
+     * Loads a statically linked RISC-V ELF executable into memory, after which it can be
+     * simulated as if it had been assembled.  See {@link ElfLoader} for what is supported.
+     *
+     * @param filename the executable
+     * @return the entry point of the executable
+     * @throws AssemblyException Will throw exception if the executable cannot be loaded.
+     **/
+    public int loadExecutable(String filename) throws AssemblyException {
+        this.backStepper = null;
+        ElfLoader loader = new ElfLoader();
+        this.machineList = loader.load(filename);
+        this.backStepper = new BackStepper();
+        return loader.getEntry();
+    }
+
 
     /**
      * Simulates execution of the program (in this thread). Program must have already been assembled.
@@ -349,8 +496,21 @@ public class RISCVprogram {
      * @throws SimulationException Will throw exception if errors occurred while simulating.
      */
     public Simulator.Reason simulate(int maxSteps) throws SimulationException {
+        return simulate(maxSteps, null);
+    }
+
+    /**
+     * Simulates execution of the program (in this thread) as {@link #simulate(int)} does, also
+     * stopping when the program counter reaches one of the given addresses.
+     *
+     * @param maxSteps    the maximum maximum number of steps to simulate.
+     * @param breakPoints addresses of instructions to stop at, or null if none
+     * @return the reason why the simulation stopped
+     * @throws SimulationException Will throw exception if errors occurred while simulating.
+     */
+    public Simulator.Reason simulate(int maxSteps, int[] breakPoints) throws SimulationException {
         Simulator sim = Simulator.getInstance();
-        return sim.simulate(RegisterFile.getProgramCounter(), maxSteps, null);
+        return sim.simulate(RegisterFile.getProgramCounter(), maxSteps, breakPoints);
     }
 
     /**
@@ -0,0 +1,877 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.ErrorList;
+import com.github.unaimillan.rars.ErrorMessage;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.assembler.ElfLoader;
+import com.github.unaimillan.rars.assembler.TokenCache;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.ControlAndStatusRegisterFile;
+import com.github.unaimillan.rars.riscv.hardware.MemoryConfiguration;
+import com.github.unaimillan.rars.riscv.hardware.MemoryConfigurations;
+import com.github.unaimillan.rars.simulator.Simulator;
+import com.github.unaimillan.rars.util.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a manifest of jobs, each a program with its own stdin, arguments, limits and expected
+ * output, and reports one JSON line per job.
+ * <p>
+ * The manifest has one JSON object per line (blank lines and lines starting with # are skipped):
+ * <pre>
+ * {"id": "sum-1", "files": ["sum.s", "lib.s"], "stdin": "1 2\n", "args": ["-v"],
+ *  "maxSteps": 100000, "timeout": 2000, "expect": {"stdout": "3\n", "stderr": "", "exitCode": 0}}
+ * </pre>
+ * Either "files" or "source", the text of a program, is required; the first file is the main
+ * one, and relative names are taken from the manifest's directory.  "stdinFile" names a file to
+ * use as stdin instead of "stdin".  "maxSteps" defaults to the step limit given to the runner
+ * and "timeout" (milliseconds of wall-clock time for the simulation) to none.
+ * <p>
+ * A result has the job's "index" (its position among the jobs) and "id", a "status" of exited,
+ * cliff, maxSteps, timeout, breakpoint, assemblyError, runtimeError or internalError, the
+ * "exitCode", the number of "instructions" retired, SHA-256 digests of stdout and stderr and the
+ * time taken.  If the job has expectations, "passed" tells whether they were all met, and
+ * stdout and stderr are included when they were not.
+ * <p>
+ * All simulator state is static, so one JVM can only run one simulation at a time.  With one
+ * worker the jobs run here; with more, each worker is a separate JVM running this class's
+ * {@link #main} and taking jobs one by one, so that JVM startup and populating the instruction
+ * set are paid once per worker rather than once per job.  A worker that overruns a job's timeout
+ * is killed and replaced.  Either way assembled programs are kept by the SHA-256 of their sources
+ * and reused by later jobs.  Results are reported in the order the jobs finish.
+ */
+public class BatchRunner {
+    private static final long KILL_GRACE = 5000; // ms a worker may overrun a timeout before it is killed
+    private static final int STOP_RETRY = 100;   // ms between attempts to stop a simulation that timed out
+    private static final int MAX_PROGRAMS = 16;  // assembled programs kept for reuse
+
+    private final Options options;
+    private final PrintStream results;
+    private final int workers;
+    private int failures;
+
+    // Assembled programs by the hash of their sources, least recently used first
+    private final LinkedHashMap<String, Assembled> programs = new LinkedHashMap<>(MAX_PROGRAMS, 0.75f, true);
+
+    // Worker JVMs that are not busy; a null worker is started when it is taken
+    private final LinkedBlockingQueue<WorkerSlot> idleWorkers = new LinkedBlockingQueue<>();
+    private final List<WorkerSlot> workerSlots = new ArrayList<>(); // busy or not
+
+    private Timer watchdog;
+    private final Object watchdogLock = new Object();
+    private boolean simulating, timedOut; // guarded by watchdogLock
+
+    /**
+     * One entry of a manifest.
+     */
+    public static class Job {
+        private final int index;
+        private final Object id;
+        private final List<String> files;
+        private final String source;
+        private final String stdin;
+        private final List<String> args;
+        private final int maxSteps;
+        private final long timeout;
+        private final String expectedStdout, expectedStderr;
+        private final Integer expectedExitCode;
+
+        private Job(Map<String, Object> json, File directory, int defaultMaxSteps, int defaultIndex) throws IOException {
+            index = json.containsKey("index") ? toInt(json.get("index"), "index") : defaultIndex;
+            id = json.get("id");
+            files = new ArrayList<>();
+            if (json.get("source") != null) {
+                source = toString(json.get("source"), "source");
+            } else {
+                source = null;
+                for (String file : toStrings(json.get("files"), "files")) {
+                    files.add(resolve(directory, file).getPath());
+                }
+                if (files.isEmpty()) {
+                    throw new IllegalArgumentException("no files");
+                }
+            }
+            if (json.get("stdinFile") != null) {
+                stdin = new String(Files.readAllBytes(resolve(directory, toString(json.get("stdinFile"), "stdinFile")).toPath()));
+            } else {
+                stdin = json.get("stdin") == null ? "" : toString(json.get("stdin"), "stdin");
+            }
+            args = json.get("args") == null ? new ArrayList<>() : toStrings(json.get("args"), "args");
+            maxSteps = json.get("maxSteps") == null ? defaultMaxSteps : toInt(json.get("maxSteps"), "maxSteps");
+            timeout = json.get("timeout") == null ? 0 : toInt(json.get("timeout"), "timeout");
+            Object expect = json.get("expect");
+            if (expect != null && !(expect instanceof Map)) {
+                throw new IllegalArgumentException("expect has to be an object");
+            }
+            Map<?, ?> expected = expect == null ? Collections.emptyMap() : (Map<?, ?>) expect;
+            expectedStdout = expected.get("stdout") == null ? null : toString(expected.get("stdout"), "expect.stdout");
+            expectedStderr = expected.get("stderr") == null ? null : toString(expected.get("stderr"), "expect.stderr");
+            expectedExitCode = expected.get("exitCode") == null ? null : toInt(expected.get("exitCode"), "expect.exitCode");
+        }
+
+        /**
+         * Reads a job from its JSON form.
+         *
+         * @param json            one line of a manifest
+         * @param directory       directory to resolve relative file names against, or null for the current one
+         * @param defaultMaxSteps step limit if the job does not give one; -1 for none
+         * @param index           position of the job, unless it gives its own "index"
+         * @return the job
+         * @throws IOException              if the stdin file cannot be read
+         * @throws IllegalArgumentException if the job is malformed
+         */
+        public static Job fromJson(Map<String, Object> json, File directory, int defaultMaxSteps, int index) throws IOException {
+            return new Job(json, directory, defaultMaxSteps, index);
+        }
+
+        /**
+         * @return the job in JSON form, with file names resolved and stdin read, as
+         * passed to workers
+         */
+        public Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("index", index);
+            if (id != null) json.put("id", id);
+            if (source != null) {
+                json.put("source", source);
+            } else {
+                json.put("files", files);
+            }
+            json.put("stdin", stdin);
+            json.put("args", args);
+            json.put("maxSteps", maxSteps);
+            json.put("timeout", timeout);
+            if (hasExpectations()) {
+                Map<String, Object> expected = new LinkedHashMap<>();
+                if (expectedStdout != null) expected.put("stdout", expectedStdout);
+                if (expectedStderr != null) expected.put("stderr", expectedStderr);
+                if (expectedExitCode != null) expected.put("exitCode", expectedExitCode);
+                json.put("expect", expected);
+            }
+            return json;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        boolean hasExpectations() {
+            return expectedStdout != null || expectedStderr != null || expectedExitCode != null;
+        }
+
+        /**
+         * Starts the result of this job.
+         *
+         * @param status the status of the job
+         * @return a result with the index, id and status of the job
+         */
+        public Map<String, Object> newResult(String status) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", index);
+            if (id != null) result.put("id", id);
+            result.put("status", status);
+            return result;
+        }
+
+        private static File resolve(File directory, String name) {
+            File file = new File(name);
+            return file.isAbsolute() || directory == null ? file : new File(directory, name);
+        }
+
+        private static String toString(Object value, String name) {
+            if (!(value instanceof String)) {
+                throw new IllegalArgumentException(name + " has to be a string");
+            }
+            return (String) value;
+        }
+
+        private static int toInt(Object value, String name) {
+            if (!(value instanceof Long) || (Long) value != ((Long) value).intValue()) {
+                throw new IllegalArgumentException(name + " has to be an integer");
+            }
+            return ((Long) value).intValue();
+        }
+
+        private static List<String> toStrings(Object value, String name) {
+            List<String> strings = new ArrayList<>();
+            if (value instanceof String) {
+                strings.add((String) value);
+            } else if (value instanceof List) {
+                for (Object element : (List<?>) value) {
+                    strings.add(toString(element, name));
+                }
+            } else {
+                throw new IllegalArgumentException(name + " has to be a string or a list of strings");
+            }
+            return strings;
+        }
+    }
+
+    // An assembled program and what it was assembled from.
+    private static class Assembled {
+        final Program program;
+        final List<String> dependencies; // .include'd and .incbin'd files, which are not part of the key
+        final List<String> digests;
+
+        Assembled(Program program, List<String> dependencies) {
+            this.program = program;
+            this.dependencies = dependencies;
+            this.digests = digests(dependencies);
+        }
+
+        boolean isCurrent() {
+            return digests.equals(digests(dependencies));
+        }
+    }
+
+    private static class WorkerSlot {
+        Worker worker;
+        final List<Job> toAssemble = new ArrayList<>(); // programs to assemble before its next job
+    }
+
+    /**
+     * @param options assembler options and default step limit of every job; the memory
+     *                configuration and instruction set are the current ones
+     * @param results where to write the results of {@link #run(List)}
+     * @param workers how many jobs to run at a time; more than one starts worker JVMs
+     */
+    public BatchRunner(Options options, PrintStream results, int workers) {
+        this.options = new Options();
+        this.options.pseudo = options.pseudo;
+        this.options.warningsAreErrors = options.warningsAreErrors;
+        this.options.startAtMain = options.startAtMain;
+        this.options.selfModifyingCode = options.selfModifyingCode;
+        this.options.maxSteps = options.maxSteps;
+        this.results = results;
+        this.workers = workers;
+        if (workers > 1) {
+            for (int i = 0; i < workers; i++) {
+                workerSlots.add(new WorkerSlot());
+            }
+            idleWorkers.addAll(workerSlots);
+        }
+    }
+
+    /**
+     * Reads the jobs of a manifest.
+     *
+     * @param manifest        the manifest file
+     * @param defaultMaxSteps step limit of jobs that do not give one; -1 for none
+     * @return the jobs, in order
+     * @throws IOException if the manifest cannot be read or a line of it is not a valid job
+     */
+    public static ArrayList<Job> readManifest(File manifest, int defaultMaxSteps) throws IOException {
+        ArrayList<Job> jobs = new ArrayList<>();
+        File directory = manifest.getAbsoluteFile().getParentFile();
+        List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                jobs.add(Job.fromJson(Json.parseObject(line), directory, defaultMaxSteps, jobs.size()));
+            } catch (IllegalArgumentException | IOException e) {
+                throw new IOException(manifest + " line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * @return the default step limit of jobs
+     */
+    public int getMaxSteps() {
+        return options.maxSteps;
+    }
+
+    /**
+     * Runs jobs and writes their results, then stops the workers.
+     *
+     * @param jobs the jobs
+     * @return the number of jobs that did not meet their expectations
+     */
+    public int run(List<Job> jobs) {
+        failures = 0;
+        AtomicInteger next = new AtomicInteger();
+        Runnable serve = () -> {
+            for (int i; (i = next.getAndIncrement()) < jobs.size(); ) {
+                report(run(jobs.get(i)));
+            }
+        };
+        if (workers <= 1) {
+            serve.run();
+            return failures;
+        }
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, jobs.size()); i++) {
+            Thread thread = new Thread(serve, "batch " + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        close();
+        return failures;
+    }
+
+    /**
+     * Runs a job, in this JVM or the next free worker.  This may be called from several
+     * threads at once; with a single worker the jobs are run one after another.
+     *
+     * @param job the job
+     * @return its result
+     */
+    public Map<String, Object> run(Job job) {
+        return workers > 1 ? runInWorker(job) : runHere(job);
+    }
+
+    /**
+     * Assembles the program of a job without running it, keeping it for the jobs that follow.
+     * With several workers, each of them assembles it too once it has assembled here: those not
+     * busy before this returns, the others before their next job.
+     *
+     * @param job the job; only its program is used
+     * @return a result with a status of assembled or assemblyError and any warnings or errors,
+     * and with several workers, how many "workers" have the program ready
+     */
+    public Map<String, Object> assemble(Job job) {
+        Map<String, Object> result = assembleHere(job);
+        if (workers > 1 && "assembled".equals(result.get("status"))) {
+            for (WorkerSlot slot : workerSlots) {
+                synchronized (slot.toAssemble) {
+                    slot.toAssemble.add(job);
+                }
+            }
+            List<WorkerSlot> idle = new ArrayList<>();
+            idleWorkers.drainTo(idle);
+            int ready = 0;
+            for (WorkerSlot slot : idle) {
+                if (assembleQueued(slot)) ready++;
+            }
+            idleWorkers.addAll(idle);
+            result.put("workers", ready);
+        }
+        return result;
+    }
+
+    private synchronized Map<String, Object> assembleHere(Job job) {
+        Map<String, Object> result = job.newResult("assembled");
+        try {
+            ErrorList warnings = new ErrorList();
+            lookupOrAssemble(job, warnings);
+            if (warnings.warningsOccurred()) {
+                result.put("warnings", warnings.generateWarningReport());
+            }
+        } catch (AssemblyException e) {
+            result.put("status", "assemblyError");
+            result.put("error", e.errors().generateErrorReport());
+        } catch (RuntimeException e) {
+            result.put("status", "internalError");
+            result.put("error", e.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Forgets all assembled programs and replaces the workers, once the jobs now running
+     * are finished.
+     */
+    public void reset() {
+        List<WorkerSlot> slots = takeAllWorkers();
+        for (WorkerSlot slot : slots) {
+            if (slot.worker != null) {
+                slot.worker.close();
+                slot.worker = null;
+            }
+            synchronized (slot.toAssemble) {
+                slot.toAssemble.clear();
+            }
+        }
+        synchronized (this) {
+            programs.clear();
+            TokenCache.clear();
+        }
+        idleWorkers.addAll(slots);
+    }
+
+    /**
+     * Stops the workers once the jobs now running are finished.  More jobs start new workers.
+     */
+    public void close() {
+        List<WorkerSlot> slots = takeAllWorkers();
+        for (WorkerSlot slot : slots) {
+            if (slot.worker != null) {
+                slot.worker.close();
+                slot.worker = null;
+            }
+        }
+        idleWorkers.addAll(slots);
+    }
+
+    private List<WorkerSlot> takeAllWorkers() {
+        List<WorkerSlot> slots = new ArrayList<>();
+        while (slots.size() < (workers > 1 ? workers : 0)) {
+            try {
+                slots.add(idleWorkers.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return slots;
+    }
+
+    private synchronized Map<String, Object> runHere(Job job) {
+        long start = System.nanoTime();
+        Map<String, Object> result;
+        try {
+            result = assembleAndSimulate(job);
+        } catch (RuntimeException e) {
+            programs.clear(); // their state is unknown now
+            result = job.newResult("internalError");
+            result.put("error", e.toString());
+        }
+        result.put("millis", (System.nanoTime() - start) / 1000000);
+        if (job.hasExpectations()) {
+            String stdout = (String) result.get("stdout");
+            String stderr = (String) result.get("stderr");
+            boolean ran = stdout != null;
+            boolean passed = ran
+                    && (job.expectedStdout == null || job.expectedStdout.equals(stdout))
+                    && (job.expectedStderr == null || job.expectedStderr.equals(stderr))
+                    && (job.expectedExitCode == null || job.expectedExitCode.equals(result.get("exitCode")));
+            result.put("passed", passed);
+            if (passed || !ran) {
+                result.remove("stdout");
+                result.remove("stderr");
+            }
+        } else {
+            result.remove("stdout");
+            result.remove("stderr");
+        }
+        return result;
+    }
+
+    private Map<String, Object> assembleAndSimulate(Job job) {
+        Program program;
+        try {
+            program = lookupOrAssemble(job, null);
+        } catch (AssemblyException e) {
+            Map<String, Object> result = job.newResult("assemblyError");
+            result.put("error", e.errors().generateErrorReport());
+            return result;
+        }
+
+        options.maxSteps = job.maxSteps;
+        program.setup(new ArrayList<>(job.args), job.stdin);
+        String status;
+        String error = null;
+        TimerTask stopper = startWatchdog(job.timeout);
+        try {
+            Simulator.Reason reason;
+            do {
+                reason = program.simulate();
+            } while (reason == Simulator.Reason.BREAKPOINT && !hasTimedOut());
+            status = status(reason);
+        } catch (SimulationException e) {
+            status = "runtimeError";
+            error = e.error().generateReport();
+        } finally {
+            stopWatchdog(stopper);
+        }
+        if (hasTimedOut()) {
+            status = "timeout";
+        }
+        Map<String, Object> result = job.newResult(status);
+        result.put("exitCode", program.getExitCode());
+        result.put("instructions", ControlAndStatusRegisterFile.getValueNoNotify("instret"));
+        result.put("stdoutSha256", sha256(program.getSTDOUT()));
+        result.put("stderrSha256", sha256(program.getSTDERR()));
+        if (error != null) {
+            result.put("error", error);
+        }
+        result.put("stdout", program.getSTDOUT());
+        result.put("stderr", program.getSTDERR());
+        return result;
+    }
+
+    // Finds the assembled program of a job, or assembles it.  Warnings are only collected
+    // when the program is assembled.
+    private Program lookupOrAssemble(Job job, ErrorList warnings) throws AssemblyException {
+        String key = key(job);
+        Assembled assembled = programs.get(key);
+        if (assembled != null && assembled.isCurrent()) {
+            return assembled.program;
+        }
+        programs.remove(key);
+        Program program = new Program(options);
+        ErrorList found;
+        if (job.source != null) {
+            found = program.assembleString(job.source);
+        } else if (job.files.size() == 1 && ElfLoader.isElf(new File(job.files.get(0)))) {
+            program.loadExecutable(job.files.get(0));
+            found = null;
+        } else {
+            found = program.assemble(new ArrayList<>(job.files), job.files.get(0));
+        }
+        if (warnings != null && found != null) {
+            for (ErrorMessage message : found.getErrorMessages()) {
+                warnings.add(message);
+            }
+        }
+        programs.put(key, new Assembled(program, new ArrayList<>(program.getIncludedFiles())));
+        if (programs.size() > MAX_PROGRAMS) {
+            programs.remove(programs.keySet().iterator().next());
+        }
+        return program;
+    }
+
+    // The hash of a job's program: its file names and contents, or its source text.
+    private static String key(Job job) {
+        if (job.source != null) {
+            return "source:" + sha256(job.source);
+        }
+        StringBuilder key = new StringBuilder();
+        List<String> digests = digests(job.files);
+        for (int i = 0; i < job.files.size(); i++) {
+            key.append(job.files.get(i)).append('\0').append(digests.get(i)).append('\0');
+        }
+        return "files:" + sha256(key.toString());
+    }
+
+    private static List<String> digests(List<String> files) {
+        List<String> digests = new ArrayList<>();
+        for (String file : files) {
+            byte[] digest = TokenCache.digest(file);
+            digests.add(digest == null ? "" : hex(digest));
+        }
+        return digests;
+    }
+
+    private static String status(Simulator.Reason reason) {
+        switch (reason) {
+            case NORMAL_TERMINATION:
+                return "exited";
+            case CLIFF_TERMINATION:
+                return "cliff";
+            case MAX_STEPS:
+                return "maxSteps";
+            case BREAKPOINT:
+                return "breakpoint";
+            default:
+                return "timeout"; // only the watchdog stops a simulation here
+        }
+    }
+
+    // Keeps stopping the simulation from the time limit on until it is over, since a stop
+    // request that comes while the simulator is between steps may be missed.
+    private TimerTask startWatchdog(long timeout) {
+        synchronized (watchdogLock) {
+            simulating = true;
+            timedOut = false;
+        }
+        if (timeout <= 0) {
+            return null;
+        }
+        TimerTask stopper = new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (watchdogLock) {
+                    if (simulating) {
+                        timedOut = true;
+                        Simulator.getInstance().stopExecution();
+                    }
+                }
+            }
+        };
+        schedule(stopper, timeout, STOP_RETRY);
+        return stopper;
+    }
+
+    private void stopWatchdog(TimerTask stopper) {
+        synchronized (watchdogLock) {
+            simulating = false;
+        }
+        if (stopper != null) {
+            stopper.cancel();
+        }
+    }
+
+    private boolean hasTimedOut() {
+        synchronized (watchdogLock) {
+            return timedOut;
+        }
+    }
+
+    // Schedules a task on the watchdog thread; a period of 0 runs it once.
+    private void schedule(TimerTask task, long delay, long period) {
+        synchronized (watchdogLock) {
+            if (watchdog == null) {
+                watchdog = new Timer("batch watchdog", true);
+            }
+            if (period > 0) {
+                watchdog.schedule(task, delay, period);
+            } else {
+                watchdog.schedule(task, delay);
+            }
+        }
+    }
+
+    private static String sha256(String s) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform has SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private void report(Map<String, Object> result) {
+        synchronized (results) {
+            results.println(Json.write(result));
+            results.flush();
+            if (Boolean.FALSE.equals(result.get("passed"))) {
+                failures++;
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Worker JVMs
+
+    // Runs a job in the next free worker JVM, replacing the worker if it dies.
+    private Map<String, Object> runInWorker(Job job) {
+        WorkerSlot slot;
+        try {
+            slot = idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> result = job.newResult("internalError");
+            result.put("error", "interrupted");
+            return result;
+        }
+        long start = System.nanoTime();
+        Map<String, Object> result;
+        try {
+            assembleQueued(slot);
+            if (slot.worker == null) {
+                slot.worker = new Worker();
+            }
+            result = slot.worker.run(job);
+            if (result != null && !result.containsKey("index")) { // the worker could not read the job
+                Map<String, Object> error = job.newResult("internalError");
+                error.put("error", result.get("error"));
+                result = error;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            result = null;
+        }
+        if (result == null) {
+            boolean killed = slot.worker != null && slot.worker.killed;
+            if (slot.worker != null) {
+                slot.worker.process.destroyForcibly();
+                slot.worker = null;
+            }
+            result = job.newResult(killed ? "timeout" : "internalError");
+            result.put("error", killed ? "worker killed after exceeding the time limit" : "worker failed");
+            result.put("millis", (System.nanoTime() - start) / 1000000);
+            if (job.hasExpectations()) {
+                result.put("passed", false);
+            }
+        }
+        idleWorkers.add(slot);
+        return result;
+    }
+
+    // Has the slot's worker assemble the programs queued for it, starting the worker if need be,
+    // and tells whether it did.  A worker that fails is dropped; its replacement assembles
+    // programs as its jobs need them.
+    private boolean assembleQueued(WorkerSlot slot) {
+        List<Job> jobs;
+        synchronized (slot.toAssemble) {
+            jobs = new ArrayList<>(slot.toAssemble);
+            slot.toAssemble.clear();
+        }
+        if (jobs.isEmpty()) {
+            return true;
+        }
+        try {
+            if (slot.worker == null) {
+                slot.worker = new Worker();
+            }
+            for (Job job : jobs) {
+                Map<String, Object> result = slot.worker.assemble(job);
+                if (result == null || !"assembled".equals(result.get("status"))) {
+                    throw new IOException("worker failed to assemble " + job.getIndex());
+                }
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            if (slot.worker != null) {
+                slot.worker.process.destroyForcibly();
+                slot.worker = null;
+            }
+            return false;
+        }
+    }
+
+    private class Worker {
+        final Process process;
+        final PrintStream jobs;
+        final BufferedReader results;
+        volatile boolean killed;
+
+        Worker() throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-Djava.awt.headless=true");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(BatchRunner.class.getName());
+            command.add("mc");
+            command.add(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+            if (InstructionSet.rv64) command.add("rv64");
+            if (!options.pseudo) command.add("np");
+            if (options.warningsAreErrors) command.add("we");
+            if (options.startAtMain) command.add("sm");
+            if (options.selfModifyingCode) command.add("smc");
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            jobs = new PrintStream(process.getOutputStream(), false, "UTF-8");
+            results = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        // Returns null if the worker died or was killed.
+        Map<String, Object> run(Job job) throws IOException {
+            jobs.println(Json.write(job.toJson()));
+            jobs.flush();
+            TimerTask killer = null;
+            if (job.getTimeout() > 0) {
+                killer = new TimerTask() {
+                    @Override
+                    public void run() {
+                        killed = true;
+                        process.destroyForcibly();
+                    }
+                };
+                schedule(killer, job.getTimeout() + KILL_GRACE, 0);
+            }
+            String line = results.readLine();
+            if (killer != null) {
+                killer.cancel();
+            }
+            return line == null || killed ? null : Json.parseObject(line);
+        }
+
+        // Returns null if the worker died.
+        Map<String, Object> assemble(Job job) throws IOException {
+            Map<String, Object> request = job.toJson();
+            request.put("op", "assemble");
+            jobs.println(Json.write(request));
+            jobs.flush();
+            String line = results.readLine();
+            return line == null ? null : Json.parseObject(line);
+        }
+
+        void close() {
+            jobs.close();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Entry point of a worker JVM: reads jobs in JSON form from stdin, one per line, runs them
+     * (or only assembles them, if their "op" is assemble) and writes their results to stdout.  Arguments are the options of the batch: "mc" followed
+     * by a memory configuration, "rv64", "np", "we", "sm" and "smc" as on the command line.
+     *
+     * @param args the options
+     */
+    public static void main(String[] args) throws IOException {
+        PrintStream results = new PrintStream(new FileOutputStream(FileDescriptor.out), false, "UTF-8");
+        System.setOut(System.err); // anything else printed must not get mixed up with the results
+        Globals.initialize();
+        Options options = new Options();
+        boolean rv64 = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "mc":
+                    MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(args[++i]);
+                    if (config != null) {
+                        MemoryConfigurations.setCurrentConfiguration(config);
+                    }
+                    break;
+                case "rv64":
+                    rv64 = true;
+                    break;
+                case "np":
+                    options.pseudo = false;
+                    break;
+                case "we":
+                    options.warningsAreErrors = true;
+                    break;
+                case "sm":
+                    options.startAtMain = true;
+                    break;
+                case "smc":
+                    options.selfModifyingCode = true;
+                    break;
+                default:
+                    System.err.println("Invalid batch worker argument: " + args[i]);
+            }
+        }
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+        if (InstructionSet.rv64 != rv64) {
+            InstructionSet.rv64 = rv64;
+            Globals.instructionSet.populate();
+        }
+        BatchRunner runner = new BatchRunner(options, results, 1);
+        BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for (String line; (line = jobs.readLine()) != null; ) {
+            Map<String, Object> result;
+            try {
+                Map<String, Object> request = Json.parseObject(line);
+                Job job = Job.fromJson(request, null, -1, -1);
+                result = "assemble".equals(request.get("op")) ? runner.assemble(job) : runner.run(job);
+            } catch (IllegalArgumentException | IOException e) {
+                result = new LinkedHashMap<>();
+                result.put("status", "internalError");
+                result.put("error", e.getMessage());
+            }
+            runner.report(result);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,569 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.*;
+import com.github.unaimillan.rars.simulator.Simulator;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A stub for the GDB remote serial protocol, so that GDB, or a front end that speaks the
+ * protocol, can debug a program simulated headless at full speed:
+ * <pre>
+ *     java -jar rars.jar gdb1234 prog.s          (gdb) target remote :1234
+ * </pre>
+ * It reads and writes registers and memory, continues and single steps, and stops at software
+ * and hardware breakpoints and at write, read and access watchpoints.  None of these go through
+ * the observers the GUI uses: breakpoints are passed to the simulator, which checks the program
+ * counter between instructions, and watchpoints are checked by {@link Memory} on each load and
+ * store.  Code is never patched, so software and hardware breakpoints behave alike and there is
+ * no limit on either.  Interrupting GDB (Ctrl-C) stops a running program.
+ * <p>
+ * The program's own input and output stay on the standard streams.  An assembled program has
+ * no symbols for GDB, so breakpoints are set on addresses (break *0x400010); a program loaded
+ * from an ELF executable can give GDB its symbols with the file command.
+ */
+public class GdbServer {
+    private static final int PACKET_SIZE = 0x4000;
+    private static final String[] FP_CSRS = {"fflags", "frm", "fcsr"};
+    private static final int PC = 32, FIRST_FP = 33, FIRST_FP_CSR = 65, REGISTERS = 68;
+
+    // Signal numbers as GDB knows them, whatever the host
+    private static final int SIGINT = 2, SIGILL = 4, SIGTRAP = 5, SIGBUS = 10, SIGSEGV = 11, SIGSYS = 12;
+
+    private final Program program;
+    private final Memory memory;
+    private final int xlen = InstructionSet.rv64 ? 8 : 4;
+    private final TreeSet<Integer> softwareBreakpoints = new TreeSet<>();
+    private final TreeSet<Integer> hardwareBreakpoints = new TreeSet<>();
+    private final Map<String, Memory.Watchpoint> watchpoints = new HashMap<>();
+
+    private InputStream in;
+    private OutputStream out;
+    private boolean ack = true;
+    private volatile Thread running; // simulating a continue or step, or null when stopped
+    private String ended; // the reply to give once the program has exited or failed, null while it can run
+
+    /**
+     * @param program the program to debug, which has been set up and not yet simulated
+     */
+    public GdbServer(Program program) {
+        this.program = program;
+        this.memory = program.getMemory();
+    }
+
+    /**
+     * Waits for GDB to connect to a port of the loopback interface and serves it as
+     * {@link #serve} does.
+     *
+     * @param port the port
+     * @throws IOException if the port cannot be listened on or the connection fails
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+             Socket socket = server.accept()) {
+            socket.setTcpNoDelay(true);
+            serve(socket.getInputStream(), socket.getOutputStream());
+        }
+    }
+
+    /**
+     * Answers GDB's packets until it kills the program, detaches or goes away.  After a detach
+     * the program runs on to its end without breakpoints.
+     *
+     * @param in  the packets from GDB
+     * @param out where to write the replies
+     * @throws IOException if reading or writing fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        this.in = new BufferedInputStream(in);
+        this.out = new BufferedOutputStream(out);
+        try {
+            while (true) {
+                int c = this.in.read();
+                if (c < 0) {
+                    return;
+                }
+                if (c == 0x03) {
+                    interrupt();
+                    continue;
+                }
+                if (c != '$') {
+                    continue; // acknowledgements, which are never needed on the loopback interface
+                }
+                String packet = readPacket();
+                if (packet == null) {
+                    continue;
+                }
+                awaitStop(); // GDB waits for the stop reply before sending more, but just in case
+                if (packet.equals("k") || packet.startsWith("vKill")) {
+                    return;
+                }
+                if (packet.startsWith("D")) {
+                    send("OK");
+                    detach();
+                    return;
+                }
+                String reply = handle(packet);
+                if (reply != null) {
+                    send(reply);
+                }
+            }
+        } finally {
+            interrupt();
+        }
+    }
+
+    private String readPacket() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int sum = 0;
+        for (int c; (c = in.read()) != '#'; ) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            sum += c;
+            if (c == '}') {
+                int escaped = in.read();
+                sum += escaped;
+                c = escaped ^ 0x20;
+            }
+            data.write(c);
+        }
+        int checksum = Character.digit(in.read(), 16) << 4 | Character.digit(in.read(), 16);
+        if (ack) {
+            synchronized (out) {
+                out.write((sum & 0xff) == checksum ? '+' : '-');
+                out.flush();
+            }
+            if ((sum & 0xff) != checksum) {
+                return null;
+            }
+        }
+        return data.toString("ISO-8859-1");
+    }
+
+    private void send(String data) throws IOException {
+        StringBuilder packet = new StringBuilder("$");
+        int sum = 0;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '$' || c == '#' || c == '}' || c == '*') {
+                packet.append('}');
+                sum += '}';
+                c ^= 0x20;
+            }
+            packet.append(c);
+            sum += c;
+        }
+        packet.append('#').append(String.format("%02x", sum & 0xff));
+        synchronized (out) {
+            out.write(packet.toString().getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+    }
+
+    // Returns the reply, or null if there is none yet because the program is now running.
+    private String handle(String packet) throws IOException {
+        switch (packet.charAt(0)) {
+            case '?':
+                return ended != null ? ended : "S05";
+            case 'g': {
+                StringBuilder registers = new StringBuilder();
+                for (int n = 0; n < REGISTERS; n++) {
+                    registers.append(readRegister(n));
+                }
+                return registers.toString();
+            }
+            case 'G': {
+                int pos = 1;
+                for (int n = 0; n < REGISTERS && pos < packet.length(); n++) {
+                    int size = registerSize(n);
+                    writeRegister(n, fromLittleEndian(packet.substring(pos, pos + 2 * size)));
+                    pos += 2 * size;
+                }
+                return "OK";
+            }
+            case 'p': {
+                int n = Integer.parseInt(packet.substring(1), 16);
+                return n < REGISTERS ? readRegister(n) : "E00";
+            }
+            case 'P': {
+                int equals = packet.indexOf('=');
+                int n = Integer.parseInt(packet.substring(1, equals), 16);
+                if (n >= REGISTERS) {
+                    return "E00";
+                }
+                writeRegister(n, fromLittleEndian(packet.substring(equals + 1)));
+                return "OK";
+            }
+            case 'm':
+                return readMemory(packet.substring(1));
+            case 'M':
+                return writeMemory(packet.substring(1));
+            case 'c':
+            case 's':
+                if (ended != null) {
+                    return ended;
+                }
+                if (packet.length() > 1) {
+                    RegisterFile.setProgramCounter((int) Long.parseLong(packet.substring(1), 16));
+                }
+                resume(packet.charAt(0) == 's');
+                return null;
+            case 'Z':
+            case 'z':
+                return breakpoint(packet);
+            case 'H':
+            case 'T':
+                return "OK"; // the only thread
+            case 'q':
+                return query(packet);
+            case 'Q':
+                if (packet.equals("QStartNoAckMode")) {
+                    send("OK");
+                    ack = false;
+                    return null;
+                }
+                return "";
+            default:
+                return ""; // not supported, including vCont so that GDB uses c and s
+        }
+    }
+
+    private String query(String packet) {
+        if (packet.startsWith("qSupported")) {
+            return "PacketSize=" + Integer.toHexString(PACKET_SIZE) + ";qXfer:features:read+;swbreak+;hwbreak+;QStartNoAckMode+";
+        }
+        if (packet.startsWith("qXfer:features:read:target.xml:")) {
+            String[] range = packet.substring("qXfer:features:read:target.xml:".length()).split(",");
+            String xml = targetDescription();
+            int offset = Integer.parseInt(range[0], 16), length = Integer.parseInt(range[1], 16);
+            if (offset >= xml.length()) {
+                return "l";
+            }
+            int end = Math.min(xml.length(), offset + length);
+            return (end == xml.length() ? "l" : "m") + xml.substring(offset, end);
+        }
+        switch (packet) {
+            case "qAttached":
+                return "1";
+            case "qC":
+                return "QC1";
+            case "qfThreadInfo":
+                return "m1";
+            case "qsThreadInfo":
+                return "l";
+            default:
+                return "";
+        }
+    }
+
+    // Describes the registers in the order of the g packet, with names GDB knows for RISC-V.
+    private String targetDescription() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\"?>\n<!DOCTYPE target SYSTEM \"gdb-target.dtd\">\n<target version=\"1.0\">\n");
+        xml.append("<architecture>riscv:rv").append(xlen * 8).append("</architecture>\n");
+        xml.append("<feature name=\"org.gnu.gdb.riscv.cpu\">\n");
+        Register[] registers = RegisterFile.getRegisters();
+        for (int n = 0; n < 32; n++) {
+            appendRegister(xml, n == 8 ? "fp" : registers[n].getName(), xlen, n == 1 ? "code_ptr" : n == 2 ? "data_ptr" : "int", n);
+        }
+        appendRegister(xml, "pc", xlen, "code_ptr", PC);
+        xml.append("</feature>\n<feature name=\"org.gnu.gdb.riscv.fpu\">\n");
+        xml.append("<union id=\"riscv_double\"><field name=\"float\" type=\"ieee_single\"/>")
+                .append("<field name=\"double\" type=\"ieee_double\"/></union>\n");
+        Register[] fp = FloatingPointRegisterFile.getRegisters();
+        for (int n = 0; n < 32; n++) {
+            appendRegister(xml, fp[n].getName(), 8, "riscv_double", FIRST_FP + n);
+        }
+        for (int n = 0; n < FP_CSRS.length; n++) {
+            appendRegister(xml, FP_CSRS[n], 4, "int", FIRST_FP_CSR + n);
+        }
+        xml.append("</feature>\n</target>\n");
+        return xml.toString();
+    }
+
+    private static void appendRegister(StringBuilder xml, String name, int bytes, String type, int number) {
+        xml.append("<reg name=\"").append(name).append("\" bitsize=\"").append(bytes * 8)
+                .append("\" type=\"").append(type).append("\" regnum=\"").append(number).append("\"/>\n");
+    }
+
+    private int registerSize(int n) {
+        return n <= PC ? xlen : n < FIRST_FP_CSR ? 8 : 4;
+    }
+
+    private String readRegister(int n) {
+        long value;
+        if (n < PC) {
+            value = RegisterFile.getValueLong(n);
+        } else if (n == PC) {
+            value = RegisterFile.getProgramCounter() & 0xFFFFFFFFL;
+        } else if (n < FIRST_FP_CSR) {
+            value = FloatingPointRegisterFile.getValueLong(n - FIRST_FP);
+        } else {
+            value = ControlAndStatusRegisterFile.getValue(FP_CSRS[n - FIRST_FP_CSR]);
+        }
+        return toLittleEndian(value, registerSize(n));
+    }
+
+    private void writeRegister(int n, long value) {
+        if (n < PC) {
+            RegisterFile.updateRegister(n, xlen == 8 ? value : (int) value);
+        } else if (n == PC) {
+            RegisterFile.setProgramCounter((int) value);
+        } else if (n < FIRST_FP_CSR) {
+            FloatingPointRegisterFile.updateRegisterLong(n - FIRST_FP, value);
+        } else {
+            ControlAndStatusRegisterFile.updateRegister(FP_CSRS[n - FIRST_FP_CSR], value);
+        }
+    }
+
+    private static String toLittleEndian(long value, int bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < bytes; i++) {
+            hex.append(String.format("%02x", (value >>> (8 * i)) & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static long fromLittleEndian(String hex) {
+        long value = 0;
+        for (int i = 0; i + 1 < hex.length() && i < 16; i += 2) {
+            value |= Long.parseLong(hex.substring(i, i + 2), 16) << (4 * i);
+        }
+        return value;
+    }
+
+    // Memory is read and written the way a debugger should: text as the words of the
+    // statements there, whatever the self-modifying code setting, and without notifying
+    // observers or tripping watchpoints.
+
+    private String readMemory(String arguments) {
+        String[] range = arguments.split(",");
+        int address = (int) Long.parseLong(range[0], 16);
+        int length = Math.min(Integer.parseInt(range[1], 16), PACKET_SIZE / 2);
+        StringBuilder hex = new StringBuilder();
+        try {
+            for (int i = 0; i < length; i++) {
+                int word = readWord((address + i) & ~3);
+                hex.append(String.format("%02x", (word >>> (8 * ((address + i) & 3))) & 0xff));
+            }
+        } catch (AddressErrorException e) {
+            if (hex.length() == 0) {
+                return "E14";
+            }
+        }
+        return hex.toString();
+    }
+
+    private int readWord(int address) throws AddressErrorException {
+        if (Memory.inTextSegment(address)) {
+            ProgramStatement statement = memory.getStatementNoNotify(address);
+            return statement == null ? 0 : statement.getBinaryStatement();
+        }
+        return memory.getWordNoNotify(address);
+    }
+
+    private String writeMemory(String arguments) {
+        int comma = arguments.indexOf(','), colon = arguments.indexOf(':');
+        int address = (int) Long.parseLong(arguments.substring(0, comma), 16);
+        int length = Integer.parseInt(arguments.substring(comma + 1, colon), 16);
+        try {
+            for (int i = 0; i < length; i++) {
+                int value = Integer.parseInt(arguments.substring(colon + 1 + 2 * i, colon + 3 + 2 * i), 16);
+                int target = address + i;
+                if (Memory.inTextSegment(target)) {
+                    int word = target & ~3, shift = 8 * (target & 3);
+                    int bits = (readWord(word) & ~(0xff << shift)) | (value << shift);
+                    memory.setStatement(word, new ProgramStatement(bits, word));
+                } else {
+                    memory.set(target, value, 1);
+                }
+            }
+        } catch (AddressErrorException e) {
+            return "E14";
+        } finally {
+            memory.takeWatchpointHit();
+        }
+        return "OK";
+    }
+
+    // Z and z packets: type,address,kind where kind is the length for a watchpoint
+    private String breakpoint(String packet) {
+        boolean insert = packet.charAt(0) == 'Z';
+        String[] fields = packet.substring(1).split(";")[0].split(",");
+        int type = Integer.parseInt(fields[0]);
+        int address = (int) Long.parseLong(fields[1], 16);
+        int kind = Integer.parseInt(fields[2], 16);
+        switch (type) {
+            case 0:
+                if (insert) softwareBreakpoints.add(address);
+                else softwareBreakpoints.remove(address);
+                return "OK";
+            case 1:
+                if (insert) hardwareBreakpoints.add(address);
+                else hardwareBreakpoints.remove(address);
+                return "OK";
+            case 2:
+            case 3:
+            case 4:
+                String key = packet.substring(1).split(";")[0];
+                if (insert) {
+                    Memory.Watchpoint watchpoint = new Memory.Watchpoint(address, kind, type != 2, type != 3);
+                    if (watchpoints.putIfAbsent(key, watchpoint) == null) {
+                        memory.addWatchpoint(watchpoint);
+                    }
+                } else {
+                    Memory.Watchpoint watchpoint = watchpoints.remove(key);
+                    if (watchpoint != null) {
+                        memory.removeWatchpoint(watchpoint);
+                    }
+                }
+                return "OK";
+            default:
+                return "";
+        }
+    }
+
+    // Continues or steps in another thread, leaving this one to notice GDB's interrupt.
+    private void resume(boolean step) {
+        int[] breakPoints = new int[softwareBreakpoints.size() + hardwareBreakpoints.size()];
+        int i = 0;
+        for (int address : softwareBreakpoints) breakPoints[i++] = address;
+        for (int address : hardwareBreakpoints) breakPoints[i++] = address;
+        memory.takeWatchpointHit();
+        Thread thread = new Thread(() -> {
+            String reply;
+            try {
+                reply = stopReply(program.simulate(step ? 1 : 0, breakPoints));
+            } catch (SimulationException e) {
+                reply = fault(e);
+            }
+            try {
+                send(reply);
+            } catch (IOException e) {
+                // GDB went away; serve() finds out too.
+            }
+        }, "gdb continue");
+        thread.setDaemon(true);
+        running = thread;
+        thread.start();
+    }
+
+    private String stopReply(Simulator.Reason reason) {
+        Memory.Watchpoint hit = memory.takeWatchpointHit();
+        switch (reason) {
+            case NORMAL_TERMINATION:
+            case CLIFF_TERMINATION:
+                ended = String.format("W%02x", program.getExitCode() & 0xff);
+                return ended;
+            case STOP:
+            case PAUSE:
+                return String.format("T%02x", SIGINT);
+            case BREAKPOINT:
+                if (hit != null) {
+                    String kind = hit.isRead() && hit.isWrite() ? "awatch" : hit.isRead() ? "rwatch" : "watch";
+                    return String.format("T%02x%s:%x;", SIGTRAP, kind, hit.getAddress() & 0xFFFFFFFFL);
+                }
+                int pc = RegisterFile.getProgramCounter();
+                if (softwareBreakpoints.contains(pc)) {
+                    return String.format("T%02xswbreak:;", SIGTRAP);
+                }
+                if (hardwareBreakpoints.contains(pc)) {
+                    return String.format("T%02xhwbreak:;", SIGTRAP);
+                }
+                return String.format("T%02x", SIGTRAP); // an ebreak in the program
+            default:
+                return String.format("T%02x", SIGTRAP);
+        }
+    }
+
+    // The program cannot go on after an uncaught exception, but GDB may still look at it.
+    private String fault(SimulationException e) {
+        int signal;
+        switch (e.cause()) {
+            case SimulationException.ILLEGAL_INSTRUCTION:
+                signal = SIGILL;
+                break;
+            case SimulationException.INSTRUCTION_ADDR_MISALIGNED:
+            case SimulationException.LOAD_ADDRESS_MISALIGNED:
+            case SimulationException.STORE_ADDRESS_MISALIGNED:
+                signal = SIGBUS;
+                break;
+            case SimulationException.INSTRUCTION_ACCESS_FAULT:
+            case SimulationException.LOAD_ACCESS_FAULT:
+            case SimulationException.STORE_ACCESS_FAULT:
+                signal = SIGSEGV;
+                break;
+            case SimulationException.ENVIRONMENT_CALL:
+                signal = SIGSYS;
+                break;
+            default:
+                signal = SIGTRAP;
+        }
+        ended = String.format("X%02x", signal);
+        try {
+            String message = e.error() == null ? "Simulation error" : e.error().generateReport();
+            send("O" + toHex(message.trim() + "\n"));
+        } catch (IOException io) {
+            // The stop reply will fail the same way.
+        }
+        return String.format("T%02x", signal);
+    }
+
+    private static String toHex(String text) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private void interrupt() {
+        Thread thread = running;
+        while (thread != null && thread.isAlive()) {
+            Simulator.getInstance().stopExecution(); // again if the simulation had not quite started
+            try {
+                thread.join(10);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void awaitStop() {
+        Thread thread = running;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running = null;
+        }
+    }
+
+    private void detach() {
+        for (Memory.Watchpoint watchpoint : watchpoints.values()) {
+            memory.removeWatchpoint(watchpoint);
+        }
+        watchpoints.clear();
+        if (ended != null) {
+            return;
+        }
+        try {
+            program.simulate(0, null);
+        } catch (SimulationException e) {
+            System.err.println(e.error() == null ? "Simulation error" : e.error().generateReport());
+        }
+    }
+}
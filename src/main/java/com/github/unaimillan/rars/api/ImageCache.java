@@ -0,0 +1,180 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.assembler.Symbol;
+import com.github.unaimillan.rars.assembler.TokenCache;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.riscv.hardware.MemoryConfigurations;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A directory of assembled images, so that assembling the same unchanged sources again
+ * (e.g. once per test case when grading) only has to read a file.
+ * <p>
+ * An image is keyed by the RARS version, the assembler options that affect the result
+ * (pseudo-instructions, RV64, memory configuration), the list of files and main file, and
+ * the SHA-256 of each file.  It also records the hash of every file the assembly ".include"d
+ * or embedded with ".incbin", and is ignored if one of those has changed.  The image holds the text segment (machine code
+ * plus source file, line and text of every statement), the data segments and the global
+ * symbol table.  Local symbol tables are not kept, so label displays for a program loaded
+ * from an image only show global labels.
+ * <p>
+ * Only assemblies without warnings are stored, since warnings would not be reported again.
+ */
+public class ImageCache {
+    private static final int MAGIC = 0x52415253; // "RARS"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+
+    /**
+     * @param directory where images are kept; created when the first image is stored
+     */
+    public ImageCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the image for the given sources into memory and the global symbol table.
+     *
+     * @param files   files to assemble, as passed to {@link Program#assemble(ArrayList, String)}
+     * @param main    the main file
+     * @param options assembler options in use
+     * @param memory  memory to fill with the assembled program
+     * @return the files included by the sources when the image was stored, if a matching image was
+     * found and loaded; null otherwise (nothing is changed)
+     */
+    ArrayList<String> load(ArrayList<String> files, String main, Options options, Memory memory) {
+        String key = key(files, main, options);
+        if (key == null) return null;
+        File image = new File(directory, hash(key) + ".img");
+        if (!image.isFile()) return null;
+        try {
+            // Read the whole image at once; it is parsed from memory.
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(image.toPath())));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key)) {
+                return null;
+            }
+            ArrayList<String> includes = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String filename = in.readUTF();
+                byte[] digest = new byte[in.readInt()];
+                in.readFully(digest);
+                if (!Arrays.equals(digest, TokenCache.digest(filename))) {
+                    return null;
+                }
+                includes.add(filename);
+            }
+            ArrayList<Symbol> symbols = new ArrayList<>();
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                symbols.add(new Symbol(in.readUTF(), in.readInt(), in.readBoolean()));
+            }
+            Memory loaded = new Memory();
+            loaded.readImage(in);
+            memory.copyFrom(loaded);
+            Globals.symbolTable.clear();
+            for (Symbol symbol : symbols) {
+                Globals.symbolTable.addSymbol(symbol);
+            }
+            return includes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the image of a program that has just been assembled from the given sources.
+     * Failure to write the image is silently ignored; it will simply be assembled next time.
+     *
+     * @param files    files that were assembled
+     * @param main     the main file
+     * @param includes files the assembly included, as {@link Program#getIncludedFiles()} gives them;
+     *                 nothing is stored if null, since the image could not be checked against them
+     * @param options  assembler options that were used
+     * @param memory   memory holding the assembled program
+     */
+    void store(ArrayList<String> files, String main, List<String> includes, Options options, Memory memory) {
+        String key = key(files, main, options);
+        if (key == null || includes == null) return;
+        File temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temp = File.createTempFile("image", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                out.writeInt(includes.size());
+                for (String filename : includes) {
+                    byte[] digest = TokenCache.digest(filename);
+                    if (digest == null) return;
+                    out.writeUTF(filename);
+                    out.writeInt(digest.length);
+                    out.write(digest);
+                }
+                ArrayList<Symbol> symbols = Globals.symbolTable.getAllSymbols();
+                out.writeInt(symbols.size());
+                for (Symbol symbol : symbols) {
+                    out.writeUTF(symbol.getName());
+                    out.writeInt(symbol.getAddress());
+                    out.writeBoolean(symbol.getType());
+                }
+                memory.writeImage(out);
+            }
+            // Concurrent runs may store the same image; the rename makes sure readers never see half of one.
+            Files.move(temp.toPath(), new File(directory, hash(key) + ".img").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            // Nothing to do; the program is already assembled.
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    // Everything that decides what the assembled image looks like, or null if a file can't be read.
+    private static String key(ArrayList<String> files, String main, Options options) {
+        StringBuilder key = new StringBuilder();
+        key.append(Globals.version)
+                .append('\n').append(options.pseudo)
+                .append('\n').append(InstructionSet.rv64)
+                .append('\n').append(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier())
+                .append('\n').append(main);
+        for (String file : files) {
+            byte[] digest = TokenCache.digest(file);
+            if (digest == null) return null;
+            key.append('\n').append(file).append(' ').append(toHex(digest));
+        }
+        return key.toString();
+    }
+
+    private static String hash(String key) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.github.unaimillan.rars.api;
 
 import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.assembler.ObjectFile;
+import com.github.unaimillan.rars.assembler.SymbolTable;
+import com.github.unaimillan.rars.jfr.ProgramSetupEvent;
 import com.github.unaimillan.rars.riscv.hardware.*;
 import com.github.unaimillan.rars.simulator.ProgramArgumentList;
 import com.github.unaimillan.rars.simulator.Simulator;
@@ -48,6 +51,7 @@ public class Program {
     private final Memory assembled;
     private final Memory simulation;
     private int startPC, exitCode;
+    private ArrayList<String> includedFiles = new ArrayList<>();
 
     public Program() {
         this(new Options());
@@ -74,6 +78,31 @@ public class Program {
         return assemble(programs);
     }
 
+    /**
+     * Assembles from a list of files, or loads the result of assembling them from a cache of
+     * assembled images if these exact sources have been assembled before with the same options.
+     *
+     * @param files A list of files to assemble
+     * @param main  Which file should be considered the main file; it should be in files
+     * @param cache Where to look for and store assembled images
+     * @return A list of warnings generated if Options.warningsAreErrors is true, this will be empty
+     * @throws AssemblyException thrown if any errors are found in the code
+     */
+    public ErrorList assemble(ArrayList<String> files, String main, ImageCache cache) throws AssemblyException {
+        ArrayList<String> included = cache.load(files, main, set, assembled);
+        if (included != null) {
+            includedFiles = included;
+            RegisterFile.initializeProgramCounter(set.startAtMain);
+            startPC = RegisterFile.getProgramCounter();
+            return new ErrorList();
+        }
+        ErrorList warnings = assemble(files, main);
+        if (warnings == null || !warnings.warningsOccurred()) {
+            cache.store(files, main, includedFiles, set, assembled);
+        }
+        return warnings;
+    }
+
     /**
      * Assembles a single file
      *
@@ -104,7 +133,86 @@ public class Program {
         return assemble(programs);
     }
 
+    /**
+     * Assembles from a list of files into a relocatable object, to be saved or linked with
+     * other objects by {@link #link(ArrayList)}.  Labels that are not defined in the files are
+     * expected to be global labels of another object.  This replaces any assembled program.
+     *
+     * @param files A list of files to assemble
+     * @param main  Which file should be considered the main file; it should be in files
+     * @return the object; warnings are available from {@link ObjectFile#getWarnings()}
+     * @throws AssemblyException thrown if any errors are found in the code, or it cannot be relocated
+     */
+    public ObjectFile assembleObject(ArrayList<String> files, String main) throws AssemblyException {
+        ArrayList<RISCVprogram> programs = code.prepareFilesForAssembly(files, main, null);
+        Memory temp = Memory.swapInstance(assembled);
+        try {
+            return code.assembleObject(programs, set.pseudo, set.warningsAreErrors);
+        } finally {
+            Memory.swapInstance(temp);
+        }
+    }
+
+    /**
+     * Links relocatable objects into a program, which is then used as if it had been assembled.
+     *
+     * @param objects the objects to link, the one containing the main program first
+     * @throws AssemblyException thrown if labels are missing or defined twice, or the objects do not fit in memory
+     */
+    public void link(ArrayList<ObjectFile> objects) throws AssemblyException {
+        Memory temp = Memory.swapInstance(assembled);
+        try {
+            code.link(objects);
+        } finally {
+            Memory.swapInstance(temp);
+        }
+        includedFiles = new ArrayList<>();
+        RegisterFile.initializeProgramCounter(set.startAtMain);
+        startPC = RegisterFile.getProgramCounter();
+    }
+
+    /**
+     * Loads a statically linked RISC-V ELF executable, e.g. a C program built with GCC or LLVM,
+     * which is then used as if it had been assembled.  It has to be linked for the addresses of
+     * the current memory configuration and run with the matching RV32/RV64 setting.  Execution
+     * starts at the entry point, or at main if Options.startAtMain is set and main is defined.
+     *
+     * @param file path to the executable
+     * @throws AssemblyException thrown if the file is not a suitable executable
+     */
+    public void loadExecutable(String file) throws AssemblyException {
+        Memory temp = Memory.swapInstance(assembled);
+        int entry;
+        try {
+            entry = code.loadExecutable(file);
+        } finally {
+            Memory.swapInstance(temp);
+        }
+        includedFiles = new ArrayList<>();
+        int main = Globals.symbolTable.getAddress(SymbolTable.getStartLabel());
+        startPC = (set.startAtMain && main != SymbolTable.NOT_FOUND) ? main : entry;
+        RegisterFile.initializeProgramCounter(startPC);
+    }
+
+    /**
+     * Files pulled in by ".include" and ".incbin" directives of the last program assembled,
+     * which it has to be assembled again if they change.
+     *
+     * @return the files, none if the program was loaded or linked rather than assembled from
+     * source, or null if the last assembly failed
+     */
+    public ArrayList<String> getIncludedFiles() {
+        return includedFiles;
+    }
+
     private ErrorList assemble(ArrayList<RISCVprogram> programs) throws AssemblyException {
+        includedFiles = null;
+        ArrayList<String> included = new ArrayList<>();
+        for (RISCVprogram program : programs) {
+            for (String file : program.getTokenizer().getIncludedFiles()) {
+                if (!included.contains(file)) included.add(file);
+            }
+        }
         Memory temp = Memory.swapInstance(assembled); // Assembling changes memory so we need to swap to capture that.
         ErrorList warnings = null;
         AssemblyException e = null;
@@ -115,6 +223,7 @@ public class Program {
         }
         Memory.swapInstance(temp);
         if (e != null) throw e;
+        includedFiles = included;
 
         RegisterFile.initializeProgramCounter(set.startAtMain);
         startPC = RegisterFile.getProgramCounter();
@@ -130,6 +239,8 @@ public class Program {
      * @param STDIN A string that can be read in the program like its stdin or null to allow IO passthrough
      */
     public void setup(ArrayList<String> args, String STDIN) {
+        ProgramSetupEvent event = new ProgramSetupEvent();
+        event.begin();
         RegisterFile.resetRegisters();
         FloatingPointRegisterFile.resetRegisters();
         ControlAndStatusRegisterFile.resetRegisters();
@@ -153,6 +264,11 @@ public class Program {
         } else {
             fds = new SystemIO.Data(true);
         }
+        if (event.shouldCommit()) {
+            event.arguments = args == null ? 0 : args.size();
+            event.capturedIO = STDIN != null;
+            event.commit();
+        }
     }
 
     /**
@@ -168,6 +284,21 @@ public class Program {
      * @throws SimulationException thrown if there is an uncaught interrupt. The program cannot be simulated further.
      */
     public Simulator.Reason simulate() throws SimulationException {
+        return simulate(set.maxSteps, null);
+    }
+
+    /**
+     * Simulates a processor executing the machine code, as {@link #simulate()} does but with its own
+     * step limit and breakpoints.  A breakpoint stops the simulation, with a reason of BREAKPOINT,
+     * after an instruction that leaves the program counter on it; so does accessing a watchpoint of
+     * {@link #getMemory()}.  Either way the simulation can be resumed from where it stopped.
+     *
+     * @param maxSteps    the most instructions to simulate, or 0 or less for no limit (1 steps an instruction)
+     * @param breakPoints addresses of instructions to stop at, or null if none
+     * @return the reason why simulation was paused or terminated, as for {@link #simulate()}
+     * @throws SimulationException thrown if there is an uncaught interrupt. The program cannot be simulated further.
+     */
+    public Simulator.Reason simulate(int maxSteps, int[] breakPoints) throws SimulationException {
         Simulator.Reason ret = null;
         SimulationException e = null;
 
@@ -178,7 +309,7 @@ public class Program {
         Memory tmpMem = Memory.swapInstance(simulation);
 
         try {
-            ret = code.simulate(set.maxSteps);
+            ret = code.simulate(maxSteps, breakPoints == null ? null : breakPoints.clone());
         } catch (SimulationException se) {
             e = se;
         }
@@ -0,0 +1,160 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.util.Json;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stays resident and answers requests, one JSON object per line, so that a client such as an
+ * autograder pays for starting the JVM and populating the instruction set only once.
+ * <p>
+ * A request has an "op" and usually an "id", which is copied into the response:
+ * <ul>
+ * <li> "run" (the default) runs a job given as in a {@link BatchRunner} manifest, with "files"
+ * (relative to the server's directory) or "source", and responds with its result.
+ * <li> "assemble" assembles the program of a job without running it, responding with a status
+ * of assembled or assemblyError and the warnings or errors.  With several workers, each of
+ * them assembles it as well, and "workers" tells how many had it ready by the response; the
+ * others were busy, and assemble it before their next run.
+ * <li> "reset" forgets the assembled programs and restarts the workers once the running jobs
+ * are done, responding with a status of reset.
+ * <li> "ping" responds with a status of ready.
+ * </ul>
+ * A request that cannot be read gets a status of requestError.  Assembled programs are kept by
+ * the hash of their sources, in the server and in every worker, so running the same program
+ * again with other inputs skips the assembler.  Requests are handled concurrently and responses
+ * are written as they are ready, which need not be the order of the requests.  Runs themselves
+ * are spread over the workers of the {@link BatchRunner}; with a single worker they take turns.
+ */
+public class SimulationServer {
+    private static final int MAX_PENDING = 1024; // requests of one client read but not yet answered
+
+    private final BatchRunner runner;
+    private final ExecutorService handlers;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * @param runner  runs the jobs
+     * @param workers how many workers the runner has, so as to have work ready for each
+     */
+    public SimulationServer(BatchRunner runner, int workers) {
+        this.runner = runner;
+        this.handlers = Executors.newFixedThreadPool(Math.max(workers, 1) + 2, r -> {
+            Thread thread = new Thread(r, "server request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Answers the requests read from a stream until it ends and every response is written.
+     *
+     * @param in  the requests
+     * @param out where to write the responses
+     * @throws IOException if reading the requests fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintStream writer = new PrintStream(out, false, "UTF-8");
+        Semaphore pending = new Semaphore(MAX_PENDING);
+        try {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String request = line;
+                pending.acquireUninterruptibly(); // stop reading while too many requests are waiting
+                handlers.execute(() -> {
+                    try {
+                        Map<String, Object> response = handle(request);
+                        synchronized (writer) {
+                            writer.println(Json.write(response));
+                            writer.flush();
+                        }
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+        } finally {
+            pending.acquireUninterruptibly(MAX_PENDING);
+        }
+    }
+
+    /**
+     * Accepts connections on a port of the loopback interface and answers the requests of
+     * each as {@link #serve} does, until the process is stopped.
+     *
+     * @param port the port
+     * @throws IOException if the port cannot be listened on
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket connection = server.accept();
+                Thread thread = new Thread(() -> {
+                    try (Socket socket = connection) {
+                        serve(socket.getInputStream(), socket.getOutputStream());
+                    } catch (IOException e) {
+                        // The client went away; nothing to answer.
+                    }
+                }, "server connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private Map<String, Object> handle(String line) {
+        int index = requests.getAndIncrement();
+        Map<String, Object> request;
+        try {
+            request = Json.parseObject(line);
+        } catch (IllegalArgumentException e) {
+            return error(null, e.getMessage());
+        }
+        Object op = request.getOrDefault("op", "run");
+        try {
+            switch (String.valueOf(op)) {
+                case "run":
+                    return runner.run(BatchRunner.Job.fromJson(request, null, runner.getMaxSteps(), index));
+                case "assemble":
+                    return runner.assemble(BatchRunner.Job.fromJson(request, null, runner.getMaxSteps(), index));
+                case "reset":
+                    runner.reset();
+                    return response(request, "reset");
+                case "ping":
+                    return response(request, "ready");
+                default:
+                    return error(request.get("id"), "unknown op " + op);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            return error(request.get("id"), e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> response(Map<String, Object> request, String status) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (request.get("id") != null) response.put("id", request.get("id"));
+        response.put("status", status);
+        return response;
+    }
+
+    private static Map<String, Object> error(Object id, String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (id != null) response.put("id", id);
+        response.put("status", "requestError");
+        response.put("error", message);
+        return response;
+    }
+}
@@ -1,18 +1,28 @@
 package com.github.unaimillan.rars.assembler;
 
 import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.jfr.AssemblerPassEvent;
 import com.github.unaimillan.rars.riscv.BasicInstruction;
+import com.github.unaimillan.rars.riscv.BasicInstructionFormat;
 import com.github.unaimillan.rars.riscv.ExtendedInstruction;
 import com.github.unaimillan.rars.riscv.Instruction;
+import com.github.unaimillan.rars.riscv.TranslationTemplate;
 import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
 import com.github.unaimillan.rars.riscv.hardware.Memory;
 import com.github.unaimillan.rars.util.Binary;
 import com.github.unaimillan.rars.util.SystemIO;
 import com.github.unaimillan.rars.venus.NumberDisplayBaseChooser;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 
 /*
@@ -53,6 +63,10 @@ import java.util.Collections;
  **/
 
 public class Assembler {
+    // Statement count from which the second pass and code generation are spread over the
+    // common fork/join pool; smaller programs are not worth the hand-off.
+    private static final int PARALLEL_THRESHOLD = 512;
+
     private ErrorList errors;
     private boolean inDataSegment; // status maintained by parser
     private boolean inMacroSegment; // status maintained by parser, true if in
@@ -64,8 +78,10 @@ public class Assembler {
     private TokenList globalDeclarationList;
     private AddressSpace textAddress;
     private AddressSpace dataAddress;
+    private final DataBuffer dataBuffer = new DataBuffer(); // data directives on their way to memory
     private DataSegmentForwardReferences currentFileDataSegmentForwardReferences,
             accumulatedDataSegmentForwardReferences;
+    private ArrayList<Relocation> relocations; // only when assembling a relocatable object
 
     /**
      * Get list of assembler errors and warnings
@@ -107,6 +123,7 @@ public class Assembler {
         accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
         Globals.symbolTable.clear();
         Globals.memory.clear();
+        dataBuffer.clear();
         ArrayList<ProgramStatement> machineList = new ArrayList<>();
         this.errors = new ErrorList();
         if (Globals.debug)
@@ -118,6 +135,8 @@ public class Assembler {
         for (RISCVprogram program : tokenizedProgramFiles) {
             if (errors.errorLimitExceeded())
                 break;
+            AssemblerPassEvent event = new AssemblerPassEvent();
+            event.begin();
             this.fileCurrentlyBeingAssembled = program;
             // List of labels declared ".globl". new list for each file assembled
             this.globalDeclarationList = new TokenList();
@@ -166,6 +185,8 @@ public class Assembler {
             }
             // move ".globl" symbols from local symtab to global
             this.transferGlobals();
+            // Data directives are staged; commit them before forward references are patched in.
+            this.flushDataSegment();
             // Attempt to resolve forward label references that were discovered in operand fields
             // of data segment directives in current file. Those that are not resolved after this
             // call are either references to global labels not seen yet, or are undefined.
@@ -175,6 +196,7 @@ public class Assembler {
                     .getLocalSymbolTable());
             accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
             currentFileDataSegmentForwardReferences.clear();
+            commit(event, program, 1, parsedList.size());
         } // end of first-pass loop for each RISCVprogram
 
 
@@ -182,7 +204,10 @@ public class Assembler {
         // references from global symbol table. Those that remain unresolved are undefined
         // and require error message.
         accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
-        accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
+        // In a relocatable object they are left for the linker to find in another object.
+        if (relocations == null) {
+            accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
+        }
 
         // Throw collection of errors accumulated through the first pass.
         if (errors.errorsOccurred()) {
@@ -192,85 +217,28 @@ public class Assembler {
             System.out.println("Assembler second pass begins");
         // SECOND PASS OF ASSEMBLER GENERATES BASIC ASSEMBLER THEN MACHINE CODE.
         // Generates basic assembler statements...
+        // Statements are expanded independently, as the symbol tables are complete and only
+        // read from here on. Results are merged in source order so errors come out exactly as
+        // they would from a sequential pass.
         for (RISCVprogram program : tokenizedProgramFiles) {
             if (errors.errorLimitExceeded())
                 break;
+            AssemblerPassEvent event = new AssemblerPassEvent();
+            event.begin();
             this.fileCurrentlyBeingAssembled = program;
             ArrayList<ProgramStatement> parsedList = fileCurrentlyBeingAssembled.getParsedList();
-            for (ProgramStatement statement : parsedList) {
-                statement.buildBasicStatementFromBasicInstruction(errors);
+            int generated = machineList.size();
+            ExpandedStatement[] expanded = new ExpandedStatement[parsedList.size()];
+            forEachStatement(parsedList.size(), i -> expanded[i] = expandStatement(program, parsedList.get(i)));
+            for (ExpandedStatement result : expanded) {
+                errors.addAll(result.basicErrors);
                 if (errors.errorsOccurred()) {
                     throw new AssemblyException(errors);
                 }
-                if (statement.getInstruction() instanceof BasicInstruction) {
-                    machineList.add(statement);
-                } else {
-                    // It is a pseudo-instruction:
-                    // 1. Fetch its basic instruction template list
-                    // 2. For each template in the list,
-                    // 2a. substitute operands from source statement
-                    // 2b. tokenize the statement generated by 2a.
-                    // 2d. call parseLine() to generate basic instrction
-                    // 2e. add returned programStatement to the list
-                    // The templates, and the instructions generated by filling
-                    // in the templates, are specified
-                    // in basic format (e.g. mnemonic register reference zero
-                    // already translated to x0).
-                    // So the values substituted into the templates need to be
-                    // in this format. Since those
-                    // values come from the original source statement, they need
-                    // to be translated before
-                    // substituting. The next method call will perform this
-                    // translation on the original
-                    // source statement. Despite the fact that the original
-                    // statement is a pseudo
-                    // instruction, this method performs the necessary
-                    // translation correctly.
-                    // TODO: consider making this recursive
-                    ExtendedInstruction inst = (ExtendedInstruction) statement.getInstruction();
-                    String basicAssembly = statement.getBasicAssemblyStatement();
-                    int sourceLine = statement.getSourceLine();
-                    TokenList theTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                            basicAssembly, errors, false);
-
-                    // ////////////////////////////////////////////////////////////////////////////
-                    // If we are using compact memory config and there is a compact expansion, use it
-                    ArrayList<String> templateList;
-                    templateList = inst.getBasicIntructionTemplateList();
-
-
-                    // subsequent ProgramStatement constructor needs the correct text segment address.
-                    textAddress.set(statement.getAddress());
-                    // Will generate one basic instruction for each template in the list.
-                    int PC = textAddress.get(); // Save the starting PC so that it can be used for PC relative stuff
-                    for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
-                        String instruction = ExtendedInstruction.makeTemplateSubstitutions(
-                                this.fileCurrentlyBeingAssembled,
-                                templateList.get(instrNumber), theTokenList, PC);
-
-                        // All substitutions have been made so we have generated
-                        // a valid basic instruction!
-                        if (Globals.debug)
-                            System.out.println("PSEUDO generated: " + instruction);
-                        // For generated instruction: tokenize, build program
-                        // statement, add to list.
-                        TokenList newTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                                instruction, errors, false);
-                        ArrayList<Instruction> instrMatches = this.matchInstruction(newTokenList.get(0));
-                        Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
-                                instrMatches);
-                        // Only first generated instruction is linked to original source
-                        ProgramStatement ps = new ProgramStatement(
-                                this.fileCurrentlyBeingAssembled,
-                                (instrNumber == 0) ? statement.getSource() : "", newTokenList,
-                                newTokenList, instr, textAddress.get(), statement.getSourceLine());
-                        textAddress.increment(Instruction.INSTRUCTION_LENGTH);
-                        ps.buildBasicStatementFromBasicInstruction(errors);
-                        machineList.add(ps);
-                    } // end of FOR loop, repeated for each template in list.
-                } // end of ELSE part for extended instruction.
-
+                errors.addAll(result.expansionErrors);
+                machineList.addAll(result.statements);
             } // end of assembler second pass.
+            commit(event, program, 2, machineList.size() - generated);
         }
         if (Globals.debug)
             System.out.println("Code generation begins");
@@ -278,10 +246,16 @@ public class Assembler {
         // Generates machine code statements from the list of basic assembler statements
         // and writes the statement to memory.
 
-        for (ProgramStatement statement : machineList) {
+        ErrorList[] machineErrors = new ErrorList[machineList.size()];
+        forEachStatement(machineList.size(), i -> {
+            machineErrors[i] = new ErrorList();
+            machineList.get(i).buildMachineStatementFromBasicStatement(machineErrors[i]);
+        });
+        for (int i = 0; i < machineList.size(); i++) {
             if (errors.errorLimitExceeded())
                 break;
-            statement.buildMachineStatementFromBasicStatement(errors);
+            ProgramStatement statement = machineList.get(i);
+            errors.addAll(machineErrors[i]);
             if (Globals.debug)
                 System.out.println(statement);
             try {
@@ -291,6 +265,7 @@ public class Assembler {
                 errors.add(new ErrorMessage(t.getSourceProgram(), t.getSourceLine(), t
                         .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
             }
+            statement.releaseTokenLists();
         }
         // Aug. 24, 2005 Ken Vollmar
         // Ensure that I/O "file descriptors" are initialized for a new program run
@@ -313,6 +288,207 @@ public class Assembler {
         return machineList;
     } // assemble()
 
+    /**
+     * Parse and generate machine code for the given program as a relocatable object, which
+     * {@link Linker} can later combine with other objects.  Labels that are not defined in the
+     * program are assumed to be global labels of another object, and every use of a label as
+     * an address is recorded as a {@link Relocation}.  The program is left in memory, placed
+     * at the start of the text and data segments.
+     *
+     * @param tokenizedProgramFiles    An ArrayList of RISCVprogram objects, each produced from a
+     *                                 different source code file, representing the program source.
+     * @param extendedAssemblerEnabled A boolean value that if true permits use of extended (pseudo)
+     *                                 instructions in the source code.
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be
+     *                                 considered errors.
+     * @return the object, or null if incoming array list is null or empty.
+     * @see ObjectFile
+     **/
+    public ObjectFile assembleObject(ArrayList<RISCVprogram> tokenizedProgramFiles, boolean extendedAssemblerEnabled,
+                                     boolean warningsAreErrors) throws AssemblyException {
+        relocations = new ArrayList<>();
+        try {
+            ArrayList<ProgramStatement> machineList = assemble(tokenizedProgramFiles, extendedAssemblerEnabled, warningsAreErrors);
+            if (machineList == null) {
+                return null;
+            }
+            for (ProgramStatement statement : machineList) {
+                if (statement.getRelocation() != null) {
+                    relocations.add(statement.getRelocation());
+                }
+            }
+            return ObjectFile.create(tokenizedProgramFiles, machineList, relocations, dataAddress.get(), errors);
+        } finally {
+            relocations = null;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    private static void commit(AssemblerPassEvent event, RISCVprogram program, int pass, int statements) {
+        if (event.shouldCommit()) {
+            event.file = program.getFilename();
+            event.pass = pass;
+            event.statements = statements;
+            event.commit();
+        }
+    }
+
+    // Result of running the second pass on one parsed statement.  Errors from building
+    // the basic statement abort the assembly; those from expanding a pseudo-instruction
+    // are only noticed after the next statement, so they are kept apart.
+    private static class ExpandedStatement {
+        private final ErrorList basicErrors = new ErrorList();
+        private final ErrorList expansionErrors = new ErrorList();
+        private final ArrayList<ProgramStatement> statements = new ArrayList<>();
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Runs action for every index below count, on the common fork/join pool if there are
+    // enough of them. The action must only touch state belonging to its own index.
+    private static void forEachStatement(int count, IntConsumer action) {
+        if (count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else {
+            IntStream.range(0, count).parallel().forEach(action);
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Second pass for one statement: generates its basic assembler statement and, for a
+    // pseudo-instruction, the basic statements it expands into.  Only reads assembler state.
+    private ExpandedStatement expandStatement(RISCVprogram program, ProgramStatement statement) {
+        ExpandedStatement result = new ExpandedStatement();
+        statement.buildBasicStatementFromBasicInstruction(result.basicErrors, relocations != null);
+        if (result.basicErrors.errorsOccurred()) {
+            return result;
+        }
+        if (statement.getInstruction() instanceof BasicInstruction) {
+            result.statements.add(statement);
+            return result;
+        }
+        ErrorList errors = result.expansionErrors;
+        // It is a pseudo-instruction:
+        // 1. Fetch its basic instruction template list
+        // 2. For each template in the list,
+        // 2a. substitute operands from source statement
+        // 2b. tokenize the statement generated by 2a.
+        // 2d. call parseLine() to generate basic instrction
+        // 2e. add returned programStatement to the list
+        // The templates, and the instructions generated by filling
+        // in the templates, are specified
+        // in basic format (e.g. mnemonic register reference zero
+        // already translated to x0).
+        // So the values substituted into the templates need to be
+        // in this format. Since those
+        // values come from the original source statement, they need
+        // to be translated before
+        // substituting. The next method call will perform this
+        // translation on the original
+        // source statement. Despite the fact that the original
+        // statement is a pseudo
+        // instruction, this method performs the necessary
+        // translation correctly.
+        // TODO: consider making this recursive
+        ExtendedInstruction inst = (ExtendedInstruction) statement.getInstruction();
+        String basicAssembly = statement.getBasicAssemblyStatement();
+        int sourceLine = statement.getSourceLine();
+        TokenList theTokenList = new Tokenizer().tokenizeLine(sourceLine,
+                basicAssembly, errors, false);
+
+        // ////////////////////////////////////////////////////////////////////////////
+        // If we are using compact memory config and there is a compact expansion, use it
+        ArrayList<String> templateList;
+        templateList = inst.getBasicIntructionTemplateList();
+        ArrayList<TranslationTemplate> compiledList = inst.getTranslationTemplates();
+
+
+        // Will generate one basic instruction for each template in the list.
+        int PC = statement.getAddress(); // Save the starting PC so that it can be used for PC relative stuff
+        int address = PC;
+        for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
+            String template = templateList.get(instrNumber);
+            String label = null;
+            int labelOperand = 0;
+            if (relocations != null) {
+                // Operand positions line up with the basic statement's tokens; the label is
+                // the identifier among them.  Its address may only be known to the linker.
+                TokenList operands = statement.getStrippedTokenList();
+                for (int op = 1; op < operands.size(); op++) {
+                    if (operands.get(op).getType() == TokenTypes.IDENTIFIER) {
+                        label = operands.get(op).getValue();
+                        labelOperand = op;
+                    }
+                }
+                if (label != null && template.contains("LAB")) {
+                    int i = template.indexOf("LAB");
+                    template = template.substring(0, i) + label + template.substring(i + 3);
+                }
+            }
+            // Usually the compiled template gives the tokens of the generated instruction
+            // directly; otherwise the substitutions are made in the text, which is tokenized.
+            TranslationTemplate compiled = compiledList.get(instrNumber);
+            TokenList newTokenList = (compiled == null) ? null : compiled.expand(program, theTokenList, PC,
+                    (relocations != null && label != null) ? label : null, sourceLine);
+            if (newTokenList == null) {
+                String instruction = ExtendedInstruction.makeTemplateSubstitutions(
+                        program,
+                        template, theTokenList, PC);
+
+                // All substitutions have been made so we have generated
+                // a valid basic instruction!
+                if (Globals.debug)
+                    System.out.println("PSEUDO generated: " + instruction);
+                // For generated instruction: tokenize, build program
+                // statement, add to list.
+                newTokenList = new Tokenizer().tokenizeLine(sourceLine,
+                        instruction, errors, false);
+            }
+            ArrayList<Instruction> instrMatches = this.matchInstruction(newTokenList.get(0), errors);
+            Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
+                    instrMatches);
+            // Only first generated instruction is linked to original source
+            ProgramStatement ps = new ProgramStatement(
+                    program,
+                    (instrNumber == 0) ? statement.getSource() : "", newTokenList,
+                    newTokenList, instr, address, statement.getSourceLine());
+            if (label != null && instr != null) {
+                Relocation.Kind kind = relocationKind(template, labelOperand, instr);
+                if (kind != null) {
+                    ps.setRelocation(new Relocation(kind, address, PC, 0, label, 0, program));
+                } else if (template.matches(".*(VL|VH|LI[A-E])" + labelOperand + "\\b.*")) {
+                    errors.add(new ErrorMessage(program, statement.getSourceLine(), 0,
+                            "Label \"" + label + "\" cannot be relocated in \"" + statement.getSource().trim() + "\""));
+                }
+            }
+            address += Instruction.INSTRUCTION_LENGTH;
+            ps.buildBasicStatementFromBasicInstruction(errors, relocations != null);
+            result.statements.add(ps);
+        } // end of FOR loop, repeated for each template in list.
+        // Only the basic statements it expanded into are kept from here on.
+        statement.releaseTokenLists();
+        return result;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Which part of a label operand's address a pseudo-instruction template puts into the
+    // generated instruction, or null if the template does not use it as an address.
+    private static Relocation.Kind relocationKind(String template, int op, Instruction instr) {
+        boolean store = instr instanceof BasicInstruction
+                && ((BasicInstruction) instr).getInstructionFormat() == BasicInstructionFormat.S_FORMAT;
+        if (template.contains("PCH" + op)) {
+            return Relocation.Kind.PCREL_HI20;
+        } else if (template.contains("PCL" + op)) {
+            return store ? Relocation.Kind.PCREL_LO12_S : Relocation.Kind.PCREL_LO12_I;
+        } else if (template.contains("LH" + op)) {
+            return Relocation.Kind.HI20;
+        } else if (template.contains("LL" + op)) {
+            return store ? Relocation.Kind.LO12_S : Relocation.Kind.LO12_I;
+        }
+        return null;
+    }
+
     // //////////////////////////////////////////////////////////////////////
     // Will check for duplicate text addresses, which can happen inadvertantly when using
     // operand on .text directive. Will generate error message for each one that occurs.
@@ -476,7 +652,7 @@ public class Assembler {
         // is not
         // yet implemented.
         if (!this.inDataSegment) {
-            ArrayList<Instruction> instrMatches = this.matchInstruction(token);
+            ArrayList<Instruction> instrMatches = this.matchInstruction(token, errors);
             if (instrMatches == null)
                 return ret;
             // OK, we've got an operator match, let's check the operands.
@@ -719,6 +895,10 @@ public class Assembler {
                 int value = Binary.stringToInt(tokens.get(1).getValue()); // KENV 1/6/05
                 this.dataAddress.increment(value);
             }
+        } else if (direct == Directives.INCBIN) {
+            if (passesDataSegmentCheck(token)) {
+                storeBinaryFile(tokens, errors);
+            }
         } else if (direct == Directives.EXTERN) {
             if (tokens.size() != 3) {
                 errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
@@ -817,22 +997,22 @@ public class Assembler {
     // //////////////////////////////////////////////////////////////////////////////////
     // Given token, find the corresponding Instruction object. If token was not
     // recognized as OPERATOR, there is a problem.
-    private ArrayList<Instruction> matchInstruction(Token token) {
+    private ArrayList<Instruction> matchInstruction(Token token, ErrorList errors) {
         if (token.getType() != TokenTypes.OPERATOR) {
             if (token.getSourceProgram().getLocalMacroPool()
                     .matchesAnyMacroName(token.getValue()))
-                this.errors.add(new ErrorMessage(token.getSourceProgram(), token
+                errors.add(new ErrorMessage(token.getSourceProgram(), token
                         .getSourceLine(), token.getStartPos(), "forward reference or invalid parameters for macro \""
                         + token.getValue() + "\""));
             else
-                this.errors.add(new ErrorMessage(token.getSourceProgram(), token
+                errors.add(new ErrorMessage(token.getSourceProgram(), token
                         .getSourceLine(), token.getStartPos(), "\"" + token.getValue()
                         + "\" is not a recognized operator"));
             return null;
         }
         ArrayList<Instruction> inst = Globals.instructionSet.matchOperator(token.getValue());
         if (inst == null) { // This should NEVER happen...
-            this.errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
+            errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
                     token.getStartPos(), "Internal Assembler error: \"" + token.getValue()
                     + "\" tokenized OPERATOR then not recognized"));
         }
@@ -889,6 +1069,30 @@ public class Assembler {
                     this.dataAddress
                             .set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
                 }
+                // Convert the value once and fill memory with it, unless it would not all fit in
+                // the data segment; then store the values one by one to get the usual errors.
+                long totalBytes = (long) lengthInBytes * repetitions;
+                if (dataBuffer.accepts(this.dataAddress.get(), totalBytes)) {
+                    long value;
+                    if (Directives.isIntegerDirective(directive)) {
+                        value = integerValue(valueToken, directive, errors);
+                    } else {
+                        Double real = realValue(valueToken, directive, errors);
+                        if (real == null) {
+                            return;
+                        }
+                        value = directive == Directives.FLOAT ? Float.floatToIntBits(real.floatValue())
+                                : Double.doubleToLongBits(real);
+                    }
+                    try {
+                        dataBuffer.fill(this.dataAddress.get(), value, lengthInBytes, repetitions);
+                    } catch (AddressErrorException e) {
+                        errors.add(new ErrorMessage(valueToken.getSourceProgram(), valueToken.getSourceLine(),
+                                valueToken.getStartPos(), "\"" + e.getAddress() + "\" is not a valid data segment address"));
+                    }
+                    this.dataAddress.increment((int) totalBytes);
+                    return;
+                }
                 for (int i = 0; i < repetitions; i++) {
                     if (Directives.isIntegerDirective(directive)) {
                         storeInteger(valueToken, directive, errors);
@@ -920,20 +1124,8 @@ public class Assembler {
     private void storeInteger(Token token, Directives directive, ErrorList errors) {
         int lengthInBytes = DataTypes.getLengthInBytes(directive);
         if (TokenTypes.isIntegerTokenType(token.getType())) {
-            int value;
-            long longvalue;
-            if (TokenTypes.INTEGER_64 == token.getType()) {
-                longvalue = Binary.stringToLong(token.getValue());
-                value = (int) longvalue;
-                if (directive != Directives.DWORD) {
-                    errors.add(new ErrorMessage(ErrorMessage.WARNING, token.getSourceProgram(), token.getSourceLine(),
-                            token.getStartPos(), "value " + Binary.longToHexString(longvalue)
-                            + " is out-of-range and truncated to " + Binary.intToHexString(value)));
-                }
-            } else {
-                value = Binary.stringToInt(token.getValue());
-                longvalue = value;
-            }
+            long longvalue = integerValue(token, directive, errors);
+            int value = (int) longvalue;
 
             if (directive == Directives.DWORD) {
                 writeToDataSegment((int) longvalue, 4, token, errors);
@@ -941,23 +1133,6 @@ public class Assembler {
                 return;
             }
 
-
-            int fullvalue = value;
-            // DPS 4-Jan-2013.  Overriding 6-Jan-2005 KENV changes.
-            // If value is out of range for the directive, will simply truncate
-            // the leading bits (includes sign bits). This is what SPIM does.
-            // But will issue a warning (not error) which SPIM does not do.
-            if (directive == Directives.BYTE) {
-                value = value & 0x000000FF;
-            } else if (directive == Directives.HALF) {
-                value = value & 0x0000FFFF;
-            }
-
-            if (DataTypes.outOfRange(directive, fullvalue)) {
-                errors.add(new ErrorMessage(ErrorMessage.WARNING, token.getSourceProgram(), token.getSourceLine(),
-                        token.getStartPos(), "value " + Binary.intToHexString(fullvalue)
-                        + " is out-of-range and truncated to " + Binary.intToHexString(value)));
-            }
             if (this.inDataSegment) {
                 writeToDataSegment(value, lengthInBytes, token, errors);
             }
@@ -988,12 +1163,17 @@ public class Assembler {
             if (this.inDataSegment) {
                 int value = fileCurrentlyBeingAssembled.getLocalSymbolTable()
                         .getAddressLocalOrGlobal(token.getValue());
+                int dataAddress;
                 if (value == SymbolTable.NOT_FOUND) {
                     // Record value 0 for now, then set up backpatch entry
-                    int dataAddress = writeToDataSegment(0, lengthInBytes, token, errors);
+                    dataAddress = writeToDataSegment(0, lengthInBytes, token, errors);
                     currentFileDataSegmentForwardReferences.add(dataAddress, lengthInBytes, token);
                 } else { // label already defined, so write its address
-                    writeToDataSegment(value, lengthInBytes, token, errors);
+                    dataAddress = writeToDataSegment(value, lengthInBytes, token, errors);
+                }
+                if (relocations != null) {
+                    relocations.add(new Relocation(Relocation.Kind.DATA, dataAddress, 0, lengthInBytes,
+                            token.getValue(), 0, fileCurrentlyBeingAssembled));
                 }
             } // Data segment check done previously, so this "else" will not be.
             // See 11/20/06 note above.
@@ -1010,11 +1190,72 @@ public class Assembler {
         }
     }// storeInteger
 
+    // //////////////////////////////////////////////////////////////////////////////
+    // Converts an integer token to the value to store for an integer directive, warning
+    // if it has to be truncated.  For .dword this is the whole 64 bit value.
+    private long integerValue(Token token, Directives directive, ErrorList errors) {
+        int value;
+        long longvalue;
+        if (TokenTypes.INTEGER_64 == token.getType()) {
+            longvalue = Binary.stringToLong(token.getValue());
+            value = (int) longvalue;
+            if (directive != Directives.DWORD) {
+                errors.add(new ErrorMessage(ErrorMessage.WARNING, token.getSourceProgram(), token.getSourceLine(),
+                        token.getStartPos(), "value " + Binary.longToHexString(longvalue)
+                        + " is out-of-range and truncated to " + Binary.intToHexString(value)));
+            }
+        } else {
+            value = Binary.stringToInt(token.getValue());
+            longvalue = value;
+        }
+
+        if (directive == Directives.DWORD) {
+            return longvalue;
+        }
+
+        int fullvalue = value;
+        // DPS 4-Jan-2013.  Overriding 6-Jan-2005 KENV changes.
+        // If value is out of range for the directive, will simply truncate
+        // the leading bits (includes sign bits). This is what SPIM does.
+        // But will issue a warning (not error) which SPIM does not do.
+        if (directive == Directives.BYTE) {
+            value = value & 0x000000FF;
+        } else if (directive == Directives.HALF) {
+            value = value & 0x0000FFFF;
+        }
+
+        if (DataTypes.outOfRange(directive, fullvalue)) {
+            errors.add(new ErrorMessage(ErrorMessage.WARNING, token.getSourceProgram(), token.getSourceLine(),
+                    token.getStartPos(), "value " + Binary.intToHexString(fullvalue)
+                    + " is out-of-range and truncated to " + Binary.intToHexString(value)));
+        }
+        return value;
+    }
+
     // //////////////////////////////////////////////////////////////////////////////
     // Store real (fixed or floating point) value given floating (float, double) directive.
     // Called by storeNumeric()
     private void storeRealNumber(Token token, Directives directive, ErrorList errors) {
-        int lengthInBytes = DataTypes.getLengthInBytes(directive);
+        Double value = realValue(token, directive, errors);
+        if (value == null) {
+            return;
+        }
+
+        // Value has been validated; let's store it.
+
+        if (directive == Directives.FLOAT) {
+            writeToDataSegment(Float.floatToIntBits(value.floatValue()), DataTypes.FLOAT_SIZE, token, errors);
+        }
+        if (directive == Directives.DOUBLE) {
+            writeDoubleToDataSegment(value, token, errors);
+        }
+
+    } // storeRealNumber
+
+    // //////////////////////////////////////////////////////////////////////////////
+    // Converts a token to the value to store for a floating directive, or returns null
+    // after adding an error if it is not a valid value.
+    private Double realValue(Token token, Directives directive, ErrorList errors) {
         double value;
 
         if (token.getValue().equals("Inf")) {
@@ -1030,31 +1271,22 @@ public class Assembler {
                 errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
                         token.getStartPos(), "\"" + token.getValue()
                         + "\" is not a valid floating point constant"));
-                return;
+                return null;
             }
             if (DataTypes.outOfRange(directive, value)) {
                 errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
                         token.getStartPos(), "\"" + token.getValue()
                         + "\" is an out-of-range value"));
-                return;
+                return null;
             }
         } else {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + token.getValue()
                     + "\" is not a valid floating point constant"));
-            return;
-        }
-
-        // Value has been validated; let's store it.
-
-        if (directive == Directives.FLOAT) {
-            writeToDataSegment(Float.floatToIntBits((float) value), lengthInBytes, token, errors);
-        }
-        if (directive == Directives.DOUBLE) {
-            writeDoubleToDataSegment(value, token, errors);
+            return null;
         }
-
-    } // storeRealNumber
+        return value;
+    }
 
     // //////////////////////////////////////////////////////////////////////////////////
     // Use directive argument to distinguish between ASCII and ASCIZ. The
@@ -1134,8 +1366,7 @@ public class Assembler {
                     byte[] bytesOfChar = String.valueOf(theChar).getBytes(StandardCharsets.UTF_8);
                     try {
                         for (byte b : bytesOfChar) {
-                            Globals.memory.set(this.dataAddress.get(), b,
-                                    DataTypes.CHAR_SIZE);
+                            storeData(this.dataAddress.get(), b, DataTypes.CHAR_SIZE);
                             this.dataAddress.increment(DataTypes.CHAR_SIZE);
                         }
                     } catch (AddressErrorException e) {
@@ -1147,7 +1378,7 @@ public class Assembler {
                 }
                 if (direct == Directives.ASCIZ || direct == Directives.STRING) {
                     try {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        storeData(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceProgram(), token
                                 .getSourceLine(), token.getStartPos(), "\""
@@ -1159,6 +1390,57 @@ public class Assembler {
         }
     } // storeStrings()
 
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Processes .incbin "file"[, offset[, length]], which stores the bytes of a file, or
+    // of part of it, as they are.  The file is read in one go and staged in bulk.
+    private void storeBinaryFile(TokenList tokens, ErrorList errors) {
+        Token token = tokens.get(0);
+        if (tokens.size() < 2 || tokens.size() > 4 || tokens.get(1).getType() != TokenTypes.QUOTED_STRING) {
+            errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token.getStartPos(),
+                    "\"" + token.getValue() + "\" requires a quoted file name, optionally followed by offset and length"));
+            return;
+        }
+        for (int i = 2; i < tokens.size(); i++) {
+            if (!TokenTypes.isIntegerTokenType(tokens.get(i).getType()) || Binary.stringToInt(tokens.get(i).getValue()) < 0) {
+                errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), tokens.get(i).getStartPos(),
+                        "\"" + token.getValue() + "\" offset and length must be non-negative integers"));
+                return;
+            }
+        }
+        Token fileToken = tokens.get(1);
+        String filename = Tokenizer.resolveFilename(fileToken.getOriginalProgram(), fileToken.getValue());
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = tokens.size() > 2 ? Binary.stringToInt(tokens.get(2).getValue()) : 0;
+            long length = tokens.size() > 3 ? Binary.stringToInt(tokens.get(3).getValue()) : size - offset;
+            if (offset + length > size || length < 0) {
+                errors.add(new ErrorMessage(fileToken.getSourceProgram(), fileToken.getSourceLine(), fileToken.getStartPos(),
+                        "\"" + filename + "\" has " + size + " bytes, fewer than offset and length require"));
+                return;
+            }
+            if (!dataBuffer.accepts(this.dataAddress.get(), length)) {
+                errors.add(new ErrorMessage(fileToken.getSourceProgram(), fileToken.getSourceLine(), fileToken.getStartPos(),
+                        "\"" + filename + "\" does not fit in the data segment at " + Binary.intToHexString(this.dataAddress.get())));
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) length);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, offset + bytes.position()) < 0) {
+                    throw new IOException("file was truncated while being read");
+                }
+            }
+            bytes.flip();
+            dataBuffer.putBytes(this.dataAddress.get(), bytes);
+            this.dataAddress.increment((int) length);
+        } catch (IOException e) {
+            errors.add(new ErrorMessage(fileToken.getSourceProgram(), fileToken.getSourceLine(), fileToken.getStartPos(),
+                    "Error reading binary file " + filename));
+        } catch (AddressErrorException e) {
+            errors.add(new ErrorMessage(fileToken.getSourceProgram(), fileToken.getSourceLine(), fileToken.getStartPos(),
+                    "\"" + e.getAddress() + "\" is not a valid data segment address"));
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////
     // Simply check to see if we are in data segment. Generate error if not.
     private boolean passesDataSegmentCheck(Token token) {
@@ -1181,7 +1463,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            storeData(this.dataAddress.get(), value, lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1204,7 +1486,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            storeData(this.dataAddress.get(), Double.doubleToLongBits(value), lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1214,6 +1496,34 @@ public class Assembler {
         this.dataAddress.increment(lengthInBytes);
     }
 
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Stores a value of 1, 2, 4 or 8 bytes for a data directive.  Values within the data
+    // segment are staged and reach memory in bulk; anything else is written directly,
+    // after the staged data to keep the order of writes.
+    private void storeData(int address, long value, int lengthInBytes) throws AddressErrorException {
+        if (dataBuffer.put(address, value, lengthInBytes)) {
+            return;
+        }
+        dataBuffer.flush();
+        if (lengthInBytes == DataTypes.DOUBLE_SIZE) {
+            Globals.memory.set(address + 4, (int) (value >> 32), 4);
+            Globals.memory.set(address, (int) value, 4);
+        } else {
+            Globals.memory.set(address, (int) value, lengthInBytes);
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Writes the data staged so far to memory.
+    private void flushDataSegment() {
+        try {
+            dataBuffer.flush();
+        } catch (AddressErrorException e) {
+            errors.add(new ErrorMessage(fileCurrentlyBeingAssembled, 0, 0, "\""
+                    + e.getAddress() + "\" is not a valid data segment address"));
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////
     // If address is multiple of byte boundary, returns address. Otherwise, returns address
     // which is next higher multiple of the byte boundary. Used for aligning data segment.
@@ -1316,7 +1626,13 @@ public class Assembler {
                 if (labelAddress != SymbolTable.NOT_FOUND) {
                     // patch address has to be valid b/c we already stored there...
                     try {
-                        Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                        if (entry.length == 2 * DataTypes.WORD_SIZE) {
+                            // .dword: the address sign-extended, as storeInteger writes a known label
+                            Globals.memory.set(entry.patchAddress, labelAddress, DataTypes.WORD_SIZE);
+                            Globals.memory.set(entry.patchAddress + DataTypes.WORD_SIZE, labelAddress >> 31, DataTypes.WORD_SIZE);
+                        } else {
+                            Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                        }
                     } catch (AddressErrorException aee) {
                     }
                     forwardReferenceList.remove(i);
@@ -0,0 +1,193 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stages the values of data directives so that they reach memory a block at a time
+ * instead of through one {@link Memory#set(int, int, int)} per value.
+ * <p>
+ * The buffer holds one contiguous run of the data segment as words, laid out as memory
+ * stores them.  A write that continues the run, possibly after a few bytes of alignment
+ * padding, is added to it; any other write first flushes the run to memory and starts a new
+ * one.  Large gaps such as ".space" regions are therefore never part of a run and stay
+ * unallocated in memory.  Bytes of the run that are not written keep what memory held.
+ * <p>
+ * Nothing else may write the data segment while a run is open, so the assembler flushes
+ * before patching forward references and at the end of every file.
+ */
+class DataBuffer {
+    private static final int MAX_GAP = 8; // larger gaps start a new run
+
+    private int[] words = new int[1024];
+    private int base; // word-aligned address of words[0]
+    private int used; // number of words in the run
+    private int end;  // address following the last byte written
+
+    /**
+     * @return true if the bytes from address on lie within the data segment, so can be staged
+     */
+    boolean accepts(int address, long length) {
+        return Memory.inDataSegment(address) && address + length <= Memory.dataSegmentLimitAddress;
+    }
+
+    /**
+     * Stages a value of 1, 2, 4 or 8 bytes, stored little-endian.
+     *
+     * @return false if the value does not lie within the data segment; nothing is staged then
+     */
+    boolean put(int address, long value, int length) throws AddressErrorException {
+        if (!prepare(address, length)) {
+            return false;
+        }
+        for (int k = 0; k < length; ) {
+            int at = address + k;
+            if ((at & 3) == 0 && length - k >= 4) {
+                int index = (at - base) >>> 2;
+                reserve(index, true);
+                words[index] = (int) (value >>> (8 * k));
+                k += 4;
+            } else {
+                putByte(at, (int) (value >>> (8 * k)));
+                k++;
+            }
+        }
+        end = address + length;
+        return true;
+    }
+
+    /**
+     * Stages count copies of a value of 1, 2, 4 or 8 bytes, as for ".word value : count".
+     * Whole words are filled with the repeating pattern rather than written one value at a time.
+     *
+     * @return false if the values do not lie within the data segment; nothing is staged then
+     */
+    boolean fill(int address, long value, int length, int count) throws AddressErrorException {
+        long total = (long) length * count;
+        if (!prepare(address, total)) {
+            return false;
+        }
+        int k = 0; // bytes staged so far
+        for (; k < total && ((address + k) & 3) != 0; k++) {
+            putByte(address + k, (int) (value >>> (8 * (k % length))));
+        }
+        int wholeWords = (int) ((total - k) / 4);
+        if (wholeWords > 0) {
+            int first = (address + k - base) >>> 2;
+            if (first > 0) {
+                reserve(first - 1, false);
+            }
+            // The pattern repeats every word, or every two words for 8 byte values.
+            int period = Math.max(length, 4) / 4;
+            for (int p = 0; p < period && p < wholeWords; p++) {
+                int word = 0;
+                for (int b = 0; b < 4; b++) {
+                    word |= (int) ((value >>> (8 * ((k + 4 * p + b) % length))) & 0xFF) << (8 * b);
+                }
+                for (int i = first + p; i < first + wholeWords; i += period) {
+                    words[i] = word;
+                }
+            }
+            used = Math.max(used, first + wholeWords);
+            k += 4 * wholeWords;
+        }
+        for (; k < total; k++) {
+            putByte(address + k, (int) (value >>> (8 * (k % length))));
+        }
+        end = (int) (address + total);
+        return true;
+    }
+
+    /**
+     * Stages the remaining bytes of a buffer, as for ".incbin".
+     *
+     * @return false if the bytes do not lie within the data segment; nothing is staged then
+     */
+    boolean putBytes(int address, ByteBuffer bytes) throws AddressErrorException {
+        int length = bytes.remaining();
+        if (!prepare(address, length)) {
+            return false;
+        }
+        bytes = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int at = address;
+        while (bytes.hasRemaining() && (at & 3) != 0) {
+            putByte(at++, bytes.get());
+        }
+        int wholeWords = bytes.remaining() / 4;
+        if (wholeWords > 0) {
+            int first = (at - base) >>> 2;
+            if (first > 0) {
+                reserve(first - 1, false);
+            }
+            bytes.asIntBuffer().get(words, first, wholeWords);
+            bytes.position(bytes.position() + 4 * wholeWords);
+            used = Math.max(used, first + wholeWords);
+            at += 4 * wholeWords;
+        }
+        while (bytes.hasRemaining()) {
+            putByte(at++, bytes.get());
+        }
+        end = address + length;
+        return true;
+    }
+
+    /**
+     * Writes the run to memory and empties the buffer.
+     */
+    void flush() throws AddressErrorException {
+        if (used > 0) {
+            int count = used;
+            used = 0;
+            Globals.memory.setRawWords(base, words, 0, count);
+        }
+    }
+
+    /**
+     * Empties the buffer without writing anything, for a new assembly.
+     */
+    void clear() {
+        used = 0;
+    }
+
+    // Makes sure the bytes can be added to the current run, starting a new one if not.
+    private boolean prepare(int address, long length) throws AddressErrorException {
+        if (!accepts(address, length)) {
+            return false;
+        }
+        if (used == 0 || address < end || address - end >= MAX_GAP) {
+            flush();
+            base = address & ~3;
+            end = address;
+        }
+        long needed = (address + length - base + 3) >> 2;
+        if (needed > words.length) {
+            int[] larger = new int[(int) Math.max(needed, 2L * words.length)];
+            System.arraycopy(words, 0, larger, 0, used);
+            words = larger;
+        }
+        return true;
+    }
+
+    private void putByte(int address, int value) throws AddressErrorException {
+        int index = (address - base) >>> 2;
+        reserve(index, false);
+        int shift = (address & 3) * 8;
+        words[index] = words[index] & ~(0xFF << shift) | (value & 0xFF) << shift;
+    }
+
+    // Adds the words up to index to the run.  Words that are skipped or only partly
+    // written start out with the contents of memory, unless whole says index is overwritten.
+    private void reserve(int index, boolean whole) throws AddressErrorException {
+        for (; used <= index; used++) {
+            if (used == index && whole) {
+                words[used] = 0;
+            } else {
+                Globals.memory.getRawWords(base + 4 * used, words, used, 1);
+            }
+        }
+    }
+}
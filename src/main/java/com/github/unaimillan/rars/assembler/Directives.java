@@ -66,6 +66,7 @@ public final class Directives {
     public static final Directives END_MACRO = new Directives(".end_macro", "End macro definition.  See .macro");
     /*  INCLUDE added by DPS 11 Jan 2013 */
     public static final Directives INCLUDE = new Directives(".include", "Insert the contents of the specified file.  Put filename in quotes.");
+    public static final Directives INCBIN = new Directives(".incbin", "Store the contents of the specified binary file in the Data segment.  Put filename in quotes, optionally followed by byte offset and length");
     public static final Directives SECTION = new Directives(".section", "Allows specifying sections without .text or .data directives. Included for gcc comparability");
 
     private final String descriptor;
@@ -0,0 +1,327 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.util.Binary;
+import com.github.unaimillan.rars.util.SystemIO;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Loads statically linked RISC-V ELF executables, such as C programs built with GCC or LLVM,
+ * so that they can be simulated like an assembled program.
+ * <p>
+ * PT_LOAD segments are placed at the addresses they were linked for, so the executable has to be
+ * linked for the RARS memory layout.  With the default memory configuration and GNU ld that is
+ * <pre>
+ *   riscv64-unknown-elf-gcc -march=rv32im -mabi=ilp32 -static -nostdlib -Wl,-Ttext=0x400000 \
+ *       -Wl,-Tdata=0x10010000 -o program start.s program.c
+ * </pre>
+ * (or {@code -march=rv64imfd -mabi=lp64d} for RV64 mode), where start.s calls main and makes
+ * the exit system call.  Compressed instructions are not supported, so build without the C
+ * extension.  The program reaches the outside world through the RARS system calls.
+ * <p>
+ * Executable segments go in the text segment as decoded statements.  Read-only data, which
+ * these options link right after the code, either into the executable segment or into a
+ * read-only segment of its own, is kept in the text segment as well: loads may read readable
+ * segments there but, unless self-modifying code is enabled, stores to them fault.  Writable
+ * segments (.data and .bss) go in the data segment.  Function and object symbols are entered
+ * into the global symbol table.
+ */
+public class ElfLoader {
+    private static final byte[] MAGIC = {0x7F, 'E', 'L', 'F'};
+    private static final int ELFCLASS32 = 1;
+    private static final int ELFCLASS64 = 2;
+    private static final int ELFDATA2LSB = 1;
+    private static final int ET_EXEC = 2;
+    private static final int EM_RISCV = 0xF3;
+    private static final int EF_RISCV_RVC = 0x1;
+    private static final int PT_LOAD = 1;
+    private static final int PF_X = 0x1;
+    private static final int PF_W = 0x2;
+    private static final int PF_R = 0x4;
+    private static final int SHT_SYMTAB = 2;
+    private static final int STT_SECTION = 3;
+    private static final int STT_FILE = 4;
+    private static final int STB_LOCAL = 0;
+
+    private ByteBuffer elf;
+    private RISCVprogram program; // the file being loaded, for error messages
+    private boolean elf64;
+    private int entry;
+
+    /**
+     * Checks whether a file is an ELF file, as opposed to assembly source.
+     *
+     * @param file the file
+     * @return true if it starts with the ELF magic number
+     */
+    public static boolean isElf(File file) {
+        byte[] magic = new byte[MAGIC.length];
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read(magic) == magic.length && Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the entry point of the executable last loaded
+     */
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * Loads an executable into memory and the global symbol table, replacing whatever was there.
+     *
+     * @param filename the executable
+     * @return the statements of the text segment, sorted by address
+     * @throws AssemblyException if the file cannot be read, is not a static RISC-V executable for
+     *                           the current instruction set, or does not fit the memory configuration
+     */
+    public ArrayList<ProgramStatement> load(String filename) throws AssemblyException {
+        program = new RISCVprogram(filename);
+        try {
+            elf = ByteBuffer.wrap(Files.readAllBytes(new File(filename).toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            return loadProgram();
+        } catch (IOException e) {
+            throw error(program, "cannot be read: " + e.getMessage());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw error(program, "is truncated or corrupt");
+        } finally {
+            elf = null;
+            program = null;
+        }
+    }
+
+    private ArrayList<ProgramStatement> loadProgram() throws AssemblyException {
+        byte[] magic = new byte[MAGIC.length];
+        elf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw error(program, "is not an ELF file");
+        }
+        if (elf.get(4) != ELFCLASS32 && elf.get(4) != ELFCLASS64 || elf.get(5) != ELFDATA2LSB) {
+            throw error(program, "is not a little-endian 32 or 64 bit ELF file");
+        }
+        elf64 = elf.get(4) == ELFCLASS64;
+        if (u16(18) != EM_RISCV) {
+            throw error(program, "is not a RISC-V executable");
+        }
+        if (u16(16) != ET_EXEC) {
+            throw error(program, "is not a statically linked executable");
+        }
+        if (elf64 != InstructionSet.rv64) {
+            throw error(program, elf64 ? "is an RV64 executable; enable 64 bit mode to run it"
+                    : "is an RV32 executable; disable 64 bit mode to run it");
+        }
+        if ((elf.getInt(elf64 ? 0x30 : 0x24) & EF_RISCV_RVC) != 0) {
+            throw error(program, "uses compressed instructions, which are not supported; build without the C extension");
+        }
+        entry = (int) address(0x18, "its entry point");
+        int phoff = offset(elf64 ? 0x20 : 0x1C, "a program header offset");
+        int phentsize = u16(elf64 ? 0x36 : 0x2A);
+        int phnum = u16(elf64 ? 0x38 : 0x2C);
+
+        Globals.symbolTable.clear();
+        Globals.memory.clear();
+        ArrayList<ProgramStatement> machineList = new ArrayList<>();
+        int dataEnd = Memory.heapBaseAddress;
+        boolean entryLoaded = false;
+        for (int i = 0; i < phnum; i++) {
+            int header = position(phoff + (long) i * phentsize);
+            if (elf.getInt(header) != PT_LOAD) continue;
+            int flags = elf.getInt(header + (elf64 ? 4 : 24));
+            int offset = offset(header + (elf64 ? 8 : 4), "a segment offset");
+            long vaddr = address(header + (elf64 ? 16 : 8), "a segment");
+            int filesz = offset(header + (elf64 ? 32 : 16), "a segment size");
+            long memsz = offset(header + (elf64 ? 40 : 20), "a segment size");
+            if (memsz == 0) continue;
+            if (filesz > memsz) {
+                throw error(program, "has a segment at " + Binary.intToHexString((int) vaddr) + " larger in the file than in memory");
+            }
+            long end = vaddr + memsz;
+            boolean inText = Memory.inTextSegment((int) vaddr) && end <= (Memory.textLimitAddress & 0xFFFFFFFFL);
+            if ((flags & PF_X) != 0 || inText && (flags & PF_W) == 0) {
+                String contents = (flags & PF_X) != 0 ? "code" : "read-only data";
+                if (vaddr % 4 != 0 || !inText) {
+                    throw error(program, "has " + contents + " at " + range(vaddr, end) + ", outside the text segment "
+                            + range(Memory.textBaseAddress, Memory.textLimitAddress) + "; link it for that address");
+                }
+                if ((flags & PF_X) != 0) {
+                    entryLoaded |= (entry & 0xFFFFFFFFL) >= vaddr && (entry & 0xFFFFFFFFL) < vaddr + filesz;
+                }
+                // Read-only data gets its part not in the file as well, as zero words.
+                int size = (flags & PF_X) != 0 ? filesz : (int) memsz;
+                for (int word = 0; word < size; word += 4) {
+                    ProgramStatement statement = new ProgramStatement(word(offset + word, filesz - word), (int) vaddr + word);
+                    if ((flags & PF_X) != 0) {
+                        machineList.add(statement);
+                    }
+                    try {
+                        Globals.memory.setStatement(statement.getAddress(), statement);
+                    } catch (AddressErrorException e) {
+                        throw error(program, "has " + contents + " at an invalid address " + Binary.intToHexString(e.getAddress()));
+                    }
+                }
+                if ((flags & PF_R) != 0) {
+                    Globals.memory.addReadableText((int) vaddr, (int) vaddr + ((size + 3) & ~3));
+                }
+            } else if (inText) {
+                throw error(program, "has writable data at " + range(vaddr, end) + ", in the text segment; link it for the data segment "
+                        + range(Memory.dataSegmentBaseAddress, Memory.dataSegmentLimitAddress));
+            } else {
+                if (!Memory.inDataSegment((int) vaddr) || end > (Memory.dataSegmentLimitAddress & 0xFFFFFFFFL)) {
+                    throw error(program, "has data at " + range(vaddr, end) + ", outside the data segment "
+                            + range(Memory.dataSegmentBaseAddress, Memory.dataSegmentLimitAddress) + "; link it for that address");
+                }
+                try {
+                    // Memory starts out zeroed, which also takes care of the part not in the file (.bss).
+                    for (int loaded = 0; loaded < filesz; ) {
+                        int address = (int) vaddr + loaded;
+                        if (address % 4 == 0 && filesz - loaded >= 4) {
+                            int value = elf.getInt(offset + loaded);
+                            if (value != 0) {
+                                Globals.memory.set(address, value, 4);
+                            }
+                            loaded += 4;
+                        } else {
+                            Globals.memory.set(address, elf.get(offset + loaded), 1);
+                            loaded++;
+                        }
+                    }
+                } catch (AddressErrorException e) {
+                    throw error(program, "has data at an invalid address " + Binary.intToHexString(e.getAddress()));
+                }
+                dataEnd = (int) Math.max(dataEnd & 0xFFFFFFFFL, (end + 3) & ~3L);
+            }
+        }
+        if (!entryLoaded) {
+            throw error(program, "has its entry point " + Binary.intToHexString(entry) + " outside its code");
+        }
+        // Keep the heap clear of the loaded data, which may extend past the usual heap base.
+        Memory.heapAddress = dataEnd;
+        loadSymbols(false);
+        loadSymbols(true);
+        // As after assembling, make sure I/O "file descriptors" are initialized for a new program run
+        SystemIO.resetFiles();
+        Collections.sort(machineList);
+        return machineList;
+    }
+
+    // Enters named function and object symbols from the symbol table, global ones first so that
+    // a local symbol never hides a global one of the same name.
+    private void loadSymbols(boolean local) throws AssemblyException {
+        int shoff = offset(elf64 ? 0x28 : 0x20, "a section header offset");
+        int shentsize = u16(elf64 ? 0x3A : 0x2E);
+        int shnum = u16(elf64 ? 0x3C : 0x30);
+        for (int i = 0; i < shnum; i++) {
+            int section = position(shoff + (long) i * shentsize);
+            if (elf.getInt(section + 4) != SHT_SYMTAB) continue;
+            int offset = offset(section + (elf64 ? 24 : 16), "a symbol table offset");
+            int size = offset(section + (elf64 ? 32 : 20), "a symbol table size");
+            int entsize = offset(section + (elf64 ? 56 : 36), "a symbol size");
+            int strings = position(shoff + (elf.getInt(section + (elf64 ? 40 : 24)) & 0xFFFFFFFFL) * shentsize);
+            int stringsOffset = offset(strings + (elf64 ? 24 : 16), "a symbol name table offset");
+            for (int symbol = offset; entsize > 0 && symbol + (long) entsize <= offset + (long) size; symbol += entsize) {
+                int info = elf.get(symbol + (elf64 ? 4 : 12)) & 0xFF;
+                int shndx = u16(symbol + (elf64 ? 6 : 14));
+                long value = elf64 ? elf.getLong(symbol + 8) : u32(symbol + 4);
+                int type = info & 0xF;
+                // Absolute symbols may hold any value; only those that are 32 bit addresses matter here.
+                if (shndx == 0 || type == STT_SECTION || type == STT_FILE || ((info >> 4) == STB_LOCAL) != local
+                        || !isAddress(value)) {
+                    continue;
+                }
+                int address = (int) value;
+                String name = string(stringsOffset + elf.getInt(symbol));
+                // Skip mapping symbols ($x, $d) and the assembler's local labels.
+                if (name.isEmpty() || name.startsWith("$") || name.startsWith(".L")) continue;
+                if (Memory.inTextSegment(address)) {
+                    Globals.symbolTable.addSymbol(new Symbol(name, address, false));
+                } else if (Memory.inDataSegment(address)) {
+                    Globals.symbolTable.addSymbol(new Symbol(name, address, true));
+                }
+            }
+        }
+    }
+
+    private int u16(int offset) {
+        return elf.getShort(offset) & 0xFFFF;
+    }
+
+    private long u32(int offset) {
+        return elf.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    // An address field, which is 64 bits wide in ELF64; RARS addresses are 32 bits, so only
+    // values that are a 32 bit address, zero- or sign-extended, are accepted.
+    private long address(int offset, String what) throws AssemblyException {
+        long value = elf64 ? elf.getLong(offset) : u32(offset);
+        if (!isAddress(value)) {
+            throw error(program, "has " + what + " at " + Binary.longToHexString(value) + ", beyond the 32 bit addresses of RARS");
+        }
+        return value & 0xFFFFFFFFL;
+    }
+
+    private static boolean isAddress(long value) {
+        return value >>> 32 == 0 || value >> 31 == -1;
+    }
+
+    // A file offset or size field, which has to fit the int positions of the buffer.
+    private int offset(int offset, String what) throws AssemblyException {
+        long value = elf64 ? elf.getLong(offset) : u32(offset);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw error(program, "has " + what + " of " + Long.toUnsignedString(value) + ", too large to load");
+        }
+        return (int) value;
+    }
+
+    // A position computed from header fields, which the buffer would reject if it were in the file.
+    private static int position(long value) {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (int) value;
+    }
+
+    // A little-endian word of which only the first available bytes are in the file.
+    private int word(int offset, int available) {
+        if (available >= 4) {
+            return elf.getInt(offset);
+        }
+        int value = 0;
+        for (int i = 0; i < available; i++) {
+            value |= (elf.get(offset + i) & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private String string(int offset) {
+        int end = offset;
+        while (elf.get(end) != 0) end++;
+        byte[] bytes = new byte[end - offset];
+        elf.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String range(long start, long end) {
+        return Binary.intToHexString((int) start) + "-" + Binary.intToHexString((int) end);
+    }
+
+    private static AssemblyException error(RISCVprogram program, String message) {
+        ErrorList errors = new ErrorList();
+        errors.add(new ErrorMessage(program, 0, 0, message));
+        return new AssemblyException(errors);
+    }
+}
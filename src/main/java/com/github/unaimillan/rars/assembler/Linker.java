@@ -0,0 +1,165 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.util.Binary;
+import com.github.unaimillan.rars.util.SystemIO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Combines relocatable objects into a program ready to run, as the assembler would have
+ * left it: machine code in the text segment, data in the data segment and global labels in
+ * the global symbol table.
+ * <p>
+ * Text sections are placed one after the other from the start of the text segment, in the
+ * order given.  Data sections are placed likewise from the start of the data segment, each
+ * beginning on a 4 KiB boundary so that any alignment chosen in the source is kept.
+ */
+public class Linker {
+    private static final int DATA_ALIGNMENT = 4096;
+
+    /**
+     * Links objects into memory and the global symbol table.
+     *
+     * @param objects the objects; the first one should contain the main program
+     * @return the statements of the linked program, sorted by address
+     * @throws AssemblyException if labels are undefined or defined twice, an object was assembled
+     *                           for a different instruction set, or the result does not fit
+     */
+    public ArrayList<ProgramStatement> link(ArrayList<ObjectFile> objects) throws AssemblyException {
+        ErrorList errors = new ErrorList();
+        int[] textBase = new int[objects.size()];
+        int[] dataBase = new int[objects.size()];
+        int textAddress = Memory.textBaseAddress;
+        int dataAddress = Memory.dataBaseAddress;
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectFile object = objects.get(i);
+            if (object.isRV64() != InstructionSet.rv64) {
+                errors.add(error(object, "was assembled for " + (object.isRV64() ? "RV64" : "RV32")));
+            }
+            textBase[i] = textAddress;
+            dataBase[i] = dataAddress;
+            textAddress += object.getTextSize();
+            dataAddress += (object.getDataSize() + DATA_ALIGNMENT - 1) / DATA_ALIGNMENT * DATA_ALIGNMENT;
+        }
+        if (textAddress > Memory.textLimitAddress) {
+            errors.add(error(objects.get(0), "linked program does not fit in the text segment"));
+        }
+        if (dataAddress > Memory.dataSegmentLimitAddress) {
+            errors.add(error(objects.get(0), "linked program does not fit in the data segment"));
+        }
+
+        // Global labels, with the object defining each one.
+        HashMap<String, Integer> globals = new HashMap<>();
+        HashMap<String, ObjectFile> definedIn = new HashMap<>();
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectFile object = objects.get(i);
+            for (ObjectFile.Label label : object.getLabels()) {
+                if (!label.global) continue;
+                ObjectFile previous = definedIn.putIfAbsent(label.name, object);
+                if (previous != null) {
+                    errors.add(error(object, "global label \"" + label.name + "\" is also defined in " + previous.getName()));
+                    continue;
+                }
+                globals.put(label.name, sectionAddress(label.section, textBase[i], dataBase[i]) + label.offset);
+            }
+        }
+        if (errors.errorsOccurred()) {
+            throw new AssemblyException(errors);
+        }
+
+        Globals.symbolTable.clear();
+        Globals.memory.clear();
+        ArrayList<ProgramStatement> machineList = new ArrayList<>();
+        HashMap<String, RISCVprogram> sources = new HashMap<>();
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectFile object = objects.get(i);
+            // Patched machine code by offset; the object itself is left as it is so it can be linked again.
+            HashMap<Integer, Integer> text = new HashMap<>();
+            for (ObjectFile.Statement statement : object.getText()) {
+                text.put(statement.offset, statement.binary);
+            }
+            int[] data = object.getData().clone();
+            for (Relocation relocation : object.getRelocations()) {
+                int symbol;
+                if (relocation.getSymbol().equals(ObjectFile.TEXT_SECTION)) {
+                    symbol = textBase[i];
+                } else if (relocation.getSymbol().equals(ObjectFile.DATA_SECTION)) {
+                    symbol = dataBase[i];
+                } else if (globals.containsKey(relocation.getSymbol())) {
+                    symbol = globals.get(relocation.getSymbol());
+                } else {
+                    errors.add(error(object, "label \"" + relocation.getSymbol() + "\" is not defined in any object"));
+                    continue;
+                }
+                int value = relocation.value(symbol, textBase[i] + relocation.getPC());
+                if (!relocation.fits(value)) {
+                    errors.add(error(object, "\"" + relocation.getSymbol() + "\" is out of range of the "
+                            + relocation.getKind() + " at " + Binary.intToHexString(textBase[i] + relocation.getAddress())));
+                } else if (relocation.getKind() == Relocation.Kind.DATA) {
+                    // A .dword holds the address sign-extended, as the assembler stores it
+                    setData(data, relocation.getAddress(), value, relocation.getLength());
+                } else {
+                    Integer binary = text.get(relocation.getAddress());
+                    if (binary != null) {
+                        text.put(relocation.getAddress(), relocation.patch(binary, value));
+                    }
+                }
+            }
+            try {
+                for (int word = 0; word < data.length; word++) {
+                    if (data[word] != 0) {
+                        Globals.memory.setRawWord(dataBase[i] + 4 * word, data[word]);
+                    }
+                }
+                for (ObjectFile.Statement statement : object.getText()) {
+                    RISCVprogram source = sources.computeIfAbsent(statement.file, RISCVprogram::new);
+                    ProgramStatement linked = new ProgramStatement(source, statement.source, statement.line,
+                            text.get(statement.offset), textBase[i] + statement.offset);
+                    Globals.memory.setStatement(linked.getAddress(), linked);
+                    machineList.add(linked);
+                }
+            } catch (AddressErrorException e) {
+                errors.add(error(object, "cannot be placed at " + Binary.intToHexString(e.getAddress())));
+            }
+        }
+        if (errors.errorsOccurred()) {
+            throw new AssemblyException(errors);
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            for (ObjectFile.Label label : objects.get(i).getLabels()) {
+                if (label.global) {
+                    Globals.symbolTable.addSymbol(new Symbol(label.name,
+                            sectionAddress(label.section, textBase[i], dataBase[i]) + label.offset,
+                            label.section.equals(ObjectFile.DATA_SECTION)));
+                }
+            }
+        }
+        // As after assembling, make sure I/O "file descriptors" are initialized for a new program run
+        SystemIO.resetFiles();
+        Collections.sort(machineList);
+        return machineList;
+    }
+
+    private static int sectionAddress(String section, int textBase, int dataBase) {
+        return section.equals(ObjectFile.DATA_SECTION) ? dataBase : textBase;
+    }
+
+    // Stores the low length bytes of value little-endian at offset in a word array.
+    private static void setData(int[] data, int offset, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            int word = (offset + i) / 4;
+            int shift = (offset + i) % 4 * 8;
+            data[word] = (data[word] & ~(0xFF << shift)) | (int) (value >> (i * 8) & 0xFF) << shift;
+        }
+    }
+
+    private static ErrorMessage error(ObjectFile object, String message) {
+        return new ErrorMessage(new RISCVprogram(object.getName()), 0, 0, message);
+    }
+}
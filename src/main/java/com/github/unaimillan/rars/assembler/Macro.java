@@ -54,6 +54,7 @@ public class Macro {
      * arguments like <code>%arg</code> will be substituted by macro expansion
      */
     private ArrayList<String> args;
+    private BodyLine[] bodyTemplates; // compiled on first expansion, by line after fromLine
 
     public Macro() {
         name = "";
@@ -150,6 +151,18 @@ public class Macro {
      */
 
     public String getSubstitutedLine(int line, TokenList args, long counter, ErrorList errors) {
+        if (bodyTemplates == null) {
+            bodyTemplates = new BodyLine[Math.max(toLine - fromLine, 1)];
+        }
+        int index = line - fromLine;
+        if (index >= 0 && index < bodyTemplates.length) {
+            if (bodyTemplates[index] == null) {
+                bodyTemplates[index] = compileLine(line);
+            }
+            if (bodyTemplates[index].pieces != null) {
+                return bodyTemplates[index].substitute(args, counter, errors);
+            }
+        }
         TokenList tokens = program.getTokenList().get(line - 1);
         String s = program.getSourceLine(line);
 
@@ -179,6 +192,85 @@ public class Macro {
         return s;
     }
 
+    /**
+     * A line of the macro body split up at the parameters and labels to be substituted, so that
+     * each expansion only has to join the pieces.  pieces is null if the line does not allow
+     * that; then the substitution is made as it always was.
+     */
+    private class BodyLine {
+        private String[] pieces;    // text around the slots
+        private Token[] slots;      // tokens substituted, in the order they appear
+        private int[] replacements; // for each slot: the argument number, LABEL or UNKNOWN
+
+        private static final int LABEL = -1;
+        private static final int UNKNOWN = -2;
+
+        private String substitute(TokenList args, long counter, ErrorList errors) {
+            // Errors are reported last token first, as replaceToken works its way through the line.
+            for (int i = slots.length - 1; i >= 0; i--) {
+                if (replacements[i] == UNKNOWN) {
+                    errors.add(new ErrorMessage(program, slots[i].getSourceLine(),
+                            slots[i].getStartPos(), "Unknown macro parameter"));
+                }
+            }
+            StringBuilder line = new StringBuilder(pieces[0]);
+            for (int i = 0; i < slots.length; i++) {
+                if (replacements[i] >= 0) {
+                    line.append(args.get(replacements[i] + 1).toString());
+                } else if (replacements[i] == LABEL) {
+                    line.append(slots[i].getValue()).append("_M").append(counter);
+                } else {
+                    line.append(slots[i].getValue());
+                }
+                line.append(pieces[i + 1]);
+            }
+            return line.toString();
+        }
+    }
+
+    // replaceToken() substitutes the first occurrence of the token's text.  Provided that is where
+    // the token itself is for every token substituted, the line can be split up at those places
+    // once and for all.
+    private BodyLine compileLine(int line) {
+        BodyLine compiled = new BodyLine();
+        TokenList tokens = program.getTokenList().get(line - 1);
+        String s = program.getSourceLine(line);
+        ArrayList<Token> slots = new ArrayList<>();
+        ArrayList<Integer> replacements = new ArrayList<>();
+        for (Token token : tokens) {
+            int replacement;
+            if (tokenIsMacroParameter(token.getValue(), true)) {
+                replacement = this.args.indexOf(token.getValue());
+                if (replacement < 0) {
+                    replacement = BodyLine.UNKNOWN;
+                }
+            } else if (tokenIsMacroLabel(token.getValue())) {
+                replacement = BodyLine.LABEL;
+            } else {
+                continue;
+            }
+            if (s == null || s.indexOf(token.getValue()) != token.getStartPos() - 1) {
+                return compiled;
+            }
+            slots.add(token);
+            replacements.add(replacement);
+        }
+        compiled.pieces = new String[slots.size() + 1];
+        int end = 0;
+        for (int i = 0; i < slots.size(); i++) {
+            int start = slots.get(i).getStartPos() - 1;
+            compiled.pieces[i] = s.substring(end, start);
+            end = start + slots.get(i).getValue().length();
+        }
+        compiled.pieces[slots.size()] = s.substring(end);
+        compiled.slots = slots.toArray(new Token[0]);
+        compiled.replacements = new int[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            compiled.replacements[i] = replacements.get(i);
+        }
+        return compiled;
+    }
+
 
     /**
      * returns true if <code>value</code> is name of a label defined in this macro's body.
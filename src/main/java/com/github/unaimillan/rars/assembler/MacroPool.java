@@ -3,6 +3,7 @@ package com.github.unaimillan.rars.assembler;
 import com.github.unaimillan.rars.RISCVprogram;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /*
 Copyright (c) 2013.
@@ -47,9 +48,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class MacroPool {
     private final RISCVprogram program;
     /**
-     * List of macros defined by now
+     * Macros defined by now, indexed by name and then by argument count
      */
-    private final ArrayList<Macro> macroList;
+    private final HashMap<String, HashMap<Integer, Macro>> macroIndex;
     /**
      * @see #beginMacro(Token)
      */
@@ -69,7 +70,7 @@ public class MacroPool {
      */
     public MacroPool(RISCVprogram program) {
         this.program = program;
-        macroList = new ArrayList<>();
+        macroIndex = new HashMap<>();
         callStack = new ArrayList<>();
         callStackOrigLines = new ArrayList<>();
         current = null;
@@ -80,7 +81,7 @@ public class MacroPool {
      * This method will be called by parser when reached <code>.macro</code>
      * directive.<br>
      * Instantiates a new {@link Macro} object and stores it in {@link #current}
-     * . {@link #current} will be added to {@link #macroList} by
+     * . {@link #current} will be added to {@link #macroIndex} by
      * {@link #commitMacro(Token)}
      *
      * @param nameToken Token containing name of macro after <code>.macro</code> directive
@@ -97,7 +98,7 @@ public class MacroPool {
     /**
      * This method will be called by parser when reached <code>.end_macro</code>
      * directive. <br>
-     * Adds/Replaces {@link #current} macro into the {@link #macroList}.
+     * Adds/Replaces {@link #current} macro into the {@link #macroIndex}.
      *
      * @param endToken Token containing <code>.end_macro</code> directive in source code
      */
@@ -106,7 +107,12 @@ public class MacroPool {
         current.setToLine(endToken.getSourceLine());
         current.setOriginalToLine(endToken.getOriginalSourceLine());
         current.readyForCommit();
-        macroList.add(current);
+        HashMap<Integer, Macro> byArity = macroIndex.computeIfAbsent(current.getName(), k -> new HashMap<>());
+        Macro existing = byArity.get(current.getArgs().size());
+        // the definition starting on the latest line wins, as it did with the linear search
+        if (existing == null || existing.getFromLine() < current.getFromLine()) {
+            byArity.put(current.getArgs().size(), current);
+        }
         current = null;
     }
 
@@ -120,16 +126,9 @@ public class MacroPool {
     public Macro getMatchingMacro(TokenList tokens, int callerLine) {
         if (tokens.size() < 1)
             return null;
-        Macro ret = null;
-        Token firstToken = tokens.get(0);
-        for (Macro macro : macroList) {
-            if (macro.getName().equals(firstToken.getValue())
-                    && macro.getArgs().size() + 1 == tokens.size()
-                    //&& macro.getToLine() < callerLine  // condition removed; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
-                    && (ret == null || ret.getFromLine() < macro.getFromLine()))
-                ret = macro;
-        }
-        return ret;
+        HashMap<Integer, Macro> byArity = macroIndex.get(tokens.get(0).getValue());
+        // No check that the macro ends before callerLine; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
+        return (byArity == null) ? null : byArity.get(tokens.size() - 1);
     }
 
     /**
@@ -138,10 +137,7 @@ public class MacroPool {
      * by now, not concerning arguments count.
      */
     public boolean matchesAnyMacroName(String value) {
-        for (Macro macro : macroList)
-            if (macro.getName().equals(value))
-                return true;
-        return false;
+        return macroIndex.containsKey(value);
     }
 
 
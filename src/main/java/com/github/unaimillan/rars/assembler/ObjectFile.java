@@ -0,0 +1,319 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.riscv.Instruction;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * A relocatable object: the text and data sections of an assembled program, its labels and
+ * the relocations needed to place it anywhere in memory.  Objects are produced by
+ * {@link Assembler#assembleObject(ArrayList, boolean, boolean)}, saved in ".o" files and
+ * combined into a runnable program by {@link Linker}, so that a library can be assembled
+ * once and linked with many programs.
+ * <p>
+ * Offsets are relative to the start of the section.  Labels that are not defined in the
+ * object are left for the linker to find among the global labels of the other objects.
+ * Only the .text and .data segments can be relocated; code using .ktext, .kdata, .extern
+ * or explicit segment addresses has to be assembled as a whole program.
+ * <p>
+ * The file format is specific to RARS; it is not ELF.
+ */
+public class ObjectFile {
+    public static final String EXTENSION = "o";
+    public static final String TEXT_SECTION = ".text";
+    public static final String DATA_SECTION = ".data";
+    private static final int MAGIC = 0x5241524F; // "RARO"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * One instruction of the text section, with the source it came from.
+     */
+    static class Statement {
+        final int offset;
+        final int binary;
+        final String file;
+        final int line;
+        final String source;
+
+        Statement(int offset, int binary, String file, int line, String source) {
+            this.offset = offset;
+            this.binary = binary;
+            this.file = file;
+            this.line = line;
+            this.source = source;
+        }
+    }
+
+    /**
+     * A label defined in the object.
+     */
+    static class Label {
+        final String name;
+        final String section;
+        final int offset;
+        final boolean global;
+        final String file; // file whose local symbol table it belongs to, or null if global
+
+        Label(String name, String section, int offset, boolean global, String file) {
+            this.name = name;
+            this.section = section;
+            this.offset = offset;
+            this.global = global;
+            this.file = file;
+        }
+    }
+
+    private final String name;
+    private final boolean rv64;
+    private int textSize;
+    private int[] data;
+    private final ArrayList<Statement> text = new ArrayList<>();
+    private final ArrayList<Label> labels = new ArrayList<>();
+    private final ArrayList<Relocation> relocations = new ArrayList<>();
+    private ErrorList warnings = new ErrorList();
+
+    private ObjectFile(String name, boolean rv64) {
+        this.name = name;
+        this.rv64 = rv64;
+    }
+
+    /**
+     * @return the file the object was read from, or the main source file it was assembled from
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the object was assembled for RV64
+     */
+    public boolean isRV64() {
+        return rv64;
+    }
+
+    /**
+     * @return warnings produced while assembling the object; empty for objects read from a file
+     */
+    public ErrorList getWarnings() {
+        return warnings;
+    }
+
+    int getTextSize() {
+        return textSize;
+    }
+
+    int getDataSize() {
+        return data.length * 4;
+    }
+
+    int[] getData() {
+        return data;
+    }
+
+    ArrayList<Statement> getText() {
+        return text;
+    }
+
+    ArrayList<Label> getLabels() {
+        return labels;
+    }
+
+    ArrayList<Relocation> getRelocations() {
+        return relocations;
+    }
+
+    /**
+     * Builds an object from a program the assembler has just placed in memory.
+     *
+     * @param programs    the source files that were assembled, the first being the main file
+     * @param machineList the assembled statements
+     * @param recorded    relocations recorded by the assembler, with absolute addresses
+     * @param dataEnd     address following the last byte of data
+     * @param warnings    warnings from the assembly
+     * @return the object
+     * @throws AssemblyException if part of the program cannot be relocated
+     */
+    static ObjectFile create(ArrayList<RISCVprogram> programs, ArrayList<ProgramStatement> machineList,
+                             ArrayList<Relocation> recorded, int dataEnd, ErrorList warnings) throws AssemblyException {
+        ErrorList errors = new ErrorList();
+        ObjectFile object = new ObjectFile(programs.get(0).getFilename(), InstructionSet.rv64);
+        object.warnings = warnings;
+        int textEnd = Memory.textBaseAddress;
+        for (ProgramStatement statement : machineList) {
+            if (statement.getAddress() < Memory.textBaseAddress || statement.getAddress() >= Memory.textLimitAddress) {
+                errors.add(new ErrorMessage(statement.getSourceProgram(), statement.getSourceLine(), 0,
+                        "Only code in the .text segment can be relocated"));
+                continue;
+            }
+            textEnd = Math.max(textEnd, statement.getAddress() + Instruction.INSTRUCTION_LENGTH);
+            object.text.add(new Statement(statement.getAddress() - Memory.textBaseAddress, statement.getBinaryStatement(),
+                    statement.getSourceProgram().getFilename(), statement.getSourceLine(),
+                    statement.getSource() == null ? "" : statement.getSource()));
+        }
+        object.textSize = textEnd - Memory.textBaseAddress;
+        object.data = new int[(Math.max(dataEnd - Memory.dataBaseAddress, 0) + 3) / 4];
+        try {
+            for (int i = 0; i < object.data.length; i++) {
+                object.data[i] = Globals.memory.getRawWord(Memory.dataBaseAddress + 4 * i);
+            }
+        } catch (AddressErrorException e) {
+            errors.add(new ErrorMessage(programs.get(0), 0, 0, "Data segment cannot be read at " + e.getAddress()));
+        }
+
+        for (Symbol symbol : Globals.symbolTable.getAllSymbols()) {
+            object.addLabel(symbol, true, null, programs.get(0), errors);
+        }
+        for (RISCVprogram program : programs) {
+            for (Symbol symbol : program.getLocalSymbolTable().getAllSymbols()) {
+                object.addLabel(symbol, false, program.getFilename(), program, errors);
+            }
+        }
+
+        for (Relocation relocation : recorded) {
+            boolean inData = relocation.getKind() == Relocation.Kind.DATA;
+            int offset = relocation.getAddress() - (inData ? Memory.dataBaseAddress : Memory.textBaseAddress);
+            if (offset < 0 || offset >= (inData ? object.getDataSize() : object.textSize)) {
+                continue; // already reported above
+            }
+            String symbol = relocation.getSymbol();
+            int addend = relocation.getAddend();
+            int address = relocation.getProgram().getLocalSymbolTable().getAddressLocalOrGlobal(symbol);
+            if (address != SymbolTable.NOT_FOUND) {
+                // Defined here, so only its position within the section needs to be kept.
+                symbol = object.sectionOf(address);
+                if (symbol == null) {
+                    continue; // already reported with the label
+                }
+                addend += address - sectionBase(symbol);
+            }
+            object.relocations.add(new Relocation(relocation.getKind(), offset, relocation.getPC() - Memory.textBaseAddress,
+                    relocation.getLength(), symbol, addend, null));
+        }
+        if (errors.errorsOccurred()) {
+            throw new AssemblyException(errors);
+        }
+        return object;
+    }
+
+    private void addLabel(Symbol symbol, boolean global, String file, RISCVprogram program, ErrorList errors) {
+        String section = sectionOf(symbol.getAddress());
+        if (section == null) {
+            errors.add(new ErrorMessage(program, 0, 0, "Label \"" + symbol.getName()
+                    + "\" is outside the .text and .data segments and cannot be relocated"));
+            return;
+        }
+        labels.add(new Label(symbol.getName(), section, symbol.getAddress() - sectionBase(section), global, file));
+    }
+
+    // The section holding an address of the assembled program, or null.  A label may be at the very end of one.
+    private String sectionOf(int address) {
+        if (address >= Memory.textBaseAddress && address <= Memory.textBaseAddress + textSize) {
+            return TEXT_SECTION;
+        }
+        if (address >= Memory.dataBaseAddress && address <= Memory.dataBaseAddress + getDataSize()) {
+            return DATA_SECTION;
+        }
+        return null;
+    }
+
+    private static int sectionBase(String section) {
+        return section.equals(TEXT_SECTION) ? Memory.textBaseAddress : Memory.dataBaseAddress;
+    }
+
+    /**
+     * Saves the object.
+     *
+     * @param file where to write it
+     * @throws IOException if it cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(rv64);
+            out.writeInt(textSize);
+            out.writeInt(text.size());
+            for (Statement statement : text) {
+                out.writeInt(statement.offset);
+                out.writeInt(statement.binary);
+                out.writeUTF(statement.file);
+                out.writeInt(statement.line);
+                out.writeUTF(statement.source);
+            }
+            out.writeInt(data.length);
+            for (int word : data) {
+                out.writeInt(word);
+            }
+            out.writeInt(labels.size());
+            for (Label label : labels) {
+                out.writeUTF(label.name);
+                out.writeUTF(label.section);
+                out.writeInt(label.offset);
+                out.writeBoolean(label.global);
+                out.writeUTF(label.file == null ? "" : label.file);
+            }
+            out.writeInt(relocations.size());
+            for (Relocation relocation : relocations) {
+                out.writeUTF(relocation.getKind().name());
+                out.writeInt(relocation.getAddress());
+                out.writeInt(relocation.getPC());
+                out.writeInt(relocation.getLength());
+                out.writeUTF(relocation.getSymbol());
+                out.writeInt(relocation.getAddend());
+            }
+        }
+    }
+
+    /**
+     * Loads an object saved by {@link #write(File)}.
+     *
+     * @param file the ".o" file
+     * @return the object
+     * @throws IOException if it cannot be read or is not an object file
+     */
+    public static ObjectFile read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a RARS object file");
+            }
+            ObjectFile object = new ObjectFile(file.getPath(), in.readBoolean());
+            object.textSize = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                object.text.add(new Statement(in.readInt(), in.readInt(), in.readUTF(), in.readInt(), in.readUTF()));
+            }
+            object.data = new int[in.readInt()];
+            for (int i = 0; i < object.data.length; i++) {
+                object.data[i] = in.readInt();
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String section = in.readUTF();
+                int offset = in.readInt();
+                boolean global = in.readBoolean();
+                String source = in.readUTF();
+                object.labels.add(new Label(name, section, offset, global, source.isEmpty() ? null : source));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Relocation.Kind kind;
+                try {
+                    kind = Relocation.Kind.valueOf(in.readUTF());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + " has an unknown relocation");
+                }
+                object.relocations.add(new Relocation(kind, in.readInt(), in.readInt(), in.readInt(), in.readUTF(), in.readInt(), null));
+            }
+            return object;
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+}
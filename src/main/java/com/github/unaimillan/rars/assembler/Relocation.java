@@ -0,0 +1,152 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.RISCVprogram;
+
+/**
+ * A place in machine code or data that holds (part of) the address of a symbol, and so has
+ * to be rewritten when the code is linked at a different address.
+ * <p>
+ * While assembling, the address and pc are absolute and the symbol is the label as written in
+ * the source.  In an {@link ObjectFile} they are offsets into the object's text (or data, for
+ * {@link Kind#DATA}) section and the symbol is either an external label or one of
+ * {@link ObjectFile#TEXT_SECTION} and {@link ObjectFile#DATA_SECTION}, with the offset of the
+ * label within that section as addend.
+ */
+public class Relocation {
+
+    /**
+     * How the value is computed and where it is stored.  PC-relative kinds use the symbol
+     * address minus the pc of the relocation, the others use the symbol address itself.
+     */
+    public enum Kind {
+        BRANCH,       // B-type immediate, relative to the branch
+        JAL,          // J-type immediate, relative to the jump
+        PCREL_HI20,   // U-type immediate (auipc), relative to the auipc
+        PCREL_LO12_I, // I-type immediate, relative to the auipc it is paired with
+        PCREL_LO12_S, // S-type immediate, relative to the auipc it is paired with
+        HI20,         // U-type immediate (lui)
+        LO12_I,       // I-type immediate
+        LO12_S,       // S-type immediate
+        DATA          // the whole value of a .byte, .half, .word or .dword
+    }
+
+    private final Kind kind;
+    private final int address;
+    private final int pc;
+    private final int length;
+    private final String symbol;
+    private final int addend;
+    private final RISCVprogram program;
+
+    /**
+     * @param kind    how the value is stored
+     * @param address where the value is stored
+     * @param pc      what the value is relative to, for PC-relative kinds
+     * @param length  number of bytes stored, for {@link Kind#DATA}
+     * @param symbol  the symbol whose address is stored
+     * @param addend  added to the symbol address
+     * @param program program whose local symbol table the symbol is looked up in while assembling, or null
+     */
+    public Relocation(Kind kind, int address, int pc, int length, String symbol, int addend, RISCVprogram program) {
+        this.kind = kind;
+        this.address = address;
+        this.pc = pc;
+        this.length = length;
+        this.symbol = symbol;
+        this.addend = addend;
+        this.program = program;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public int getPC() {
+        return pc;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getAddend() {
+        return addend;
+    }
+
+    public RISCVprogram getProgram() {
+        return program;
+    }
+
+    /**
+     * Computes the value to store given where the symbol and the relocation ended up.
+     *
+     * @param symbolAddress final address of the symbol
+     * @param pcAddress     final address of the relocation's pc
+     * @return the address or offset to store
+     */
+    public int value(int symbolAddress, int pcAddress) {
+        switch (kind) {
+            case BRANCH:
+            case JAL:
+            case PCREL_HI20:
+            case PCREL_LO12_I:
+            case PCREL_LO12_S:
+                return symbolAddress + addend - pcAddress;
+            default:
+                return symbolAddress + addend;
+        }
+    }
+
+    /**
+     * @param value a value computed by {@link #value(int, int)}
+     * @return true if the value can be encoded in this kind of relocation
+     */
+    public boolean fits(int value) {
+        switch (kind) {
+            case BRANCH:
+                return value >= -(1 << 12) && value < (1 << 12) && (value & 1) == 0;
+            case JAL:
+                return value >= -(1 << 20) && value < (1 << 20) && (value & 1) == 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Stores a value into the immediate field of an instruction.  Not for {@link Kind#DATA}.
+     *
+     * @param word  the instruction
+     * @param value a value computed by {@link #value(int, int)}
+     * @return the instruction with its immediate replaced
+     */
+    public int patch(int word, int value) {
+        switch (kind) {
+            case BRANCH:
+                return (word & 0x01FFF07F) | ((value >> 12) & 1) << 31 | ((value >> 5) & 0x3F) << 25
+                        | ((value >> 1) & 0xF) << 8 | ((value >> 11) & 1) << 7;
+            case JAL:
+                return (word & 0xFFF) | ((value >> 20) & 1) << 31 | ((value >> 1) & 0x3FF) << 21
+                        | ((value >> 11) & 1) << 20 | ((value >> 12) & 0xFF) << 12;
+            case PCREL_HI20:
+            case HI20:
+                // add 0x800 to compensate for sign extension of the low part
+                return (word & 0xFFF) | ((value + 0x800) & 0xFFFFF000);
+            case PCREL_LO12_I:
+            case LO12_I:
+                return (word & 0xFFFFF) | (value << 20);
+            case PCREL_LO12_S:
+            case LO12_S:
+                return (word & 0x01FFF07F) | ((value >> 5) & 0x7F) << 25 | (value & 0x1F) << 7;
+            default:
+                throw new IllegalStateException("Data relocations are not stored in instructions");
+        }
+    }
+}
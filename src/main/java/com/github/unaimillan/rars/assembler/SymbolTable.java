@@ -6,6 +6,9 @@ import com.github.unaimillan.rars.Globals;
 import com.github.unaimillan.rars.util.Binary;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -45,7 +48,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class SymbolTable {
     private static final String startLabel = "main";
     private final String filename;
-    private ArrayList<Symbol> table;
+    // Symbols by name, kept in insertion order for display
+    private LinkedHashMap<String, Symbol> table;
+    // Symbols by address, ordered as unsigned so kernel addresses sort above user ones.
+    // Several labels may share an address; each list is in insertion order.
+    private TreeMap<Integer, ArrayList<Symbol>> addressIndex;
     // Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in
     // kernel address space so highly unlikely that any symbol will have this as
     // its associated address!
@@ -59,7 +66,7 @@ public class SymbolTable {
      */
     public SymbolTable(String filename) {
         this.filename = filename;
-        this.table = new ArrayList<>();
+        clear();
     }
 
     /**
@@ -76,10 +83,24 @@ public class SymbolTable {
         if (getSymbol(label) != null) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token.getStartPos(), "label \"" + label + "\" already defined"));
         } else {
-            table.add(new Symbol(label, address, b));
-            if (Globals.debug)
-                System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
+            addSymbol(new Symbol(label, address, b));
+        }
+    }
+
+    /**
+     * Adds an already constructed Symbol, e.g. one restored from an assembled image.
+     * Does nothing if a symbol with the same name is already present.
+     *
+     * @param symbol The Symbol to add.
+     **/
+
+    public void addSymbol(Symbol symbol) {
+        if (table.putIfAbsent(symbol.getName(), symbol) != null) {
+            return;
         }
+        addressIndex.computeIfAbsent(symbol.getAddress(), k -> new ArrayList<>()).add(symbol);
+        if (Globals.debug)
+            System.out.println("The symbol " + symbol.getName() + " with address " + symbol.getAddress() + " has been added to the " + this.filename + " symbol table.");
     }
 
 
@@ -93,13 +114,15 @@ public class SymbolTable {
 
     public void removeSymbol(Token token) {
         String label = token.getValue();
-        for (int i = 0; i < table.size(); i++) {
-            if (table.get(i).getName().equals(label)) {
-                table.remove(i);
-                if (Globals.debug)
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                break;
+        Symbol symbol = table.remove(label);
+        if (symbol != null) {
+            ArrayList<Symbol> atAddress = addressIndex.get(symbol.getAddress());
+            atAddress.remove(symbol);
+            if (atAddress.isEmpty()) {
+                addressIndex.remove(symbol.getAddress());
             }
+            if (Globals.debug)
+                System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
         }
     }
 
@@ -111,12 +134,8 @@ public class SymbolTable {
      * @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
      **/
     public int getAddress(String s) {
-        for (Symbol sym : table) {
-            if (sym.getName().equals(s)) {
-                return sym.getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol sym = table.get(s);
+        return (sym == null) ? NOT_FOUND : sym.getAddress();
     }
 
     /**
@@ -141,12 +160,7 @@ public class SymbolTable {
      **/
 
     public Symbol getSymbol(String s) {
-        for (Symbol sym : table) {
-            if (sym.getName().equals(s)) {
-                return sym;
-            }
-        }
-        return null;
+        return table.get(s);
     }
 
     /**
@@ -163,12 +177,8 @@ public class SymbolTable {
         } catch (NumberFormatException e) {
             return null;
         }
-        for (Symbol sym : table) {
-            if (sym.getAddress() == address) {
-                return sym;
-            }
-        }
-        return null;
+        ArrayList<Symbol> atAddress = addressIndex.get(address);
+        return (atAddress == null) ? null : atAddress.get(0);
     }
 
     /**
@@ -183,6 +193,34 @@ public class SymbolTable {
         return (sym == null) ? Globals.symbolTable.getSymbolGivenAddress(s) : sym;
     }
 
+    /**
+     * Produce the Symbol with the highest address that is not above the given one,
+     * i.e. the label a program counter or data address falls under.  Addresses are
+     * compared as unsigned values.
+     *
+     * @param address the address to symbolise
+     * @return nearest Symbol at or below address, null if there is none.
+     **/
+    public Symbol getSymbolAtOrBelow(int address) {
+        Map.Entry<Integer, ArrayList<Symbol>> entry = addressIndex.floorEntry(address);
+        return (entry == null) ? null : entry.getValue().get(0);
+    }
+
+    /**
+     * Produce the nearest Symbol at or below the given address from either the local
+     * or global symbol table, whichever is closer.
+     *
+     * @param address the address to symbolise
+     * @return nearest Symbol at or below address, null if there is none in either table.
+     **/
+    public Symbol getSymbolAtOrBelowLocalOrGlobal(int address) {
+        Symbol local = this.getSymbolAtOrBelow(address);
+        Symbol global = Globals.symbolTable.getSymbolAtOrBelow(address);
+        if (local == null) return global;
+        if (global == null) return local;
+        return (Integer.compareUnsigned(global.getAddress(), local.getAddress()) > 0) ? global : local;
+    }
+
 
     /**
      * For obtaining the Data Symbols.
@@ -192,7 +230,7 @@ public class SymbolTable {
 
     public ArrayList<Symbol> getDataSymbols() {
         ArrayList<Symbol> list = new ArrayList<>();
-        for (Symbol sym : table) {
+        for (Symbol sym : table.values()) {
             if (sym.getType()) {
                 list.add(sym);
             }
@@ -209,7 +247,7 @@ public class SymbolTable {
 
     public ArrayList<Symbol> getTextSymbols() {
         ArrayList<Symbol> list = new ArrayList<>();
-        for (Symbol sym : table) {
+        for (Symbol sym : table.values()) {
             if (!sym.getType()) {
                 list.add(sym);
             }
@@ -225,9 +263,7 @@ public class SymbolTable {
      **/
 
     public ArrayList<Symbol> getAllSymbols() {
-        ArrayList<Symbol> list = new ArrayList<>();
-        list.addAll(table);
-        return list;
+        return new ArrayList<>(table.values());
     }
 
     /**
@@ -241,17 +277,19 @@ public class SymbolTable {
     }
 
     /**
-     * Creates a fresh arrayList for a new table.
+     * Creates a fresh table and address index for a new table.
      **/
 
     public void clear() {
-        table = new ArrayList<>();
+        table = new LinkedHashMap<>();
+        addressIndex = new TreeMap<>(Integer::compareUnsigned);
     }
 
     /**
      * Fix address in symbol table entry.  Any and all entries that match the original
      * address will be modified to contain the replacement address. There is no effect,
-     * if none of the addresses matches.
+     * if none of the addresses matches.  Symbol addresses must only be changed through
+     * this method so the address index stays consistent.
      *
      * @param originalAddress    Address associated with 0 or more symtab entries.
      * @param replacementAddress Any entry that has originalAddress will have its
@@ -259,11 +297,14 @@ public class SymbolTable {
      */
 
     public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-        Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-        while (label != null) {
+        ArrayList<Symbol> labels = addressIndex.remove(originalAddress);
+        if (labels == null) {
+            return;
+        }
+        for (Symbol label : labels) {
             label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
         }
+        addressIndex.computeIfAbsent(replacementAddress, k -> new ArrayList<>()).addAll(labels);
     }
 
     /**
@@ -275,4 +316,4 @@ public class SymbolTable {
     public static String getStartLabel() {
         return startLabel;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.RISCVprogram;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers tokenized source files between assemblies so that files which have not
+ * changed are not read and tokenized again.
+ * <p>
+ * An entry is keyed by file name and is only reused if the SHA-256 of the file and of every
+ * file it ".include"s, directly or transitively, still matches and the instruction set
+ * (RV32 or RV64) is the same one it was tokenized against.  Layout and symbol resolution
+ * are always redone by the assembler, so a reused program is assembled exactly as a freshly
+ * tokenized one would be.
+ * <p>
+ * Programs are held through soft references and may be dropped under memory pressure.
+ * <p>
+ * The cache may be used from several threads at once.  It keeps its own copy of each program,
+ * which is never assembled, and {@link #lookup} returns a new copy every time (see
+ * {@link RISCVprogram#copyTokenizedSource()}), so assemblies never share the tokens, symbol
+ * tables or statement lists that assembling changes.
+ */
+public final class TokenCache {
+
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private TokenCache() {
+    }
+
+    private static class Entry {
+        final SoftReference<RISCVprogram> program;
+        final byte[] digest;
+        final String[] includes;
+        final byte[][] includeDigests;
+        final boolean rv64;
+
+        Entry(RISCVprogram program, byte[] digest, String[] includes, byte[][] includeDigests, boolean rv64) {
+            this.program = new SoftReference<>(program);
+            this.digest = digest;
+            this.includes = includes;
+            this.includeDigests = includeDigests;
+            this.rv64 = rv64;
+        }
+    }
+
+    /**
+     * Computes the content hash used to validate cache entries.
+     *
+     * @param filename file to hash
+     * @return SHA-256 of the file contents, or null if the file cannot be read
+     */
+    public static byte[] digest(String filename) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(filename)));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a previously tokenized program for a file whose contents have not changed.
+     *
+     * @param filename file name as passed to {@link RISCVprogram#readSource(String)}
+     * @param digest   current hash of the file, as returned by {@link #digest(String)}
+     * @return a copy of the tokenized program for the caller alone, or null if there is no usable entry
+     */
+    public static RISCVprogram lookup(String filename, byte[] digest) {
+        Entry entry = entries.get(filename);
+        if (entry == null || digest == null) {
+            return null;
+        }
+        RISCVprogram program = entry.program.get();
+        if (program == null || entry.rv64 != InstructionSet.rv64 || !Arrays.equals(entry.digest, digest)) {
+            entries.remove(filename, entry);
+            return null;
+        }
+        for (int i = 0; i < entry.includes.length; i++) {
+            if (!Arrays.equals(entry.includeDigests[i], digest(entry.includes[i]))) {
+                entries.remove(filename, entry);
+                return null;
+            }
+        }
+        return program.copyTokenizedSource();
+    }
+
+    /**
+     * Records a copy of a freshly tokenized program; the program itself is left to the caller.
+     *
+     * @param program a program on which {@link RISCVprogram#tokenize()} has just succeeded
+     * @param digest  hash of the file taken before it was read, as returned by {@link #digest(String)}
+     */
+    public static void store(RISCVprogram program, byte[] digest) {
+        if (digest == null || program.getTokenizer() == null) {
+            return;
+        }
+        ArrayList<String> included = program.getTokenizer().getIncludedFiles();
+        String[] includes = included.toArray(new String[0]);
+        byte[][] includeDigests = new byte[includes.length][];
+        for (int i = 0; i < includes.length; i++) {
+            includeDigests[i] = digest(includes[i]);
+            if (includeDigests[i] == null) {
+                return;
+            }
+        }
+        entries.put(program.getFilename(), new Entry(program.copyTokenizedSource(), digest, includes, includeDigests,
+                InstructionSet.rv64));
+    }
+
+    /**
+     * Lists the files a cached program was built from.
+     *
+     * @param filename file name the program was stored under
+     * @return the file itself followed by everything it includes; just the file if it is not cached
+     */
+    public static ArrayList<String> getDependencies(String filename) {
+        ArrayList<String> dependencies = new ArrayList<>();
+        dependencies.add(filename);
+        Entry entry = entries.get(filename);
+        if (entry != null) {
+            dependencies.addAll(Arrays.asList(entry.includes));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Forgets all tokenized programs.
+     */
+    public static void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+
+/**
+ * Interns the spellings of tokens together with their types, so that a spelling that recurs
+ * throughout a program, such as an operator, register name, directive, label or small constant,
+ * is classified by {@link TokenTypes#matchTokenType(String)} only once and is shared by every
+ * token with that spelling.
+ * <p>
+ * Spellings are looked up by a range of characters within a source line, so a spelling seen
+ * before costs neither a new String nor a classification.  Whether a spelling is an operator
+ * depends on the instruction set, so the table starts over when that changes.  A table belongs
+ * to one tokenizer and is not thread-safe.
+ */
+class TokenSpellings {
+    private static final int MAX_LENGTH = 32;        // longer spellings are rare enough not to keep
+    private static final int MAX_ENTRIES = 1 << 16;  // a bound on memory for huge generated sources
+
+    private int[] hashes;
+    private String[] values;
+    private TokenTypes[] types;
+    private int entries;
+    private InstructionSet instructionSet;
+    private boolean rv64;
+
+    TokenSpellings() {
+        clear(64);
+    }
+
+    /**
+     * Finds a spelling, adding it if it is new.
+     *
+     * @param line  the source line
+     * @param start index of the first character of the spelling
+     * @param end   index following the last character
+     * @return the slot of the spelling, or -1 if it is not kept; the caller has to classify it itself then
+     */
+    int lookup(String line, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return -1;
+        }
+        if (instructionSet != Globals.instructionSet || rv64 != InstructionSet.rv64) {
+            clear(values.length);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int mask = values.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (String value; (value = values[slot]) != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && value.length() == length && line.regionMatches(start, value, 0, length)) {
+                return slot;
+            }
+        }
+        if (entries >= MAX_ENTRIES) {
+            return -1;
+        }
+        String value = line.substring(start, end);
+        hashes[slot] = hash;
+        values[slot] = value;
+        types[slot] = TokenTypes.matchTokenType(value);
+        if (++entries * 2 > values.length) {
+            grow();
+            return lookup(line, start, end);
+        }
+        return slot;
+    }
+
+    String value(int slot) {
+        return values[slot];
+    }
+
+    TokenTypes type(int slot) {
+        return types[slot];
+    }
+
+    private void clear(int capacity) {
+        hashes = new int[capacity];
+        values = new String[capacity];
+        types = new TokenTypes[capacity];
+        entries = 0;
+        instructionSet = Globals.instructionSet;
+        rv64 = InstructionSet.rv64;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        String[] oldValues = values;
+        TokenTypes[] oldTypes = types;
+        hashes = new int[oldValues.length * 2];
+        values = new String[oldValues.length * 2];
+        types = new TokenTypes[oldValues.length * 2];
+        int mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+                types[slot] = oldTypes[i];
+            }
+        }
+    }
+}
@@ -145,38 +145,43 @@ public enum TokenTypes {
         // This is needed because most immediate operands limited to 16 bits
         // others limited to 5 bits unsigned (shift amounts) others 32 bits.
 
-        try {
-
-            int i = Binary.stringToInt(value);   // KENV 1/6/05
-
-            // Comments from 2008 and 2005 were removed - Benjamin Landers 2019
+        // Only something starting with a digit or sign can be an integer; testing anything else would
+        // just throw and catch two exceptions.
+        char first = value.charAt(0);
+        if (('0' <= first && first <= '9') || first == '-' || first == '+') {
+            try {
 
-            // shift operands must be in range 0-31
-            if (i >= 0 && i <= 31) {
-                return TokenTypes.INTEGER_5;
-            }
-            if (i >= 0 && i <= 64) {
-                return TokenTypes.INTEGER_6;
-            }
-            if (i >= DataTypes.MIN_IMMEDIATE_VALUE && i <= DataTypes.MAX_IMMEDIATE_VALUE) {
-                return TokenTypes.INTEGER_12;
-            }
-            if (i >= 0 && i <= 0xFFF) {
-                return TokenTypes.INTEGER_12U;
-            }
-            if (i >= DataTypes.MIN_UPPER_VALUE && i <= DataTypes.MAX_UPPER_VALUE) {
-                return TokenTypes.INTEGER_20;
+                int i = Binary.stringToInt(value);   // KENV 1/6/05
+
+                // Comments from 2008 and 2005 were removed - Benjamin Landers 2019
+
+                // shift operands must be in range 0-31
+                if (i >= 0 && i <= 31) {
+                    return TokenTypes.INTEGER_5;
+                }
+                if (i >= 0 && i <= 64) {
+                    return TokenTypes.INTEGER_6;
+                }
+                if (i >= DataTypes.MIN_IMMEDIATE_VALUE && i <= DataTypes.MAX_IMMEDIATE_VALUE) {
+                    return TokenTypes.INTEGER_12;
+                }
+                if (i >= 0 && i <= 0xFFF) {
+                    return TokenTypes.INTEGER_12U;
+                }
+                if (i >= DataTypes.MIN_UPPER_VALUE && i <= DataTypes.MAX_UPPER_VALUE) {
+                    return TokenTypes.INTEGER_20;
+                }
+                return TokenTypes.INTEGER_32;  // default when no other type is applicable
+            } catch (NumberFormatException e) {
+                // NO ACTION -- exception suppressed
             }
-            return TokenTypes.INTEGER_32;  // default when no other type is applicable
-        } catch (NumberFormatException e) {
-            // NO ACTION -- exception suppressed
-        }
 
-        try {
-            Binary.stringToLong(value);
-            return TokenTypes.INTEGER_64;
-        } catch (NumberFormatException e) {
-            // NO ACTION -- exception suppressed
+            try {
+                Binary.stringToLong(value);
+                return TokenTypes.INTEGER_64;
+            } catch (NumberFormatException e) {
+                // NO ACTION -- exception suppressed
+            }
         }
 
         // See if it is a real (fixed or floating point) number.  Note that parseDouble()
@@ -56,6 +56,8 @@ public class Tokenizer {
     private ErrorList errors;
     private RISCVprogram sourceRISCVprogram;
     private HashMap<String, String> equivalents; // DPS 11-July-2012
+    private ArrayList<String> includedFiles;
+    private TokenSpellings spellings; // created on first use
     // The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
     // tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
     // TODO: potentially make this automatic
@@ -80,6 +82,21 @@ public class Tokenizer {
         sourceRISCVprogram = program;
     }
 
+    /**
+     * Makes a tokenizer for a copy of the program this one tokenized, as
+     * {@link RISCVprogram#copyTokenizedSource()} does, so that lines tokenized later, as macros
+     * are expanded, belong to the copy and see the same ".eqv" definitions.
+     *
+     * @param program the copy
+     * @return the new tokenizer
+     */
+    public Tokenizer copyFor(RISCVprogram program) {
+        Tokenizer copy = new Tokenizer(program);
+        copy.equivalents = equivalents == null ? null : new HashMap<>(equivalents);
+        copy.includedFiles = includedFiles == null ? null : new ArrayList<>(includedFiles);
+        return copy;
+    }
+
     /**
      * Will tokenize a complete soure program.
      *
@@ -93,7 +110,9 @@ public class Tokenizer {
         equivalents = new HashMap<>(); // DPS 11-July-2012
         ArrayList<TokenList> tokenList = new ArrayList<>();
         //ArrayList source = p.getSourceList();
-        ArrayList<SourceLine> source = processIncludes(p, new HashMap<>()); // DPS 9-Jan-2013
+        HashMap<String, String> inclFiles = new HashMap<>();
+        ArrayList<SourceLine> source = processIncludes(p, inclFiles); // DPS 9-Jan-2013
+        includedFiles = new ArrayList<>(inclFiles.keySet());
         p.setSourceLineList(source);
         TokenList currentLineTokens;
         String sourceLine;
@@ -101,6 +120,17 @@ public class Tokenizer {
             sourceLine = source.get(i).getSource();
             currentLineTokens = this.tokenizeLine(i + 1, sourceLine);
             tokenList.add(currentLineTokens);
+            // Binary files embedded with .incbin are part of the program as much as included sources.
+            for (int ii = 0; ii < currentLineTokens.size() - 1; ii++) {
+                if (currentLineTokens.get(ii).getValue().equalsIgnoreCase(Directives.INCBIN.getName())
+                        && currentLineTokens.get(ii + 1).getType() == TokenTypes.QUOTED_STRING) {
+                    String filename = resolveFilename(source.get(i).getRISCVprogram(), currentLineTokens.get(ii + 1).getValue());
+                    if (!includedFiles.contains(filename)) {
+                        includedFiles.add(filename);
+                    }
+                    break;
+                }
+            }
             // DPS 03-Jan-2013. Related to 11-July-2012. If source code substitution was made
             // based on .eqv directive during tokenizing, the processed line, a String, is
             // not the same object as the original line.  Thus I can use != instead of !equals()
@@ -129,18 +159,14 @@ public class Tokenizer {
         ArrayList<SourceLine> result = new ArrayList<>(source.size());
         for (int i = 0; i < source.size(); i++) {
             String line = source.get(i);
-            TokenList tl = tokenizeLine(program, i + 1, line, false);
             boolean hasInclude = false;
+            // Only lines mentioning the directive are worth tokenizing here.
+            TokenList tl = mentionsInclude(line) ? tokenizeLine(program, i + 1, line, false) : new TokenList();
             for (int ii = 0; ii < tl.size(); ii++) {
                 if (tl.get(ii).getValue().equalsIgnoreCase(Directives.INCLUDE.getName())
                         && (tl.size() > ii + 1)
                         && tl.get(ii + 1).getType() == TokenTypes.QUOTED_STRING) {
-                    String filename = tl.get(ii + 1).getValue();
-                    filename = filename.substring(1, filename.length() - 1); // get rid of quotes
-                    // Handle either absolute or relative pathname for .include file
-                    if (!new File(filename).isAbsolute()) {
-                        filename = new File(program.getFilename()).getParent() + File.separator + filename;
-                    }
+                    String filename = resolveFilename(program, tl.get(ii + 1).getValue());
                     if (inclFiles.containsKey(filename)) {
                         // This is a recursive include.  Generate error message and return immediately.
                         Token t = tl.get(ii + 1);
@@ -171,6 +197,46 @@ public class Tokenizer {
         return result;
     }
 
+    private static boolean mentionsInclude(String line) {
+        String directive = Directives.INCLUDE.getName();
+        for (int dot = line.indexOf('.'); dot >= 0; dot = line.indexOf('.', dot + 1)) {
+            if (line.regionMatches(true, dot, directive, 0, directive.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out the file named by the quoted operand of an ".include" or ".incbin" directive.
+     * A relative pathname is relative to the directory of the file containing the directive.
+     *
+     * @param program the file containing the directive
+     * @param quoted  the operand, including the quotes
+     * @return the pathname of the file
+     */
+    static String resolveFilename(RISCVprogram program, String quoted) {
+        String filename = quoted.substring(1, quoted.length() - 1); // get rid of quotes
+        // Handle either absolute or relative pathname
+        if (!new File(filename).isAbsolute() && program != null && program.getFilename() != null) {
+            String directory = new File(program.getFilename()).getParent();
+            if (directory != null) {
+                filename = directory + File.separator + filename;
+            }
+        }
+        return filename;
+    }
+
+    /**
+     * Files pulled in through ".include" directives, directly or transitively, and binary
+     * files embedded with ".incbin", by the most recent call to {@link #tokenize(RISCVprogram)}.
+     *
+     * @return list of included file paths, or null if no program has been tokenized
+     */
+    public ArrayList<String> getIncludedFiles() {
+        return includedFiles;
+    }
+
     /**
      * Used only to create a token list for the example provided with each instruction
      * specification.
@@ -272,27 +338,34 @@ public class Tokenizer {
      * @return the generated token list for that line
      **/
     public TokenList tokenizeLine(RISCVprogram program, int lineNum, String theLine, boolean doEqvSubstitutes) {
-        TokenTypes tokenType;
         TokenList result = new TokenList();
         if (theLine.length() == 0)
             return result;
-        // will be faster to work with char arrays instead of strings
+        if (Globals.debug)
+            System.out.println("source line --->" + theLine + "<---");
+        scanLine(program, lineNum, theLine, 0, result);
+        if (doEqvSubstitutes) {
+            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
+        }
+        return result;
+    }
+
+    // Adds the tokens of theLine from index linePos on to result.  Tokens are ranges of the
+    // line, so nothing is copied until a token is recorded, and then only if its spelling
+    // has not been seen before.
+    private void scanLine(RISCVprogram program, int lineNum, String theLine, int linePos, TokenList result) {
         char c;
-        char[] line = theLine.toCharArray();
-        int linePos = 0;
-        char[] token = new char[line.length];
-        int tokenPos = 0;
+        int lineLength = theLine.length();
+        int tokenPos = 0; // length of the token so far
         int tokenStartPos = 1;
         boolean insideQuotedString = false;
-        if (Globals.debug)
-            System.out.println("source line --->" + theLine + "<---");
         // Each iteration of this loop processes one character in the source line.
-        while (linePos < line.length) {
-            c = line[linePos];
+        while (linePos < lineLength) {
+            c = theLine.charAt(linePos);
             if (insideQuotedString) { // everything goes into token
-                token[tokenPos++] = c;
-                if (c == '"' && token[tokenPos - 2] != '\\') { // If quote not preceded by backslash, this is end
-                    this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                tokenPos++;
+                if (c == '"' && theLine.charAt(linePos - 1) != '\\') { // If quote not preceded by backslash, this is end
+                    this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                     tokenPos = 0;
                     insideQuotedString = false;
                 }
@@ -300,20 +373,19 @@ public class Tokenizer {
                 switch (c) {
                     case '#':  // # denotes comment that takes remainder of line
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         }
                         tokenStartPos = linePos + 1;
-                        tokenPos = line.length - linePos;
-                        System.arraycopy(line, linePos, token, 0, tokenPos);
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-                        linePos = line.length;
+                        tokenPos = lineLength - linePos;
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        linePos = lineLength;
                         tokenPos = 0;
                         break;
                     case ' ':
                     case '\t':
                     case ',': // space, tab or comma is delimiter
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
                         break;
@@ -325,29 +397,29 @@ public class Tokenizer {
                     case '-':
                         // Here's the REAL hack: recognizing signed exponent in E-notation floating point!
                         // (e.g. 1.2e-5) Add the + or - to the token and keep going.  DPS 17 Aug 2005
-                        if (tokenPos > 0 && line.length >= linePos + 2 && Character.isDigit(line[linePos + 1]) &&
-                                (line[linePos - 1] == 'e' || line[linePos - 1] == 'E')) {
-                            token[tokenPos++] = c;
+                        if (tokenPos > 0 && lineLength >= linePos + 2 && Character.isDigit(theLine.charAt(linePos + 1)) &&
+                                (theLine.charAt(linePos - 1) == 'e' || theLine.charAt(linePos - 1) == 'E')) {
+                            tokenPos++;
                             break;
                         }
                         // End of REAL hack.
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
 
                         tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
-                        if (line.length > linePos + 3 && line[linePos + 1] == 'I' && line[linePos + 2] == 'n' && line[linePos + 3] == 'f') {
+                        tokenPos++;
+                        if (theLine.startsWith("Inf", linePos + 1)) {
                             result.add(new Token(TokenTypes.REAL_NUMBER, "-Inf", program, lineNum, tokenStartPos));
                             linePos += 3;
                             tokenPos = 0;
                             break;
                         }
                         if (!((result.isEmpty() || result.get(result.size() - 1).getType() != TokenTypes.IDENTIFIER) &&
-                                (line.length >= linePos + 2 && Character.isDigit(line[linePos + 1])))) {
+                                (lineLength >= linePos + 2 && Character.isDigit(theLine.charAt(linePos + 1))))) {
                             // treat it as binary.....
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
                         break;
@@ -356,44 +428,44 @@ public class Tokenizer {
                     case '(':
                     case ')':
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
                         tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        tokenPos++;
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                         break;
                     case '"': // we're not inside a quoted string, so start a new token...
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
                         tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
+                        tokenPos++;
                         insideQuotedString = true;
                         break;
                     case '\'': // start of character constant (single quote).
                         if (tokenPos > 0) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                         }
                         // Our strategy is to process the whole thing right now...
                         tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c; // Put the quote in token[0]
-                        int lookaheadChars = line.length - linePos - 1;
+                        tokenPos++; // The quote is the first character of the token
+                        int lookaheadChars = lineLength - linePos - 1;
                         // need minimum 2 more characters, 1 for char and 1 for ending quote
                         if (lookaheadChars < 2)
                             break;  // gonna be an error
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab second character, put it in token[1]
+                        c = theLine.charAt(++linePos);
+                        tokenPos++; // grab second character
                         if (c == '\'')
                             break; // gonna be an error: nothing between the quotes
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab third character, put it in token[2]
+                        c = theLine.charAt(++linePos);
+                        tokenPos++; // grab third character
                         // Process if we've either reached second, non-escaped, quote or end of line.
-                        if (c == '\'' && token[1] != '\\' || lookaheadChars == 2) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        if (c == '\'' && theLine.charAt(linePos - 1) != '\\' || lookaheadChars == 2) {
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                             tokenStartPos = linePos + 1;
                             break;
@@ -401,11 +473,11 @@ public class Tokenizer {
                         // At this point, there is at least one more character on this line. If we're
                         // still here after seeing a second quote, it was escaped.  Not done yet;
                         // we either have an escape code, an octal code (also escaped) or invalid.
-                        c = line[++linePos];
-                        token[tokenPos++] = c; // grab fourth character, put it in token[3]
+                        c = theLine.charAt(++linePos);
+                        tokenPos++; // grab fourth character
                         // Process, if this is ending quote for escaped character or if at end of line
                         if (c == '\'' || lookaheadChars == 3) {
-                            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                             tokenPos = 0;
                             tokenStartPos = linePos + 1;
                             break;
@@ -413,23 +485,23 @@ public class Tokenizer {
                         // At this point, we've handled all legal possibilities except octal, e.g. '\377'
                         // Proceed, if enough characters remain to finish off octal.
                         if (lookaheadChars >= 5) {
-                            c = line[++linePos];
-                            token[tokenPos++] = c;  // grab fifth character, put it in token[4]
+                            c = theLine.charAt(++linePos);
+                            tokenPos++;  // grab fifth character
                             if (c != '\'') {
                                 // still haven't reached end, last chance for validity!
-                                c = line[++linePos];
-                                token[tokenPos++] = c;  // grab sixth character, put it in token[5]
+                                ++linePos;
+                                tokenPos++;  // grab sixth character
                             }
                         }
                         // process no matter what...we either have a valid character by now or not
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                         tokenStartPos = linePos + 1;
                         break;
                     default:
                         if (tokenPos == 0)
                             tokenStartPos = linePos + 1;
-                        token[tokenPos++] = c;
+                        tokenPos++;
                         break;
                 }  // switch
             } // if (insideQuotedString)
@@ -440,13 +512,8 @@ public class Tokenizer {
                 errors.add(new ErrorMessage(program, lineNum, tokenStartPos,
                         "String is not terminated."));
             }
-            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
-            tokenPos = 0;
-        }
-        if (doEqvSubstitutes) {
-            result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
+            this.processCandidateToken(program, lineNum, theLine, tokenPos, tokenStartPos, result);
         }
-        return result;
     }
 
     // Process the .eqv directive, which needs to be applied prior to tokenizing of subsequent statements.
@@ -456,69 +523,82 @@ public class Tokenizer {
     // the substitution needs to be made.
     // DPS 11-July-2012
     private TokenList processEqv(RISCVprogram program, int lineNum, String theLine, TokenList tokens) {
-        // See if it is .eqv directive.  If so, record it...
-        // Have to assure it is a well-formed statement right now (can't wait for assembler).
-
-        if (tokens.size() > 2 && (tokens.get(0).getType() == TokenTypes.DIRECTIVE || tokens.get(2).getType() == TokenTypes.DIRECTIVE)) {
-            // There should not be a label but if there is, the directive is in token position 2 (ident, colon, directive).
-            int dirPos = (tokens.get(0).getType() == TokenTypes.DIRECTIVE) ? 0 : 2;
-            if (Directives.matchDirective(tokens.get(dirPos).getValue()) == Directives.EQV) {
-                // Get position in token list of last non-comment token
-                int tokenPosLastOperand = tokens.size() - ((tokens.get(tokens.size() - 1).getType() == TokenTypes.COMMENT) ? 2 : 1);
-                // There have to be at least two non-comment tokens beyond the directive
-                if (tokenPosLastOperand < dirPos + 2) {
-                    errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos).getStartPos(),
-                            "Too few operands for " + Directives.EQV.getName() + " directive"));
-                    return tokens;
-                }
-                // Token following the directive has to be IDENTIFIER
-                if (tokens.get(dirPos + 1).getType() != TokenTypes.IDENTIFIER) {
-                    errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos).getStartPos(),
-                            "Malformed " + Directives.EQV.getName() + " directive"));
-                    return tokens;
-                }
-                String symbol = tokens.get(dirPos + 1).getValue();
-                // Make sure the symbol is not contained in the expression.  Not likely to occur but if left
-                // undetected it will result in infinite recursion.  e.g.  .eqv ONE, (ONE)
-                for (int i = dirPos + 2; i < tokens.size(); i++) {
-                    if (tokens.get(i).getValue().equals(symbol)) {
+        int firstUnchecked = 0; // tokens before this one need no substitution
+        while (true) {
+            // See if it is .eqv directive.  If so, record it...
+            // Have to assure it is a well-formed statement right now (can't wait for assembler).
+
+            if (tokens.size() > 2 && (tokens.get(0).getType() == TokenTypes.DIRECTIVE || tokens.get(2).getType() == TokenTypes.DIRECTIVE)) {
+                // There should not be a label but if there is, the directive is in token position 2 (ident, colon, directive).
+                int dirPos = (tokens.get(0).getType() == TokenTypes.DIRECTIVE) ? 0 : 2;
+                if (Directives.matchDirective(tokens.get(dirPos).getValue()) == Directives.EQV) {
+                    // Get position in token list of last non-comment token
+                    int tokenPosLastOperand = tokens.size() - ((tokens.get(tokens.size() - 1).getType() == TokenTypes.COMMENT) ? 2 : 1);
+                    // There have to be at least two non-comment tokens beyond the directive
+                    if (tokenPosLastOperand < dirPos + 2) {
                         errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos).getStartPos(),
-                                "Cannot substitute " + symbol + " for itself in " + Directives.EQV.getName() + " directive"));
+                                "Too few operands for " + Directives.EQV.getName() + " directive"));
                         return tokens;
                     }
-                }
-                // Expected syntax is symbol, expression.  I'm allowing the expression to comprise
-                // multiple tokens, so I want to get everything from the IDENTIFIER to either the
-                // COMMENT or to the end.
-                int startExpression = tokens.get(dirPos + 2).getStartPos();
-                int endExpression = tokens.get(tokenPosLastOperand).getStartPos() + tokens.get(tokenPosLastOperand).getValue().length();
-                String expression = theLine.substring(startExpression - 1, endExpression - 1);
-                // Symbol cannot be redefined - the only reason for this is to act like the Gnu .eqv
-                if (equivalents.containsKey(symbol) && !equivalents.get(symbol).equals(expression)) {
-                    errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos + 1).getStartPos(),
-                            "\"" + symbol + "\" is already defined"));
+                    // Token following the directive has to be IDENTIFIER
+                    if (tokens.get(dirPos + 1).getType() != TokenTypes.IDENTIFIER) {
+                        errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos).getStartPos(),
+                                "Malformed " + Directives.EQV.getName() + " directive"));
+                        return tokens;
+                    }
+                    String symbol = tokens.get(dirPos + 1).getValue();
+                    // Make sure the symbol is not contained in the expression.  Not likely to occur but if left
+                    // undetected it will result in infinite recursion.  e.g.  .eqv ONE, (ONE)
+                    for (int i = dirPos + 2; i < tokens.size(); i++) {
+                        if (tokens.get(i).getValue().equals(symbol)) {
+                            errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos).getStartPos(),
+                                    "Cannot substitute " + symbol + " for itself in " + Directives.EQV.getName() + " directive"));
+                            return tokens;
+                        }
+                    }
+                    // Expected syntax is symbol, expression.  I'm allowing the expression to comprise
+                    // multiple tokens, so I want to get everything from the IDENTIFIER to either the
+                    // COMMENT or to the end.
+                    int startExpression = tokens.get(dirPos + 2).getStartPos();
+                    int endExpression = tokens.get(tokenPosLastOperand).getStartPos() + tokens.get(tokenPosLastOperand).getValue().length();
+                    String expression = theLine.substring(startExpression - 1, endExpression - 1);
+                    // Symbol cannot be redefined - the only reason for this is to act like the Gnu .eqv
+                    if (equivalents.containsKey(symbol) && !equivalents.get(symbol).equals(expression)) {
+                        errors.add(new ErrorMessage(program, lineNum, tokens.get(dirPos + 1).getStartPos(),
+                                "\"" + symbol + "\" is already defined"));
+                        return tokens;
+                    }
+                    equivalents.put(symbol, expression);
                     return tokens;
                 }
-                equivalents.put(symbol, expression);
+            }
+            // Check if a substitution from defined .eqv is to be made.  If so, make one.
+            int substituted = -1;
+            for (int i = firstUnchecked; i < tokens.size() && equivalents != null; i++) {
+                Token token = tokens.get(i);
+                if (token.getType() == TokenTypes.IDENTIFIER && equivalents.containsKey(token.getValue())) {
+                    // do the substitution
+                    String sub = equivalents.get(token.getValue());
+                    int startPos = token.getStartPos();
+                    theLine = theLine.substring(0, startPos - 1) + sub + theLine.substring(startPos + token.getValue().length() - 1);
+                    substituted = i;
+                    break;
+                }
+            }
+            if (substituted < 0) {
+                tokens.setProcessedLine(theLine); // DPS 03-Jan-2013. Related to changes of 11-July-2012.
                 return tokens;
             }
-        }
-        // Check if a substitution from defined .eqv is to be made.  If so, make one.
-        boolean substitutionMade = false;
-        for (int i = 0; i < tokens.size(); i++) {
-            Token token = tokens.get(i);
-            if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && equivalents.containsKey(token.getValue())) {
-                // do the substitution
-                String sub = equivalents.get(token.getValue());
-                int startPos = token.getStartPos();
-                theLine = theLine.substring(0, startPos - 1) + sub + theLine.substring(startPos + token.getValue().length() - 1);
-                substitutionMade = true;                // one substitution per call.  If there are multiple, will catch next one on the recursion
-                break;
+            // One substitution at a time; the next one is caught on the next pass.  Only the tokens from
+            // the one before the substitution on are scanned again, as that one may be a sign that
+            // now belongs to a number.  The earlier tokens cannot change.
+            firstUnchecked = Math.max(substituted - 1, 0);
+            int rescanFrom = tokens.get(firstUnchecked).getStartPos() - 1;
+            while (tokens.size() > firstUnchecked) {
+                tokens.remove(tokens.size() - 1);
             }
+            scanLine(program, lineNum, theLine, rescanFrom, tokens);
         }
-        tokens.setProcessedLine(theLine); // DPS 03-Jan-2013. Related to changes of 11-July-2012.
-
-        return (substitutionMade) ? tokenizeLine(lineNum, theLine) : tokens;
     }
 
 
@@ -532,12 +612,29 @@ public class Tokenizer {
     }
 
 
-    // Given candidate token and its position, will classify and record it.
-    private void processCandidateToken(char[] token, RISCVprogram program, int line, String theLine,
+    // Given candidate token and its position, will classify and record it.  Tokens are looked up
+    // in the table of spellings except for comments, quoted strings and character literals.
+    private void processCandidateToken(RISCVprogram program, int line, String theLine,
                                        int tokenPos, int tokenStartPos, TokenList tokenList) {
-        String value = new String(token, 0, tokenPos);
-        if (value.length() > 0 && value.charAt(0) == '\'') value = preprocessCharacterLiteral(value);
-        TokenTypes type = TokenTypes.matchTokenType(value);
+        int start = tokenStartPos - 1;
+        char first = theLine.charAt(start);
+        int known = -1;
+        if (first != '#' && first != '"' && first != '\'') {
+            if (spellings == null) {
+                spellings = new TokenSpellings();
+            }
+            known = spellings.lookup(theLine, start, start + tokenPos);
+        }
+        String value;
+        TokenTypes type;
+        if (known >= 0) {
+            value = spellings.value(known);
+            type = spellings.type(known);
+        } else {
+            value = theLine.substring(start, start + tokenPos);
+            if (first == '\'') value = preprocessCharacterLiteral(value);
+            type = TokenTypes.matchTokenType(value);
+        }
         if (type == TokenTypes.ERROR) {
             errors.add(new ErrorMessage(program, line, tokenStartPos,
                     theLine + "\nInvalid language element: " + value));
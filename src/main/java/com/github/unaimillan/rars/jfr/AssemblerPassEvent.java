@@ -0,0 +1,27 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one pass of the assembler over one source file: pass 1 parses the
+ * statements and builds the symbol tables, pass 2 expands them into basic statements.
+ */
+@Name("rars.AssemblerPass")
+@Label("Assembler Pass")
+@Category({"RARS", "Assembler"})
+@Description("One assembler pass over one source file")
+public class AssemblerPassEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Pass")
+    public int pass;
+
+    @Label("Statements")
+    @Description("Statements parsed in pass 1, or basic statements generated in pass 2")
+    public int statements;
+}
@@ -0,0 +1,25 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for undoing the latest executed instruction with
+ * {@link com.github.unaimillan.rars.simulator.BackStepper#backStep}.
+ */
+@Name("rars.Backstep")
+@Label("Backstep")
+@Category({"RARS", "Simulator"})
+@Description("Undoing the latest executed instruction")
+public class BackstepEvent extends Event {
+    @Label("Address")
+    @Description("The address of the instruction that was undone")
+    public int address;
+
+    @Label("Actions")
+    @Description("Register and memory writes that were undone")
+    public int actions;
+}
@@ -0,0 +1,21 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for copying the contents of one memory into another with
+ * {@link com.github.unaimillan.rars.riscv.hardware.Memory#copyFrom}.
+ */
+@Name("rars.MemoryCopy")
+@Label("Memory Copy")
+@Category({"RARS", "Simulator"})
+@Description("Copying the contents of a memory, such as an assembled program before it runs")
+public class MemoryCopyEvent extends Event {
+    @Label("Blocks")
+    @Description("Blocks of memory in use that were copied")
+    public int blocks;
+}
@@ -0,0 +1,24 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for preparing an assembled program to run with
+ * {@link com.github.unaimillan.rars.api.Program#setup}.
+ */
+@Name("rars.ProgramSetup")
+@Label("Program Setup")
+@Category({"RARS", "Simulator"})
+@Description("Resetting the registers, loading the program and its arguments into memory")
+public class ProgramSetupEvent extends Event {
+    @Label("Arguments")
+    public int arguments;
+
+    @Label("Captured I/O")
+    @Description("Whether stdin, stdout and stderr are held in memory rather than passed through")
+    public boolean capturedIO;
+}
@@ -0,0 +1,31 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a run of the simulator, from the moment it starts executing until
+ * it stops for any reason.
+ */
+@Name("rars.Simulation")
+@Label("Simulation")
+@Category({"RARS", "Simulator"})
+@Description("Execution of the program from a start until the simulator stops")
+public class SimulationEvent extends Event {
+    @Label("Start Address")
+    public int startAddress;
+
+    @Label("Stop Address")
+    public int stopAddress;
+
+    @Label("Instructions")
+    @Description("Instructions retired during the run")
+    public long instructions;
+
+    @Label("Reason")
+    @Description("Why the simulator stopped")
+    public String reason;
+}
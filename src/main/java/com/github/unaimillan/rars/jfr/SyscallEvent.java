@@ -0,0 +1,22 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a system call made by the simulated program.
+ */
+@Name("rars.Syscall")
+@Label("Syscall")
+@Category({"RARS", "Simulator"})
+@Description("A system call made by the simulated program")
+public class SyscallEvent extends Event {
+    @Label("Number")
+    public int number;
+
+    @Label("Name")
+    public String name;
+}
@@ -0,0 +1,22 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for reading the tokens of one source file.
+ */
+@Name("rars.Tokenize")
+@Label("Tokenize")
+@Category({"RARS", "Assembler"})
+@Description("Tokenizing of one source file")
+public class TokenizeEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Lines")
+    public int lines;
+}
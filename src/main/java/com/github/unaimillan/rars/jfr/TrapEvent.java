@@ -0,0 +1,35 @@
+package com.github.unaimillan.rars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for an exception or interrupt taken by the simulated program.
+ */
+@Name("rars.Trap")
+@Label("Trap")
+@Category({"RARS", "Simulator"})
+@Description("An exception or interrupt, and whether a handler took it")
+public class TrapEvent extends Event {
+    @Label("Cause")
+    @Description("The ucause value; interrupts have the top bit set")
+    public int cause;
+
+    @Label("Interrupt")
+    public boolean interrupt;
+
+    @Label("Address")
+    @Description("The uepc value, where the program was interrupted")
+    public int address;
+
+    @Label("Value")
+    @Description("The utval value")
+    public int value;
+
+    @Label("Handled")
+    @Description("False if the simulation ended because there was no handler")
+    public boolean handled;
+}
@@ -132,6 +132,17 @@ public abstract class AbstractSyscall implements Comparable<AbstractSyscall> {
         return serviceNumber;
     }
 
+    /**
+     * Whether buffered console output should be flushed to the GUI before this
+     * syscall runs.  Syscalls that only write to the console should return false
+     * so that printing in a tight loop stays buffered (see issue #108).
+     *
+     * @return true if output should be flushed before {@link #simulate(ProgramStatement)}
+     */
+    public boolean flushesOutput() {
+        return true;
+    }
+
     /**
      * Performs syscall function.  It will be invoked when the service is invoked
      * at simulation time.  Service is identified by value stored in a7.
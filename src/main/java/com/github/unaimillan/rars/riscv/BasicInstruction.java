@@ -31,6 +31,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 import com.github.unaimillan.rars.ProgramStatement;
 import com.github.unaimillan.rars.SimulationException;
 
+import java.util.ArrayList;
+
 /**
  * Class to represent a basic instruction in the MIPS instruction set.
  * Basic instruction means it translates directly to a 32-bit binary machine
@@ -47,6 +49,9 @@ public abstract class BasicInstruction extends Instruction {
 
     private final int opcodeMask;  // integer with 1's where constants required (0/1 become 1, f/s/t become 0)
     private final int opcodeMatch; // integer matching constants required (0/1 become 0/1, f/s/t become 0)
+    // For each operand code in Instruction.operandMask order: the number of bit fields it is split
+    // into, followed by the source shift, width and destination shift of each field.
+    private final int[] operandFields;
 
     /**
      * BasicInstruction constructor.
@@ -82,6 +87,40 @@ public abstract class BasicInstruction extends Instruction {
 
         this.opcodeMask = (int) Long.parseLong(this.operationMask.replaceAll("[01]", "1").replaceAll("[^01]", "0"), 2);
         this.opcodeMatch = (int) Long.parseLong(this.operationMask.replaceAll("[^1]", "0"), 2);
+        this.operandFields = operandFields(this.operationMask);
+    }
+
+    // Splits each operand of the mask into runs of adjacent bits.  Bits are read from the
+    // instruction most significant first, so the first run ends up at the top of the operand.
+    private static int[] operandFields(String mask) {
+        ArrayList<Integer> fields = new ArrayList<>();
+        for (char code : Instruction.operandMask) {
+            int width = 0;
+            for (int i = 0; i < mask.length(); i++) {
+                if (mask.charAt(i) == code) width++;
+            }
+            int countIndex = fields.size();
+            fields.add(0);
+            int dest = width;
+            for (int i = 0; i < mask.length(); ) {
+                if (mask.charAt(i) != code) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < mask.length() && mask.charAt(i) == code) i++;
+                dest -= i - start;
+                fields.add(mask.length() - i); // source shift
+                fields.add(i - start);
+                fields.add(dest);
+                fields.set(countIndex, fields.get(countIndex) + 1);
+            }
+        }
+        int[] result = new int[fields.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = fields.get(i);
+        }
+        return result;
     }
 
     public BasicInstruction(String example, String description, BasicInstructionFormat instrFormat,
@@ -135,6 +174,91 @@ public abstract class BasicInstruction extends Instruction {
         return this.opcodeMatch;
     }
 
+    /**
+     * Extracts the operands from a binary machine instruction of this kind, as the inverse of
+     * the code generation from the operation mask.  Operand i comes from the bits marked with
+     * {@link Instruction#operandMask}[i]; jump and branch offsets are converted back to byte
+     * offsets.  Nothing is allocated, so this is suitable for decoding code at run time.
+     *
+     * @param binaryStatement the machine instruction, which must match this instruction
+     * @param operands        receives the operands; needs room for 5, unused entries are set to 0
+     * @return the number of operands
+     */
+    public int decodeOperands(int binaryStatement, int[] operands) {
+        int count = 0;
+        int p = 0;
+        for (int i = 0; i < Instruction.operandMask.length; i++) {
+            int value = 0;
+            int fields = operandFields[p++];
+            if (fields > 0) count++;
+            for (; fields > 0; fields--, p += 3) {
+                value |= ((binaryStatement >>> operandFields[p]) & ((1 << operandFields[p + 1]) - 1)) << operandFields[p + 2];
+            }
+            operands[i] = value;
+        }
+        if (instructionFormat == BasicInstructionFormat.J_FORMAT) {
+            operands[1] = fromJumpImmediate(operands[1]);
+            return 2;
+        } else if (instructionFormat == BasicInstructionFormat.B_FORMAT) {
+            operands[2] = fromBranchImmediate(operands[2]);
+            return 3;
+        }
+        return count;
+    }
+
+    /**
+     * Places an operand into a binary machine instruction of this kind, as the inverse of
+     * {@link #decodeOperands}.  The low bits of the value fill the bits marked with
+     * {@link Instruction#operandMask}[i], the most significant going to the leftmost mark.
+     * Jump and branch offsets have to be in their immediate form already.
+     *
+     * @param i     the operand number
+     * @param value the operand
+     * @return the bits of the instruction holding the operand, to be or-ed into it
+     */
+    public int encodeOperand(int i, int value) {
+        int p = operandFieldsIndex(i);
+        int bits = 0;
+        for (int fields = operandFields[p++]; fields > 0; fields--, p += 3) {
+            bits |= ((value >>> operandFields[p + 2]) & ((1 << operandFields[p + 1]) - 1)) << operandFields[p];
+        }
+        return bits;
+    }
+
+    /**
+     * @param i the operand number
+     * @return true if the operation mask has bits for operand i
+     */
+    public boolean hasOperand(int i) {
+        return operandFields[operandFieldsIndex(i)] > 0;
+    }
+
+    // Where the fields of operand i start in operandFields.
+    private int operandFieldsIndex(int i) {
+        int p = 0;
+        for (int k = 0; k < i; k++) {
+            p += 1 + 3 * operandFields[p];
+        }
+        return p;
+    }
+
+    private static int fromJumpImmediate(int immediate) {
+        // trying to produce address[20:0] where immediate = address[20|10:1|11|19:12]
+        int tmp = ((immediate) & (1 << 19)) |    // keep the top bit in the same place
+                ((immediate & 0x7FE00) >> 9) | // move address[10:1] to the right place
+                ((immediate & (1 << 8)) << 2) |// move address[11] to the right place
+                ((immediate & 0xFF) << 11);   // move address[19:12] to the right place
+        return (tmp << 12) >> 11; // sign-extend and add extra 0
+    }
+
+    private static int fromBranchImmediate(int immediate) {
+        // trying to produce address[12:0] where immediate = address[12|10:1|11]
+        int tmp = (immediate & (1 << 11)) |  // keep the top bit in the same place
+                ((immediate & 0x7FE) >> 1) | // move address[10:1] to the right place
+                ((immediate & 1) << 10);     // move address[11] to the right place
+        return (tmp << 20) >> 19; // sign-extend and add extra 0
+    }
+
     /**
      * Method to simulate the execution of a specific MIPS basic instruction.
      *
@@ -48,6 +48,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class ExtendedInstruction extends Instruction {
 
     private final ArrayList<String> translationStrings;
+    private volatile ArrayList<TranslationTemplate> translationTemplates; // compiled on first use
 
     /**
      * Constructor for ExtendedInstruction.  No compact translation is provided.
@@ -62,7 +63,6 @@ public class ExtendedInstruction extends Instruction {
         this.exampleFormat = example;
         this.description = description;
         this.mnemonic = this.extractOperator(example);
-        this.createExampleTokenList();
         this.translationStrings = buildTranslationList(translation);
     }
 
@@ -103,6 +103,24 @@ public class ExtendedInstruction extends Instruction {
         return translationStrings;
     }
 
+    /**
+     * Get the templates for the basic instructions generated by this extended instruction,
+     * compiled into tokens.  They are compiled on first use, as that needs the instruction set.
+     *
+     * @return one compiled template for each of {@link #getBasicIntructionTemplateList()}; null
+     * for a template that can only be used through {@link #makeTemplateSubstitutions}
+     */
+    public ArrayList<TranslationTemplate> getTranslationTemplates() {
+        if (translationTemplates == null) {
+            ArrayList<TranslationTemplate> compiled = new ArrayList<>();
+            for (String template : translationStrings) {
+                compiled.add(TranslationTemplate.compile(template));
+            }
+            translationTemplates = compiled;
+        }
+        return translationTemplates;
+    }
+
     /**
      * Given a basic instruction template and the list of tokens from an extended
      * instruction statement, substitute operands from the token list appropriately into the
@@ -67,8 +67,9 @@ public abstract class Instruction {
     protected String description;
     /**
      * List of tokens generated by tokenizing example usage (see <tt>exampleFormat</tt>).
+     * Built lazily and possibly from several assembler threads at once.
      **/
-    protected TokenList tokenList;
+    protected volatile TokenList tokenList;
 
 
     /**
@@ -108,11 +109,16 @@ public abstract class Instruction {
      * Get TokenList corresponding to correct instruction syntax.
      * For example, the instruction with format "sw x1, 100(x2)" yields token list
      * operator:register_number:integer:left_paren:register_number:right_parent
+     * The list is built on first use, so instructions a program never uses are
+     * never tokenized.
      *
      * @return TokenList object representing correct instruction usage.
      */
 
     public TokenList getTokenList() {
+        if (tokenList == null) {
+            createExampleTokenList();
+        }
         return tokenList;
     }
 
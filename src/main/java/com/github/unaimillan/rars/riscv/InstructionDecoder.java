@@ -0,0 +1,81 @@
+package com.github.unaimillan.rars.riscv;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * Finds the basic instruction for a binary machine instruction, for code that was not
+ * produced by the assembler: self-modifying code, code in the data segment, loaded
+ * executables and disassembly.
+ * <p>
+ * The table is built once per instruction set.  It is indexed by the major opcode (bits 0-6)
+ * and funct3 (bits 12-14), which every instruction format has in the same place.  Each entry
+ * lists the instructions that can match, most specific mask first, so that the remaining
+ * fields such as funct7 are told apart by comparing a handful of masked words.  Finding an
+ * instruction does not allocate.
+ */
+public class InstructionDecoder {
+    private static final int INDEX_BITS = 0x707F; // funct3 and opcode
+    private static final int TABLE_SIZE = 1 << 10;
+
+    private final int[][] masks = new int[TABLE_SIZE][];
+    private final int[][] matches = new int[TABLE_SIZE][];
+    private final BasicInstruction[][] instructions = new BasicInstruction[TABLE_SIZE][];
+
+    /**
+     * @param instructionList the instruction set; extended instructions are ignored
+     */
+    public InstructionDecoder(ArrayList<Instruction> instructionList) {
+        // If two instructions have the same encoding, the later one wins.
+        ArrayList<BasicInstruction> basics = new ArrayList<>();
+        for (Instruction instruction : instructionList) {
+            if (instruction instanceof BasicInstruction basic) {
+                basics.removeIf(b -> b.getOpcodeMask() == basic.getOpcodeMask()
+                        && b.getOpcodeMatch() == basic.getOpcodeMatch());
+                basics.add(basic);
+            }
+        }
+        // The more constant bits an instruction has, the earlier it is tried.
+        basics.sort(Comparator.comparingInt((BasicInstruction b) -> -Integer.bitCount(b.getOpcodeMask()))
+                .thenComparingInt(BasicInstruction::getOpcodeMask));
+
+        ArrayList<BasicInstruction> candidates = new ArrayList<>();
+        for (int index = 0; index < TABLE_SIZE; index++) {
+            int word = indexWord(index);
+            candidates.clear();
+            for (BasicInstruction basic : basics) {
+                if (((word ^ basic.getOpcodeMatch()) & basic.getOpcodeMask() & INDEX_BITS) == 0) {
+                    candidates.add(basic);
+                }
+            }
+            masks[index] = new int[candidates.size()];
+            matches[index] = new int[candidates.size()];
+            instructions[index] = candidates.toArray(new BasicInstruction[0]);
+            for (int i = 0; i < candidates.size(); i++) {
+                masks[index][i] = candidates.get(i).getOpcodeMask();
+                matches[index][i] = candidates.get(i).getOpcodeMatch();
+            }
+        }
+    }
+
+    /**
+     * @param binaryStatement a machine instruction
+     * @return the basic instruction it encodes, or null if it is not a valid instruction
+     */
+    public BasicInstruction find(int binaryStatement) {
+        int index = (binaryStatement >>> 5) & 0x380 | binaryStatement & 0x7F;
+        int[] mask = masks[index];
+        int[] match = matches[index];
+        for (int i = 0; i < mask.length; i++) {
+            if ((binaryStatement & mask[i]) == match[i]) {
+                return instructions[index][i];
+            }
+        }
+        return null;
+    }
+
+    // The smallest instruction word with the funct3 and opcode of a table index.
+    private static int indexWord(int index) {
+        return (index >> 7) << 12 | (index & 0x7F);
+    }
+}
@@ -4,8 +4,8 @@ import com.github.unaimillan.rars.Globals;
 import com.github.unaimillan.rars.ProgramStatement;
 import com.github.unaimillan.rars.Settings;
 import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.jfr.SyscallEvent;
 import com.github.unaimillan.rars.riscv.hardware.RegisterFile;
-import com.github.unaimillan.rars.riscv.syscalls.*;
 import com.github.unaimillan.rars.util.FilenameFinder;
 import com.github.unaimillan.rars.util.SystemIO;
 
@@ -63,14 +63,18 @@ public class InstructionSet {
     public static boolean rv64 = Globals.getSettings().getBooleanSetting(Settings.Bool.RV64_ENABLED);
 
     private final ArrayList<Instruction> instructionList;
-    private ArrayList<MatchMap> opcodeMatchMaps;
+    private InstructionDecoder decoder;
+    // Lower-cased mnemonic to its instructions; the sorted copy serves prefix lookups
+    private HashMap<String, ArrayList<Instruction>> operatorIndex;
+    private TreeMap<String, ArrayList<Instruction>> sortedOperatorIndex;
 
     /**
      * Creates a new InstructionSet object.
      */
     public InstructionSet() {
         instructionList = new ArrayList<>();
-
+        operatorIndex = new HashMap<>();
+        sortedOperatorIndex = new TreeMap<>();
     }
 
     /**
@@ -102,42 +106,26 @@ public class InstructionSet {
         }
 
         addPseudoInstructions("/PseudoOps.txt");
-        // Initialization step.  Create token list for each instruction example.  This is
-        // used by parser to determine user program correct syntax.
-        for (Instruction inst : instructionList) {
-            inst.createExampleTokenList();
-        }
+        // The token list for each instruction example, used by the parser to determine
+        // correct syntax, is created lazily by Instruction.getTokenList().
 
-        HashMap<Integer, HashMap<Integer, BasicInstruction>> maskMap = new HashMap<>();
-        ArrayList<MatchMap> matchMaps = new ArrayList<>();
+        this.decoder = new InstructionDecoder(instructionList);
+
+        HashMap<String, ArrayList<Instruction>> operators = new HashMap<>();
         for (Instruction inst : instructionList) {
-            if (inst instanceof BasicInstruction basic) {
-                Integer mask = basic.getOpcodeMask();
-                Integer match = basic.getOpcodeMatch();
-                HashMap<Integer, BasicInstruction> matchMap = maskMap.get(mask);
-                if (matchMap == null) {
-                    matchMap = new HashMap<>();
-                    maskMap.put(mask, matchMap);
-                    matchMaps.add(new MatchMap(mask, matchMap));
-                }
-                matchMap.put(match, basic);
-            }
+            operators.computeIfAbsent(inst.getName().toLowerCase(), k -> new ArrayList<>()).add(inst);
         }
-        Collections.sort(matchMaps);
-        this.opcodeMatchMaps = matchMaps;
+        this.operatorIndex = operators;
+        this.sortedOperatorIndex = new TreeMap<>(operators);
     }
 
     public BasicInstruction findByBinaryCode(int binaryInstr) {
-        for (MatchMap map : this.opcodeMatchMaps) {
-            BasicInstruction ret = map.find(binaryInstr);
-            if (ret != null) return ret;
-        }
-        return null;
+        return decoder.find(binaryInstr);
     }
 
     private void addBasicInstructions() {
         // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
+        ArrayList<String> candidates = FilenameFinder.getRegisteredFilenameList(this.getClass().getClassLoader(),
                 INSTRUCTIONS_DIRECTORY_PATH, CLASS_EXTENSION);
         HashSet<String> insts = new HashSet<>();
         for (String file : candidates) {
@@ -226,45 +214,33 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  The returned list is shared and
+     * must not be modified.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList<Instruction> matchOperator(String name) {
-        ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
-        for (Instruction inst : instructionList) {
-            if (inst.getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList<>();
-                matchingInstructions.add(inst);
-            }
-        }
-        return matchingInstructions;
+        return operatorIndex.get(name.toLowerCase());
     }
 
 
-    // TODO: check to see if autocomplete was accidentally removed
-
     /**
      * Given a string, will return the Instruction object(s) from the instruction
      * set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     * "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     * "s" will match "sw", "sh", "sb", etc.  Matches are ordered by mnemonic.
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList<Instruction> prefixMatchOperator(String name) {
         ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
         if (name != null) {
-            for (Instruction inst : instructionList) {
-                if (inst.getName().toLowerCase().startsWith(name.toLowerCase())) {
-                    if (matchingInstructions == null)
-                        matchingInstructions = new ArrayList<>();
-                    matchingInstructions.add(inst);
-                }
+            String prefix = name.toLowerCase();
+            for (ArrayList<Instruction> insts : sortedOperatorIndex.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                if (matchingInstructions == null)
+                    matchingInstructions = new ArrayList<>();
+                matchingInstructions.addAll(insts);
             }
         }
         return matchingInstructions;
@@ -280,21 +256,21 @@ public class InstructionSet {
             throws SimulationException {
         AbstractSyscall service = SyscallLoader.findSyscall(number);
         if (service != null) {
-            // TODO: find a cleaner way of doing this
-            // This was introduced to solve issue #108
-            boolean is_writing = service instanceof SyscallPrintChar ||
-                    service instanceof SyscallPrintDouble ||
-                    service instanceof SyscallPrintFloat ||
-                    service instanceof SyscallPrintInt ||
-                    service instanceof SyscallPrintIntBinary ||
-                    service instanceof SyscallPrintIntHex ||
-                    service instanceof SyscallPrintIntUnsigned ||
-                    service instanceof SyscallPrintString ||
-                    service instanceof SyscallWrite;
-            if (!is_writing) {
+            // Writing syscalls leave the output buffered, see issue #108
+            if (service.flushesOutput()) {
                 SystemIO.flush(true);
             }
-            service.simulate(statement);
+            SyscallEvent event = new SyscallEvent();
+            event.begin();
+            try {
+                service.simulate(statement);
+            } finally {
+                if (event.shouldCommit()) {
+                    event.number = number;
+                    event.name = service.getName();
+                    event.commit();
+                }
+            }
             return;
         }
         throw new SimulationException(statement,
@@ -337,39 +313,4 @@ public class InstructionSet {
     public static void processReturnAddress(int register) {
         RegisterFile.updateRegister(register, RegisterFile.getProgramCounter());
     }
-
-    private static class MatchMap implements Comparable<MatchMap> {
-        private final int mask;
-        private final int maskLength; // number of 1 bits in mask
-        private final HashMap<Integer, BasicInstruction> matchMap;
-
-        public MatchMap(int mask, HashMap<Integer, BasicInstruction> matchMap) {
-            this.mask = mask;
-            this.matchMap = matchMap;
-
-            int k = 0;
-            int n = mask;
-            while (n != 0) {
-                k++;
-                n &= n - 1;
-            }
-            this.maskLength = k;
-        }
-
-        public boolean equals(Object o) {
-            return o instanceof MatchMap && mask == ((MatchMap) o).mask;
-        }
-
-        public int compareTo(MatchMap other) {
-            int d = other.maskLength - this.maskLength;
-            if (d == 0) d = this.mask - other.mask;
-            return d;
-        }
-
-        public BasicInstruction find(int instr) {
-            int match = instr & mask;
-            return matchMap.get(match);
-        }
-    }
 }
-
@@ -4,6 +4,7 @@ import com.github.unaimillan.rars.Globals;
 import com.github.unaimillan.rars.util.FilenameFinder;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import static com.github.unaimillan.rars.Globals.GLOBAL_CLASS_PREFIX;
@@ -52,7 +53,13 @@ public class SyscallLoader {
     private static final String SYSCALLS_DIRECTORY_PATH = GLOBAL_DIRECTORY_PATH + "rars/riscv/syscalls";
     private static final String CLASS_EXTENSION = "class";
 
+    // Service numbers below this bound are dispatched through a flat array,
+    // anything larger (only possible through Syscall.properties) through a map.
+    private static final int SYSCALL_TABLE_LIMIT = 4096;
+
     private static ArrayList<AbstractSyscall> syscallList;
+    private static AbstractSyscall[] syscallTable;
+    private static HashMap<Integer, AbstractSyscall> largeSyscallNumbers;
 
     /*
      *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
@@ -63,7 +70,7 @@ public class SyscallLoader {
     static {
         syscallList = new ArrayList<>();
         // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(SyscallLoader.class.getClassLoader(),
+        ArrayList<String> candidates = FilenameFinder.getRegisteredFilenameList(SyscallLoader.class.getClassLoader(),
                 SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
         HashSet<String> syscalls = new HashSet<>();
         for (String file : candidates) {
@@ -92,6 +99,31 @@ public class SyscallLoader {
             }
         }
         syscallList = processSyscallNumberOverrides(syscallList);
+        buildSyscallTable();
+    }
+
+    // Builds the number-to-service lookup used by findSyscall once all numbers are final
+    private static void buildSyscallTable() {
+        int max = -1;
+        for (AbstractSyscall syscall : syscallList) {
+            if (syscall.getNumber() < 0) {
+                System.out.println("Error: " + syscall.getName() + " has service number " + syscall.getNumber() +
+                        "; service numbers in the config file must not be negative");
+                System.exit(0);
+            }
+            if (syscall.getNumber() < SYSCALL_TABLE_LIMIT) {
+                max = Math.max(max, syscall.getNumber());
+            }
+        }
+        syscallTable = new AbstractSyscall[max + 1];
+        largeSyscallNumbers = new HashMap<>();
+        for (AbstractSyscall syscall : syscallList) {
+            if (syscall.getNumber() < SYSCALL_TABLE_LIMIT) {
+                syscallTable[syscall.getNumber()] = syscall;
+            } else {
+                largeSyscallNumbers.put(syscall.getNumber(), syscall);
+            }
+        }
     }
 
     // Loads system call numbers from Syscall.properties
@@ -104,10 +136,16 @@ public class SyscallLoader {
         }
         for (SyscallNumberOverride override : overrides) {
             boolean match = false;
+            // Checked first, since -1 would otherwise look like a duplicate of every unassigned service
+            if (override.getNumber() < 0) {
+                System.out.println("Error: " + override.getName() + " was assigned a negative number (" +
+                        override.getNumber() + ") in the config file");
+                System.exit(0);
+            }
             for (AbstractSyscall syscall : syscallList) {
                 if (syscall.getNumber() == override.getNumber()) {
                     System.out.println("Duplicate service number: " + syscall.getNumber() + " already registered to " +
-                            findSyscall(syscall.getNumber()).getName());
+                            syscall.getName());
                     System.exit(0);
                 }
                 if (override.getName().equals(syscall.getName())) {
@@ -115,10 +153,6 @@ public class SyscallLoader {
                         System.out.println("Error: " + syscall.getName() + " was assigned a numebr twice in the config file");
                         System.exit(0);
                     }
-                    if (override.getNumber() < 0) {
-                        System.out.println("Error: " + override.getName() + " was assigned a negative number");
-                        System.exit(0);
-                    }
                     // we have a match to service name, assign new number
                     syscall.setNumber(override.getNumber());
                     match = true;
@@ -138,13 +172,10 @@ public class SyscallLoader {
      * Returns null if no associated object found.
      */
     public static AbstractSyscall findSyscall(int number) {
-        // linear search is OK since number of syscalls is small.
-        for (AbstractSyscall service : syscallList) {
-            if (service.getNumber() == number) {
-                return service;
-            }
+        if (number >= 0 && number < syscallTable.length) {
+            return syscallTable[number];
         }
-        return null;
+        return largeSyscallNumbers.get(number);
     }
 
     public static ArrayList<AbstractSyscall> getSyscallList() {
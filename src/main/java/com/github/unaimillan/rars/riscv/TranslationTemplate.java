@@ -0,0 +1,239 @@
+package com.github.unaimillan.rars.riscv;
+
+import com.github.unaimillan.rars.ErrorList;
+import com.github.unaimillan.rars.RISCVprogram;
+import com.github.unaimillan.rars.assembler.*;
+import com.github.unaimillan.rars.util.Binary;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One basic instruction template of a pseudo-instruction, such as "addi RG1, RG1, VL2",
+ * tokenized once so that expanding the pseudo-instruction copies the tokens and fills in the
+ * operand slots instead of substituting into the text of the template and tokenizing the result.
+ * <p>
+ * Expanding gives the same tokens as {@link ExtendedInstruction#makeTemplateSubstitutions} followed
+ * by tokenizing.  Where that cannot be assured token by token, for instance when a value filled in
+ * would not form a single token, {@link #compile(String)} or {@link #expand} returns null and the
+ * caller takes the textual route instead.
+ */
+public class TranslationTemplate {
+    private static final Pattern SLOT = Pattern.compile("(RG|PCH|PCL|LH|LL|VH|VL|LI[A-E])([1-9])|LAB");
+    private static final Pattern MENTIONS_SLOT = Pattern.compile("(RG|PCH|PCL|LH|LL|VH|VL|LI[A-E])[0-9]|LAB");
+    private static final String DELIMITERS = " \t,():#\"'";
+
+    private final String[] values;    // token values, or the marker of a slot
+    private final TokenTypes[] types; // token types; null for slots
+    private final String[] slots;     // kind of slot ("RG", "VL", "LAB", ...), or null for a plain token
+    private final int[] ops;          // operand number of each slot
+    private final int[] starts;       // position of each token in the template
+    private final char[] liChoice;    // by operand: the LIx slot filled for a 64 bit value, as only the first is
+    private final boolean hasSign;    // whether a + or - follows, whose tokenizing depends on the token before it
+
+    private TranslationTemplate(int size, boolean hasSign) {
+        values = new String[size];
+        types = new TokenTypes[size];
+        slots = new String[size];
+        ops = new int[size];
+        starts = new int[size];
+        liChoice = new char[10];
+        this.hasSign = hasSign;
+    }
+
+    /**
+     * Tokenizes a template.  The instruction set has to be populated.
+     *
+     * @param template a basic instruction template from the pseudo-instruction specifications
+     * @return the compiled template, or null if it can only be expanded textually
+     */
+    public static TranslationTemplate compile(String template) {
+        // Slots are tokenized as zeros of the same length: like the registers and numbers that
+        // will fill them, those are not identifiers, which matters to a following sign.
+        StringBuilder zeroed = new StringBuilder(template);
+        Matcher slot = SLOT.matcher(template);
+        int labels = 0;
+        while (slot.find()) {
+            if (slot.start() > 0 && isSign(template.charAt(slot.start() - 1))
+                    || slot.end() < template.length() && isSign(template.charAt(slot.end()))) {
+                return null;
+            }
+            for (int i = slot.start(); i < slot.end(); i++) {
+                zeroed.setCharAt(i, '0');
+            }
+            if (slot.group(1) == null) {
+                labels++;
+            }
+        }
+        ErrorList errors = new ErrorList();
+        TokenList tokens = new Tokenizer().tokenizeLine(0, zeroed.toString(), errors, false);
+        if (labels > 1 || tokens.isEmpty() || errors.errorsOccurred()) {
+            return null;
+        }
+        TranslationTemplate compiled = new TranslationTemplate(tokens.size(),
+                template.indexOf('+') >= 0 || template.indexOf('-') >= 0);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            int start = token.getStartPos() - 1;
+            if (start + token.getValue().length() > template.length()) {
+                return null;
+            }
+            String text = template.substring(start, start + token.getValue().length());
+            compiled.starts[i] = token.getStartPos();
+            if (slot.reset(text).matches()) {
+                compiled.values[i] = text;
+                compiled.slots[i] = slot.group(1) == null ? "LAB" : slot.group(1);
+                compiled.ops[i] = slot.group(1) == null ? 0 : slot.group(2).charAt(0) - '0';
+                if (text.startsWith("LI")) {
+                    int op = compiled.ops[i];
+                    if (compiled.liChoice[op] == 0 || text.charAt(2) < compiled.liChoice[op]) {
+                        compiled.liChoice[op] = text.charAt(2);
+                    }
+                }
+            } else if (MENTIONS_SLOT.matcher(text).find() || !text.equals(token.getValue())) {
+                return null;
+            } else {
+                compiled.values[i] = token.getValue();
+                compiled.types[i] = token.getType();
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Generates a basic instruction from the template.
+     *
+     * @param program  the program being assembled, to look up a label address for "LAB"
+     * @param operands tokens of the pseudo-instruction statement in basic assembly form
+     * @param PC       address of the pseudo-instruction
+     * @param label    label to put in place of "LAB" as it is, or null to look it up by address
+     * @param line     source line, for the tokens
+     * @return the tokens of the basic instruction, or null if it has to be generated textually
+     */
+    public TokenList expand(RISCVprogram program, TokenList operands, int PC, String label, int line) {
+        TokenList result = new TokenList();
+        int shift = 0; // how much longer the filled in text is than the template up to here
+        for (int i = 0; i < values.length; i++) {
+            if (slots[i] == null) {
+                result.add(new Token(types[i], values[i], null, line, starts[i] + shift));
+                continue;
+            }
+            String value = fill(i, program, operands, PC, label);
+            if (value == null) {
+                value = values[i];
+            } else if (!slots[i].equals("LAB") || label != null) {
+                // A later substitution would have found a marker within this value.
+                if (mentionsSlot(value)) {
+                    return null;
+                }
+            }
+            TokenTypes previous = result.isEmpty() ? null : result.get(result.size() - 1).getType();
+            if (!isSingleToken(value, previous)) {
+                return null;
+            }
+            TokenTypes type = TokenTypes.matchTokenType(value);
+            if (type == TokenTypes.ERROR || type == TokenTypes.IDENTIFIER && hasSign) {
+                return null;
+            }
+            result.add(new Token(type, value, null, line, starts[i] + shift));
+            shift += value.length() - values[i].length();
+        }
+        return result;
+    }
+
+    // The value for a slot, computed as makeTemplateSubstitutions does, or null if it is left as it is.
+    private String fill(int i, RISCVprogram program, TokenList operands, int PC, String label) {
+        String slot = slots[i];
+        int op = ops[i];
+        if (slot.equals("LAB")) {
+            if (label != null) {
+                return label;
+            }
+            Symbol sym = program.getLocalSymbolTable()
+                    .getSymbolGivenAddressLocalOrGlobal(operands.get(operands.size() - 1).getValue());
+            return sym == null ? null : sym.getName();
+        }
+        if (op >= operands.size()) {
+            return null;
+        }
+        String strValue = operands.get(op).getValue();
+        if (slot.equals("RG")) {
+            return strValue;
+        }
+        char first = strValue.isEmpty() ? ' ' : strValue.charAt(0);
+        if (!(('0' <= first && first <= '9') || first == '-' || first == '+')) {
+            return null; // not a number, so neither parse below would succeed
+        }
+        int val;
+        try {
+            val = Binary.stringToInt(strValue);
+        } catch (NumberFormatException e) {
+            long lval;
+            try {
+                lval = Binary.stringToLong(strValue);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+            if (!slot.startsWith("LI") || slot.charAt(2) != liChoice[op]) {
+                return null;
+            }
+            val = (int) (lval >> 32);
+            int vall = (int) lval;
+            switch (slot.charAt(2)) {
+                case 'A':
+                    return String.valueOf((val >> 12) + Binary.bitValue(val, 11));
+                case 'B':
+                    return String.valueOf(val << 20 >> 20);
+                case 'C':
+                    return String.valueOf((vall >> 21) & 0x7FF);
+                case 'D':
+                    return String.valueOf((vall >> 10) & 0x7FF);
+                default:
+                    return String.valueOf(vall & 0x3FF);
+            }
+        }
+        int relative = val - PC;
+        switch (slot) {
+            case "PCH":
+                return String.valueOf((relative >> 12) + Binary.bitValue(relative, 11));
+            case "PCL":
+                return String.valueOf(relative << 20 >> 20);
+            case "LH":
+            case "VH":
+                return String.valueOf((val >> 12) + Binary.bitValue(val, 11));
+            case "LL":
+            case "VL":
+                return String.valueOf(val << 20 >> 20);
+            default:
+                return null; // LIx only take 64 bit values
+        }
+    }
+
+    // Whether the tokenizer would read the value, following a token of the given type, as one token.
+    private static boolean isSingleToken(String value, TokenTypes previous) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (DELIMITERS.indexOf(c) >= 0 || isSign(c) && i > 0) {
+                return false;
+            }
+        }
+        return !isSign(value.charAt(0))
+                || value.length() > 1 && Character.isDigit(value.charAt(1)) && previous != TokenTypes.IDENTIFIER;
+    }
+
+    private static boolean mentionsSlot(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isUpperCase(value.charAt(i))) {
+                return MENTIONS_SLOT.matcher(value).find();
+            }
+        }
+        return false; // all markers are upper case
+    }
+
+    private static boolean isSign(char c) {
+        return c == '+' || c == '-';
+    }
+}
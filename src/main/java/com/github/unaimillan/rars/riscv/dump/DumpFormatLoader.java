@@ -53,7 +53,7 @@ public class DumpFormatLoader {
     static {
         formatList = new ArrayList<>();
         // grab all class files in the dump directory
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(DumpFormatLoader.class.getClassLoader(),
+        ArrayList<String> candidates = FilenameFinder.getRegisteredFilenameList(DumpFormatLoader.class.getClassLoader(),
                 DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
         for (String file : candidates) {
             try {
@@ -2,11 +2,20 @@ package com.github.unaimillan.rars.riscv.hardware;
 
 import com.github.unaimillan.rars.Globals;
 import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.RISCVprogram;
 import com.github.unaimillan.rars.Settings;
 import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.jfr.MemoryCopyEvent;
 import com.github.unaimillan.rars.riscv.Instruction;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Vector;
@@ -130,6 +139,16 @@ public class Memory extends Observable {
 
     private Collection<MemoryObservable> observables = getNewMemoryObserversCollection();
 
+    // Watchpoints set by a debugger stop the simulator after the instruction that accessed
+    // them (see Simulator).  Every load and store looks at the array, so it is empty rather
+    // than null when there are none, and replaced rather than changed in place.
+    private Watchpoint[] watchpoints = new Watchpoint[0];
+    private Watchpoint watchpointHit;
+
+    // Listeners following the program's loads and stores while the simulator runs it
+    private static final ExecutionListener[] NO_LISTENERS = new ExecutionListener[0];
+    private ExecutionListener[] listeners = NO_LISTENERS;
+
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
     // is thus 1024 entries * 4096 bytes = 4 MB.  Should be enough to cover most
@@ -198,6 +217,11 @@ public class Memory extends Observable {
     private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
     private ProgramStatement[][] textBlockTable;
 
+    // Parts of the text segment that loads may read even when self-modifying code is disabled,
+    // as start and end (exclusive) addresses: the read-only data of an executable linked into
+    // the text segment.  The array is replaced, never changed, so copies may share it.
+    private int[] readableText;
+
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
     // on the table structures described above (except memory mapped IO, limited to 64KB by range).
@@ -234,9 +258,14 @@ public class Memory extends Observable {
             return false;
         }
 
+        MemoryCopyEvent event = new MemoryCopyEvent();
+        event.begin();
+        readableText = other.readableText;
+        int blocks = 0;
         for (int i = 0; i < textBlockTable.length; i++) {
             if (other.textBlockTable[i] != null) {
                 textBlockTable[i] = other.textBlockTable[i].clone(); // TODO: potentially make ProgramStatement clonable
+                blocks++;
             } else {
                 textBlockTable[i] = null;
             }
@@ -244,6 +273,7 @@ public class Memory extends Observable {
         for (int i = 0; i < dataBlockTable.length; i++) {
             if (other.dataBlockTable[i] != null) {
                 dataBlockTable[i] = other.dataBlockTable[i].clone();
+                blocks++;
             } else {
                 dataBlockTable[i] = null;
             }
@@ -251,6 +281,7 @@ public class Memory extends Observable {
         for (int i = 0; i < stackBlockTable.length; i++) {
             if (other.stackBlockTable[i] != null) {
                 stackBlockTable[i] = other.stackBlockTable[i].clone();
+                blocks++;
             } else {
                 stackBlockTable[i] = null;
             }
@@ -258,13 +289,118 @@ public class Memory extends Observable {
         for (int i = 0; i < memoryMapBlockTable.length; i++) {
             if (other.memoryMapBlockTable[i] != null) {
                 memoryMapBlockTable[i] = other.memoryMapBlockTable[i].clone();
+                blocks++;
             } else {
                 memoryMapBlockTable[i] = null;
             }
         }
+        if (event.shouldCommit()) {
+            event.blocks = blocks;
+            event.commit();
+        }
         return true;
     }
 
+    /**
+     * Writes the text, data, stack and memory-mapped segments to an assembled image.  Only
+     * allocated blocks are written.  Text is stored as machine code together with the source
+     * file, line and text of each statement.
+     *
+     * @param out stream to write the image to
+     * @throws IOException if writing fails
+     * @see #readImage(DataInputStream)
+     */
+    public void writeImage(DataOutputStream out) throws IOException {
+        writeWordTable(out, dataBlockTable);
+        writeWordTable(out, stackBlockTable);
+        writeWordTable(out, memoryMapBlockTable);
+        HashMap<String, Integer> filenames = new HashMap<>();
+        for (int i = 0; i < textBlockTable.length; i++) {
+            if (textBlockTable[i] == null) continue;
+            for (int j = 0; j < TEXT_BLOCK_LENGTH_WORDS; j++) {
+                ProgramStatement statement = textBlockTable[i][j];
+                if (statement == null) continue;
+                out.writeInt(i * TEXT_BLOCK_LENGTH_WORDS + j);
+                out.writeInt(statement.getBinaryStatement());
+                // Each file name is written once, the first time it is referred to
+                if (statement.getSourceProgram() == null) {
+                    out.writeInt(-1);
+                } else {
+                    String filename = statement.getSourceFile();
+                    Integer index = filenames.get(filename);
+                    if (index == null) {
+                        out.writeInt(filenames.size());
+                        out.writeUTF(filename);
+                        filenames.put(filename, filenames.size());
+                    } else {
+                        out.writeInt(index);
+                    }
+                }
+                out.writeInt(statement.getSourceLine());
+                out.writeUTF(statement.getSource());
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    /**
+     * Replaces the contents of memory with an image written by {@link #writeImage(DataOutputStream)}
+     * under the same memory configuration.  Statements are decoded from their machine code.
+     *
+     * @param in stream to read the image from
+     * @throws IOException if reading fails or the image is malformed
+     */
+    public void readImage(DataInputStream in) throws IOException {
+        textBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
+        dataBlockTable = new int[BLOCK_TABLE_LENGTH][];
+        stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
+        memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        readWordTable(in, dataBlockTable);
+        readWordTable(in, stackBlockTable);
+        readWordTable(in, memoryMapBlockTable);
+        ArrayList<RISCVprogram> programs = new ArrayList<>();
+        for (int word = in.readInt(); word != -1; word = in.readInt()) {
+            int binary = in.readInt();
+            int fileIndex = in.readInt();
+            if (fileIndex == programs.size()) {
+                programs.add(new RISCVprogram(in.readUTF()));
+            }
+            if (word < 0 || word >= TEXT_BLOCK_TABLE_LENGTH * TEXT_BLOCK_LENGTH_WORDS
+                    || fileIndex < -1 || fileIndex >= programs.size()) {
+                throw new IOException("Malformed text segment in image");
+            }
+            RISCVprogram program = (fileIndex == -1) ? null : programs.get(fileIndex);
+            int line = in.readInt();
+            String source = in.readUTF();
+            int address = textBaseAddress + word * WORD_LENGTH_BYTES;
+            storeProgramStatement(address, new ProgramStatement(program, source, line, binary, address),
+                    textBaseAddress, textBlockTable);
+        }
+    }
+
+    private static void writeWordTable(DataOutputStream out, int[][] blockTable) throws IOException {
+        for (int i = 0; i < blockTable.length; i++) {
+            if (blockTable[i] == null) continue;
+            out.writeInt(i);
+            for (int word : blockTable[i]) {
+                out.writeInt(word);
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    private static void readWordTable(DataInputStream in, int[][] blockTable) throws IOException {
+        for (int i = in.readInt(); i != -1; i = in.readInt()) {
+            if (i < 0 || i >= blockTable.length) {
+                throw new IOException("Malformed data segment in image");
+            }
+            blockTable[i] = new int[BLOCK_LENGTH_WORDS];
+            for (int j = 0; j < BLOCK_LENGTH_WORDS; j++) {
+                blockTable[i][j] = in.readInt();
+            }
+        }
+    }
+
     public static Memory swapInstance(Memory mem) {
         Memory temp = uniqueMemoryInstance;
         uniqueMemoryInstance = mem;
@@ -328,6 +464,7 @@ public class Memory extends Observable {
         dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        readableText = new int[0];
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
@@ -426,6 +563,10 @@ public class Memory extends Observable {
                     SimulationException.STORE_ACCESS_FAULT, address);
         }
         notifyAnyObservers(AccessNotice.WRITE, address, length, value);
+        if (watchpoints.length > 0) checkWatchpoints(AccessNotice.WRITE, address, length);
+        for (ExecutionListener listener : listeners) {
+            listener.store(address, length);
+        }
         return oldValue;
     }
 
@@ -477,6 +618,10 @@ public class Memory extends Observable {
                     SimulationException.STORE_ACCESS_FAULT, address);
         }
         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
+        if (watchpoints.length > 0) checkWatchpoints(AccessNotice.WRITE, address, WORD_LENGTH_BYTES);
+        for (ExecutionListener listener : listeners) {
+            listener.store(address, WORD_LENGTH_BYTES);
+        }
         if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addMemoryRestoreRawWord(address, oldValue);
         }
@@ -485,6 +630,74 @@ public class Memory extends Observable {
 
     ///////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Copies a run of words into the data segment, a block at a time.  The words are stored
+     * as is and observers are not notified.  This is how the assembler commits initialized
+     * data in bulk.
+     *
+     * @param address Address of the first word.  Must be word-aligned.
+     * @param words   Array holding the words.
+     * @param offset  Index in the array of the first word.
+     * @param count   Number of words to copy.
+     * @throws AddressErrorException If address is not on word boundary or the run does not lie within the data segment.
+     **/
+    public synchronized void setRawWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+        checkStoreWordAligned(address);
+        int relative = checkDataSegmentRun(address, count, SimulationException.STORE_ACCESS_FAULT);
+        while (count > 0) {
+            int block = relative / BLOCK_LENGTH_WORDS;
+            int start = relative % BLOCK_LENGTH_WORDS;
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - start);
+            if (dataBlockTable[block] == null) {
+                // First time writing to this block, so allocate the space.
+                dataBlockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            }
+            System.arraycopy(words, offset, dataBlockTable[block], start, length);
+            relative += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    /**
+     * Copies a run of words out of the data segment, a block at a time, without notifying
+     * observers.  The counterpart of {@link #setRawWords(int, int[], int, int)}.
+     *
+     * @param address Address of the first word.  Must be word-aligned.
+     * @param words   Array to receive the words.
+     * @param offset  Index in the array of the first word.
+     * @param count   Number of words to copy.
+     * @throws AddressErrorException If address is not on word boundary or the run does not lie within the data segment.
+     **/
+    public synchronized void getRawWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+        checkLoadWordAligned(address);
+        int relative = checkDataSegmentRun(address, count, SimulationException.LOAD_ACCESS_FAULT);
+        while (count > 0) {
+            int block = relative / BLOCK_LENGTH_WORDS;
+            int start = relative % BLOCK_LENGTH_WORDS;
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - start);
+            if (dataBlockTable[block] == null) {
+                Arrays.fill(words, offset, offset + length, 0);
+            } else {
+                System.arraycopy(dataBlockTable[block], start, words, offset, length);
+            }
+            relative += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    // Returns the word offset of a run of words into the data segment, if it lies within it.
+    private static int checkDataSegmentRun(int address, int count, int cause) throws AddressErrorException {
+        if (!inDataSegment(address) || count < 0
+                || (long) address + 4L * count > (long) dataSegmentLimitAddress) {
+            throw new AddressErrorException("address out of range ", cause, address);
+        }
+        return (address - dataSegmentBaseAddress) >> 2;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+
     /**
      * Starting at the given word address, write the given value over 4 bytes (a word).
      * The address must be word-aligned.
@@ -638,7 +851,7 @@ public class Memory extends Observable {
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
-            if (Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)) {
+            if (textReadable(address, length)) {
                 if (address % 4 + length > 4) {
                     // TODO: add checks for halfword load not aligned to halfword boundary
                     throw new AddressErrorException(
@@ -659,7 +872,13 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     SimulationException.LOAD_ACCESS_FAULT, address);
         }
-        if (notify) notifyAnyObservers(AccessNotice.READ, address, length, value);
+        if (notify) {
+            notifyAnyObservers(AccessNotice.READ, address, length, value);
+            if (watchpoints.length > 0) checkWatchpoints(AccessNotice.READ, address, length);
+            for (ExecutionListener listener : listeners) {
+                listener.load(address, length);
+            }
+        }
         return value;
     }
 
@@ -700,7 +919,7 @@ public class Memory extends Observable {
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
-            if (Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)) {
+            if (textReadable(address, WORD_LENGTH_BYTES)) {
                 ProgramStatement stmt = getStatementNoNotify(address);
                 value = stmt == null ? 0 : stmt.getBinaryStatement();
             } else {
@@ -714,6 +933,10 @@ public class Memory extends Observable {
                     SimulationException.LOAD_ACCESS_FAULT, address);
         }
         notifyAnyObservers(AccessNotice.READ, address, Memory.WORD_LENGTH_BYTES, value);
+        if (watchpoints.length > 0) checkWatchpoints(AccessNotice.READ, address, WORD_LENGTH_BYTES);
+        for (ExecutionListener listener : listeners) {
+            listener.load(address, WORD_LENGTH_BYTES);
+        }
         return value;
     }
 
@@ -964,6 +1187,34 @@ public class Memory extends Observable {
         return address >= textBaseAddress && address < textLimitAddress;
     }
 
+    /**
+     * Lets loads read part of the text segment, for read-only data placed there, such as the
+     * .rodata of an executable linked right after its code.  Stores to it are still refused
+     * unless self-modifying code is enabled.  The permission lasts until memory is cleared.
+     *
+     * @param start first address of the range
+     * @param end   address following the range
+     */
+    public void addReadableText(int start, int end) {
+        int[] ranges = Arrays.copyOf(readableText, readableText.length + 2);
+        ranges[ranges.length - 2] = start;
+        ranges[ranges.length - 1] = end;
+        readableText = ranges;
+    }
+
+    // Whether a load of length bytes may read the text segment at address
+    private boolean textReadable(int address, int length) {
+        if (Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)) {
+            return true;
+        }
+        for (int i = 0; i < readableText.length; i += 2) {
+            if (address >= readableText[i] && address + length <= readableText[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Handy little utility to find out if given address is in RARS data
      * segment (starts at Memory.dataSegmentBaseAddress).
@@ -1141,6 +1392,128 @@ public class Memory extends Observable {
     }
 
 
+    /////////////////////////////////////////////////////////////////////////
+    //  WATCHPOINTS.  Unlike observers, these are meant for a debugger driving
+    //  the simulator at full speed, such as the GDB stub, so they are only checked
+    //  for data accesses by the program, never for instruction fetches.
+
+    /**
+     * A range of addresses whose reads, writes or both stop the simulator.
+     */
+    public static final class Watchpoint {
+        private final int address;
+        private final int length;
+        private final boolean read;
+        private final boolean write;
+
+        /**
+         * @param address the first address watched
+         * @param length  how many bytes are watched
+         * @param read    whether loads from the range stop the simulator
+         * @param write   whether stores to the range stop the simulator
+         */
+        public Watchpoint(int address, int length, boolean read, boolean write) {
+            this.address = address;
+            this.length = Math.max(length, 1);
+            this.read = read;
+            this.write = write;
+        }
+
+        public int getAddress() {
+            return address;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public boolean isRead() {
+            return read;
+        }
+
+        public boolean isWrite() {
+            return write;
+        }
+
+        // Whether an access overlaps the range; compared unsigned so ranges may end at the top of memory
+        private boolean matches(int type, int address, int length) {
+            return (type == AccessNotice.READ ? read : write) &&
+                    (Integer.compareUnsigned(address - this.address, this.length) < 0 ||
+                            Integer.compareUnsigned(this.address - address, length) < 0);
+        }
+    }
+
+    /**
+     * Starts watching a range of addresses.  The simulator stops after an instruction that
+     * accesses it, and {@link #takeWatchpointHit()} tells which watchpoint was hit.
+     *
+     * @param watchpoint the range and kinds of access to watch
+     */
+    public synchronized void addWatchpoint(Watchpoint watchpoint) {
+        Watchpoint[] more = Arrays.copyOf(watchpoints, watchpoints.length + 1);
+        more[watchpoints.length] = watchpoint;
+        watchpoints = more;
+    }
+
+    /**
+     * Stops watching a range of addresses.
+     *
+     * @param watchpoint a watchpoint given to {@link #addWatchpoint(Watchpoint)}
+     * @return false if it was not being watched
+     */
+    public synchronized boolean removeWatchpoint(Watchpoint watchpoint) {
+        for (int i = 0; i < watchpoints.length; i++) {
+            if (watchpoints[i] == watchpoint) {
+                Watchpoint[] fewer = new Watchpoint[watchpoints.length - 1];
+                System.arraycopy(watchpoints, 0, fewer, 0, i);
+                System.arraycopy(watchpoints, i + 1, fewer, i, fewer.length - i);
+                watchpoints = fewer;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the watchpoint most recently accessed, or null if none has been since the last
+     * call to {@link #takeWatchpointHit()}
+     */
+    public Watchpoint getWatchpointHit() {
+        return watchpointHit;
+    }
+
+    /**
+     * Returns and forgets the watchpoint most recently accessed, so that the simulator can be
+     * resumed.
+     *
+     * @return the watchpoint, or null if none was accessed
+     */
+    public Watchpoint takeWatchpointHit() {
+        Watchpoint hit = watchpointHit;
+        watchpointHit = null;
+        return hit;
+    }
+
+    /**
+     * Sets the listeners to tell of the program's loads and stores.  The simulator does this
+     * when it starts and stops, see {@link com.github.unaimillan.rars.simulator.Simulator#addExecutionListener}.
+     *
+     * @param listeners the listeners, or null for none
+     */
+    public void setExecutionListeners(ExecutionListener[] listeners) {
+        this.listeners = listeners == null ? NO_LISTENERS : listeners;
+    }
+
+    private void checkWatchpoints(int type, int address, int length) {
+        for (Watchpoint watchpoint : watchpoints) {
+            if (watchpoint.matches(type, address, length)) {
+                watchpointHit = watchpoint;
+                return;
+            }
+        }
+    }
+
+
     /*********************************  THE HELPERS  *************************************/
 
 
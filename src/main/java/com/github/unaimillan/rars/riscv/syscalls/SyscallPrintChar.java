@@ -39,6 +39,11 @@ public class SyscallPrintChar extends AbstractSyscall {
                 "a0 = character to print (only lowest byte is considered)", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         char t = (char) (RegisterFile.getValue("a0") & 0x000000ff);
         SystemIO.printString(Character.toString(t));
@@ -43,6 +43,11 @@ public class SyscallPrintDouble extends AbstractSyscall {
         super("PrintDouble", "Prints a double precision floating point number", "fa0 = double to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     /**
      * Performs syscall function to print double whose bits are stored in fa0
      */
@@ -38,6 +38,11 @@ public class SyscallPrintFloat extends AbstractSyscall {
         super("PrintFloat", "Prints a floating point number", "fa0 = float to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(Float.toString(Float.intBitsToFloat(
                 FloatingPointRegisterFile.getValue("fa0"))));
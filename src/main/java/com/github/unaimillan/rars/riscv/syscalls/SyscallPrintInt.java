@@ -38,6 +38,11 @@ public class SyscallPrintInt extends AbstractSyscall {
         super("PrintInt", "Prints an integer", "a0 = integer to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(Integer.toString(RegisterFile.getValue("a0")));
     }
@@ -39,6 +39,11 @@ public class SyscallPrintIntBinary extends AbstractSyscall {
         super("PrintIntBinary", "Prints an integer (in binary format left-padded with zeroes) ", "a0 = integer to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(Binary.intToBinaryString(RegisterFile.getValue("a0")));
     }
@@ -39,6 +39,11 @@ public class SyscallPrintIntHex extends AbstractSyscall {
         super("PrintIntHex", "Prints an integer (in hexdecimal format left-padded with zeroes)", "a0 = integer to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(Binary.intToHexString(RegisterFile.getValue("a0")));
     }
@@ -39,6 +39,11 @@ public class SyscallPrintIntUnsigned extends AbstractSyscall {
         super("PrintIntUnsigned", "Prints an integer (unsigned)", "a0 = integer to print", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) {
         SystemIO.printString(
                 Binary.unsignedIntToIntString(RegisterFile.getValue("a0")));
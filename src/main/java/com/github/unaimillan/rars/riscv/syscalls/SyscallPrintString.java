@@ -39,6 +39,11 @@ public class SyscallPrintString extends AbstractSyscall {
                 "a0 = the address of the string", "N/A");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) throws ExitingException {
         SystemIO.printString(NullString.get(statement));
     }
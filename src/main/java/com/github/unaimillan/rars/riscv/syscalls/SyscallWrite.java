@@ -49,6 +49,11 @@ public class SyscallWrite extends AbstractSyscall {
                 "a0 = the number of charcters written");
     }
 
+    @Override
+    public boolean flushesOutput() {
+        return false;
+    }
+
     public void simulate(ProgramStatement statement) throws ExitingException {
         int byteAddress = RegisterFile.getValue("a1"); // source of characters to write to file
         int reqLength = RegisterFile.getValue("a2"); // user-requested length
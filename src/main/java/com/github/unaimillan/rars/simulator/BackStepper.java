@@ -2,6 +2,7 @@ package com.github.unaimillan.rars.simulator;
 
 import com.github.unaimillan.rars.Globals;
 import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.jfr.BackstepEvent;
 import com.github.unaimillan.rars.riscv.Instruction;
 import com.github.unaimillan.rars.riscv.hardware.ControlAndStatusRegisterFile;
 import com.github.unaimillan.rars.riscv.hardware.FloatingPointRegisterFile;
@@ -122,10 +123,14 @@ public class BackStepper {
     // Use a do-while loop based on the backstep's program statement reference.
     public void backStep() {
         if (engaged && !backSteps.empty()) {
+            BackstepEvent event = new BackstepEvent();
+            event.begin();
             ProgramStatement statement = backSteps.peek().ps;
+            int actions = 0;
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
                 BackStep step = backSteps.pop();
+                actions++;
             /*
                 System.out.println("backstep POP: action "+step.action+" pc "+rars.util.Binary.intToHexString(step.pc)+
             	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
@@ -176,6 +181,11 @@ public class BackStepper {
                 }
             } while (!backSteps.empty() && statement == backSteps.peek().ps);
             engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+            if (event.shouldCommit()) {
+                event.address = RegisterFile.getProgramCounter();
+                event.actions = actions;
+                event.commit();
+            }
         }
     }
 
@@ -0,0 +1,56 @@
+package com.github.unaimillan.rars.simulator;
+
+import com.github.unaimillan.rars.ProgramStatement;
+
+/**
+ * Follows the simulated program instruction by instruction, for headless models of hardware
+ * the program runs on, such as caches, and for tools that record what it did.  Unlike the
+ * observers of {@link com.github.unaimillan.rars.riscv.hardware.Memory} and the register files,
+ * listeners are called directly by the simulator, with no notice objects, and only while it is
+ * running, so they can follow programs of many millions of instructions.
+ * <p>
+ * For each instruction a listener sees a fetch, then the loads and stores the instruction made
+ * (including those of system calls on its behalf), then its retirement.  An instruction that
+ * traps is fetched but not retired.  Listeners are called in the simulator's thread.
+ *
+ * @see Simulator#addExecutionListener(ExecutionListener)
+ */
+public interface ExecutionListener {
+    /**
+     * An instruction is about to be executed.
+     *
+     * @param address   the address of the instruction
+     * @param statement the instruction
+     */
+    default void fetch(int address, ProgramStatement statement) {
+    }
+
+    /**
+     * The program has read memory.
+     *
+     * @param address the first address read
+     * @param length  the number of bytes read
+     */
+    default void load(int address, int length) {
+    }
+
+    /**
+     * The program has written memory.
+     *
+     * @param address the first address written
+     * @param length  the number of bytes written
+     */
+    default void store(int address, int length) {
+    }
+
+    /**
+     * An instruction has been executed without a trap.
+     *
+     * @param address   the address of the instruction
+     * @param statement the instruction
+     * @param next      the address of the next instruction, which differs from address + 4 for taken
+     *                  branches and jumps
+     */
+    default void retire(int address, ProgramStatement statement, int next) {
+    }
+}
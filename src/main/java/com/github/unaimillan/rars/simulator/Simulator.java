@@ -1,6 +1,8 @@
 package com.github.unaimillan.rars.simulator;
 
 import com.github.unaimillan.rars.*;
+import com.github.unaimillan.rars.jfr.SimulationEvent;
+import com.github.unaimillan.rars.jfr.TrapEvent;
 import com.github.unaimillan.rars.riscv.BasicInstruction;
 import com.github.unaimillan.rars.riscv.Instruction;
 import com.github.unaimillan.rars.riscv.hardware.AddressErrorException;
@@ -52,7 +54,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  **/
 
 public class Simulator extends Observable {
-    private SimThread simulatorThread;
+    private volatile SimThread simulatorThread;
     private static Simulator simulator = null;  // Singleton object
     private static Runnable interactiveGUIUpdater = null;
 
@@ -103,11 +105,13 @@ public class Simulator extends Observable {
      **/
 
     public Reason simulate(int pc, int maxSteps, int[] breakPoints) throws SimulationException {
-        simulatorThread = new SimThread(pc, maxSteps, breakPoints);
-        simulatorThread.run(); // Just call run, this is a blocking method
-        SimulationException pe = simulatorThread.pe;
-        boolean done = simulatorThread.done;
-        Reason out = simulatorThread.constructReturnReason;
+        // Another thread may stop the simulation, which clears simulatorThread
+        SimThread thread = new SimThread(pc, maxSteps, breakPoints);
+        simulatorThread = thread;
+        thread.run(); // Just call run, this is a blocking method
+        SimulationException pe = thread.pe;
+        boolean done = thread.done;
+        Reason out = thread.constructReturnReason;
         if (done) SystemIO.resetFiles(); // close any files opened in the process of simulating
         this.simulatorThread = null;
         if (pe != null) {
@@ -165,6 +169,10 @@ public class Simulator extends Observable {
 
     private final ArrayList<StopListener> stopListeners = new ArrayList<>(1);
 
+    // Copied on change, since the simulator goes through it for every instruction
+    private ExecutionListener[] executionListeners = new ExecutionListener[0];
+    private TimingModel timingModel;
+
     public void addStopListener(StopListener l) {
         stopListeners.add(l);
     }
@@ -173,6 +181,43 @@ public class Simulator extends Observable {
         stopListeners.remove(l);
     }
 
+    /**
+     * Adds a listener to follow the instructions and memory accesses of the program from the
+     * next time the simulator starts.
+     *
+     * @param l the listener
+     */
+    public synchronized void addExecutionListener(ExecutionListener l) {
+        ExecutionListener[] more = Arrays.copyOf(executionListeners, executionListeners.length + 1);
+        more[executionListeners.length] = l;
+        executionListeners = more;
+    }
+
+    /**
+     * Removes a listener added by {@link #addExecutionListener(ExecutionListener)}, from the
+     * next time the simulator starts.
+     *
+     * @param l the listener
+     */
+    public synchronized void removeExecutionListener(ExecutionListener l) {
+        ArrayList<ExecutionListener> fewer = new ArrayList<>(Arrays.asList(executionListeners));
+        fewer.remove(l);
+        executionListeners = fewer.toArray(new ExecutionListener[0]);
+    }
+
+    /**
+     * Makes the cycle counter follow a model of the hardware's timing, from the next time the
+     * simulator starts.  The model is added as an execution listener, and the one it replaces
+     * removed.
+     *
+     * @param model the model, or null to count one cycle per instruction again
+     */
+    public synchronized void setTimingModel(TimingModel model) {
+        if (timingModel != null) removeExecutionListener(timingModel);
+        timingModel = model;
+        if (model != null) addExecutionListener(model);
+    }
+
     // The Simthread object will call this method when it enters and returns from
     // its run() method.  These signal start and stop, respectively, of
     // simulation execution.  The observer can then adjust its own state depending
@@ -206,6 +251,10 @@ public class Simulator extends Observable {
         private SimulationException pe;
         private volatile boolean stop = false;
         private Reason constructReturnReason;
+        private final SimulationEvent event = new SimulationEvent();
+        private long startInstret;
+        private ExecutionListener[] listeners;
+        private TimingModel timing;
 
         /**
          * SimThread constructor.  Receives all the information it needs to simulate execution.
@@ -236,12 +285,25 @@ public class Simulator extends Observable {
         }
 
         private void startExecution() {
+            event.begin();
+            event.startAddress = pc;
+            startInstret = ControlAndStatusRegisterFile.getValueNoNotify("instret");
+            listeners = executionListeners;
+            timing = timingModel;
+            Globals.memory.setExecutionListeners(listeners);
             Simulator.getInstance().notifyObserversOfExecution(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
                     maxSteps, (Globals.getGui() != null || Globals.runSpeedPanelExists) ? RunSpeedPanel.getInstance().getRunSpeed() : RunSpeedPanel.UNLIMITED_SPEED,
                     pc, null, pe, done));
         }
 
         private void stopExecution(boolean done, Reason reason) {
+            if (event.shouldCommit()) {
+                event.stopAddress = RegisterFile.getProgramCounter();
+                event.instructions = ControlAndStatusRegisterFile.getValueNoNotify("instret") - startInstret;
+                event.reason = String.valueOf(reason);
+                event.commit();
+            }
+            Globals.memory.setExecutionListeners(null);
             this.done = done;
             this.constructReturnReason = reason;
             SystemIO.flush(true);
@@ -279,6 +341,7 @@ public class Simulator extends Observable {
                 }
             }
 
+            trapEvent(se.cause(), pc, se.value(), exceptionHandler != null);
             if (exceptionHandler != null) {
                 ControlAndStatusRegisterFile.orRegister("ustatus", 0x10); // Set UPIE
                 ControlAndStatusRegisterFile.clearRegister("ustatus", 0x1); // Clear UIE
@@ -320,6 +383,7 @@ public class Simulator extends Observable {
             } catch (AddressErrorException aee) {
                 // handled below
             }
+            trapEvent(cause, pc, value, exceptionHandler != null);
             if (exceptionHandler != null) {
                 ControlAndStatusRegisterFile.orRegister("ustatus", 0x10); // Set UPIE
                 ControlAndStatusRegisterFile.clearRegister("ustatus", ControlAndStatusRegisterFile.INTERRUPT_ENABLE);
@@ -333,6 +397,18 @@ public class Simulator extends Observable {
             }
         }
 
+        private void trapEvent(int cause, int pc, int value, boolean handled) {
+            TrapEvent trap = new TrapEvent();
+            if (trap.shouldCommit()) {
+                trap.cause = cause;
+                trap.interrupt = cause < 0;
+                trap.address = pc;
+                trap.value = value;
+                trap.handled = handled;
+                trap.commit();
+            }
+        }
+
         /**
          * Implements Runnable
          */
@@ -484,8 +560,14 @@ public class Simulator extends Observable {
                                     "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
                                     SimulationException.ILLEGAL_INSTRUCTION);
                         }
+                        for (ExecutionListener listener : listeners) {
+                            listener.fetch(pc, statement);
+                        }
                         // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
                         instruction.simulate(statement);
+                        for (ExecutionListener listener : listeners) {
+                            listener.retire(pc, statement, RegisterFile.getProgramCounter());
+                        }
 
                         // IF statement added 7/26/06 (explanation above)
                         if (Globals.getSettings().getBackSteppingEnabled()) {
@@ -529,13 +611,14 @@ public class Simulator extends Observable {
                 long cycle = ControlAndStatusRegisterFile.getValueNoNotify("cycle"),
                         instret = ControlAndStatusRegisterFile.getValueNoNotify("instret"),
                         time = System.currentTimeMillis();
-                ControlAndStatusRegisterFile.updateRegisterBackdoor("cycle", cycle + 1);
+                ControlAndStatusRegisterFile.updateRegisterBackdoor("cycle", cycle + (timing == null ? 1 : timing.takeCycles()));
                 ControlAndStatusRegisterFile.updateRegisterBackdoor("instret", instret + 1);
                 ControlAndStatusRegisterFile.updateRegisterBackdoor("time", time);
 
-                //     Return if we've reached a breakpoint.
+                //     Return if we've reached a breakpoint or accessed a watchpoint.
                 if (ebreak || (breakPoints != null) &&
-                        (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0)) {
+                        (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0) ||
+                        Globals.memory.getWatchpointHit() != null) {
                     stopExecution(false, Reason.BREAKPOINT);
                     return;
                 }
@@ -0,0 +1,17 @@
+package com.github.unaimillan.rars.simulator;
+
+/**
+ * An {@link ExecutionListener} that decides how many cycles instructions take.  While one is
+ * set, the simulator advances the cycle counter by what it says after each instruction, instead
+ * of by one, so programs reading <tt>cycle</tt> see the timing of the hardware it models;
+ * <tt>instret</tt> still counts instructions.
+ *
+ * @see Simulator#setTimingModel(TimingModel)
+ */
+public interface TimingModel extends ExecutionListener {
+    /**
+     * @return the cycles that have passed since the last call, usually those of the instruction
+     * just retired
+     */
+    long takeCycles();
+}
@@ -0,0 +1,57 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A table of 2-bit saturating counters indexed by the branch address, the classic predictor
+ * (and the 2-bit mode of the Branch History Table tool).  Each counter counts up when its
+ * branches are taken and down when they are not, and predicts taken in its upper half.
+ */
+public class BimodalPredictor implements BranchPredictor {
+    private final byte[] counters;
+    private final int mask;
+
+    /**
+     * @param entries the number of counters, a power of two
+     * @throws IllegalArgumentException if it is not
+     */
+    public BimodalPredictor(int entries) {
+        if (entries < 1 || Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("bimodal: entries must be a power of two, not " + entries);
+        }
+        counters = new byte[entries];
+        mask = entries - 1;
+        reset();
+    }
+
+    @Override
+    public String getName() {
+        return "bimodal";
+    }
+
+    @Override
+    public String describe() {
+        return "bimodal, " + counters.length + " 2-bit counters";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return counters[(address >>> 2) & mask] >= 2;
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        int index = (address >>> 2) & mask;
+        counters[index] = count(counters[index], taken);
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(counters, (byte) 1); // weakly not taken
+    }
+
+    static byte count(byte counter, boolean taken) {
+        if (taken) return counter < 3 ? (byte) (counter + 1) : counter;
+        return counter > 0 ? (byte) (counter - 1) : counter;
+    }
+}
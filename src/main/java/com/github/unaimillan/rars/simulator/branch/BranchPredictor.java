@@ -0,0 +1,39 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+/**
+ * Guesses which way conditional branches go.  For each branch the simulator executes, the
+ * predictor is first asked for its guess, then told the outcome, before the next branch; so a
+ * predictor may keep what it looked up in {@link #predict} for use in {@link #update}.
+ *
+ * @see BranchPredictorEvaluation
+ */
+public interface BranchPredictor {
+    /**
+     * @return a short name for report columns, e.g. gshare
+     */
+    String getName();
+
+    /**
+     * @return a description such as "gshare, 12 bits of history, 4096 2-bit counters"
+     */
+    String describe();
+
+    /**
+     * @param address the address of a conditional branch about to execute
+     * @return true if the predictor expects it to be taken
+     */
+    boolean predict(int address);
+
+    /**
+     * Learns the outcome of the branch last predicted.
+     *
+     * @param address the address of the branch
+     * @param taken   whether it was taken
+     */
+    void update(int address, boolean taken);
+
+    /**
+     * Forgets everything learned.
+     */
+    void reset();
+}
@@ -0,0 +1,301 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Runs several branch predictors side by side on the branches the program executes, together
+ * with a branch target buffer and a return-address stack, and reports how often each was right,
+ * overall and branch by branch.  Added to the simulator as an {@link ExecutionListener}, it
+ * learns the outcome of each branch and jump as it retires.
+ * <p>
+ * The predictors are described by a string of comma separated names, each optionally followed by
+ * a size: <tt>bimodal:4096</tt> (counters), <tt>gshare:12</tt> (bits of history),
+ * <tt>tournament:4096</tt> (entries per table), <tt>tage:10</tt> (index bits of the tagged
+ * tables), <tt>btb:512</tt> (targets) and <tt>ras:16</tt> (return addresses).  The sizes shown
+ * are the defaults.  Calls and returns are recognised by their link registers, ra and t0, as
+ * the RISC-V specification recommends for return-address stacks.
+ */
+public class BranchPredictorEvaluation implements ExecutionListener {
+    /**
+     * Used when no predictors are given
+     */
+    public static final String DEFAULT = "bimodal,gshare,tournament,tage";
+
+    private static final int MOST_MISPREDICTED = 20; // branches listed in the report
+
+    private final BranchPredictor[] predictors;
+    private final BranchTargetBuffer targetBuffer;
+    private final ReturnAddressStack returnStack;
+    private final HashMap<Integer, Branch> branches = new HashMap<>();
+    private long instructions, conditionals, taken;
+    private final long[] correct;
+    private long jumps, jumpTargetsFound, returns, returnsFound;
+
+    // One conditional branch of the program and how each predictor did on it
+    private static final class Branch {
+        final ProgramStatement statement;
+        final long[] wrong;
+        long executed, taken;
+
+        Branch(ProgramStatement statement, int predictors) {
+            this.statement = statement;
+            wrong = new long[predictors];
+        }
+
+        long totalWrong() {
+            long total = 0;
+            for (long w : wrong) total += w;
+            return total;
+        }
+    }
+
+    /**
+     * @param predictors   the direction predictors to compare
+     * @param targetBuffer the branch target buffer
+     * @param returnStack  the return-address stack
+     */
+    public BranchPredictorEvaluation(BranchPredictor[] predictors, BranchTargetBuffer targetBuffer,
+                                     ReturnAddressStack returnStack) {
+        this.predictors = predictors.clone();
+        this.targetBuffer = targetBuffer;
+        this.returnStack = returnStack;
+        correct = new long[predictors.length];
+    }
+
+    /**
+     * Builds an evaluation from its description.
+     *
+     * @param spec the predictors, see the class description
+     * @return the evaluation
+     * @throws IllegalArgumentException if the description is not understood
+     */
+    public static BranchPredictorEvaluation parse(String spec) {
+        ArrayList<BranchPredictor> predictors = new ArrayList<>();
+        int targets = 512, depth = 16;
+        for (String item : spec.toLowerCase(Locale.ROOT).split(",")) {
+            String[] fields = item.trim().split(":");
+            if (fields.length > 2) {
+                throw new IllegalArgumentException("predictor expected as name or name:size, not " + item);
+            }
+            switch (fields[0]) {
+                case "btb":
+                    targets = size(fields, targets);
+                    break;
+                case "ras":
+                    depth = size(fields, depth);
+                    break;
+                default:
+                    predictors.add(predictor(item));
+            }
+        }
+        if (predictors.isEmpty()) {
+            throw new IllegalArgumentException("no direction predictor given");
+        }
+        return new BranchPredictorEvaluation(predictors.toArray(new BranchPredictor[0]),
+                new BranchTargetBuffer(targets), new ReturnAddressStack(depth));
+    }
+
+    /**
+     * Builds one direction predictor from its description.
+     *
+     * @param spec the name and optional size of a predictor, as in the class description
+     * @return the predictor
+     * @throws IllegalArgumentException if the description is not understood
+     */
+    public static BranchPredictor predictor(String spec) {
+        String[] fields = spec.trim().toLowerCase(Locale.ROOT).split(":");
+        if (fields.length > 2) {
+            throw new IllegalArgumentException("predictor expected as name or name:size, not " + spec);
+        }
+        switch (fields[0]) {
+            case "bimodal":
+                return new BimodalPredictor(size(fields, 4096));
+            case "gshare":
+                return new GsharePredictor(size(fields, 12));
+            case "tournament":
+                return new TournamentPredictor(size(fields, 4096));
+            case "tage":
+                return new TagePredictor(size(fields, 10));
+            default:
+                throw new IllegalArgumentException("unknown predictor " + fields[0] +
+                        " (use bimodal, gshare, tournament or tage)");
+        }
+    }
+
+    private static int size(String[] fields, int otherwise) {
+        if (fields.length < 2) return otherwise;
+        try {
+            return Integer.parseInt(fields[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(fields[0] + ": number expected, not " + fields[1]);
+        }
+    }
+
+    @Override
+    public void retire(int address, ProgramStatement statement, int next) {
+        instructions++;
+        int word = statement.getBinaryStatement();
+        int rd = (word >>> 7) & 0x1f, rs1 = (word >>> 15) & 0x1f;
+        switch (word & 0x7f) {
+            case 0x63: // conditional branch
+                conditional(address, statement, next != address + 4);
+                if (next != address + 4) jump(address, next);
+                break;
+            case 0x6f: // jal
+                if (isLink(rd)) returnStack.push(address + 4);
+                jump(address, next);
+                break;
+            case 0x67: // jalr
+                if (isLink(rs1) && (!isLink(rd) || rd != rs1)) {
+                    returns++;
+                    if (returnStack.pop() == next) returnsFound++;
+                } else {
+                    jump(address, next);
+                }
+                if (isLink(rd)) returnStack.push(address + 4);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void conditional(int address, ProgramStatement statement, boolean wasTaken) {
+        Branch branch = branches.get(address);
+        if (branch == null) {
+            branch = new Branch(statement, predictors.length);
+            branches.put(address, branch);
+        }
+        conditionals++;
+        branch.executed++;
+        if (wasTaken) {
+            taken++;
+            branch.taken++;
+        }
+        for (int p = 0; p < predictors.length; p++) {
+            if (predictors[p].predict(address) == wasTaken) correct[p]++;
+            else branch.wrong[p]++;
+            predictors[p].update(address, wasTaken);
+        }
+    }
+
+    private void jump(int address, int target) {
+        jumps++;
+        if (targetBuffer.predict(address) == target) jumpTargetsFound++;
+        targetBuffer.update(address, target);
+    }
+
+    private static boolean isLink(int register) {
+        return register == 1 || register == 5;
+    }
+
+    public BranchPredictor[] getPredictors() {
+        return predictors.clone();
+    }
+
+    public long getConditionalBranches() {
+        return conditionals;
+    }
+
+    /**
+     * @param predictor the index of one of the predictors
+     * @return how many conditional branches it predicted correctly
+     */
+    public long getCorrect(int predictor) {
+        return correct[predictor];
+    }
+
+    /**
+     * @return how many taken branches and jumps other than returns there were
+     */
+    public long getJumps() {
+        return jumps;
+    }
+
+    /**
+     * @return how many of those the branch target buffer had the right target for
+     */
+    public long getJumpTargetsFound() {
+        return jumpTargetsFound;
+    }
+
+    public long getReturns() {
+        return returns;
+    }
+
+    /**
+     * @return how many returns the return-address stack predicted
+     */
+    public long getReturnsFound() {
+        return returnsFound;
+    }
+
+    /**
+     * Forgets what every predictor learned and zeroes the counts.
+     */
+    public void reset() {
+        for (BranchPredictor predictor : predictors) {
+            predictor.reset();
+        }
+        targetBuffer.reset();
+        returnStack.reset();
+        branches.clear();
+        instructions = conditionals = taken = jumps = jumpTargetsFound = returns = returnsFound = 0;
+        Arrays.fill(correct, 0);
+    }
+
+    /**
+     * Writes the accuracy of each predictor, then the branches most often mispredicted.
+     *
+     * @param out where to write it
+     */
+    public void report(PrintStream out) {
+        out.println(String.format(Locale.ROOT, "Branch prediction: %d conditional branches, %.2f%% taken, in %d instructions",
+                conditionals, percent(taken, conditionals), instructions));
+        for (int p = 0; p < predictors.length; p++) {
+            long wrong = conditionals - correct[p];
+            out.println(String.format(Locale.ROOT, "  %-62s %7.2f%%  mispredicted %10d  MPKI %7.2f",
+                    predictors[p].describe(), percent(correct[p], conditionals), wrong,
+                    instructions == 0 ? 0 : 1000.0 * wrong / instructions));
+        }
+        out.println(String.format(Locale.ROOT, "  %-62s %7.2f%%  of %d taken branches and jumps",
+                "BTB, " + targetBuffer.getEntries() + " targets", percent(jumpTargetsFound, jumps), jumps));
+        out.println(String.format(Locale.ROOT, "  %-62s %7.2f%%  of %d returns",
+                "return-address stack, " + returnStack.getDepth() + " entries", percent(returnsFound, returns), returns));
+        ArrayList<Branch> worst = new ArrayList<>(branches.values());
+        worst.removeIf(b -> b.totalWrong() == 0);
+        if (worst.isEmpty()) return;
+        worst.sort((a, b) -> Long.compare(b.totalWrong(), a.totalWrong()));
+        out.println("Most mispredicted branches, accuracy (%) of each predictor:");
+        StringBuilder heading = new StringBuilder(String.format("  %-10s %10s %7s", "address", "executed", "taken"));
+        for (BranchPredictor predictor : predictors) {
+            heading.append(String.format(" %10s", predictor.getName()));
+        }
+        out.println(heading.append("  source"));
+        for (Branch branch : worst.subList(0, Math.min(MOST_MISPREDICTED, worst.size()))) {
+            ProgramStatement statement = branch.statement;
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "  0x%08x %10d %6.1f%%",
+                    statement.getAddress(), branch.executed, percent(branch.taken, branch.executed)));
+            for (long wrong : branch.wrong) {
+                row.append(String.format(Locale.ROOT, " %10.2f", percent(branch.executed - wrong, branch.executed)));
+            }
+            String source = statement.getSource();
+            if (source == null || source.trim().isEmpty()) {
+                row.append("  ").append(statement.getPrintableBasicAssemblyStatement());
+            } else {
+                row.append("  ").append(statement.getSourceLine()).append(": ").append(source.trim().replace('\t', ' '));
+            }
+            out.println(row);
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
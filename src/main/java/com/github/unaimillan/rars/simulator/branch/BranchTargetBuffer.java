@@ -0,0 +1,60 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A direct-mapped table of the targets of taken branches and jumps, looked up by the address of
+ * the branch before it is decoded.  A miss means the fetch carries on sequentially.
+ */
+public class BranchTargetBuffer {
+    private final int[] addresses, targets;
+    private final boolean[] valid;
+    private final int mask;
+
+    /**
+     * @param entries the number of targets kept, a power of two
+     * @throws IllegalArgumentException if it is not
+     */
+    public BranchTargetBuffer(int entries) {
+        if (entries < 1 || Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("btb: entries must be a power of two, not " + entries);
+        }
+        addresses = new int[entries];
+        targets = new int[entries];
+        valid = new boolean[entries];
+        mask = entries - 1;
+    }
+
+    /**
+     * @param address the address of a branch or jump
+     * @return the target last recorded for it, or address + 4 if there is none
+     */
+    public int predict(int address) {
+        int index = (address >>> 2) & mask;
+        return valid[index] && addresses[index] == address ? targets[index] : address + 4;
+    }
+
+    /**
+     * Records where a branch or jump went.
+     *
+     * @param address the address of the branch or jump
+     * @param target  where it went
+     */
+    public void update(int address, int target) {
+        int index = (address >>> 2) & mask;
+        addresses[index] = address;
+        targets[index] = target;
+        valid[index] = true;
+    }
+
+    public int getEntries() {
+        return targets.length;
+    }
+
+    /**
+     * Forgets every target.
+     */
+    public void reset() {
+        Arrays.fill(valid, false);
+    }
+}
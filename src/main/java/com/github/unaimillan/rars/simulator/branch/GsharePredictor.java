@@ -0,0 +1,56 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * McFarling's gshare: 2-bit counters indexed by the branch address exclusive-ored with the
+ * outcomes of the most recent branches, so that a branch whose direction depends on the path
+ * to it gets a counter for each path.
+ */
+public class GsharePredictor implements BranchPredictor {
+    private final int historyBits, mask;
+    private final byte[] counters;
+    private int history; // the latest outcome in bit 0, 1 for taken
+
+    /**
+     * @param historyBits how many outcomes to remember; the table has 2 to that power counters
+     * @throws IllegalArgumentException if it is not between 1 and 24
+     */
+    public GsharePredictor(int historyBits) {
+        if (historyBits < 1 || historyBits > 24) {
+            throw new IllegalArgumentException("gshare: history must be 1 to 24 bits, not " + historyBits);
+        }
+        this.historyBits = historyBits;
+        mask = (1 << historyBits) - 1;
+        counters = new byte[1 << historyBits];
+        reset();
+    }
+
+    @Override
+    public String getName() {
+        return "gshare";
+    }
+
+    @Override
+    public String describe() {
+        return "gshare, " + historyBits + " bits of history, " + counters.length + " 2-bit counters";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        return counters[((address >>> 2) ^ history) & mask] >= 2;
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        int index = ((address >>> 2) ^ history) & mask;
+        counters[index] = BimodalPredictor.count(counters[index], taken);
+        history = ((history << 1) | (taken ? 1 : 0)) & mask;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(counters, (byte) 1);
+        history = 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+/**
+ * A small circular stack of return addresses: calls push the address after them and returns pop
+ * their prediction.  When calls nest deeper than the stack, the oldest addresses are overwritten,
+ * and returns from those are mispredicted.
+ */
+public class ReturnAddressStack {
+    private final int[] addresses;
+    private int top, count;
+
+    /**
+     * @param depth the number of addresses kept
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public ReturnAddressStack(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("ras: depth must be at least 1, not " + depth);
+        }
+        addresses = new int[depth];
+    }
+
+    /**
+     * @param address the address a call will return to
+     */
+    public void push(int address) {
+        top = (top + 1) % addresses.length;
+        addresses[top] = address;
+        count = Math.min(count + 1, addresses.length);
+    }
+
+    /**
+     * @return the predicted return address, or 0 if the stack is empty
+     */
+    public int pop() {
+        if (count == 0) return 0;
+        int address = addresses[top];
+        top = (top + addresses.length - 1) % addresses.length;
+        count--;
+        return address;
+    }
+
+    public int getDepth() {
+        return addresses.length;
+    }
+
+    /**
+     * Empties the stack.
+     */
+    public void reset() {
+        top = count = 0;
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A small TAGE predictor (Seznec and Michaud): a bimodal base table and four tagged tables
+ * indexed by the branch address hashed with ever longer global histories, of 5, 11, 23 and 47
+ * outcomes.  The table with the longest history whose tag matches gives the prediction; after a
+ * misprediction an entry is taken in a table of longer history, so each branch ends up using
+ * as much history as it needs.  Each tagged entry has a 3-bit counter and a 2-bit useful count
+ * saying whether it predicted better than the shorter histories would have; entries nobody
+ * finds useful are the ones replaced, and useful counts decay over time.
+ * <p>
+ * This keeps the structure of TAGE but leaves out the refinements of competition predictors,
+ * such as choosing the alternate prediction for newly allocated entries.
+ */
+public class TagePredictor implements BranchPredictor {
+    private static final int[] HISTORY_LENGTHS = {5, 11, 23, 47};
+    private static final int TAG_BITS = 9;
+    private static final int AGING_PERIOD = 1 << 18; // branches between halvings of the useful counts
+
+    private final int indexBits, tables = HISTORY_LENGTHS.length;
+    private final byte[] base;
+    private final short[][] tags;
+    private final byte[][] counters; // -4 to 3, taken from 0 up
+    private final byte[][] useful;
+    private long history; // the latest outcome in bit 0
+    private long branches;
+
+    // What predict found, for update
+    private final int[] indices = new int[tables], tagged = new int[tables];
+    private int provider, alternate;
+    private boolean prediction, alternatePrediction;
+
+    /**
+     * @param indexBits the tagged tables have 2 to this power entries each, the base table four times as many
+     * @throws IllegalArgumentException if it is not between 4 and 20
+     */
+    public TagePredictor(int indexBits) {
+        if (indexBits < 4 || indexBits > 20) {
+            throw new IllegalArgumentException("tage: index must be 4 to 20 bits, not " + indexBits);
+        }
+        this.indexBits = indexBits;
+        base = new byte[4 << indexBits];
+        tags = new short[tables][1 << indexBits];
+        counters = new byte[tables][1 << indexBits];
+        useful = new byte[tables][1 << indexBits];
+        reset();
+    }
+
+    @Override
+    public String getName() {
+        return "tage";
+    }
+
+    @Override
+    public String describe() {
+        return "TAGE, " + base.length + " base counters, " + tables + " x " + (1 << indexBits) + " tagged, histories " +
+                HISTORY_LENGTHS[0] + " to " + HISTORY_LENGTHS[tables - 1];
+    }
+
+    @Override
+    public boolean predict(int address) {
+        int pc = address >>> 2;
+        provider = alternate = -1;
+        for (int t = tables - 1; t >= 0; t--) {
+            int length = HISTORY_LENGTHS[t];
+            indices[t] = (pc ^ (pc >>> indexBits) ^ fold(length, indexBits)) & ((1 << indexBits) - 1);
+            tagged[t] = (pc ^ fold(length, TAG_BITS) ^ (fold(length, TAG_BITS - 1) << 1)) & ((1 << TAG_BITS) - 1);
+            if (tags[t][indices[t]] == tagged[t]) {
+                if (provider < 0) provider = t;
+                else if (alternate < 0) alternate = t;
+            }
+        }
+        boolean basePrediction = base[pc & (base.length - 1)] >= 2;
+        alternatePrediction = alternate < 0 ? basePrediction : counters[alternate][indices[alternate]] >= 0;
+        prediction = provider < 0 ? basePrediction : counters[provider][indices[provider]] >= 0;
+        return prediction;
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        if (provider >= 0) {
+            int i = indices[provider];
+            if (prediction != alternatePrediction) {
+                useful[provider][i] = (byte) (prediction == taken ? Math.min(useful[provider][i] + 1, 3)
+                        : Math.max(useful[provider][i] - 1, 0));
+            }
+            counters[provider][i] = (byte) (taken ? Math.min(counters[provider][i] + 1, 3)
+                    : Math.max(counters[provider][i] - 1, -4));
+        } else {
+            int i = (address >>> 2) & (base.length - 1);
+            base[i] = BimodalPredictor.count(base[i], taken);
+        }
+        if (prediction != taken && provider < tables - 1) {
+            allocate(taken);
+        }
+        history = (history << 1) | (taken ? 1 : 0);
+        if (++branches % AGING_PERIOD == 0) {
+            for (byte[] u : useful) {
+                for (int i = 0; i < u.length; i++) {
+                    u[i] >>= 1;
+                }
+            }
+        }
+    }
+
+    // Takes an entry no longer useful in one of the tables of longer history than the provider,
+    // or if there is none, makes those entries a little less useful
+    private void allocate(boolean taken) {
+        for (int t = provider + 1; t < tables; t++) {
+            int i = indices[t];
+            if (useful[t][i] == 0) {
+                tags[t][i] = (short) tagged[t];
+                counters[t][i] = (byte) (taken ? 0 : -1);
+                return;
+            }
+        }
+        for (int t = provider + 1; t < tables; t++) {
+            useful[t][indices[t]]--;
+        }
+    }
+
+    // The latest length outcomes folded to bits bits by exclusive-oring
+    private int fold(int length, int bits) {
+        long h = length >= 64 ? history : history & ((1L << length) - 1);
+        int folded = 0;
+        while (h != 0) {
+            folded ^= (int) h & ((1 << bits) - 1);
+            h >>>= bits;
+        }
+        return folded;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(base, (byte) 1);
+        for (int t = 0; t < tables; t++) {
+            Arrays.fill(tags[t], (short) -1); // no tag, which is never negative
+            Arrays.fill(counters[t], (byte) 0);
+            Arrays.fill(useful[t], (byte) 0);
+        }
+        history = 0;
+        branches = 0;
+    }
+}
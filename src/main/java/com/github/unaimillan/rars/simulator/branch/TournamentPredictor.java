@@ -0,0 +1,65 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import java.util.Arrays;
+
+/**
+ * A bimodal and a gshare predictor side by side, with a table of 2-bit counters indexed by the
+ * branch address choosing between them, as in the Alpha 21264.  Where the two disagree, the
+ * chooser moves towards whichever was right.
+ */
+public class TournamentPredictor implements BranchPredictor {
+    private final BimodalPredictor local;
+    private final GsharePredictor global;
+    private final byte[] choosers; // 2 and 3 choose the global predictor
+    private final int mask;
+    private boolean localPrediction, globalPrediction;
+
+    /**
+     * @param entries the number of counters in each of the three tables, a power of two
+     * @throws IllegalArgumentException if it is not
+     */
+    public TournamentPredictor(int entries) {
+        if (entries < 2 || Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("tournament: entries must be a power of two, not " + entries);
+        }
+        local = new BimodalPredictor(entries);
+        global = new GsharePredictor(Integer.numberOfTrailingZeros(entries));
+        choosers = new byte[entries];
+        mask = entries - 1;
+        reset();
+    }
+
+    @Override
+    public String getName() {
+        return "tournament";
+    }
+
+    @Override
+    public String describe() {
+        return "tournament, bimodal and gshare of " + choosers.length + " entries";
+    }
+
+    @Override
+    public boolean predict(int address) {
+        localPrediction = local.predict(address);
+        globalPrediction = global.predict(address);
+        return choosers[(address >>> 2) & mask] >= 2 ? globalPrediction : localPrediction;
+    }
+
+    @Override
+    public void update(int address, boolean taken) {
+        if (localPrediction != globalPrediction) {
+            int index = (address >>> 2) & mask;
+            choosers[index] = BimodalPredictor.count(choosers[index], globalPrediction == taken);
+        }
+        local.update(address, taken);
+        global.update(address, taken);
+    }
+
+    @Override
+    public void reset() {
+        local.reset();
+        global.reset();
+        Arrays.fill(choosers, (byte) 1);
+    }
+}
@@ -0,0 +1,291 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * One level of a cache hierarchy: a set-associative cache of blocks, with its write and
+ * replacement policies and its hit and miss counts.  Only tags are kept, since the contents
+ * are in {@link com.github.unaimillan.rars.riscv.hardware.Memory} anyway.  Misses and
+ * write-backs go on to the next level, if there is one.
+ * <p>
+ * Direct-mapped caches have one way, fully associative ones one set.  Sizes must be powers of
+ * two.
+ */
+public class Cache {
+    /**
+     * Which block of a full set a miss replaces.
+     */
+    public enum Replacement {
+        /** the least recently used */
+        LRU,
+        /** the one filled first */
+        FIFO,
+        /** any, chosen at random (with a fixed seed, so runs can be repeated) */
+        RANDOM,
+        /** an approximation of LRU with a binary tree of bits per set, as hardware does */
+        PLRU
+    }
+
+    private final String name;
+    private final int sets, ways, blockSize;
+    private final int offsetBits, setMask;
+    private final Replacement replacement;
+    private final boolean writeBack, writeAllocate;
+    private final Cache next;
+
+    private final int[] tags; // block numbers (address >>> offsetBits), indexed by set * ways + way
+    private final boolean[] valid, dirty;
+    private final long[] stamps; // last use for LRU, fill time for FIFO
+    private final int[] treeBits; // one tree per set for PLRU
+    private final Random random = new Random(0);
+    private long clock;
+    private int lastLine;
+
+    private long reads, readMisses, writes, writeMisses, writeBacks;
+
+    /**
+     * @param name          what the cache is called in reports, e.g. L1D
+     * @param size          the capacity in bytes
+     * @param ways          the number of blocks in a set; 1 for direct-mapped, size / blockSize for fully associative
+     * @param blockSize     the size of a block in bytes
+     * @param replacement   which block of a full set to replace
+     * @param writeBack     true to write dirty blocks to the next level when they are replaced,
+     *                      false to write through to it on every store
+     * @param writeAllocate true to bring a block in on a store miss, false to only write it to the next level
+     * @param next          the next level, or null for memory
+     * @throws IllegalArgumentException if the sizes are not powers of two that fit together
+     */
+    public Cache(String name, int size, int ways, int blockSize, Replacement replacement,
+                 boolean writeBack, boolean writeAllocate, Cache next) {
+        if (Integer.bitCount(size) != 1 || Integer.bitCount(ways) != 1 || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException(name + ": size, ways and block size must be powers of two");
+        }
+        if (size < ways * blockSize) {
+            throw new IllegalArgumentException(name + ": " + size + " bytes cannot hold " + ways + " blocks of " + blockSize);
+        }
+        if (replacement == Replacement.PLRU && ways > 32) {
+            throw new IllegalArgumentException(name + ": PLRU is limited to 32 ways");
+        }
+        this.name = name;
+        this.ways = ways;
+        this.blockSize = blockSize;
+        this.sets = size / (ways * blockSize);
+        this.offsetBits = Integer.numberOfTrailingZeros(blockSize);
+        this.setMask = sets - 1;
+        this.replacement = replacement;
+        this.writeBack = writeBack;
+        this.writeAllocate = writeAllocate;
+        this.next = next;
+        tags = new int[sets * ways];
+        valid = new boolean[sets * ways];
+        dirty = new boolean[sets * ways];
+        stamps = new long[sets * ways];
+        treeBits = new int[sets];
+        lastLine = -1;
+    }
+
+    /**
+     * Reads or writes an address, going on to the next level on a miss.
+     *
+     * @param address the address
+     * @param write   true for a store, false for a load or instruction fetch
+     * @return whether it hit
+     */
+    public boolean access(int address, boolean write) {
+        int block = address >>> offsetBits;
+        int first = (block & setMask) * ways;
+        if (write) writes++;
+        else reads++;
+        for (int line = first; line < first + ways; line++) {
+            if (valid[line] && tags[line] == block) {
+                touch(line, first, false);
+                if (write) {
+                    if (writeBack) dirty[line] = true;
+                    else if (next != null) next.access(address, true);
+                }
+                lastLine = line;
+                return true;
+            }
+        }
+        if (write) writeMisses++;
+        else readMisses++;
+        if (write && !writeAllocate) {
+            if (next != null) next.access(address, true);
+            lastLine = -1;
+            return false;
+        }
+        int line = victim(first);
+        if (valid[line] && dirty[line]) {
+            writeBacks++;
+            if (next != null) next.access(tags[line] << offsetBits, true);
+        }
+        if (next != null) next.access(address, false);
+        tags[line] = block;
+        valid[line] = true;
+        dirty[line] = write && writeBack;
+        if (write && !writeBack && next != null) next.access(address, true);
+        touch(line, first, true);
+        lastLine = line;
+        return false;
+    }
+
+    private int victim(int first) {
+        for (int line = first; line < first + ways; line++) {
+            if (!valid[line]) return line;
+        }
+        switch (replacement) {
+            case RANDOM:
+                return first + random.nextInt(ways);
+            case PLRU: {
+                // Follow the bits away from the recently used half at each level of the tree
+                int bits = treeBits[first / ways], node = 1;
+                while (node < ways) {
+                    node = 2 * node + ((bits >>> node) & 1);
+                }
+                return first + node - ways;
+            }
+            case LRU:
+            case FIFO:
+            default: {
+                int oldest = first;
+                for (int line = first + 1; line < first + ways; line++) {
+                    if (stamps[line] < stamps[oldest]) oldest = line;
+                }
+                return oldest;
+            }
+        }
+    }
+
+    private void touch(int line, int first, boolean filled) {
+        clock++;
+        switch (replacement) {
+            case LRU:
+                stamps[line] = clock;
+                break;
+            case FIFO:
+                if (filled) stamps[line] = clock;
+                break;
+            case PLRU: {
+                // Point every node on the path to the line at the other half
+                int set = first / ways, bits = treeBits[set];
+                for (int node = line - first + ways; node > 1; node >>>= 1) {
+                    int parent = node >>> 1;
+                    if ((node & 1) == 0) bits |= 1 << parent;
+                    else bits &= ~(1 << parent);
+                }
+                treeBits[set] = bits;
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Empties the cache and zeroes its counts.
+     */
+    public void reset() {
+        Arrays.fill(valid, false);
+        Arrays.fill(dirty, false);
+        Arrays.fill(stamps, 0);
+        Arrays.fill(treeBits, 0);
+        random.setSeed(0);
+        clock = 0;
+        lastLine = -1;
+        reads = readMisses = writes = writeMisses = writeBacks = 0;
+    }
+
+    /**
+     * @return the index (set * ways + way) of the block the last access hit or filled, or -1 if it filled none
+     */
+    public int getLastLine() {
+        return lastLine;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return sets * ways * blockSize;
+    }
+
+    public int getSets() {
+        return sets;
+    }
+
+    public int getWays() {
+        return ways;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Replacement getReplacement() {
+        return replacement;
+    }
+
+    public boolean isWriteBack() {
+        return writeBack;
+    }
+
+    public boolean isWriteAllocate() {
+        return writeAllocate;
+    }
+
+    public Cache getNext() {
+        return next;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getReadMisses() {
+        return readMisses;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getWriteMisses() {
+        return writeMisses;
+    }
+
+    /**
+     * @return how many dirty blocks were written to the next level when replaced
+     */
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    public long getAccesses() {
+        return reads + writes;
+    }
+
+    public long getMisses() {
+        return readMisses + writeMisses;
+    }
+
+    /**
+     * @return misses per access, or 0 before any access
+     */
+    public double getMissRate() {
+        long accesses = getAccesses();
+        return accesses == 0 ? 0 : getMisses() / (double) accesses;
+    }
+
+    /**
+     * @return a description such as "L1D 8 KB, 4-way, 32 B blocks, LRU, write-back, write-allocate"
+     */
+    public String describe() {
+        String size = getSize() >= 1024 ? getSize() / 1024 + " KB" : getSize() + " B";
+        String placement = ways == 1 ? "direct-mapped" : sets == 1 ? "fully associative" : ways + "-way";
+        return name + " " + size + ", " + placement + ", " + blockSize + " B blocks, " + replacement +
+                (writeBack ? ", write-back" : ", write-through") +
+                (writeAllocate ? ", write-allocate" : ", no-write-allocate");
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Caches between the simulated processor and memory: first level instruction and data caches
+ * (or one unified first level) and an optional unified second level.  Added to the simulator
+ * as an {@link ExecutionListener}, it sends instruction fetches to the instruction cache and
+ * loads and stores to the data cache, and counts hits and misses at every level.
+ * <p>
+ * A hierarchy is described by a string of comma separated levels such as
+ * <tt>l1i=8k:2:32,l1d=8k:4:32:wt:nwa,l2=256k:8:64:plru</tt>.  Each level is l1i, l1d, l1 (unified)
+ * or l2, then its size in bytes (k and m multiply by 1024 and 1024*1024), ways and block size,
+ * then any of the policies lru, fifo, random and plru; wb (write-back) and wt (write-through);
+ * wa (write-allocate) and nwa.  The defaults are lru, wb and wa.
+ */
+public class CacheHierarchy implements ExecutionListener {
+    /**
+     * Used when no hierarchy is given
+     */
+    public static final String DEFAULT = "l1i=8k:2:32,l1d=8k:4:32,l2=128k:8:64";
+
+    private final Cache instructionCache, dataCache, secondLevel;
+
+    /**
+     * @param instructionCache where instruction fetches go, or null to ignore them
+     * @param dataCache        where loads and stores go, or null to ignore them; may be the instruction cache
+     * @param secondLevel      the level after the first, to be reported with it, or null
+     */
+    public CacheHierarchy(Cache instructionCache, Cache dataCache, Cache secondLevel) {
+        this.instructionCache = instructionCache;
+        this.dataCache = dataCache;
+        this.secondLevel = secondLevel;
+    }
+
+    /**
+     * Builds a hierarchy from its description.
+     *
+     * @param spec the levels, see the class description
+     * @return the hierarchy
+     * @throws IllegalArgumentException if the description is not understood
+     */
+    public static CacheHierarchy parse(String spec) {
+        String l1i = null, l1d = null, l1 = null, l2 = null;
+        for (String level : spec.toLowerCase(Locale.ROOT).split(",")) {
+            int equals = level.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("cache level expected as name=size:ways:block, not " + level);
+            }
+            String name = level.substring(0, equals).trim(), parameters = level.substring(equals + 1).trim();
+            switch (name) {
+                case "l1i":
+                    l1i = parameters;
+                    break;
+                case "l1d":
+                    l1d = parameters;
+                    break;
+                case "l1":
+                    l1 = parameters;
+                    break;
+                case "l2":
+                    l2 = parameters;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown cache level " + name + " (use l1i, l1d, l1 or l2)");
+            }
+        }
+        if (l1 != null && (l1i != null || l1d != null)) {
+            throw new IllegalArgumentException("a unified l1 cannot be combined with l1i or l1d");
+        }
+        Cache second = l2 == null ? null : level("L2", l2, null);
+        if (l1 != null) {
+            Cache unified = level("L1", l1, second);
+            return new CacheHierarchy(unified, unified, second);
+        }
+        if (l1i == null && l1d == null && second != null) {
+            return new CacheHierarchy(second, second, null);
+        }
+        return new CacheHierarchy(l1i == null ? null : level("L1I", l1i, second),
+                l1d == null ? null : level("L1D", l1d, second), second);
+    }
+
+    private static Cache level(String name, String parameters, Cache next) {
+        String[] fields = parameters.split(":");
+        if (fields.length < 3) {
+            throw new IllegalArgumentException(name + ": size:ways:block expected, not " + parameters);
+        }
+        Cache.Replacement replacement = Cache.Replacement.LRU;
+        boolean writeBack = true, writeAllocate = true;
+        for (int i = 3; i < fields.length; i++) {
+            switch (fields[i]) {
+                case "wb":
+                    writeBack = true;
+                    break;
+                case "wt":
+                    writeBack = false;
+                    break;
+                case "wa":
+                    writeAllocate = true;
+                    break;
+                case "nwa":
+                    writeAllocate = false;
+                    break;
+                default:
+                    try {
+                        replacement = Cache.Replacement.valueOf(fields[i].toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(name + ": unknown policy " + fields[i]);
+                    }
+            }
+        }
+        return new Cache(name, bytes(name, fields[0]), bytes(name, fields[1]), bytes(name, fields[2]),
+                replacement, writeBack, writeAllocate, next);
+    }
+
+    private static int bytes(String name, String field) {
+        int scale = 1;
+        if (field.endsWith("k")) scale = 1024;
+        else if (field.endsWith("m")) scale = 1024 * 1024;
+        try {
+            return Integer.parseInt(scale == 1 ? field : field.substring(0, field.length() - 1)) * scale;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": number expected, not " + field);
+        }
+    }
+
+    /**
+     * Where {@link #access} found the data
+     */
+    public static final int FIRST_LEVEL = 0, SECOND_LEVEL = 1, MEMORY = 2;
+
+    @Override
+    public void fetch(int address, ProgramStatement statement) {
+        access(true, address, false);
+    }
+
+    @Override
+    public void load(int address, int length) {
+        access(false, address, false);
+    }
+
+    @Override
+    public void store(int address, int length) {
+        access(false, address, true);
+    }
+
+    /**
+     * Sends an access to its first level cache, as fetch, load and store do, for timing models
+     * that need to know how far it went.
+     *
+     * @param instruction true for an instruction fetch, false for a load or store
+     * @param address     the address
+     * @param write       true for a store
+     * @return {@link #FIRST_LEVEL} if the first level hit (or there is no cache for the access),
+     * {@link #SECOND_LEVEL} if the first level missed and the second did not, or {@link #MEMORY}
+     */
+    public int access(boolean instruction, int address, boolean write) {
+        Cache first = instruction ? instructionCache : dataCache;
+        if (first == null) return FIRST_LEVEL;
+        Cache next = first.getNext();
+        long nextMisses = next == null ? 0 : next.getReadMisses(); // blocks are brought in by reads
+        if (first.access(address, write)) return FIRST_LEVEL;
+        return next != null && next.getReadMisses() == nextMisses ? SECOND_LEVEL : MEMORY;
+    }
+
+    /**
+     * @return the distinct levels, first level first
+     */
+    public Cache[] getLevels() {
+        ArrayList<Cache> levels = new ArrayList<>();
+        for (Cache cache : new Cache[]{instructionCache, dataCache, secondLevel}) {
+            if (cache != null && !levels.contains(cache)) levels.add(cache);
+        }
+        return levels.toArray(new Cache[0]);
+    }
+
+    /**
+     * Empties every level and zeroes the counts.
+     */
+    public void reset() {
+        for (Cache cache : getLevels()) {
+            cache.reset();
+        }
+    }
+
+    /**
+     * Writes the hits and misses of each level.
+     *
+     * @param out where to write them
+     */
+    public void report(PrintStream out) {
+        for (Cache cache : getLevels()) {
+            out.println(cache.describe());
+            out.println(String.format(Locale.ROOT, "  %-12s %12d  misses %10d  %6.2f%%", "reads",
+                    cache.getReads(), cache.getReadMisses(), percent(cache.getReadMisses(), cache.getReads())));
+            out.println(String.format(Locale.ROOT, "  %-12s %12d  misses %10d  %6.2f%%", "writes",
+                    cache.getWrites(), cache.getWriteMisses(), percent(cache.getWriteMisses(), cache.getWrites())));
+            out.println(String.format(Locale.ROOT, "  %-12s %12d  misses %10d  %6.2f%%", "total",
+                    cache.getAccesses(), cache.getMisses(), 100 * cache.getMissRate()));
+            if (cache.isWriteBack()) {
+                out.println(String.format(Locale.ROOT, "  %-12s %12d", "write-backs", cache.getWriteBacks()));
+            }
+        }
+    }
+
+    static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Finds the miss rates of a whole range of LRU caches, of every size, associativity and block
+ * size asked for, in one run of the program.  It uses stack distances (Mattson et al., extended
+ * to set-associative caches by Hill and Smith): for each block size and number of sets it keeps
+ * every set's blocks in order of use, and an access found at depth d of its set's stack hits in
+ * exactly the caches of more than d ways.  So one stack per number of sets answers for all
+ * associativities, instead of simulating each cache separately.
+ * <p>
+ * The results hold for LRU replacement with write-allocate, where stores and loads behave
+ * alike; other policies need a {@link Cache} of their own.
+ */
+public class StackDistanceSweep implements ExecutionListener {
+    private final String name;
+    private final boolean instructions, data;
+    private final int[] blockSizes;
+    private final int minSize, maxSize, maxWays;
+    private final Stacks[][] stacks; // by block size, then log2 of the number of sets
+    private long accesses;
+
+    // The sets of a cache with the most ways, each its blocks in order of use, most recent first
+    private static final class Stacks {
+        private final int offsetBits, setMask, depth;
+        private final int[] blocks;
+        private final long[] depths; // how many accesses were found at each depth; the last counts those not found
+
+        Stacks(int offsetBits, int sets, int depth) {
+            this.offsetBits = offsetBits;
+            this.setMask = sets - 1;
+            this.depth = depth;
+            blocks = new int[sets * depth];
+            Arrays.fill(blocks, -1); // never a block number, which is unsigned
+            depths = new long[depth + 1];
+        }
+
+        void access(int address) {
+            int block = address >>> offsetBits;
+            int first = (block & setMask) * depth;
+            int d = 0;
+            while (d < depth && blocks[first + d] != block) {
+                d++;
+            }
+            depths[d]++;
+            System.arraycopy(blocks, first, blocks, first + 1, d == depth ? depth - 1 : d);
+            blocks[first] = block;
+        }
+
+        long misses(int ways) {
+            long misses = 0;
+            for (int d = ways; d <= depth; d++) {
+                misses += depths[d];
+            }
+            return misses;
+        }
+    }
+
+    /**
+     * @param name         what the stream is called in the report, e.g. Data
+     * @param instructions whether to follow instruction fetches
+     * @param data         whether to follow loads and stores
+     * @param blockSizes   the block sizes in bytes, powers of two of at least 2
+     * @param minSize      the smallest capacity in bytes, a power of two
+     * @param maxSize      the largest capacity in bytes, a power of two
+     * @param maxWays      the most ways, a power of two
+     */
+    public StackDistanceSweep(String name, boolean instructions, boolean data, int[] blockSizes,
+                              int minSize, int maxSize, int maxWays) {
+        this.name = name;
+        this.instructions = instructions;
+        this.data = data;
+        this.blockSizes = blockSizes.clone();
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWays = maxWays;
+        stacks = new Stacks[blockSizes.length][];
+        for (int b = 0; b < blockSizes.length; b++) {
+            int offsetBits = Integer.numberOfTrailingZeros(blockSizes[b]);
+            int mostSets = Math.max(1, maxSize / blockSizes[b]);
+            int fewestSets = Math.max(1, minSize / (blockSizes[b] * maxWays));
+            stacks[b] = new Stacks[Integer.numberOfTrailingZeros(mostSets) + 1];
+            for (int sets = fewestSets; sets <= mostSets; sets *= 2) {
+                stacks[b][Integer.numberOfTrailingZeros(sets)] = new Stacks(offsetBits, sets, maxWays);
+            }
+        }
+    }
+
+    /**
+     * A sweep of the usual first level caches: 16 to 128 byte blocks, 1 KB to 256 KB, up to 16 ways.
+     *
+     * @param name         what the stream is called in the report
+     * @param instructions whether to follow instruction fetches
+     * @param data         whether to follow loads and stores
+     * @return the sweep
+     */
+    public static StackDistanceSweep firstLevel(String name, boolean instructions, boolean data) {
+        return new StackDistanceSweep(name, instructions, data, new int[]{16, 32, 64, 128}, 1024, 256 * 1024, 16);
+    }
+
+    @Override
+    public void fetch(int address, ProgramStatement statement) {
+        if (instructions) access(address);
+    }
+
+    @Override
+    public void load(int address, int length) {
+        if (data) access(address);
+    }
+
+    @Override
+    public void store(int address, int length) {
+        if (data) access(address);
+    }
+
+    private void access(int address) {
+        accesses++;
+        for (Stacks[] bySets : stacks) {
+            for (Stacks s : bySets) {
+                if (s != null) s.access(address);
+            }
+        }
+    }
+
+    public long getAccesses() {
+        return accesses;
+    }
+
+    /**
+     * @param blockSize one of the block sizes swept
+     * @param size      a capacity in bytes within those swept
+     * @param ways      a number of ways up to the most swept
+     * @return the number of misses of that cache, or -1 if it was not swept
+     */
+    public long getMisses(int blockSize, int size, int ways) {
+        for (int b = 0; b < blockSizes.length; b++) {
+            if (blockSizes[b] != blockSize) continue;
+            int sets = size / (blockSize * ways);
+            if (sets < 1 || ways > maxWays || sets * blockSize * ways != size) return -1;
+            int index = Integer.numberOfTrailingZeros(sets);
+            if (Integer.bitCount(sets) != 1 || index >= stacks[b].length || stacks[b][index] == null) return -1;
+            return stacks[b][index].misses(ways);
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a table of miss rates, a row for each block size and capacity and a column for
+     * each associativity.
+     *
+     * @param out where to write it
+     */
+    public void report(PrintStream out) {
+        out.println(name + " miss rates (%) of LRU caches, " + accesses + " accesses");
+        StringBuilder heading = new StringBuilder(String.format("%7s %7s", "block", "size"));
+        for (int ways = 1; ways <= maxWays; ways *= 2) {
+            heading.append(String.format("%8s", ways + "-way"));
+        }
+        out.println(heading);
+        for (int blockSize : blockSizes) {
+            for (int size = minSize; size <= maxSize; size *= 2) {
+                StringBuilder row = new StringBuilder(String.format("%5d B %7s", blockSize,
+                        size >= 1024 ? size / 1024 + " KB" : size + " B"));
+                for (int ways = 1; ways <= maxWays; ways *= 2) {
+                    long misses = getMisses(blockSize, size, ways);
+                    row.append(misses < 0 ? String.format("%8s", "-")
+                            : String.format(Locale.ROOT, "%8.2f", CacheHierarchy.percent(misses, accesses)));
+                }
+                out.println(row);
+            }
+        }
+    }
+}
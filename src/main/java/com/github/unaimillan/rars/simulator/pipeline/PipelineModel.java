@@ -0,0 +1,594 @@
+package com.github.unaimillan.rars.simulator.pipeline;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.assembler.Symbol;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.simulator.TimingModel;
+import com.github.unaimillan.rars.simulator.branch.BranchPredictor;
+import com.github.unaimillan.rars.simulator.branch.BranchPredictorEvaluation;
+import com.github.unaimillan.rars.simulator.branch.BranchTargetBuffer;
+import com.github.unaimillan.rars.simulator.branch.ReturnAddressStack;
+import com.github.unaimillan.rars.simulator.cache.CacheHierarchy;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * The timing of a classic in-order five stage pipeline (fetch, decode, execute, memory, write
+ * back) running the program, cycle-approximate rather than cycle by cycle so that it can follow
+ * programs of many millions of instructions.  As each instruction retires, the model works out
+ * the cycle it could enter the execute stage, which is one after the instruction before it
+ * unless something holds it up:
+ * <ul>
+ * <li>a branch or jump whose next address was not predicted at fetch, which costs the
+ * misprediction penalty as the right instructions are fetched after the branch executes.
+ * Conditional branches are predicted by a {@link BranchPredictor}, their targets and those of
+ * jumps by a {@link BranchTargetBuffer} and returns by a {@link ReturnAddressStack};</li>
+ * <li>an operand not ready yet.  Results are forwarded, so this only happens after a load (a
+ * load-use stall) or a multiply, divide or floating point operation of more than one cycle;</li>
+ * <li>the execute stage still busy with a divide or square root, which are not pipelined, or
+ * the memory stage with a load that missed in the cache;</li>
+ * <li>an instruction cache miss.</li>
+ * </ul>
+ * Cache misses only cost time if a {@link CacheHierarchy} is given; stores are taken to go
+ * through a write buffer and never stall.  System calls take one cycle, once every result
+ * they might read is ready.  The time to fill the pipeline at the start is not counted.
+ * <p>
+ * The model is described by a string of comma separated parameters, such as
+ * <tt>bp=tage,branch=3,div=20</tt>: bp is a predictor as described by
+ * {@link BranchPredictorEvaluation}, or none to fetch sequentially until told otherwise;
+ * btb and ras size the target buffer and return-address stack; branch is the misprediction
+ * penalty; mul, div, fadd, fmul and fdiv the latencies of those operations; l2 and mem the
+ * cycles a cache miss adds when the second level has the data and when it comes from memory.
+ */
+public class PipelineModel implements TimingModel {
+    /**
+     * The parameters, all at their defaults
+     */
+    public static final String DEFAULT = "bp=gshare:12,btb=512,ras=16,branch=2,mul=3,div=34,fadd=3,fmul=4,fdiv=20,l2=10,mem=100";
+
+    /**
+     * What an instruction's cycles went on
+     */
+    public enum Cause {
+        /** the one cycle every instruction takes */
+        EXECUTE("execute"),
+        /** a mispredicted branch or jump before it */
+        BRANCH("branch"),
+        /** an instruction cache miss */
+        INSTRUCTION_CACHE("I-cache"),
+        /** waiting for the result of a load */
+        LOAD_USE("load-use"),
+        /** a data cache miss, of its own operand or holding up the memory stage */
+        DATA_CACHE("D-cache"),
+        /** waiting for a multi-cycle operation, or the unit doing one */
+        MULTI_CYCLE("multi-cycle");
+
+        private final String title;
+
+        Cause(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private static final Cause[] CAUSES = Cause.values();
+    private static final int MOST_CYCLES = 25; // labels listed in the report
+
+    private final BranchPredictor predictor;
+    private final BranchTargetBuffer targetBuffer;
+    private final ReturnAddressStack returnStack;
+    private final CacheHierarchy caches;
+    private final int branchPenalty, mulLatency, divLatency, faddLatency, fmulLatency, fdivLatency;
+    private final int secondLevelPenalty, memoryPenalty;
+
+    // When the results in the integer and floating point registers can be forwarded, and what they wait on
+    private final long[] intReady = new long[32], floatReady = new long[32];
+    private final Cause[] intWait = new Cause[32], floatWait = new Cause[32];
+    private long lastReady; // the latest of those
+    private Cause lastWait;
+    private long issue; // when the latest instruction entered the execute stage
+    private long fetched; // when it was fetched
+    private long redirect; // the earliest the next instruction can be fetched after a misprediction
+    private long executeFree; // the earliest the execute stage can take the next instruction
+    private Cause executeWait;
+    private int fetchStall, loadStall; // cache miss cycles of the instruction in flight
+    private long instructions, cycles, pending;
+    private long controlTransfers, mispredictions;
+    private final long[] causeCycles = new long[CAUSES.length];
+
+    // Instructions and cycles by cause of each word of the text segment, grown as needed
+    private long[] textInstructions = new long[0], textCycles = new long[0];
+    private ProgramStatement[] textStatements = new ProgramStatement[0]; // to find their labels by
+    private long otherInstructions; // outside the text segment
+    private final long[] otherCycles = new long[CAUSES.length];
+
+    /**
+     * @param predictor          the conditional branch predictor, or null to predict none taken and
+     *                           no jump targets at all
+     * @param targetBuffer       the branch target buffer, ignored without a predictor
+     * @param returnStack        the return-address stack, ignored without a predictor
+     * @param caches             the caches to charge misses for, or null for none
+     * @param branchPenalty      cycles lost to a mispredicted branch or jump
+     * @param mulLatency         cycles from a multiply to its result
+     * @param divLatency         cycles of a divide or remainder
+     * @param faddLatency        cycles from a floating point add, subtract, compare or conversion to its result
+     * @param fmulLatency        cycles from a floating point multiply, or fused multiply-add, to its result
+     * @param fdivLatency        cycles of a floating point divide or square root
+     * @param secondLevelPenalty cycles added by a first level miss that hits in the second level
+     * @param memoryPenalty      cycles added by a miss that goes to memory
+     */
+    public PipelineModel(BranchPredictor predictor, BranchTargetBuffer targetBuffer, ReturnAddressStack returnStack,
+                         CacheHierarchy caches, int branchPenalty, int mulLatency, int divLatency,
+                         int faddLatency, int fmulLatency, int fdivLatency, int secondLevelPenalty, int memoryPenalty) {
+        this.predictor = predictor;
+        this.targetBuffer = targetBuffer;
+        this.returnStack = returnStack;
+        this.caches = caches;
+        this.branchPenalty = branchPenalty;
+        this.mulLatency = mulLatency;
+        this.divLatency = divLatency;
+        this.faddLatency = faddLatency;
+        this.fmulLatency = fmulLatency;
+        this.fdivLatency = fdivLatency;
+        this.secondLevelPenalty = secondLevelPenalty;
+        this.memoryPenalty = memoryPenalty;
+        reset();
+    }
+
+    /**
+     * Builds a model from its description.
+     *
+     * @param spec   the parameters, see the class description; those not given take their defaults
+     * @param caches the caches to charge misses for, or null for none
+     * @return the model
+     * @throws IllegalArgumentException if the description is not understood
+     */
+    public static PipelineModel parse(String spec, CacheHierarchy caches) {
+        String bp = null;
+        int[] values = new int[10];
+        String[] names = {"btb", "ras", "branch", "mul", "div", "fadd", "fmul", "fdiv", "l2", "mem"};
+        for (String parameter : (DEFAULT + "," + spec).toLowerCase(Locale.ROOT).split(",")) {
+            if (parameter.trim().isEmpty()) continue;
+            int equals = parameter.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("pipeline parameter expected as name=value, not " + parameter);
+            }
+            String name = parameter.substring(0, equals).trim(), value = parameter.substring(equals + 1).trim();
+            if (name.equals("bp")) {
+                bp = value;
+                continue;
+            }
+            int index = Arrays.asList(names).indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("unknown pipeline parameter " + name +
+                        " (use bp, " + String.join(", ", names) + ")");
+            }
+            try {
+                values[index] = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + ": number expected, not " + value);
+            }
+            if (values[index] < (index < 2 ? 1 : 0)) {
+                throw new IllegalArgumentException(name + ": " + value + " is too small");
+            }
+        }
+        for (int i = 3; i < 8; i++) {
+            if (values[i] < 1) throw new IllegalArgumentException(names[i] + ": latencies are at least 1");
+        }
+        BranchPredictor predictor = bp.equals("none") ? null : BranchPredictorEvaluation.predictor(bp);
+        return new PipelineModel(predictor, new BranchTargetBuffer(values[0]), new ReturnAddressStack(values[1]),
+                caches, values[2], values[3], values[4], values[5], values[6], values[7], values[8], values[9]);
+    }
+
+    @Override
+    public void fetch(int address, ProgramStatement statement) {
+        fetchStall = caches == null ? 0 : penalty(caches.access(true, address, false));
+        loadStall = 0;
+    }
+
+    @Override
+    public void load(int address, int length) {
+        if (caches != null) loadStall = Math.max(loadStall, penalty(caches.access(false, address, false)));
+    }
+
+    @Override
+    public void store(int address, int length) {
+        if (caches != null) caches.access(false, address, true);
+    }
+
+    private int penalty(int level) {
+        switch (level) {
+            case CacheHierarchy.SECOND_LEVEL:
+                return secondLevelPenalty;
+            case CacheHierarchy.MEMORY:
+                return memoryPenalty;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void retire(int address, ProgramStatement statement, int next) {
+        int word = statement.getBinaryStatement();
+        int rd = (word >>> 7) & 0x1f, funct3 = (word >>> 12) & 7, rs1 = (word >>> 15) & 0x1f, rs2 = (word >>> 20) & 0x1f;
+
+        // The earliest it can execute: after the one before, once fetched and decoded
+        long earliest = issue + 1;
+        long at = earliest;
+        Cause cause = Cause.EXECUTE;
+        fetched = Math.max(Math.max(fetched + 1, issue - 1), redirect) + fetchStall;
+        if (fetched + 2 > at) {
+            at = fetched + 2;
+            cause = fetchStall > 0 ? Cause.INSTRUCTION_CACHE : Cause.BRANCH;
+        }
+        if (executeFree > at) {
+            at = executeFree;
+            cause = executeWait;
+        }
+
+        // Then once its operands are ready, and see where its result goes and when
+        int intDestination = 0, floatDestination = -1;
+        int latency = 1;
+        boolean pipelined = true, load = false, control = false;
+        switch (word & 0x7f) {
+            case 0x37: // lui
+            case 0x17: // auipc
+                intDestination = rd;
+                break;
+            case 0x6f: // jal
+                intDestination = rd;
+                control = true;
+                break;
+            case 0x67: // jalr
+            case 0x13: // integer operations with an immediate
+            case 0x1b:
+                if (intReady[rs1] > at) {
+                    at = intReady[rs1];
+                    cause = intWait[rs1];
+                }
+                intDestination = rd;
+                control = (word & 0x7f) == 0x67;
+                break;
+            case 0x63: // conditional branches
+            case 0x23: // integer stores
+            case 0x33: // integer operations
+            case 0x3b:
+            case 0x2f: // atomics
+                if (intReady[rs1] > at) {
+                    at = intReady[rs1];
+                    cause = intWait[rs1];
+                }
+                if (intReady[rs2] > at) {
+                    at = intReady[rs2];
+                    cause = intWait[rs2];
+                }
+                int opcode = word & 0x7f;
+                if (opcode == 0x63) {
+                    control = true;
+                } else if (opcode == 0x2f) {
+                    intDestination = rd;
+                    load = true;
+                } else if (opcode != 0x23) {
+                    intDestination = rd;
+                    if (word >>> 25 == 1) { // multiply and divide
+                        latency = funct3 < 4 ? mulLatency : divLatency;
+                        pipelined = funct3 < 4;
+                    }
+                }
+                break;
+            case 0x03: // integer loads
+            case 0x07: // floating point loads
+            case 0x27: // floating point stores
+                if (intReady[rs1] > at) {
+                    at = intReady[rs1];
+                    cause = intWait[rs1];
+                }
+                if ((word & 0x7f) == 0x27) {
+                    if (floatReady[rs2] > at) {
+                        at = floatReady[rs2];
+                        cause = floatWait[rs2];
+                    }
+                } else {
+                    load = true;
+                    if ((word & 0x7f) == 0x03) intDestination = rd;
+                    else floatDestination = rd;
+                }
+                break;
+            case 0x43: // fused multiply-adds, which go as multiplies with a third source
+            case 0x47:
+            case 0x4b:
+            case 0x4f:
+            case 0x53: { // other floating point operations
+                boolean fused = (word & 0x7f) != 0x53;
+                int funct5 = fused ? 0x02 : word >>> 27;
+                if (fused) {
+                    int rs3 = word >>> 27;
+                    if (floatReady[rs3] > at) {
+                        at = floatReady[rs3];
+                        cause = floatWait[rs3];
+                    }
+                }
+                boolean intSource = funct5 == 0x1a || funct5 == 0x1e; // conversions and moves from integers
+                boolean oneSource = intSource || funct5 == 0x0b || funct5 == 0x08 || funct5 == 0x18 || funct5 == 0x1c;
+                if (intSource) {
+                    if (intReady[rs1] > at) {
+                        at = intReady[rs1];
+                        cause = intWait[rs1];
+                    }
+                } else if (floatReady[rs1] > at) {
+                    at = floatReady[rs1];
+                    cause = floatWait[rs1];
+                }
+                if (!oneSource && floatReady[rs2] > at) {
+                    at = floatReady[rs2];
+                    cause = floatWait[rs2];
+                }
+                if (funct5 == 0x14 || funct5 == 0x18 || funct5 == 0x1c) intDestination = rd; // to the integer registers
+                else floatDestination = rd;
+                switch (funct5) {
+                    case 0x02: // multiplies
+                        latency = fmulLatency;
+                        break;
+                    case 0x03: // divide
+                    case 0x0b: // square root
+                        latency = fdivLatency;
+                        pipelined = false;
+                        break;
+                    case 0x04: // sign injection
+                    case 0x1c: // moves and classification
+                    case 0x1e:
+                        latency = 1;
+                        break;
+                    default:
+                        latency = faddLatency;
+                        break;
+                }
+                break;
+            }
+            case 0x73: // system calls and control and status registers
+                if (funct3 == 0) {
+                    if (lastReady > at) {
+                        at = lastReady;
+                        cause = lastWait;
+                    }
+                } else {
+                    if (funct3 < 4 && intReady[rs1] > at) {
+                        at = intReady[rs1];
+                        cause = intWait[rs1];
+                    }
+                    intDestination = rd;
+                }
+                break;
+            default:
+                break;
+        }
+        if (!load) loadStall = 0; // system calls reach memory too, but are not held up by it
+
+        // Record when its result is ready, and what it holds up
+        long ready = load ? at + 2 + loadStall : at + latency;
+        Cause wait = load ? (loadStall > 0 ? Cause.DATA_CACHE : Cause.LOAD_USE) : Cause.MULTI_CYCLE;
+        if (intDestination != 0) {
+            intReady[intDestination] = ready;
+            intWait[intDestination] = wait;
+        }
+        if (floatDestination >= 0) {
+            floatReady[floatDestination] = ready;
+            floatWait[floatDestination] = wait;
+        }
+        if ((intDestination != 0 || floatDestination >= 0) && ready > lastReady) {
+            lastReady = ready;
+            lastWait = wait;
+        }
+        if (!pipelined) {
+            executeFree = at + latency;
+            executeWait = Cause.MULTI_CYCLE;
+        } else if (loadStall > 0) {
+            executeFree = at + 1 + loadStall;
+            executeWait = Cause.DATA_CACHE;
+        }
+        if (control && predict(address, word, rd, rs1, next) != next) {
+            mispredictions++;
+            redirect = at + branchPenalty - 1;
+        }
+
+        long taken = at - issue;
+        issue = at;
+        instructions++;
+        cycles += taken;
+        pending += taken;
+        causeCycles[Cause.EXECUTE.ordinal()]++;
+        causeCycles[cause.ordinal()] += taken - 1;
+        attribute(address, statement, cause, taken);
+    }
+
+    // Where fetch would have gone after a branch or jump, and learns where it did go
+    private int predict(int address, int word, int rd, int rs1, int next) {
+        controlTransfers++;
+        if (predictor == null) return address + 4;
+        int predicted;
+        if ((word & 0x7f) == 0x63) {
+            boolean taken = next != address + 4;
+            predicted = predictor.predict(address) ? targetBuffer.predict(address) : address + 4;
+            predictor.update(address, taken);
+            if (taken) targetBuffer.update(address, next);
+        } else if ((word & 0x7f) == 0x67 && isLink(rs1) && (!isLink(rd) || rd != rs1)) {
+            predicted = returnStack.pop();
+        } else {
+            predicted = targetBuffer.predict(address);
+            targetBuffer.update(address, next);
+        }
+        if (isLink(rd) && (word & 0x7f) != 0x63) returnStack.push(address + 4);
+        return predicted;
+    }
+
+    private static boolean isLink(int register) {
+        return register == 1 || register == 5;
+    }
+
+    private void attribute(int address, ProgramStatement statement, Cause cause, long taken) {
+        int index = (address - Memory.textBaseAddress) >>> 2;
+        if (!Memory.inTextSegment(address) || index < 0) {
+            otherInstructions++;
+            otherCycles[Cause.EXECUTE.ordinal()]++;
+            otherCycles[cause.ordinal()] += taken - 1;
+            return;
+        }
+        if (index >= textInstructions.length) {
+            int length = Math.max(index + 1, 2 * textInstructions.length);
+            textInstructions = Arrays.copyOf(textInstructions, length);
+            textCycles = Arrays.copyOf(textCycles, length * CAUSES.length);
+            textStatements = Arrays.copyOf(textStatements, length);
+        }
+        if (textInstructions[index] == 0) textStatements[index] = statement;
+        textInstructions[index]++;
+        textCycles[index * CAUSES.length + Cause.EXECUTE.ordinal()]++;
+        textCycles[index * CAUSES.length + cause.ordinal()] += taken - 1;
+    }
+
+    @Override
+    public long takeCycles() {
+        long taken = pending;
+        pending = 0;
+        return taken;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @param cause a cause
+     * @return how many cycles went on it
+     */
+    public long getCycles(Cause cause) {
+        return causeCycles[cause.ordinal()];
+    }
+
+    public long getControlTransfers() {
+        return controlTransfers;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    /**
+     * Empties the pipeline, forgets the predictions and zeroes the counts.  The caches are left
+     * alone.
+     */
+    public void reset() {
+        Arrays.fill(intReady, 0);
+        Arrays.fill(floatReady, 0);
+        Arrays.fill(intWait, Cause.EXECUTE);
+        Arrays.fill(floatWait, Cause.EXECUTE);
+        lastReady = 0;
+        lastWait = Cause.EXECUTE;
+        issue = executeFree = 0;
+        executeWait = Cause.EXECUTE;
+        fetched = -2;
+        redirect = Long.MIN_VALUE;
+        fetchStall = loadStall = 0;
+        instructions = cycles = pending = controlTransfers = mispredictions = 0;
+        Arrays.fill(causeCycles, 0);
+        textInstructions = new long[0];
+        textCycles = new long[0];
+        textStatements = new ProgramStatement[0];
+        otherInstructions = 0;
+        Arrays.fill(otherCycles, 0);
+        if (predictor != null) {
+            predictor.reset();
+            targetBuffer.reset();
+            returnStack.reset();
+        }
+    }
+
+    /**
+     * Writes the cycles per instruction and what they went on, for the whole program and for
+     * the code under each of the labels that took the most cycles.
+     *
+     * @param out where to write it
+     */
+    public void report(PrintStream out) {
+        out.println("Pipeline: in-order, 5 stages, " + (predictor == null ? "branches predicted not taken"
+                : predictor.describe() + ", BTB of " + targetBuffer.getEntries() + ", RAS of " + returnStack.getDepth()));
+        out.println(String.format(Locale.ROOT, "  %d instructions in %d cycles, CPI %.3f",
+                instructions, cycles, perInstruction(cycles, instructions)));
+        for (Cause cause : CAUSES) {
+            out.println(String.format(Locale.ROOT, "  %-12s %12d cycles  CPI %7.3f", cause.getTitle(),
+                    causeCycles[cause.ordinal()], perInstruction(causeCycles[cause.ordinal()], instructions)));
+        }
+        out.println(String.format(Locale.ROOT, "  %d branches and jumps, %d mispredicted (%.2f%%)", controlTransfers,
+                mispredictions, controlTransfers == 0 ? 0 : 100.0 * mispredictions / controlTransfers));
+
+        // Add up the words of the text segment under each label, in address order
+        LinkedHashMap<String, long[]> labels = new LinkedHashMap<>(); // instructions, then cycles by cause
+        for (int index = 0; index < textInstructions.length; index++) {
+            if (textInstructions[index] == 0) continue;
+            long[] totals = labels.computeIfAbsent(label(textStatements[index], Memory.textBaseAddress + 4 * index), k -> new long[1 + CAUSES.length]);
+            totals[0] += textInstructions[index];
+            for (int c = 0; c < CAUSES.length; c++) {
+                totals[1 + c] += textCycles[index * CAUSES.length + c];
+            }
+        }
+        if (otherInstructions > 0) {
+            long[] totals = new long[1 + CAUSES.length];
+            totals[0] = otherInstructions;
+            System.arraycopy(otherCycles, 0, totals, 1, CAUSES.length);
+            labels.put("(outside .text)", totals);
+        }
+        if (labels.isEmpty()) return;
+        ArrayList<String> names = new ArrayList<>(labels.keySet());
+        names.sort((a, b) -> Long.compare(sum(labels.get(b)), sum(labels.get(a))));
+        out.println("CPI by label, most cycles first:");
+        StringBuilder heading = new StringBuilder(String.format("  %-20s %12s %12s %7s", "label", "instructions", "cycles", "CPI"));
+        for (Cause cause : CAUSES) {
+            heading.append(String.format(" %11s", cause.getTitle()));
+        }
+        out.println(heading);
+        for (String name : names.subList(0, Math.min(MOST_CYCLES, names.size()))) {
+            long[] totals = labels.get(name);
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "  %-20s %12d %12d %7.3f",
+                    name, totals[0], sum(totals), perInstruction(sum(totals), totals[0])));
+            for (int c = 0; c < CAUSES.length; c++) {
+                row.append(String.format(Locale.ROOT, " %11.3f", perInstruction(totals[1 + c], totals[0])));
+            }
+            out.println(row);
+        }
+    }
+
+    // The label an instruction comes under, local labels of its file first.  Only text labels
+    // count: where the data segment lies below the text segment, the nearest label below code
+    // that comes before the first text label is a data label.
+    private static String label(ProgramStatement statement, int address) {
+        Symbol symbol = null;
+        if (statement.getSourceProgram() != null && statement.getSourceProgram().getLocalSymbolTable() != null) {
+            symbol = statement.getSourceProgram().getLocalSymbolTable().getSymbolAtOrBelowLocalOrGlobal(address);
+        }
+        if (symbol == null && Globals.symbolTable != null) {
+            symbol = Globals.symbolTable.getSymbolAtOrBelow(address);
+        }
+        return symbol == null || symbol.getType() ? String.format("0x%08x", address) : symbol.getName();
+    }
+
+    private static long sum(long[] totals) {
+        long cycles = 0;
+        for (int c = 1; c < totals.length; c++) cycles += totals[c];
+        return cycles;
+    }
+
+    private static double perInstruction(long cycles, long instructions) {
+        return instructions == 0 ? 0 : (double) cycles / instructions;
+    }
+}
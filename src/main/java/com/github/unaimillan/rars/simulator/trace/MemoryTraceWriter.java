@@ -0,0 +1,225 @@
+package com.github.unaimillan.rars.simulator.trace;
+
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.simulator.ExecutionListener;
+import com.github.unaimillan.rars.util.Binary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the program's instruction fetches, loads and stores to a file as they happen, for
+ * cache simulators and other tools outside RARS.  Added to the simulator as an
+ * {@link ExecutionListener}, it is called directly for every access, and collects the records
+ * in a buffer written out a block at a time, so that traces of many millions of accesses can
+ * be taken.
+ * <p>
+ * Records are in the din format of the Dinero IV cache simulator, a line per access holding a
+ * label (0 for a read, 1 for a write, 2 for an instruction fetch) and the address in hex, such as
+ * <tt>2 400010</tt>; or, more compactly, as five bytes each, the label then the address with
+ * the most significant byte first.  Files whose names end in .gz are compressed with gzip.
+ * System calls' accesses on behalf of the program are included, as loads and stores.
+ */
+public class MemoryTraceWriter implements ExecutionListener, Closeable {
+    /**
+     * How records are written
+     */
+    public enum Format {
+        /** Dinero IV's din text format */
+        DIN,
+        /** five bytes a record */
+        BINARY
+    }
+
+    /**
+     * The labels of the records
+     */
+    public static final int READ = 0, WRITE = 1, FETCH = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * Which addresses are traced: those of a segment or of a range.
+     */
+    public static final class Filter {
+        private final String segment; // .text, .data or null for a range
+        private final int low, high; // the range, inclusive and unsigned
+
+        private Filter(String segment, int low, int high) {
+            this.segment = segment;
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * @param spec all, .text, .data (the text and data segments as {@link Memory} defines them)
+         *             or a range of addresses such as 0x10010000-0x1001ffff
+         * @return the filter
+         * @throws IllegalArgumentException if the description is not understood
+         */
+        public static Filter parse(String spec) {
+            switch (spec.toLowerCase(Locale.ROOT)) {
+                case "all":
+                    return new Filter(null, 0, -1);
+                case ".text":
+                case ".data":
+                    return new Filter(spec.toLowerCase(Locale.ROOT), 0, -1);
+                default:
+                    int dash = spec.indexOf('-');
+                    try {
+                        if (dash > 0) {
+                            int low = Binary.stringToInt(spec.substring(0, dash)), high = Binary.stringToInt(spec.substring(dash + 1));
+                            if (Integer.compareUnsigned(low, high) <= 0) return new Filter(null, low, high);
+                        }
+                    } catch (NumberFormatException e) {
+                        // reported below
+                    }
+                    throw new IllegalArgumentException("segment expected as all, .text, .data or an address range like " +
+                            "0x10010000-0x1001ffff, not " + spec);
+            }
+        }
+
+        boolean accepts(int address) {
+            if (segment == null) {
+                return Integer.compareUnsigned(address, low) >= 0 && Integer.compareUnsigned(address, high) <= 0;
+            }
+            return segment.equals(".text") ? Memory.inTextSegment(address) : Memory.inDataSegment(address);
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final Filter filter;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long records;
+    private IOException error; // the first write to fail, after which nothing more is written
+
+    /**
+     * @param channel where to write the records
+     * @param format  how to write them
+     * @param filter  which accesses to write
+     */
+    public MemoryTraceWriter(WritableByteChannel channel, Format format, Filter filter) {
+        this.channel = channel;
+        this.format = format;
+        this.filter = filter;
+    }
+
+    /**
+     * Creates a file to write a trace to, replacing any there was, compressed if its name ends in .gz.
+     *
+     * @param file   the file
+     * @param format how to write the records
+     * @param filter which accesses to write
+     * @return the writer, to be closed when the program stops
+     * @throws IOException if the file cannot be created
+     */
+    public static MemoryTraceWriter open(File file, Format format, Filter filter) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (!file.getName().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            return new MemoryTraceWriter(fileChannel, format, filter);
+        }
+        try {
+            return new MemoryTraceWriter(Channels.newChannel(
+                    new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE)), format, filter);
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param name din, or bin for the binary format
+     * @return the format
+     * @throws IllegalArgumentException if it is neither
+     */
+    public static Format format(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "din":
+                return Format.DIN;
+            case "bin":
+                return Format.BINARY;
+            default:
+                throw new IllegalArgumentException("trace format expected as din or bin, not " + name);
+        }
+    }
+
+    @Override
+    public void fetch(int address, ProgramStatement statement) {
+        record(FETCH, address);
+    }
+
+    @Override
+    public void load(int address, int length) {
+        record(READ, address);
+    }
+
+    @Override
+    public void store(int address, int length) {
+        record(WRITE, address);
+    }
+
+    private void record(int label, int address) {
+        if (error != null || !filter.accepts(address)) return;
+        if (buffer.remaining() < 12) flush();
+        if (format == Format.BINARY) {
+            buffer.put((byte) label);
+            buffer.putInt(address);
+        } else {
+            buffer.put((byte) ('0' + label));
+            buffer.put((byte) ' ');
+            int digits = address == 0 ? 1 : 8 - Integer.numberOfLeadingZeros(address) / 4;
+            for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+                buffer.put(HEX[(address >>> shift) & 0xf]);
+            }
+            buffer.put((byte) '\n');
+        }
+        records++;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return how many records have been written
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Writes what is left in the buffer and closes the file.
+     *
+     * @throws IOException if that, or any write before it, failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (error == null) flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+}
@@ -1,8 +1,10 @@
 package com.github.unaimillan.rars.util;
 
 import javax.swing.filechooser.FileFilter;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -55,6 +57,11 @@ public class FilenameFinder {
     private static final String JAR_URI_PREFIX = "jar:";
     private static final boolean NO_DIRECTORIES = false;
     public static String MATCH_ALL_EXTENSIONS = "*";
+    /**
+     * Name of the file listing the classes of a package, generated at build time
+     * by the <tt>generateRegistries</tt> Gradle task.
+     */
+    public static final String REGISTRY_FILENAME = "registry.txt";
 
     /**
      * Locate files and return list of file names.  Given a known relative directory path,
@@ -139,6 +146,46 @@ public class FilenameFinder {
     }
 
 
+    /**
+     * Same as {@link #getFilenameList(ClassLoader, String, String)}, but reads the
+     * file names from the registry generated at build time when every location of
+     * the directory on the classpath has one.  This avoids listing directories and
+     * JAR files on startup.  If any location lacks a registry (e.g. classes hot-loaded
+     * into a directory or running from an IDE without the Gradle build), the directory
+     * is scanned as before so no files are missed.
+     *
+     * @param classLoader   class loader to use
+     * @param directoryPath Search will be confined to this directory.  Use "/" as
+     *                      separator but do NOT include starting or ending "/"  (e.g. rars/tools)
+     * @param fileExtension Only files with this extension will be added
+     *                      to the list.  Do NOT include the "." in extension.
+     * @return array list of matching file names as Strings.  If none, list is empty.
+     */
+    public static ArrayList<String> getRegisteredFilenameList(ClassLoader classLoader,
+                                                              String directoryPath,
+                                                              String fileExtension) {
+        ArrayList<String> filenameList = new ArrayList<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(directoryPath);
+            while (urls.hasMoreElements()) {
+                URL registry = new URL(urls.nextElement().toString() + "/" + REGISTRY_FILENAME);
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(registry.openStream()))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() > 0 && fileExtensionMatch(line, fileExtension)) {
+                            filenameList.add(line);
+                        }
+                    }
+                }
+            }
+            return filenameList;
+        } catch (IOException e) {
+            // No registry for at least one location; fall back to listing the directory
+            return getFilenameList(classLoader, directoryPath, fileExtension);
+        }
+    }
+
     /**
      * Locate files and return list of file names.  Given a known relative directory path,
      * it will locate it and build list of all names of files in that directory
@@ -0,0 +1,311 @@
+package com.github.unaimillan.rars.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the line-oriented formats of the command line tools: batch manifests
+ * and their results.  Objects are read into {@link LinkedHashMap}s, arrays into {@link ArrayList}s,
+ * numbers into Long or Double, and written back from the same kinds of values.
+ */
+public class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses one JSON value.
+     *
+     * @param text the JSON text
+     * @return a Map, List, String, Long, Double, Boolean or null
+     * @throws IllegalArgumentException if the text is not a single well-formed JSON value
+     */
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.value();
+        parser.skipSpace();
+        if (parser.pos != text.length()) {
+            throw parser.error("unexpected text after the value");
+        }
+        return value;
+    }
+
+    /**
+     * Parses a JSON object, such as one line of a manifest.
+     *
+     * @param text the JSON text
+     * @return the members of the object, in order
+     * @throws IllegalArgumentException if the text is not a well-formed JSON object
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object value = parse(text);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("JSON object expected");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Writes a value as JSON on a single line.
+     *
+     * @param value a Map with String keys, List, String, Number, Boolean or null
+     * @return the JSON text
+     */
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(out, value);
+        return out.toString();
+    }
+
+    private static void write(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            quote(out, (String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                if (!first) out.append(',');
+                first = false;
+                quote(out, String.valueOf(member.getKey()));
+                out.append(':');
+                write(out, member.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof List) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (List<?>) value) {
+                if (!first) out.append(',');
+                first = false;
+                write(out, element);
+            }
+            out.append(']');
+        } else {
+            quote(out, value.toString());
+        }
+    }
+
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private Object value() {
+        skipSpace();
+        if (pos >= text.length()) {
+            throw error("value expected");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> members = new LinkedHashMap<>();
+        pos++; // {
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+            return members;
+        }
+        while (true) {
+            skipSpace();
+            if (peek() != '"') {
+                throw error("member name expected");
+            }
+            String name = string();
+            skipSpace();
+            expect(':');
+            members.put(name, value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return members;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> elements = new ArrayList<>();
+        pos++; // [
+        skipSpace();
+        if (peek() == ']') {
+            pos++;
+            return elements;
+        }
+        while (true) {
+            elements.add(value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return elements;
+            }
+        }
+    }
+
+    private String string() {
+        StringBuilder s = new StringBuilder();
+        pos++; // opening quote
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    s.append(escape);
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("bad unicode escape");
+                    }
+                    try {
+                        s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("bad unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("bad escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private Object number() {
+        int start = pos;
+        boolean integral = true;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        try {
+            if (integral) {
+                return Long.parseLong(number);
+            }
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + number);
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) {
+            throw error("unexpected word");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("'" + c + "' expected");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON: " + message + " at column " + (pos + 1));
+    }
+}
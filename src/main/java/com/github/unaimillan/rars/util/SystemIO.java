@@ -553,16 +553,18 @@ public class SystemIO {
             for (int i = 0; i < SYSCALL_MAXFILES; i++) {
                 close(i);
             }
+            // These wrap System.out and System.err, which must stay open for the rest of
+            // the run (post-mortem displays, or the next run in watch mode), so only flush.
             if (outputWriter != null) {
                 try {
-                    outputWriter.close();
+                    outputWriter.flush();
                     outputWriter = null;
                 } catch (IOException e) {
                 }
             }
             if (errorWriter != null) {
                 try {
-                    errorWriter.close();
+                    errorWriter.flush();
                     errorWriter = null;
                 } catch (IOException e) {
                 }
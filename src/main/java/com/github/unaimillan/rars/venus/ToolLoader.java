@@ -105,7 +105,7 @@ public class ToolLoader {
      */
     private static ArrayList<Tool> loadTools() {
         ArrayList<Tool> toolList = new ArrayList<>();
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(ToolLoader.class.getClassLoader(),
+        ArrayList<String> candidates = FilenameFinder.getRegisteredFilenameList(ToolLoader.class.getClassLoader(),
                 TOOLS_DIRECTORY_PATH, CLASS_EXTENSION);
         // Add any tools stored externally, as listed in Config.properties file.
         // This needs some work, because rars.Globals.getExternalTools() returns
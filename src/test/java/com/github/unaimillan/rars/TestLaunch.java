@@ -0,0 +1,55 @@
+package com.github.unaimillan.rars;
+
+import com.github.unaimillan.rars.api.ImageCache;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.assembler.TokenCache;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLaunch {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void watchNoticesIncludesOfCachedImages() throws Exception {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        File main = directory.resolve("main.s").toFile();
+        File include = directory.resolve("exit.s").toFile();
+        File data = directory.resolve("table.bin").toFile();
+        Files.writeString(main.toPath(), ".data\n.incbin \"table.bin\"\n.text\nmain:\n.include \"exit.s\"\nli a7, 93\necall\n");
+        Files.writeString(include.toPath(), "li a0, 1\n");
+        Files.write(data.toPath(), new byte[]{1, 2, 3, 4});
+        ImageCache cache = new ImageCache(directory.resolve("images").toFile());
+        ArrayList<String> files = new ArrayList<>(List.of(main.getPath()));
+
+        // The first run assembles and stores the image; the next, as a fresh process, loads it
+        new Program(new Options()).assemble(files, main.getPath(), cache);
+        TokenCache.clear();
+        Program program = new Program(new Options());
+        program.assemble(files, main.getPath(), cache);
+        assertEquals(List.of(main.getPath()), TokenCache.getDependencies(main.getPath())); // nothing was tokenized
+
+        ArrayList<String> watched = Launch.filesToWatch(program, files, new ArrayList<>(List.of("lib.o")));
+        assertEquals(List.of("lib.o", main.getPath(), include.getPath(), data.getPath()), watched);
+        HashMap<String, Long> lastModified = Launch.lastModified(watched);
+        assertFalse(Launch.changed(lastModified));
+        Files.writeString(include.toPath(), "li a0, 2\n");
+        assertTrue(include.setLastModified(lastModified.get(include.getPath()) + 2000));
+        assertTrue(Launch.changed(lastModified));
+    }
+}
@@ -3,15 +3,24 @@ package com.github.unaimillan.rars;
 import com.github.unaimillan.rars.api.Options;
 import com.github.unaimillan.rars.api.Program;
 import com.github.unaimillan.rars.riscv.*;
+import com.github.unaimillan.rars.riscv.hardware.ControlAndStatusRegisterFile;
 import com.github.unaimillan.rars.simulator.Simulator;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 public class TestRARS {
 
     /**
@@ -309,4 +318,75 @@ public class TestRARS {
         // Updated to 10: because fsrmi and fsflagsi were removed
         if (skips != 10) System.out.println("Unexpected number of psuedo-instructions skipped.");
     }
+
+    private static final int WORKLOAD_RUNS = 3;
+
+    /**
+     * {@code workloads} runs the long programs in the workloads folder as a yardstick for the speed
+     * of the simulator.  Each program is checked against its golden output (name.out, with its
+     * input from name.in if there is one) on a warm-up run, and then timed on the best of
+     * {@code WORKLOAD_RUNS} runs.  It reports the simulated instructions per second, the rate
+     * of allocation by the simulating thread and the peak heap use.
+     * <p></p>
+     * It is left out of the normal tests because it takes a while; run it with "gradlew workloads".
+     */
+    @Test
+    @Tag("workload")
+    void workloads() throws Exception {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+
+        Options opt = new Options();
+        opt.startAtMain = true;
+        Program p = new Program(opt);
+
+        File[] tests = new File(this.getClass().getResource("/workloads").getFile()).listFiles();
+        Arrays.sort(tests);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        System.out.printf("%-12s %14s %10s %10s %14s %14s%n",
+                "workload", "instructions", "seconds", "MIPS", "alloc MB/s", "peak heap MB");
+        for (File test : tests) {
+            if (!test.getName().endsWith(".s")) continue;
+            String name = test.getName().substring(0, test.getName().length() - 2);
+            File in = new File(test.getParentFile(), name + ".in");
+            String stdin = in.exists() ? new String(Files.readAllBytes(in.toPath())) : "";
+            String expected = new String(Files.readAllBytes(new File(test.getParentFile(), name + ".out").toPath()));
+
+            p.assemble(test.getPath());
+            p.setup(null, stdin);
+            assertEquals(Simulator.Reason.NORMAL_TERMINATION, p.simulate(), name);
+            assertEquals(expected, p.getSTDOUT(), name);
+
+            long instructions = ControlAndStatusRegisterFile.getValueNoNotify("instret");
+            long best = Long.MAX_VALUE, allocated = 0, peak = 0;
+            for (int run = 0; run < WORKLOAD_RUNS; run++) {
+                p.setup(null, stdin);
+                System.gc();
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    pool.resetPeakUsage();
+                }
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                p.simulate();
+                long time = System.nanoTime() - start;
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                long heap = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) heap += pool.getPeakUsage().getUsed();
+                }
+                if (time < best) {
+                    best = time;
+                    allocated = bytes;
+                }
+                peak = Math.max(peak, heap);
+            }
+            double seconds = best / 1e9;
+            System.out.printf("%-12s %14d %10.3f %10.2f %14.1f %14.1f%n", name, instructions, seconds,
+                    instructions / seconds / 1e6, allocated / seconds / 1e6, peak / 1e6);
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.assembler.TokenCache;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.util.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBatchRunner {
+    static final String HELLO = ".data\\ns: .string \\\"hi\\\"\\n.text\\nla a0, s\\nli a7, 4\\necall\\nli a0, 0\\nli a7, 93\\necall\\n";
+
+    @TempDir
+    Path directory;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    static Options options() {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        TokenCache.clear();
+        Options options = new Options();
+        options.maxSteps = 1000;
+        return options;
+    }
+
+    private BatchRunner runner() {
+        return new BatchRunner(options(), new PrintStream(output, true), 1);
+    }
+
+    // The results written so far, one per line
+    private List<Map<String, Object>> results() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                results.add(Json.parseObject(line));
+            }
+        }
+        return results;
+    }
+
+    private static BatchRunner.Job job(String json) throws IOException {
+        return BatchRunner.Job.fromJson(Json.parseObject(json), null, -1, 0);
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = directory.resolve(name).toFile();
+        Files.writeString(file.toPath(), text);
+        return file;
+    }
+
+    @Test
+    void reportsEachOutcome() throws Exception {
+        BatchRunner runner = runner();
+        File manifest = write("jobs.jsonl", String.join("\n",
+                "# one job per line",
+                "{\"id\": \"hello\", \"source\": \"" + HELLO + "\", \"expect\": {\"stdout\": \"hi\", \"exitCode\": 0}}",
+                "",
+                "{\"id\": \"wrong\", \"source\": \"" + HELLO + "\", \"expect\": {\"stdout\": \"bye\"}}",
+                "{\"id\": \"syntax\", \"source\": \"nonsense t0\\n\"}",
+                "{\"id\": \"fault\", \"source\": \"lw a0, 0(zero)\\n\"}",
+                "{\"id\": \"spin\", \"source\": \"loop: j loop\\n\", \"maxSteps\": 50}",
+                "{\"id\": \"cliff\", \"source\": \"nop\\n\"}",
+                ""));
+        ArrayList<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest, runner.getMaxSteps());
+        assertEquals(6, jobs.size());
+        assertEquals(1, runner.run(jobs));
+
+        List<Map<String, Object>> results = results();
+        assertEquals(6, results.size());
+        Map<String, Object> hello = results.get(0);
+        assertEquals(0L, hello.get("index"));
+        assertEquals("hello", hello.get("id"));
+        assertEquals("exited", hello.get("status"));
+        assertEquals(0L, hello.get("exitCode"));
+        assertEquals(true, hello.get("passed"));
+        assertFalse(hello.containsKey("stdout"));
+        assertEquals("8f434346648f6b96df89dda901c5176b10a6d83961dd3c1ac88b59b2dc327aa4", hello.get("stdoutSha256"));
+
+        Map<String, Object> wrong = results.get(1);
+        assertEquals(1L, wrong.get("index"));
+        assertEquals(false, wrong.get("passed"));
+        assertEquals("hi", wrong.get("stdout"));
+        assertEquals("", wrong.get("stderr"));
+
+        Map<String, Object> syntax = results.get(2);
+        assertEquals("assemblyError", syntax.get("status"));
+        assertTrue(((String) syntax.get("error")).contains("nonsense"), (String) syntax.get("error"));
+        assertFalse(syntax.containsKey("passed"));
+
+        assertEquals("runtimeError", results.get(3).get("status"));
+        assertTrue(results.get(3).containsKey("error"));
+        assertEquals("maxSteps", results.get(4).get("status"));
+        assertEquals(50L, results.get(4).get("instructions"));
+        assertEquals("cliff", results.get(5).get("status"));
+    }
+
+    @Test
+    void readManifestReportsTheBadLine() throws Exception {
+        File manifest = write("bad.jsonl", "{\"source\": \"nop\"}\n\n{\"files\": []}\n");
+        IOException e = assertThrows(IOException.class, () -> BatchRunner.readManifest(manifest, -1));
+        assertEquals(manifest + " line 3: no files", e.getMessage());
+
+        File relative = write("relative.jsonl", "{\"files\": [\"main.s\", \"lib.s\"], \"maxSteps\": 7}\n");
+        Map<String, Object> json = BatchRunner.readManifest(relative, -1).get(0).toJson();
+        assertEquals(List.of(directory.resolve("main.s").toFile().getAbsolutePath(),
+                directory.resolve("lib.s").toFile().getAbsolutePath()), json.get("files"));
+        assertEquals(7, json.get("maxSteps"));
+    }
+
+    @Test
+    void changedIncludesAreReassembled() throws Exception {
+        BatchRunner runner = runner();
+        File include = write("exit.s", "li a0, 1\n");
+        File main = write("main.s", ".text\n.include \"exit.s\"\nli a7, 93\necall\n");
+        BatchRunner.Job files = job("{\"files\": [" + Json.write(main.getPath()) + "]}");
+        BatchRunner.Job source = job("{\"source\": " + Json.write(".include " + Json.write(include.getPath())
+                + "\nli a7, 93\necall\n") + "}");
+
+        assertEquals(1, runner.run(files).get("exitCode"));
+        assertEquals(1, runner.run(source).get("exitCode"));
+        Files.writeString(include.toPath(), "li a0, 2\n");
+        assertEquals(2, runner.run(files).get("exitCode"));
+        assertEquals(2, runner.run(source).get("exitCode"));
+        // Even with the tokenized files forgotten, as after a reset of the token cache alone
+        TokenCache.clear();
+        Files.writeString(include.toPath(), "li a0, 3\n");
+        assertEquals(3, runner.run(files).get("exitCode"));
+    }
+
+    @Test
+    void workersAssembleAhead() throws Exception {
+        BatchRunner runner = new BatchRunner(options(), new PrintStream(output, true), 2);
+        try {
+            BatchRunner.Job hello = job("{\"id\": \"hello\", \"source\": \"" + HELLO + "\"}");
+            Map<String, Object> assembled = runner.assemble(hello);
+            assertEquals("assembled", assembled.get("status"));
+            assertEquals(2, assembled.get("workers")); // both idle, so both have it now
+            Map<String, Object> result = runner.run(hello);
+            assertEquals("exited", result.get("status"));
+            assertEquals(0L, result.get("exitCode")); // as read back from the worker
+
+            // Programs that do not assemble are not sent on
+            Map<String, Object> failed = runner.assemble(job("{\"source\": \"nonsense\\n\"}"));
+            assertEquals("assemblyError", failed.get("status"));
+            assertFalse(failed.containsKey("workers"));
+        } finally {
+            runner.close();
+        }
+    }
+}
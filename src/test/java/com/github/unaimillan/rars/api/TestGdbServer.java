@@ -0,0 +1,124 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGdbServer {
+    private static final String PROGRAM = String.join("\n",
+            ".text",
+            "li t0, 5",          // 0x00400000
+            "addi t0, t0, 1",    // 0x00400004
+            "la t1, value",      // 0x00400008
+            "sw t0, 0(t1)",      // 0x00400010
+            "lw a0, 0(t1)",      // 0x00400014
+            "li a7, 93",         // 0x00400018
+            "ecall",             // 0x0040001c
+            ".data",
+            "value: .word 0",    // 0x10010000
+            "");
+
+    // Frames the packets as GDB would, answers them with a server for the program and returns
+    // the replies, leaving out acknowledgements
+    private static List<String> serve(String... packets) throws Exception {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        Program program = new Program(new Options());
+        program.assembleString(PROGRAM);
+        program.setup(new ArrayList<>(), "");
+
+        StringBuilder in = new StringBuilder();
+        for (String packet : packets) {
+            int sum = 0;
+            for (char c : packet.toCharArray()) {
+                sum += c;
+            }
+            in.append('$').append(packet).append('#').append(String.format("%02x", sum & 0xff));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GdbServer(program).serve(new ByteArrayInputStream(in.toString().getBytes(StandardCharsets.ISO_8859_1)), out);
+
+        List<String> replies = new ArrayList<>();
+        String text = out.toString(StandardCharsets.ISO_8859_1);
+        for (int start; (start = text.indexOf('$')) >= 0; ) {
+            int end = text.indexOf('#', start);
+            String reply = text.substring(start + 1, end);
+            int sum = 0;
+            for (char c : reply.toCharArray()) {
+                sum += c;
+            }
+            assertEquals(String.format("%02x", sum & 0xff), text.substring(end + 1, end + 3), reply);
+            replies.add(reply);
+            text = text.substring(end + 3);
+        }
+        return replies;
+    }
+
+    // A register of a g reply; each is 4 bytes, least significant first
+    private static String register(String registers, int n) {
+        return registers.substring(8 * n, 8 * n + 8);
+    }
+
+    @Test
+    void readsRegistersAndSteps() throws Exception {
+        List<String> replies = serve("?", "g", "s", "s", "g", "k");
+        assertEquals(5, replies.size());
+        assertEquals("S05", replies.get(0));
+        String before = replies.get(1);
+        assertEquals(8 * 33 + 16 * 32 + 8 * 3, before.length()); // x0-x31, pc, f0-f31, fflags, frm, fcsr
+        assertEquals("00004000", register(before, 32));
+        assertEquals("00000000", register(before, 5));
+        assertEquals("T05", replies.get(2));
+        assertEquals("T05", replies.get(3));
+        String after = replies.get(4);
+        assertEquals("08004000", register(after, 32));
+        assertEquals("06000000", register(after, 5));
+    }
+
+    @Test
+    void readsAndWritesMemory() throws Exception {
+        List<String> replies = serve("m400000,4", "m400002,3", "M10010000,4:2a000000", "m10010000,4",
+                "M400018,4:9308b005", "m400018,4", "m0,4", "k");
+        assertEquals("93025000", replies.get(0)); // addi t0, zero, 5
+        assertEquals("500093", replies.get(1));   // unaligned, into the next instruction
+        assertEquals("OK", replies.get(2));
+        assertEquals("2a000000", replies.get(3));
+        assertEquals("OK", replies.get(4));
+        assertEquals("9308b005", replies.get(5)); // li a7, 91 patched over li a7, 93
+        assertEquals("E14", replies.get(6));
+    }
+
+    @Test
+    void stopsAtBreakpointsAndWatchpointsUntilExit() throws Exception {
+        List<String> replies = serve("Z2,10010000,4", "Z0,400018,4", "c", "m10010000,4", "c", "g",
+                "z2,10010000,4", "c", "?", "k");
+        assertEquals("OK", replies.get(0));
+        assertEquals("OK", replies.get(1));
+        assertEquals("T05watch:10010000;", replies.get(2));
+        assertEquals("06000000", replies.get(3)); // the store that tripped the watchpoint is done
+        assertEquals("T05swbreak:;", replies.get(4));
+        assertEquals("18004000", register(replies.get(5), 32));
+        assertEquals("06000000", register(replies.get(5), 10));
+        assertEquals("OK", replies.get(6));
+        assertEquals("W06", replies.get(7));
+        assertEquals("W06", replies.get(8));
+        assertEquals(9, replies.size());
+    }
+
+    @Test
+    void killStopsServing() throws Exception {
+        List<String> replies = serve("k", "?");
+        assertTrue(replies.isEmpty());
+    }
+}
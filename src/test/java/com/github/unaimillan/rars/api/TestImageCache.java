@@ -0,0 +1,100 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.assembler.TokenCache;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestImageCache {
+
+    @TempDir
+    Path directory;
+
+    private static Options options() {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        Options options = new Options();
+        options.startAtMain = true;
+        options.maxSteps = 1000;
+        return options;
+    }
+
+    // Assembles main through the cache, as a fresh run would with nothing tokenized, and runs it
+    private static int exitCode(Options options, String main, ImageCache cache) throws Exception {
+        TokenCache.clear();
+        Program program = new Program(options);
+        program.assemble(new ArrayList<>(List.of(main)), main, cache);
+        program.setup(new ArrayList<>(), "");
+        program.simulate();
+        return program.getExitCode();
+    }
+
+    @Test
+    void changedIncludeInvalidatesImage() throws Exception {
+        Options options = options();
+        File main = directory.resolve("main.s").toFile();
+        File include = directory.resolve("exit.s").toFile();
+        Files.writeString(main.toPath(), ".text\nmain:\n.include \"exit.s\"\nli a7, 93\necall\n");
+        Files.writeString(include.toPath(), "li a0, 1\n");
+        ImageCache cache = new ImageCache(directory.resolve("images").toFile());
+
+        assertEquals(1, exitCode(options, main.getPath(), cache));
+        assertEquals(1, directory.resolve("images").toFile().list().length);
+        assertEquals(1, exitCode(options, main.getPath(), cache));
+
+        Files.writeString(include.toPath(), "li a0, 2\n");
+        assertEquals(2, exitCode(options, main.getPath(), cache));
+        Files.writeString(include.toPath(), "li a0, 3\n");
+        assertEquals(3, exitCode(options, main.getPath(), cache));
+    }
+
+    @Test
+    void loadedImageReportsItsIncludes() throws Exception {
+        Options options = options();
+        File main = directory.resolve("main.s").toFile();
+        File include = directory.resolve("exit.s").toFile();
+        Files.writeString(main.toPath(), ".text\nmain:\n.include \"exit.s\"\nli a7, 93\necall\n");
+        Files.writeString(include.toPath(), "li a0, 4\n");
+        ImageCache cache = new ImageCache(directory.resolve("images").toFile());
+        ArrayList<String> files = new ArrayList<>(List.of(main.getPath()));
+
+        Program assembled = new Program(options);
+        assembled.assemble(files, main.getPath(), cache);
+        assertEquals(List.of(include.getPath()), assembled.getIncludedFiles());
+
+        TokenCache.clear();
+        Program loaded = new Program(options);
+        ArrayList<String> found = cache.load(files, main.getPath(), options, loaded.getMemory());
+        assertNotNull(found);
+        assertEquals(List.of(include.getPath()), found);
+    }
+
+    @Test
+    void unknownIncludesAreNotStored() throws Exception {
+        Options options = options();
+        File main = directory.resolve("main.s").toFile();
+        Files.writeString(main.toPath(), ".text\nmain:\nli a0, 5\nli a7, 93\necall\n");
+        File images = directory.resolve("images").toFile();
+        ImageCache cache = new ImageCache(images);
+        ArrayList<String> files = new ArrayList<>(List.of(main.getPath()));
+
+        Program program = new Program(options);
+        program.assemble(files, main.getPath());
+        cache.store(files, main.getPath(), null, options, program.getMemory());
+        assertFalse(images.exists());
+        cache.store(files, main.getPath(), program.getIncludedFiles(), options, program.getMemory());
+        assertEquals(1, images.list().length);
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.unaimillan.rars.api;
+
+import com.github.unaimillan.rars.util.Json;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSimulationServer {
+    private static final String ECHO = Json.write(String.join("\n",
+            ".text",
+            "li a7, 5",   // ReadInt
+            "ecall",
+            "li a7, 93",  // Exit with the number read
+            "ecall",
+            ""));
+    private static final String WARNING = Json.write(".data\n.byte 300\n.text\nli a0, 9\nli a7, 93\necall\n");
+
+    private final BatchRunner runner = new BatchRunner(TestBatchRunner.options(), new PrintStream(new ByteArrayOutputStream()), 1);
+    private final SimulationServer server = new SimulationServer(runner, 1);
+
+    // Serves the requests, one per line, and returns the responses.  They are answered
+    // concurrently, so their order is not checked.
+    private List<Map<String, Object>> responses(String... requests) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream((String.join("\n", requests) + "\n").getBytes(StandardCharsets.UTF_8)), out);
+        List<Map<String, Object>> responses = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            responses.add(Json.parseObject(line));
+        }
+        return responses;
+    }
+
+    private Map<Object, Map<String, Object>> serve(String... requests) throws Exception {
+        Map<Object, Map<String, Object>> responses = new HashMap<>();
+        for (Map<String, Object> response : responses(requests)) {
+            assertNull(responses.put(response.get("id"), response), String.valueOf(response));
+        }
+        return responses;
+    }
+
+    @Test
+    void answersEachOp() throws Exception {
+        Map<Object, Map<String, Object>> responses = serve(
+                "{\"op\": \"ping\", \"id\": \"p\"}",
+                "",
+                "{\"id\": 1, \"source\": " + ECHO + ", \"stdin\": \"5\\n\"}",
+                "{\"op\": \"run\", \"id\": 2, \"source\": " + ECHO + ", \"stdin\": \"7\\n\", \"expect\": {\"exitCode\": 7}}",
+                "{\"op\": \"assemble\", \"id\": 3, \"source\": \"nonsense\\n\"}",
+                "{\"op\": \"launch\", \"id\": 4}",
+                "{\"op\": \"run\", \"id\": 5, \"maxSteps\": \"many\", \"source\": \"nop\"}",
+                "{\"op\": \"run\", \"id\": 6}");
+        assertEquals(7, responses.size()); // blank lines are skipped
+        assertEquals("ready", responses.get("p").get("status"));
+        assertEquals("exited", responses.get(1L).get("status"));
+        assertEquals(5L, responses.get(1L).get("exitCode"));
+        assertEquals(7L, responses.get(2L).get("exitCode"));
+        assertEquals(true, responses.get(2L).get("passed"));
+        assertEquals("assemblyError", responses.get(3L).get("status"));
+        assertTrue(((String) responses.get(3L).get("error")).contains("nonsense"));
+        assertEquals("requestError", responses.get(4L).get("status"));
+        assertEquals("unknown op launch", responses.get(4L).get("error"));
+        assertEquals("maxSteps has to be an integer", responses.get(5L).get("error"));
+        assertEquals("files has to be a string or a list of strings", responses.get(6L).get("error"));
+    }
+
+    @Test
+    void unreadableRequestsGetAnError() throws Exception {
+        List<Map<String, Object>> responses = responses("{\"op\": ", "[1, 2]");
+        assertEquals(2, responses.size());
+        for (Map<String, Object> response : responses) {
+            assertEquals("requestError", response.get("status"));
+            assertFalse(response.containsKey("id"));
+        }
+    }
+
+    @Test
+    void assembledProgramsAreReused() throws Exception {
+        Map<String, Object> first = serve("{\"op\": \"assemble\", \"id\": 1, \"source\": " + WARNING + "}").get(1L);
+        assertEquals("assembled", first.get("status"));
+        assertTrue(((String) first.get("warnings")).contains("out-of-range"), String.valueOf(first));
+        // Warnings only come with assembling, so their absence shows the program was reused
+        Map<String, Object> again = serve("{\"op\": \"assemble\", \"id\": 2, \"source\": " + WARNING + "}").get(2L);
+        assertEquals("assembled", again.get("status"));
+        assertFalse(again.containsKey("warnings"));
+        assertEquals(9L, serve("{\"id\": 3, \"source\": " + WARNING + "}").get(3L).get("exitCode"));
+
+        assertEquals("reset", serve("{\"op\": \"reset\", \"id\": 4}").get(4L).get("status"));
+        assertTrue(serve("{\"op\": \"assemble\", \"id\": 5, \"source\": " + WARNING + "}").get(5L).containsKey("warnings"));
+    }
+}
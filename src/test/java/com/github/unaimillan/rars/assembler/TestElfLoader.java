@@ -0,0 +1,254 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.SimulationException;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestElfLoader {
+    private static final int R = 4, W = 2, X = 1;
+    private static final int TEXT = 0x00400000, RODATA = 0x00401000, DATA = 0x10010000;
+
+    // Reads a word of read-only data placed after the code, another and a byte from a read-only
+    // segment, and a word and a .bss word from the data segment.
+    private static final String PROGRAM = String.join("\n",
+            ".text",
+            "li t0, 0x00400040",
+            "lw a0, 0(t0)",
+            "li t1, 0x00401000",
+            "lw a1, 0(t1)",
+            "lbu a2, 4(t1)",
+            "lw a3, 8(t1)",
+            "li t2, 0x10010000",
+            "lw a4, 0(t2)",
+            "lw a5, 4(t2)",
+            "li a7, 10",
+            "ecall",
+            "");
+
+    @TempDir
+    Path directory;
+
+    private static class Segment {
+        final int flags;
+        final long address;
+        final byte[] bytes;
+        final long size;
+        long offset = -1; // where the bytes go in the file, unless given
+
+        Segment(int flags, long address, byte[] bytes, long size) {
+            this.flags = flags;
+            this.address = address;
+            this.bytes = bytes;
+            this.size = size;
+        }
+    }
+
+    private static Options initialize(boolean rv64) {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, false);
+        InstructionSet.rv64 = rv64;
+        Globals.instructionSet.populate();
+        Options options = new Options();
+        options.maxSteps = 1000;
+        return options;
+    }
+
+    // The machine code of the source, as it would be in an executable's text section
+    private static byte[] machineCode(Options options, String source) throws Exception {
+        Program program = new Program(options);
+        program.assembleString(source);
+        program.setup(new ArrayList<>(), "");
+        ByteBuffer code = ByteBuffer.allocate(0x40).order(ByteOrder.LITTLE_ENDIAN);
+        for (int address = TEXT; program.getMemory().getStatementNoNotify(address) != null; address += 4) {
+            code.putInt(program.getMemory().getStatementNoNotify(address).getBinaryStatement());
+        }
+        return code.array();
+    }
+
+    private static byte[] words(int... words) {
+        ByteBuffer bytes = ByteBuffer.allocate(4 * words.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int word : words) {
+            bytes.putInt(word);
+        }
+        return bytes.array();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    // A statically linked RISC-V executable with the given segments and no section headers
+    private File executable(String name, boolean elf64, long entry, Segment... segments) throws Exception {
+        int header = elf64 ? 64 : 52, programHeader = elf64 ? 56 : 32;
+        int offset = header + segments.length * programHeader;
+        int length = offset;
+        for (Segment segment : segments) {
+            length += segment.bytes.length;
+        }
+        ByteBuffer elf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        elf.put(new byte[]{0x7F, 'E', 'L', 'F', (byte) (elf64 ? 2 : 1), 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        elf.putShort((short) 2).putShort((short) 0xF3).putInt(1);
+        if (elf64) {
+            elf.putLong(entry).putLong(header).putLong(0);
+        } else {
+            elf.putInt((int) entry).putInt(header).putInt(0);
+        }
+        elf.putInt(0).putShort((short) header).putShort((short) programHeader).putShort((short) segments.length)
+                .putShort((short) (elf64 ? 64 : 40)).putShort((short) 0).putShort((short) 0);
+        for (Segment segment : segments) {
+            long at = segment.offset >= 0 ? segment.offset : offset;
+            if (elf64) {
+                elf.putInt(1).putInt(segment.flags).putLong(at).putLong(segment.address).putLong(segment.address)
+                        .putLong(segment.bytes.length).putLong(segment.size).putLong(4);
+            } else {
+                elf.putInt(1).putInt((int) at).putInt((int) segment.address).putInt((int) segment.address)
+                        .putInt(segment.bytes.length).putInt((int) segment.size).putInt(segment.flags).putInt(4);
+            }
+            offset += segment.bytes.length;
+        }
+        for (Segment segment : segments) {
+            elf.put(segment.bytes);
+        }
+        File file = directory.resolve(name).toFile();
+        Files.write(file.toPath(), elf.array());
+        return file;
+    }
+
+    private File fixture(Options options, boolean elf64) throws Exception {
+        byte[] text = concat(machineCode(options, PROGRAM), words(0x11223344));
+        byte[] rodata = concat(words(0x55667788), "hi\0".getBytes());
+        return executable(elf64 ? "fixture64" : "fixture32", elf64, TEXT,
+                new Segment(R | X, TEXT, text, text.length),
+                new Segment(R, RODATA, rodata, 12),
+                new Segment(R | W, DATA, words(5), 64));
+    }
+
+    private static Program load(Options options, File file) throws AssemblyException {
+        Program program = new Program(options);
+        program.loadExecutable(file.getPath());
+        program.setup(new ArrayList<>(), "");
+        return program;
+    }
+
+    private static String message(AssemblyException e) {
+        return e.errors().generateErrorReport();
+    }
+
+    @Test
+    void loadsReadOnlyDataInTheTextSegment() throws Exception {
+        for (boolean elf64 : new boolean[]{false, true}) {
+            Options options = initialize(elf64);
+            File fixture = fixture(options, elf64);
+            assertTrue(ElfLoader.isElf(fixture));
+            Program program = load(options, fixture);
+            program.simulate();
+            assertEquals(0x11223344, program.getRegisterValue("a0"));
+            assertEquals(0x55667788, program.getRegisterValue("a1"));
+            assertEquals('h', program.getRegisterValue("a2"));
+            assertEquals(0, program.getRegisterValue("a3")); // past the file, within the segment
+            assertEquals(5, program.getRegisterValue("a4"));
+            assertEquals(0, program.getRegisterValue("a5")); // .bss
+        }
+    }
+
+    @Test
+    void readOnlyDataCannotBeWritten() throws Exception {
+        Options options = initialize(false);
+        byte[] text = machineCode(options, ".text\nli t1, 0x00401000\nsw zero, 0(t1)\nli a7, 10\necall\n");
+        File file = executable("store", false, TEXT,
+                new Segment(R | X, TEXT, text, text.length),
+                new Segment(R, RODATA, words(1), 4));
+        Program program = load(options, file);
+        assertThrows(SimulationException.class, program::simulate);
+    }
+
+    @Test
+    void codeIsOnlyReadableWithReadPermission() throws Exception {
+        Options options = initialize(false);
+        byte[] text = concat(machineCode(options, ".text\nli t0, 0x00400040\nlw a0, 0(t0)\nli a7, 10\necall\n"), words(7));
+        Program readable = load(options, executable("readable", false, TEXT, new Segment(R | X, TEXT, text, text.length)));
+        readable.simulate();
+        assertEquals(7, readable.getRegisterValue("a0"));
+        Program executeOnly = load(options, executable("executeOnly", false, TEXT, new Segment(X, TEXT, text, text.length)));
+        assertThrows(SimulationException.class, executeOnly::simulate);
+    }
+
+    @Test
+    void readOnlyDataIsForgottenByTheNextProgram() throws Exception {
+        Options options = initialize(false);
+        load(options, fixture(options, false));
+        Program assembled = new Program(options);
+        assembled.assembleString(".text\nli t0, 0x00400000\nlw a0, 0(t0)\nli a7, 10\necall\n");
+        assembled.setup(new ArrayList<>(), "");
+        assertThrows(SimulationException.class, assembled::simulate);
+    }
+
+    @Test
+    void rejectsMisplacedSegments() throws Exception {
+        Options options = initialize(false);
+        byte[] text = machineCode(options, PROGRAM);
+        File writable = executable("writable", false, TEXT,
+                new Segment(R | X, TEXT, text, text.length),
+                new Segment(R | W, RODATA, words(1), 4));
+        String report = message(assertThrows(AssemblyException.class, () -> load(options, writable)));
+        assertTrue(report.contains("has writable data at 0x00401000-0x00401004, in the text segment"), report);
+
+        File outside = executable("outside", false, TEXT,
+                new Segment(R | X, TEXT, text, text.length),
+                new Segment(R, Memory.stackBaseAddress - 0x1000, words(1), 4));
+        report = message(assertThrows(AssemblyException.class, () -> load(options, outside)));
+        assertTrue(report.contains("outside the data segment"), report);
+    }
+
+    @Test
+    void rejectsValuesBeyond32Bits() throws Exception {
+        Options options = initialize(true);
+        byte[] text = machineCode(options, PROGRAM);
+
+        File entry = executable("entry", true, 0x100400000L, new Segment(R | X, TEXT, text, text.length));
+        String report = message(assertThrows(AssemblyException.class, () -> load(options, entry)));
+        assertTrue(report.contains("has its entry point at 0x0000000100400000, beyond the 32 bit addresses of RARS"), report);
+
+        File address = executable("address", true, TEXT, new Segment(R | X, TEXT, text, text.length),
+                new Segment(R | W, 0x110010000L, words(1), 4));
+        report = message(assertThrows(AssemblyException.class, () -> load(options, address)));
+        assertTrue(report.contains("has a segment at 0x0000000110010000, beyond the 32 bit addresses of RARS"), report);
+
+        Segment far = new Segment(R | W, DATA, words(1), 4);
+        far.offset = 0x100000010L;
+        File offset = executable("offset", true, TEXT, new Segment(R | X, TEXT, text, text.length), far);
+        report = message(assertThrows(AssemblyException.class, () -> load(options, offset)));
+        assertTrue(report.contains("has a segment offset of 4294967312, too large to load"), report);
+
+        File size = executable("size", true, TEXT, new Segment(R | X, TEXT, text, text.length),
+                new Segment(R | W, DATA, words(1), 0x80000000L));
+        report = message(assertThrows(AssemblyException.class, () -> load(options, size)));
+        assertTrue(report.contains("has a segment size of 2147483648, too large to load"), report);
+
+        // A sign-extended 32 bit address is taken as that address, here one outside the data segment
+        File extended = executable("extended", true, TEXT, new Segment(R | X, TEXT, text, text.length),
+                new Segment(R | W, 0xFFFFFFFF90000000L, words(1), 4));
+        report = message(assertThrows(AssemblyException.class, () -> load(options, extended)));
+        assertTrue(report.contains("has data at 0x90000000-0x90000004, outside the data segment"), report);
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLinker {
+
+    private static final String DATA = String.join("\n",
+            ".data",
+            "pad: .word 7",
+            "tbl: .dword pad, tbl, end",
+            "words: .word pad, fn, end",
+            "halves: .half 1, 2",
+            ".half pad, fn",
+            "bytes: .byte 1, 2, 3",
+            ".align 2",
+            "end: .word tbl",
+            ".text",
+            "main: la t0, tbl",
+            "fn: lw t1, 8(t0)",
+            "li a7, 10",
+            "ecall",
+            "");
+
+    private static final String MAIN = String.join("\n",
+            ".globl main",
+            ".data",
+            "ptr: .word counter",
+            ".text",
+            "main: jal ra, inc",
+            "la t0, counter",
+            "lw a0, 0(t0)",
+            "lw t1, ptr",
+            "lw t1, 0(t1)",
+            "add a0, a0, t1",
+            "bnez a0, finish",
+            "li a0, 1",
+            "li a7, 93",
+            "ecall",
+            "");
+
+    private static final String LIBRARY = String.join("\n",
+            ".globl inc, counter, finish",
+            ".data",
+            "counter: .word 20",
+            ".text",
+            "inc: la t2, counter",
+            "lw t3, 0(t2)",
+            "addi t3, t3, 1",
+            "sw t3, 0(t2)",
+            "ret",
+            "finish: li a7, 93",
+            "ecall",
+            "");
+
+    @TempDir
+    Path directory;
+
+    private static Options initialize(boolean rv64) {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+        InstructionSet.rv64 = rv64;
+        Globals.instructionSet.populate();
+        TokenCache.clear();
+        Options options = new Options();
+        options.startAtMain = true;
+        options.maxSteps = 1000;
+        return options;
+    }
+
+    private String write(String name, String source) throws Exception {
+        File file = directory.resolve(name).toFile();
+        Files.writeString(file.toPath(), source);
+        return file.getPath();
+    }
+
+    private static ObjectFile object(Options options, String file) throws AssemblyException {
+        return new Program(options).assembleObject(new ArrayList<>(List.of(file)), file);
+    }
+
+    private static Program linked(Options options, ObjectFile... objects) throws AssemblyException {
+        Program program = new Program(options);
+        program.link(new ArrayList<>(List.of(objects)));
+        program.setup(new ArrayList<>(), "");
+        return program;
+    }
+
+    private static int run(Program program) throws Exception {
+        program.simulate();
+        return program.getExitCode();
+    }
+
+    // Everything an object holds, except the name it was read from
+    private static String describe(ObjectFile object) {
+        StringBuilder text = new StringBuilder();
+        text.append(object.isRV64()).append(' ').append(object.getTextSize()).append('\n');
+        for (ObjectFile.Statement statement : object.getText()) {
+            text.append(statement.offset).append(' ').append(statement.binary).append(' ').append(statement.file)
+                    .append(' ').append(statement.line).append(' ').append(statement.source).append('\n');
+        }
+        for (int word : object.getData()) {
+            text.append(word).append(' ');
+        }
+        text.append('\n');
+        for (ObjectFile.Label label : object.getLabels()) {
+            text.append(label.name).append(' ').append(label.section).append(' ').append(label.offset)
+                    .append(' ').append(label.global).append(' ').append(label.file).append('\n');
+        }
+        for (Relocation relocation : object.getRelocations()) {
+            text.append(relocation.getKind()).append(' ').append(relocation.getAddress()).append(' ')
+                    .append(relocation.getPC()).append(' ').append(relocation.getLength()).append(' ')
+                    .append(relocation.getSymbol()).append(' ').append(relocation.getAddend()).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Test
+    void dataRelocationsMatchSingleAssembly() throws Exception {
+        for (boolean rv64 : new boolean[]{false, true}) {
+            Options options = initialize(rv64);
+            String file = write("data.s", DATA);
+            Program single = new Program(options);
+            single.assemble(file);
+            single.setup(new ArrayList<>(), "");
+            Memory expected = single.getMemory();
+            ObjectFile object = object(options, file);
+            Memory actual = linked(options, object).getMemory();
+
+            assertTrue(object.getDataSize() >= 48);
+            for (int offset = 0; offset < object.getDataSize(); offset += 4) {
+                int address = Memory.dataBaseAddress + offset;
+                assertEquals(expected.getRawWord(address), actual.getRawWord(address), "data word at offset " + offset);
+            }
+            // tbl: .dword pad, tbl, end holds each address with a zero high word, end's by forward reference
+            int tbl = Memory.dataBaseAddress + 8;
+            assertEquals(Memory.dataBaseAddress, actual.getRawWord(tbl));
+            assertEquals(0, actual.getRawWord(tbl + 4));
+            assertEquals(tbl, actual.getRawWord(tbl + 8));
+            assertEquals(0, actual.getRawWord(tbl + 12));
+            assertEquals(Memory.dataBaseAddress + 56, actual.getRawWord(tbl + 16));
+            assertEquals(0, actual.getRawWord(tbl + 20));
+            for (int offset = 0; offset < object.getTextSize(); offset += 4) {
+                int address = Memory.textBaseAddress + offset;
+                assertEquals(expected.getStatementNoNotify(address).getBinaryStatement(),
+                        actual.getStatementNoNotify(address).getBinaryStatement(), "instruction at offset " + offset);
+            }
+        }
+    }
+
+    @Test
+    void objectRoundTrip() throws Exception {
+        Options options = initialize(false);
+        for (String source : new String[]{DATA, MAIN, LIBRARY}) {
+            ObjectFile object = object(options, write("unit.s", source));
+            File saved = directory.resolve("unit.o").toFile();
+            object.write(saved);
+            ObjectFile read = ObjectFile.read(saved);
+            assertEquals(saved.getPath(), read.getName());
+            assertEquals(describe(object), describe(read));
+            File again = directory.resolve("again.o").toFile();
+            read.write(again);
+            assertArrayEquals(Files.readAllBytes(saved.toPath()), Files.readAllBytes(again.toPath()));
+        }
+    }
+
+    @Test
+    void readRejectsOtherFiles() throws Exception {
+        File source = new File(write("main.s", MAIN));
+        IOException notObject = assertThrows(IOException.class, () -> ObjectFile.read(source));
+        assertTrue(notObject.getMessage().contains("is not a RARS object file"));
+
+        Options options = initialize(false);
+        File saved = directory.resolve("main.o").toFile();
+        object(options, source.getPath()).write(saved);
+        byte[] bytes = Files.readAllBytes(saved.toPath());
+        File truncated = directory.resolve("truncated.o").toFile();
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        IOException shortFile = assertThrows(IOException.class, () -> ObjectFile.read(truncated));
+        assertTrue(shortFile.getMessage().contains("is truncated"));
+    }
+
+    @Test
+    void linksCrossUnitReferences() throws Exception {
+        Options options = initialize(false);
+        String main = write("main.s", MAIN), library = write("library.s", LIBRARY);
+
+        Program whole = new Program(options);
+        whole.assemble(new ArrayList<>(List.of(main, library)), main);
+        whole.setup(new ArrayList<>(), "");
+        assertEquals(42, run(whole));
+
+        File mainObject = directory.resolve("main.o").toFile(), libraryObject = directory.resolve("library.o").toFile();
+        object(options, main).write(mainObject);
+        object(options, library).write(libraryObject);
+        assertEquals(42, run(linked(options, ObjectFile.read(mainObject), ObjectFile.read(libraryObject))));
+        // Objects are left as they were, so they can be linked again
+        ObjectFile first = object(options, main), second = object(options, library);
+        assertEquals(42, run(linked(options, first, second)));
+        assertEquals(42, run(linked(options, first, second)));
+        assertNotEquals(SymbolTable.NOT_FOUND, Globals.symbolTable.getAddress("counter"));
+    }
+
+    @Test
+    void reportsUndefinedGlobals() throws Exception {
+        Options options = initialize(false);
+        ObjectFile main = object(options, write("main.s", MAIN));
+        AssemblyException e = assertThrows(AssemblyException.class, () -> linked(options, main));
+        String report = e.errors().generateErrorReport();
+        assertTrue(report.contains("label \"inc\" is not defined in any object"), report);
+        assertTrue(report.contains("label \"counter\" is not defined in any object"), report);
+        assertTrue(report.contains("label \"finish\" is not defined in any object"), report);
+    }
+
+    @Test
+    void reportsDuplicateGlobals() throws Exception {
+        Options options = initialize(false);
+        ObjectFile library = object(options, write("library.s", LIBRARY));
+        ObjectFile copy = object(options, write("copy.s", LIBRARY));
+        ObjectFile main = object(options, write("main.s", MAIN));
+        AssemblyException e = assertThrows(AssemblyException.class, () -> linked(options, main, library, copy));
+        String report = e.errors().generateErrorReport();
+        for (String label : new String[]{"inc", "counter", "finish"}) {
+            assertTrue(report.contains("global label \"" + label + "\" is also defined in " + library.getName()), report);
+        }
+    }
+}
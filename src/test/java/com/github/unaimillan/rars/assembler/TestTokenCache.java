@@ -0,0 +1,110 @@
+package com.github.unaimillan.rars.assembler;
+
+import com.github.unaimillan.rars.AssemblyException;
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.RISCVprogram;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTokenCache {
+
+    private static final String SOURCE = String.join("\n",
+            ".eqv LIMIT, 10",
+            ".macro bump(%r)",
+            "addi %r, %r, LIMIT",
+            ".end_macro",
+            ".text",
+            "main: li t0, 0",
+            "bump(t0)",
+            "loop: addi t0, t0, -1",
+            "bnez t0, loop",
+            "");
+
+    @TempDir
+    Path directory;
+
+    private static void initialize() {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        TokenCache.clear();
+    }
+
+    private static int[] assemble(RISCVprogram program, String file) throws AssemblyException {
+        ArrayList<String> files = new ArrayList<>(List.of(file));
+        program.assemble(program.prepareFilesForAssembly(files, file, null), true);
+        ArrayList<ProgramStatement> statements = program.getMachineList();
+        int[] code = new int[statements.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = statements.get(i).getBinaryStatement();
+        }
+        return code;
+    }
+
+    @Test
+    void lookupReturnsAnIndependentCopy() throws Exception {
+        initialize();
+        File file = directory.resolve("copy.s").toFile();
+        Files.writeString(file.toPath(), SOURCE);
+        String name = file.getPath();
+        byte[] digest = TokenCache.digest(name);
+
+        RISCVprogram original = new RISCVprogram();
+        original.readSource(name);
+        original.tokenize();
+        TokenCache.store(original, digest);
+
+        RISCVprogram first = TokenCache.lookup(name, digest);
+        RISCVprogram second = TokenCache.lookup(name, digest);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(original, first);
+        assertNotSame(first, second);
+        assertEquals(original.getTokenList().size(), first.getTokenList().size());
+        for (int i = 0; i < first.getTokenList().size(); i++) {
+            TokenList a = first.getTokenList().get(i), b = second.getTokenList().get(i);
+            assertNotSame(a, b);
+            assertEquals(original.getTokenList().get(i).toString(), a.toString());
+            for (int j = 0; j < a.size(); j++) {
+                assertNotSame(a.get(j), b.get(j));
+                assertSame(first, a.get(j).getSourceProgram());
+                assertSame(second, b.get(j).getSourceProgram());
+            }
+        }
+        assertSame(first, first.getSourceLineList().get(0).getRISCVprogram());
+        assertNotSame(first.getLocalSymbolTable(), second.getLocalSymbolTable());
+    }
+
+    @Test
+    void cachedAssemblyMatchesFreshAssembly() throws Exception {
+        initialize();
+        File file = directory.resolve("again.s").toFile();
+        Files.writeString(file.toPath(), SOURCE);
+        String name = file.getPath();
+
+        int[] fresh = assemble(new RISCVprogram(), name);
+        assertNotNull(TokenCache.lookup(name, TokenCache.digest(name)));
+        // Reusing one program, as api.Program does, and a new one must both see the original tokens
+        RISCVprogram reused = new RISCVprogram();
+        int[] cached = assemble(reused, name);
+        int[] again = assemble(reused, name);
+        int[] other = assemble(new RISCVprogram(), name);
+        assertArrayEquals(fresh, cached);
+        assertArrayEquals(fresh, again);
+        assertArrayEquals(fresh, other);
+        assertEquals(4, fresh.length);
+        assertNotNull(reused.getLocalSymbolTable().getSymbol("loop"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.unaimillan.rars.riscv.instructions;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.riscv.hardware.RegisterFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Instructions decoded from machine code, as in self-modifying programs, assembled images and
+ * loaded executables, rather than from source, whose immediates the assembler has already
+ * sign-extended.
+ */
+public class TestDecodedImmediates {
+
+    // Runs the given machine code in RV64 mode, followed by an exit system call
+    private static void run(int... code) throws Exception {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, true);
+        InstructionSet.rv64 = true;
+        Globals.instructionSet.populate();
+        StringBuilder source = new StringBuilder(".text\n");
+        for (int i = 0; i < code.length; i++) {
+            source.append("nop\n");
+        }
+        source.append("li a7, 10\necall\n");
+        Program program = new Program(new Options());
+        program.assembleString(source.toString());
+        program.setup(new ArrayList<>(), "");
+        for (int i = 0; i < code.length; i++) {
+            int address = Memory.textBaseAddress + 4 * i;
+            program.getMemory().setStatement(address, new ProgramStatement(code[i], address));
+        }
+        program.simulate();
+    }
+
+    @Test
+    void immediatesAreSignExtended() throws Exception {
+        run(0xFFF00513,  // addi a0, zero, -1
+                0x80006593,  // ori a1, zero, -2048
+                0xFFF6B613); // sltiu a2, a3, -1
+        assertEquals(-1L, RegisterFile.getValueLong(10));
+        assertEquals(-2048L, RegisterFile.getValueLong(11));
+        assertEquals(1L, RegisterFile.getValueLong(12));
+    }
+
+    @Test
+    void auipcOffsetIsSignExtended() throws Exception {
+        run(0xFFFFF517,  // auipc a0, 0xfffff
+                0x80000597); // auipc a1, 0x80000
+        assertEquals(Memory.textBaseAddress - 0x1000L, RegisterFile.getValueLong(10));
+        assertEquals(Memory.textBaseAddress + 4 - 0x80000000L, RegisterFile.getValueLong(11));
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.unaimillan.rars.simulator.branch;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBranchPredictors {
+    private static final int RA = 1, T0 = 5, T1 = 6;
+
+    private static void initialize() {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+    }
+
+    private static ProgramStatement jal(int address, int rd, int offset) {
+        int word = (offset >> 20 & 1) << 31 | (offset >> 1 & 0x3ff) << 21 | (offset >> 11 & 1) << 20
+                | (offset >> 12 & 0xff) << 12 | rd << 7 | 0x6f;
+        return new ProgramStatement(word, address);
+    }
+
+    private static ProgramStatement jalr(int address, int rd, int rs1) {
+        return new ProgramStatement(rs1 << 15 | rd << 7 | 0x67, address);
+    }
+
+    // bne t0, zero, offset
+    private static ProgramStatement bne(int address, int offset) {
+        int word = (offset >> 12 & 1) << 31 | (offset >> 5 & 0x3f) << 25 | T0 << 15 | 1 << 12
+                | (offset >> 1 & 0xf) << 8 | (offset >> 11 & 1) << 7 | 0x63;
+        return new ProgramStatement(word, address);
+    }
+
+    @Test
+    void historyPredictorsLearnAnAlternatingBranch() {
+        initialize();
+        BranchPredictorEvaluation evaluation = BranchPredictorEvaluation.parse("bimodal,gshare,tournament,tage");
+        ProgramStatement branch = bne(0x00400020, -0x20);
+        // Learn, then count only the branches after that
+        for (int i = 0; i < 1000; i++) {
+            evaluation.retire(0x00400020, branch, i % 2 == 0 ? 0x00400000 : 0x00400024);
+        }
+        long[] before = new long[4];
+        for (int p = 0; p < 4; p++) {
+            before[p] = evaluation.getCorrect(p);
+        }
+        for (int i = 0; i < 1000; i++) {
+            evaluation.retire(0x00400020, branch, i % 2 == 0 ? 0x00400000 : 0x00400024);
+        }
+        assertEquals(2000, evaluation.getConditionalBranches());
+        // The counter of the bimodal predictor goes back and forth between its two middle
+        // values, always a step behind
+        assertEquals(0, evaluation.getCorrect(0) - before[0]);
+        for (int p = 1; p < 4; p++) {
+            assertEquals(1000, evaluation.getCorrect(p) - before[p], evaluation.getPredictors()[p].describe());
+        }
+    }
+
+    @Test
+    void everyPredictorLearnsABiasedBranch() {
+        for (String name : new String[]{"bimodal", "gshare", "tournament", "tage"}) {
+            BranchPredictor predictor = BranchPredictorEvaluation.predictor(name);
+            assertFalse(predictor.predict(0x00400000), name); // weakly not taken to start with
+            for (int i = 0; i < 20; i++) {
+                predictor.predict(0x00400000);
+                predictor.update(0x00400000, true);
+            }
+            assertTrue(predictor.predict(0x00400000), name);
+            predictor.reset();
+            assertFalse(predictor.predict(0x00400000), name);
+        }
+    }
+
+    @Test
+    void branchTargetBufferIsDirectMapped() {
+        BranchTargetBuffer buffer = new BranchTargetBuffer(4);
+        assertEquals(0x00400004, buffer.predict(0x00400000));
+        buffer.update(0x00400000, 0x00400100);
+        assertEquals(0x00400100, buffer.predict(0x00400000));
+        buffer.update(0x00400004, 0x00400200); // the next entry
+        assertEquals(0x00400100, buffer.predict(0x00400000));
+        buffer.update(0x00400010, 0x00400300); // the same entry as 0x00400000
+        assertEquals(0x00400004, buffer.predict(0x00400000));
+        assertEquals(0x00400300, buffer.predict(0x00400010));
+        buffer.reset();
+        assertEquals(0x00400014, buffer.predict(0x00400010));
+        assertThrows(IllegalArgumentException.class, () -> new BranchTargetBuffer(6));
+    }
+
+    @Test
+    void returnAddressStackOverwritesTheOldest() {
+        ReturnAddressStack stack = new ReturnAddressStack(2);
+        assertEquals(0, stack.pop());
+        stack.push(0x100);
+        stack.push(0x200);
+        stack.push(0x300);
+        assertEquals(0x300, stack.pop());
+        assertEquals(0x200, stack.pop());
+        assertEquals(0, stack.pop()); // 0x100 was overwritten
+        stack.push(0x400);
+        stack.reset();
+        assertEquals(0, stack.pop());
+        assertThrows(IllegalArgumentException.class, () -> new ReturnAddressStack(0));
+    }
+
+    @Test
+    void callsAndReturnsAreRecognisedByTheirLinkRegisters() {
+        initialize();
+        BranchPredictorEvaluation evaluation = BranchPredictorEvaluation.parse("bimodal,btb:64,ras:4");
+        // jal ra: a call, a jump the BTB has not seen yet, pushing the return address
+        evaluation.retire(0x00400000, jal(0x00400000, RA, 0x100), 0x00400100);
+        // jalr x0, ra: a return, predicted by the stack and not counted as a jump
+        evaluation.retire(0x00400100, jalr(0x00400100, 0, RA), 0x00400004);
+        assertEquals(1, evaluation.getJumps());
+        assertEquals(1, evaluation.getReturns());
+        assertEquals(1, evaluation.getReturnsFound());
+
+        // jalr ra, ra: a call through ra, which pushes without popping
+        evaluation.retire(0x00400008, jalr(0x00400008, RA, RA), 0x00400200);
+        assertEquals(2, evaluation.getJumps());
+        assertEquals(1, evaluation.getReturns());
+        evaluation.retire(0x00400200, jalr(0x00400200, 0, RA), 0x0040000c);
+        assertEquals(2, evaluation.getReturnsFound());
+
+        // jalr ra, t1: a call through another register
+        evaluation.retire(0x00400010, jalr(0x00400010, RA, T1), 0x00400300);
+        // jalr t0, ra: a coroutine switch, which pops and then pushes
+        evaluation.retire(0x00400300, jalr(0x00400300, T0, RA), 0x00400014);
+        assertEquals(3, evaluation.getJumps());
+        assertEquals(3, evaluation.getReturns());
+        assertEquals(3, evaluation.getReturnsFound());
+        // jalr x0, t0: a return through t0 to the address the switch pushed
+        evaluation.retire(0x00400014, jalr(0x00400014, 0, T0), 0x00400304);
+        assertEquals(4, evaluation.getReturnsFound());
+
+        // A return with nothing on the stack is mispredicted
+        evaluation.retire(0x00400018, jalr(0x00400018, 0, RA), 0x00400000);
+        assertEquals(5, evaluation.getReturns());
+        assertEquals(4, evaluation.getReturnsFound());
+
+        // jal x0 and jalr x0, t1 are plain jumps; the first call's target is now in the BTB
+        evaluation.retire(0x00400000, jal(0x00400000, RA, 0x100), 0x00400100);
+        evaluation.retire(0x00400020, jal(0x00400020, 0, 0x40), 0x00400060);
+        evaluation.retire(0x00400060, jalr(0x00400060, 0, T1), 0x00400400);
+        assertEquals(6, evaluation.getJumps());
+        assertEquals(1, evaluation.getJumpTargetsFound());
+        assertEquals(5, evaluation.getReturns());
+
+        // Taken branches are jumps too; branches not taken are not
+        evaluation.retire(0x00400030, bne(0x00400030, 0x10), 0x00400040);
+        evaluation.retire(0x00400030, bne(0x00400030, 0x10), 0x00400034);
+        evaluation.retire(0x00400030, bne(0x00400030, 0x10), 0x00400040);
+        assertEquals(3, evaluation.getConditionalBranches());
+        assertEquals(8, evaluation.getJumps());
+        assertEquals(2, evaluation.getJumpTargetsFound());
+
+        evaluation.reset();
+        assertEquals(0, evaluation.getJumps());
+        assertEquals(0, evaluation.getReturns());
+        assertEquals(0, evaluation.getConditionalBranches());
+    }
+
+    @Test
+    void parsesAndReports() {
+        initialize();
+        BranchPredictorEvaluation evaluation = BranchPredictorEvaluation.parse("Bimodal:1024, gshare:8,btb:64,ras:4");
+        assertEquals("bimodal, 1024 2-bit counters", evaluation.getPredictors()[0].describe());
+        assertEquals("gshare, 8 bits of history, 256 2-bit counters", evaluation.getPredictors()[1].describe());
+        ProgramStatement branch = bne(0x00400020, -0x20);
+        for (int i = 0; i < 10; i++) {
+            evaluation.retire(0x00400020, branch, i % 2 == 0 ? 0x00400000 : 0x00400024);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        evaluation.report(new PrintStream(out, true));
+        String report = out.toString(StandardCharsets.UTF_8);
+        assertTrue(report.startsWith("Branch prediction: 10 conditional branches, 50.00% taken, in 10 instructions"), report);
+        assertTrue(report.contains("BTB, 64 targets"), report);
+        assertTrue(report.contains("return-address stack, 4 entries"), report);
+        assertTrue(report.contains("  0x00400020         10   50.0%       0.00"), report);
+
+        String[][] cases = {
+                {"btb:64", "no direction predictor given"},
+                {"perceptron", "unknown predictor perceptron (use bimodal, gshare, tournament or tage)"},
+                {"gshare:x", "gshare: number expected, not x"},
+                {"gshare:8:2", "predictor expected as name or name:size, not gshare:8:2"},
+                {"bimodal:1000", "bimodal: entries must be a power of two, not 1000"},
+        };
+        for (String[] c : cases) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BranchPredictorEvaluation.parse(c[0]));
+            assertEquals(c[1], e.getMessage());
+        }
+    }
+}
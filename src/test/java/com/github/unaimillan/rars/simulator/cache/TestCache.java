@@ -0,0 +1,133 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCache {
+    // Blocks of 16 bytes, which all map to the one set of a fully associative cache
+    private static final int A = 0x000, B = 0x010, C = 0x020, D = 0x030, E = 0x040;
+
+    private static Cache fullyAssociative(int ways, Cache.Replacement replacement) {
+        return new Cache("L1", 16 * ways, ways, 16, replacement, true, true, null);
+    }
+
+    // Whether each of the loads hit
+    private static String loads(Cache cache, int... addresses) {
+        StringBuilder hits = new StringBuilder();
+        for (int address : addresses) {
+            hits.append(cache.access(address, false) ? 'h' : 'm');
+        }
+        return hits.toString();
+    }
+
+    @Test
+    void lruReplacesTheLeastRecentlyUsed() {
+        Cache cache = fullyAssociative(2, Cache.Replacement.LRU);
+        // C replaces B, which was used before A; B then replaces C
+        assertEquals("mmhmhmh", loads(cache, A, B, A, C, A, B, A));
+        assertEquals(7, cache.getReads());
+        assertEquals(4, cache.getReadMisses());
+    }
+
+    @Test
+    void fifoReplacesTheFirstFilled() {
+        Cache cache = fullyAssociative(2, Cache.Replacement.FIFO);
+        // Using A again does not save it from C
+        assertEquals("mmhmmh", loads(cache, A, B, A, C, A, C));
+    }
+
+    @Test
+    void plruFollowsItsTree() {
+        // After A B C D A the tree points away from A's half and, in the other half, away from
+        // D, so E replaces C where LRU would replace B
+        Cache plru = fullyAssociative(4, Cache.Replacement.PLRU);
+        assertEquals("mmmmhm", loads(plru, A, B, C, D, A, E));
+        assertEquals(2, plru.getLastLine());
+        assertEquals("hm", loads(plru, B, C));
+
+        Cache lru = fullyAssociative(4, Cache.Replacement.LRU);
+        assertEquals("mmmmhm", loads(lru, A, B, C, D, A, E));
+        assertEquals(1, lru.getLastLine());
+        assertEquals("hm", loads(lru, C, B));
+    }
+
+    @Test
+    void randomRepeatsAfterReset() {
+        Cache cache = fullyAssociative(4, Cache.Replacement.RANDOM);
+        int[] addresses = new int[200];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = (i * 7 % 9) * 16;
+        }
+        String first = loads(cache, addresses);
+        cache.reset();
+        assertEquals(0, cache.getAccesses());
+        assertEquals(first, loads(cache, addresses));
+    }
+
+    @Test
+    void setsAreIndexedByBlockNumber() {
+        // 2 sets of 1 way: A and C share set 0, B has set 1
+        Cache cache = new Cache("L1", 32, 1, 16, Cache.Replacement.LRU, true, true, null);
+        assertEquals(2, cache.getSets());
+        assertEquals("mmmhm", loads(cache, A, B, C, B, A));
+        assertEquals(0, cache.getLastLine());
+    }
+
+    // Store to A twice, then load B, which takes A's place, twice; then report what each
+    // level saw
+    private static String traffic(boolean writeBack, boolean writeAllocate) {
+        Cache memory = new Cache("L2", 1024, 1, 16, Cache.Replacement.LRU, true, true, null);
+        Cache cache = new Cache("L1", 16, 1, 16, Cache.Replacement.LRU, writeBack, writeAllocate, memory);
+        cache.access(A, true);
+        cache.access(A + 4, true);
+        cache.access(B, false);
+        cache.access(B + 8, false);
+        return cache.getWrites() + " " + cache.getWriteMisses() + " " + cache.getReads() + " " + cache.getReadMisses()
+                + " " + cache.getWriteBacks() + " / " + memory.getWrites() + " " + memory.getReads();
+    }
+
+    @Test
+    void writePolicies() {
+        // Write-back, write-allocate: A is brought in, dirtied and written back when B replaces it
+        assertEquals("2 1 2 1 1 / 1 2", traffic(true, true));
+        // Write-through, write-allocate: A is brought in and both stores go through
+        assertEquals("2 1 2 1 0 / 2 2", traffic(false, true));
+        // Write-through, no-write-allocate: both stores miss and go through without bringing A in
+        assertEquals("2 2 2 1 0 / 2 1", traffic(false, false));
+        // Write-back, no-write-allocate: as above, since nothing is left dirty
+        assertEquals("2 2 2 1 0 / 2 1", traffic(true, false));
+    }
+
+    @Test
+    void dirtyBlocksAreWrittenBackOnlyOnce() {
+        Cache cache = new Cache("L1", 16, 1, 16, Cache.Replacement.LRU, true, true, null);
+        cache.access(A, true);
+        cache.access(B, false); // writes A back
+        cache.access(A, false); // replaces a clean B
+        cache.access(B, false);
+        assertEquals(1, cache.getWriteBacks());
+        assertEquals(4, cache.getMisses());
+        assertEquals(1.0, cache.getMissRate());
+    }
+
+    @Test
+    void describesItself() {
+        assertEquals("L1D 8 KB, 4-way, 32 B blocks, LRU, write-back, write-allocate",
+                new Cache("L1D", 8192, 4, 32, Cache.Replacement.LRU, true, true, null).describe());
+        assertEquals("L1 512 B, direct-mapped, 16 B blocks, FIFO, write-through, no-write-allocate",
+                new Cache("L1", 512, 1, 16, Cache.Replacement.FIFO, false, false, null).describe());
+        assertEquals("L1 64 B, fully associative, 16 B blocks, PLRU, write-back, write-allocate",
+                fullyAssociative(4, Cache.Replacement.PLRU).describe());
+    }
+
+    @Test
+    void rejectsSizesThatDoNotFit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Cache("L1", 3000, 1, 16, Cache.Replacement.LRU, true, true, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Cache("L1", 64, 8, 16, Cache.Replacement.LRU, true, true, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Cache("L1", 1024, 64, 16, Cache.Replacement.PLRU, true, true, null));
+    }
+}
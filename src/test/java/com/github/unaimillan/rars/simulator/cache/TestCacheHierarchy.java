@@ -0,0 +1,95 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCacheHierarchy {
+
+    @Test
+    void parsesLevelsAndPolicies() {
+        Cache[] levels = CacheHierarchy.parse("l1i=8k:2:32,L1D=8k:4:32:wt:nwa,l2=256k:8:64:plru").getLevels();
+        assertEquals(3, levels.length);
+        assertEquals("L1I 8 KB, 2-way, 32 B blocks, LRU, write-back, write-allocate", levels[0].describe());
+        assertEquals("L1D 8 KB, 4-way, 32 B blocks, LRU, write-through, no-write-allocate", levels[1].describe());
+        assertEquals("L2 256 KB, 8-way, 64 B blocks, PLRU, write-back, write-allocate", levels[2].describe());
+        assertSame(levels[2], levels[0].getNext());
+        assertSame(levels[2], levels[1].getNext());
+        assertNull(levels[2].getNext());
+
+        Cache[] unified = CacheHierarchy.parse("l1=1k:1:16:fifo,l2=1m:16:64").getLevels();
+        assertEquals(2, unified.length);
+        assertEquals("L1", unified[0].getName());
+        assertEquals(1024 * 1024, unified[1].getSize());
+
+        Cache[] only = CacheHierarchy.parse("l2=64k:4:64").getLevels();
+        assertEquals(1, only.length);
+        assertEquals("L2", only[0].getName());
+    }
+
+    @Test
+    void rejectsUnknownDescriptions() {
+        String[][] cases = {
+                {"l1i", "cache level expected as name=size:ways:block, not l1i"},
+                {"l3=1m:8:64", "unknown cache level l3 (use l1i, l1d, l1 or l2)"},
+                {"l1=8k:2:32,l1d=8k:2:32", "a unified l1 cannot be combined with l1i or l1d"},
+                {"l1d=8k:2", "L1D: size:ways:block expected, not 8k:2"},
+                {"l1d=8k:2:32:mru", "L1D: unknown policy mru"},
+                {"l1d=8q:2:32", "L1D: number expected, not 8q"},
+        };
+        for (String[] c : cases) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CacheHierarchy.parse(c[0]));
+            assertEquals(c[1], e.getMessage());
+        }
+    }
+
+    @Test
+    void accessReportsTheLevelThatHad() {
+        CacheHierarchy hierarchy = CacheHierarchy.parse("l1i=1k:1:16,l1d=1k:1:16,l2=64k:2:64");
+        assertEquals(CacheHierarchy.MEMORY, hierarchy.access(false, 0x10010000, false));
+        assertEquals(CacheHierarchy.FIRST_LEVEL, hierarchy.access(false, 0x10010004, true));
+        // Another block of the first level within the block the second level brought in
+        assertEquals(CacheHierarchy.SECOND_LEVEL, hierarchy.access(false, 0x10010020, false));
+        // Instructions have their own first level, but share the second
+        assertEquals(CacheHierarchy.SECOND_LEVEL, hierarchy.access(true, 0x10010030, false));
+        assertEquals(CacheHierarchy.MEMORY, hierarchy.access(true, 0x00400000, false));
+        assertEquals(CacheHierarchy.FIRST_LEVEL, hierarchy.access(true, 0x00400004, false));
+
+        CacheHierarchy dataOnly = CacheHierarchy.parse("l1d=1k:1:16");
+        assertEquals(CacheHierarchy.FIRST_LEVEL, dataOnly.access(true, 0x00400000, false));
+        assertEquals(CacheHierarchy.MEMORY, dataOnly.access(false, 0x10010000, false));
+    }
+
+    @Test
+    void listenerCallsGoToTheirCaches() {
+        CacheHierarchy hierarchy = CacheHierarchy.parse("l1i=1k:1:16,l1d=1k:1:16:wt,l2=64k:2:64");
+        hierarchy.fetch(0x00400000, null);
+        hierarchy.fetch(0x00400004, null);
+        hierarchy.load(0x10010000, 4);
+        hierarchy.store(0x10010000, 4);
+        Cache[] levels = hierarchy.getLevels();
+        assertEquals(2, levels[0].getReads());
+        assertEquals(1, levels[0].getMisses());
+        assertEquals(1, levels[1].getReads());
+        assertEquals(1, levels[1].getWrites());
+        assertEquals(2, levels[2].getReads());  // the two first level misses
+        assertEquals(1, levels[2].getWrites()); // the store written through
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hierarchy.report(new PrintStream(out, true));
+        String report = out.toString(StandardCharsets.UTF_8);
+        assertTrue(report.contains("L1D 1 KB, direct-mapped, 16 B blocks, LRU, write-through, write-allocate"), report);
+        assertTrue(report.contains("  reads                   2  misses          1   50.00%"), report);
+        assertEquals(2, report.split("write-backs", -1).length - 1); // for the write-back levels only
+
+        hierarchy.reset();
+        for (Cache cache : levels) {
+            assertEquals(0, cache.getAccesses());
+        }
+        assertEquals(CacheHierarchy.MEMORY, hierarchy.access(true, 0x00400000, false));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.unaimillan.rars.simulator.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStackDistanceSweep {
+    private static final int[][] CACHES = { // size, ways, block size
+            {1024, 1, 16},
+            {1024, 16, 64}, // fully associative
+            {2048, 4, 32},
+            {4096, 8, 16},
+            {8192, 2, 64},
+            {8192, 16, 32},
+    };
+
+    // Loads and stores with some locality: runs through arrays, with jumps to other places
+    private static int[] addresses(int count) {
+        Random random = new Random(42);
+        int[] addresses = new int[count];
+        int address = 0x10010000;
+        for (int i = 0; i < count; i++) {
+            int choice = random.nextInt(10);
+            if (choice < 6) {
+                address += 4;
+            } else if (choice < 9) {
+                address = 0x10010000 + 4 * random.nextInt(4096);
+            } else {
+                address = 0x7fffe000 + 4 * random.nextInt(256);
+            }
+            addresses[i] = address;
+        }
+        return addresses;
+    }
+
+    @Test
+    void missesMatchThoseOfEachLruCache() {
+        StackDistanceSweep sweep = new StackDistanceSweep("Data", false, true, new int[]{16, 32, 64}, 1024, 8192, 16);
+        Cache[] caches = new Cache[CACHES.length];
+        for (int i = 0; i < CACHES.length; i++) {
+            caches[i] = new Cache("L1", CACHES[i][0], CACHES[i][1], CACHES[i][2], Cache.Replacement.LRU, true, true, null);
+        }
+        int[] addresses = addresses(50000);
+        for (int i = 0; i < addresses.length; i++) {
+            boolean write = i % 3 == 0;
+            if (write) sweep.store(addresses[i], 4);
+            else sweep.load(addresses[i], 4);
+            for (Cache cache : caches) {
+                cache.access(addresses[i], write);
+            }
+        }
+        assertEquals(addresses.length, sweep.getAccesses());
+        for (int i = 0; i < CACHES.length; i++) {
+            long misses = caches[i].getMisses();
+            assertTrue(misses > 0 && misses < addresses.length, caches[i].describe());
+            assertEquals(misses, sweep.getMisses(CACHES[i][2], CACHES[i][0], CACHES[i][1]), caches[i].describe());
+        }
+    }
+
+    @Test
+    void handCountedStream() {
+        // 16 byte blocks in a 64 byte cache
+        StackDistanceSweep sweep = new StackDistanceSweep("Data", false, true, new int[]{16}, 64, 64, 2);
+        for (int address : new int[]{0x00, 0x20, 0x00, 0x40, 0x20, 0x04}) {
+            sweep.load(address, 4);
+        }
+        // Direct-mapped (4 sets): 0x00 and 0x20 hit once each before 0x40 replaces 0x00
+        assertEquals(4, sweep.getMisses(16, 64, 1));
+        // 2-way (2 sets): all three share a set, so 0x40 replaces 0x20 and 0x20 replaces 0x00
+        assertEquals(5, sweep.getMisses(16, 64, 2));
+    }
+
+    @Test
+    void followsOnlyTheChosenStream() {
+        StackDistanceSweep instructions = StackDistanceSweep.firstLevel("Instructions", true, false);
+        instructions.fetch(0x00400000, null);
+        instructions.load(0x10010000, 4);
+        instructions.store(0x10010000, 4);
+        assertEquals(1, instructions.getAccesses());
+        assertEquals(1, instructions.getMisses(32, 1024, 1));
+    }
+
+    @Test
+    void unsweptCachesAreNotAnswered() {
+        StackDistanceSweep sweep = new StackDistanceSweep("Data", false, true, new int[]{16, 32}, 1024, 4096, 4);
+        assertEquals(0, sweep.getMisses(16, 1024, 4));
+        assertEquals(-1, sweep.getMisses(64, 1024, 1));  // block size
+        assertEquals(-1, sweep.getMisses(16, 1024, 8));  // ways
+        assertEquals(-1, sweep.getMisses(16, 8192, 1));  // too big
+        assertEquals(-1, sweep.getMisses(16, 128, 1));   // too few sets
+        assertEquals(-1, sweep.getMisses(16, 1536, 1));  // not a power of two
+    }
+}
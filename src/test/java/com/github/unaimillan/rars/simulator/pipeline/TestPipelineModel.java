@@ -0,0 +1,176 @@
+package com.github.unaimillan.rars.simulator.pipeline;
+
+import com.github.unaimillan.rars.Globals;
+import com.github.unaimillan.rars.ProgramStatement;
+import com.github.unaimillan.rars.Settings;
+import com.github.unaimillan.rars.api.Options;
+import com.github.unaimillan.rars.api.Program;
+import com.github.unaimillan.rars.riscv.InstructionSet;
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import com.github.unaimillan.rars.riscv.hardware.MemoryConfigurations;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPipelineModel {
+
+    // The instructions of the source, in order from the start of the text segment
+    private static ProgramStatement[] assemble(String... lines) throws Exception {
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+        Program program = new Program(new Options());
+        program.assembleString(".text\n" + String.join("\n", lines) + "\n");
+        program.setup(new ArrayList<>(), "");
+        ArrayList<ProgramStatement> statements = new ArrayList<>();
+        for (int address = Memory.textBaseAddress; ; address += 4) {
+            ProgramStatement statement = program.getMemory().getStatementNoNotify(address);
+            if (statement == null) break;
+            statements.add(statement);
+        }
+        return statements.toArray(new ProgramStatement[0]);
+    }
+
+    // Fetches and retires the instruction, as the simulator does, going on to the given one
+    private static void run(PipelineModel model, ProgramStatement statement, ProgramStatement next) {
+        model.fetch(statement.getAddress(), statement);
+        model.retire(statement.getAddress(), statement, next == null ? statement.getAddress() + 4 : next.getAddress());
+    }
+
+    // Runs the instructions in order, as straight-line code
+    private static PipelineModel run(String spec, String... lines) throws Exception {
+        PipelineModel model = PipelineModel.parse(spec, null);
+        for (ProgramStatement statement : assemble(lines)) {
+            run(model, statement, null);
+        }
+        return model;
+    }
+
+    @Test
+    void independentInstructionsTakeACycleEach() throws Exception {
+        PipelineModel model = run("", "li t0, 1", "li t1, 2", "add t2, t3, t4", "lw a0, 0(sp)", "sw a1, 4(sp)");
+        assertEquals(5, model.getInstructions());
+        assertEquals(5, model.getCycles());
+        assertEquals(5, model.takeCycles());
+        assertEquals(0, model.takeCycles());
+    }
+
+    @Test
+    void loadUseStallsOneCycle() throws Exception {
+        PipelineModel model = run("", "lw t0, 0(sp)", "add t1, t0, t0");
+        assertEquals(3, model.getCycles());
+        assertEquals(1, model.getCycles(PipelineModel.Cause.LOAD_USE));
+        // Another instruction in between hides it
+        assertEquals(3, run("", "lw t0, 0(sp)", "li t2, 1", "add t1, t0, t0").getCycles());
+    }
+
+    @Test
+    void multiplyResultWaitsForItsLatency() throws Exception {
+        PipelineModel model = run("mul=3", "mul t0, t1, t2", "add t3, t0, t0");
+        assertEquals(4, model.getCycles());
+        assertEquals(2, model.getCycles(PipelineModel.Cause.MULTI_CYCLE));
+        // Multiplies are pipelined, so independent ones follow each other
+        assertEquals(3, run("mul=3", "mul t0, t1, t2", "mul t3, t4, t5", "mul t6, a0, a1").getCycles());
+    }
+
+    @Test
+    void dividesAreNotPipelined() throws Exception {
+        PipelineModel model = run("div=10", "div t0, t1, t2", "div t3, t4, t5");
+        // The second, independent, waits for the first to leave the execute stage
+        assertEquals(11, model.getCycles());
+        assertEquals(9, model.getCycles(PipelineModel.Cause.MULTI_CYCLE));
+        // So does anything else after a divide
+        assertEquals(11, run("div=10", "div t0, t1, t2", "li a0, 1").getCycles());
+    }
+
+    @Test
+    void fusedMultiplyAddWaitsForItsThirdOperand() throws Exception {
+        PipelineModel model = run("fmul=4", "fmul.s ft0, ft1, ft2", "fmadd.s ft3, ft4, ft5, ft0");
+        assertEquals(5, model.getCycles());
+        assertEquals(3, model.getCycles(PipelineModel.Cause.MULTI_CYCLE));
+        // and its result takes as long as a multiply
+        assertEquals(9, run("fmul=4", "fmul.s ft0, ft1, ft2", "fmadd.s ft3, ft4, ft5, ft0", "fadd.s ft6, ft3, ft3").getCycles());
+        assertEquals(3, run("fadd=2", "fadd.s ft0, ft1, ft2", "fmadd.s ft3, ft4, ft5, ft0").getCycles());
+    }
+
+    @Test
+    void mispredictedBranchCostsThePenalty() throws Exception {
+        ProgramStatement[] code = assemble("loop: addi t0, t0, -1", "bnez t0, loop", "li a0, 1");
+        // Without a predictor, fetch goes on sequentially, so every taken branch is mispredicted
+        PipelineModel sequential = PipelineModel.parse("bp=none,branch=3", null);
+        run(sequential, code[0], null);
+        run(sequential, code[1], code[0]);
+        run(sequential, code[0], null);
+        run(sequential, code[1], null);
+        run(sequential, code[2], null);
+        assertEquals(2, sequential.getControlTransfers());
+        assertEquals(1, sequential.getMispredictions());
+        assertEquals(5 + 3, sequential.getCycles());
+        assertEquals(3, sequential.getCycles(PipelineModel.Cause.BRANCH));
+
+        // A bimodal predictor and the BTB learn the loop after its first time round
+        PipelineModel predicted = PipelineModel.parse("bp=bimodal,branch=3", null);
+        for (int i = 0; i < 10; i++) {
+            run(predicted, code[0], null);
+            run(predicted, code[1], code[0]);
+        }
+        assertEquals(10, predicted.getControlTransfers());
+        assertEquals(1, predicted.getMispredictions());
+        assertEquals(20 + 3, predicted.getCycles());
+    }
+
+    @Test
+    void returnsArePredictedByTheStack() throws Exception {
+        ProgramStatement[] code = assemble("jal ra, f", "li a0, 1", "f: ret");
+        PipelineModel model = PipelineModel.parse("branch=2", null);
+        run(model, code[0], code[2]); // a call the BTB has not seen
+        run(model, code[2], code[1]); // its return, predicted by the stack
+        run(model, code[1], null);
+        assertEquals(2, model.getControlTransfers());
+        assertEquals(1, model.getMispredictions());
+        assertEquals(3 + 2, model.getCycles());
+    }
+
+    @Test
+    void codeIsChargedToTextLabelsOnly() throws Exception {
+        // With the data segment below the text segment, the nearest label below the first
+        // instructions is a data label
+        Globals.initialize();
+        MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getConfigurationByName("CompactDataAtZero"));
+        try {
+            PipelineModel model = PipelineModel.parse("", null);
+            for (ProgramStatement statement : assemble(".data", "x: .word 1", ".text", "li a0, 1", "f: li a1, 2")) {
+                run(model, statement, null);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            model.report(new PrintStream(out, true));
+            String report = out.toString(StandardCharsets.UTF_8);
+            assertTrue(report.contains(String.format("\n  0x%08x ", Memory.textBaseAddress)), report);
+            assertTrue(report.contains("\n  f "), report);
+            assertFalse(report.contains("\n  x "), report);
+        } finally {
+            MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+        }
+    }
+
+    @Test
+    void rejectsUnknownParameters() {
+        String[][] cases = {
+                {"branch", "pipeline parameter expected as name=value, not branch"},
+                {"cpi=1", "unknown pipeline parameter cpi (use bp, btb, ras, branch, mul, div, fadd, fmul, fdiv, l2, mem)"},
+                {"mul=x", "mul: number expected, not x"},
+                {"branch=-1", "branch: -1 is too small"},
+                {"div=0", "div: latencies are at least 1"},
+        };
+        for (String[] c : cases) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PipelineModel.parse(c[0], null));
+            assertEquals(c[1], e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.unaimillan.rars.simulator.trace;
+
+import com.github.unaimillan.rars.riscv.hardware.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMemoryTraceWriter {
+    @TempDir
+    Path directory;
+
+    // A fetch, a load and a store, including the addresses that print shortest and longest
+    private static void accesses(MemoryTraceWriter writer) {
+        writer.fetch(0x00400010, null);
+        writer.load(0, 4);
+        writer.store(0xfffffffc, 1);
+    }
+
+    private static byte[] trace(MemoryTraceWriter.Format format, String filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemoryTraceWriter writer = new MemoryTraceWriter(Channels.newChannel(out), format,
+                MemoryTraceWriter.Filter.parse(filter));
+        accesses(writer);
+        assertEquals(0, out.size()); // nothing is written before the buffer fills or the writer closes
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    void writesDin() throws IOException {
+        assertEquals("2 400010\n0 0\n1 fffffffc\n",
+                new String(trace(MemoryTraceWriter.Format.DIN, "all"), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void writesBinary() throws IOException {
+        assertArrayEquals(new byte[]{
+                2, 0x00, 0x40, 0x00, 0x10,
+                0, 0x00, 0x00, 0x00, 0x00,
+                1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xfc,
+        }, trace(MemoryTraceWriter.Format.BINARY, "all"));
+    }
+
+    @Test
+    void filtersBySegmentOrRange() throws IOException {
+        assertEquals("2 400010\n", new String(trace(MemoryTraceWriter.Format.DIN, ".text"), StandardCharsets.US_ASCII));
+        assertEquals("0 0\n", new String(trace(MemoryTraceWriter.Format.DIN, "0x0-0x3"), StandardCharsets.US_ASCII));
+        // The range is unsigned and inclusive at both ends
+        assertEquals("1 fffffffc\n",
+                new String(trace(MemoryTraceWriter.Format.DIN, "0x80000000-0xfffffffc"), StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemoryTraceWriter writer = new MemoryTraceWriter(Channels.newChannel(out), MemoryTraceWriter.Format.DIN,
+                MemoryTraceWriter.Filter.parse(".DATA"));
+        writer.load(Memory.dataSegmentBaseAddress, 4);
+        writer.load(Memory.textBaseAddress, 4);
+        writer.close();
+        assertEquals(1, writer.getRecords());
+        assertEquals("0 " + Integer.toHexString(Memory.dataSegmentBaseAddress) + "\n",
+                out.toString(StandardCharsets.US_ASCII));
+
+        for (String spec : new String[]{"heap", "0x10-0x0", "0x10-", "0x10-zz"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> MemoryTraceWriter.Filter.parse(spec));
+            assertEquals("segment expected as all, .text, .data or an address range like 0x10010000-0x1001ffff, not "
+                    + spec, e.getMessage());
+        }
+    }
+
+    @Test
+    void namesEndingInGzAreCompressed() throws IOException {
+        File plain = directory.resolve("trace.din").toFile();
+        File compressed = directory.resolve("trace.din.GZ").toFile();
+        for (File file : new File[]{plain, compressed}) {
+            try (MemoryTraceWriter writer = MemoryTraceWriter.open(file, MemoryTraceWriter.Format.DIN,
+                    MemoryTraceWriter.Filter.parse("all"))) {
+                accesses(writer);
+            }
+        }
+        assertEquals("2 400010\n0 0\n1 fffffffc\n", Files.readString(plain.toPath(), StandardCharsets.US_ASCII));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed.toPath()))) {
+            assertEquals("2 400010\n0 0\n1 fffffffc\n", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    // Fails every write, counting them
+    private static final class FailingChannel implements WritableByteChannel {
+        int writes;
+        boolean open = true;
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            writes++;
+            throw new IOException("disk full");
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    @Test
+    void writeErrorsAreReportedOnClose() {
+        FailingChannel channel = new FailingChannel();
+        MemoryTraceWriter writer = new MemoryTraceWriter(channel, MemoryTraceWriter.Format.BINARY,
+                MemoryTraceWriter.Filter.parse("all"));
+        // Enough records to fill the buffer more than twice: the first flush fails, and the
+        // simulation goes on without writing more
+        for (int i = 0; i < 30000; i++) {
+            writer.load(4 * i, 4);
+        }
+        assertEquals(1, channel.writes);
+        long records = writer.getRecords();
+        assertTrue(records < 30000, Long.toString(records));
+        IOException e = assertThrows(IOException.class, writer::close);
+        assertEquals("disk full", e.getMessage());
+        assertEquals(1, channel.writes); // not tried again
+        assertFalse(channel.open);
+        assertEquals(records, writer.getRecords());
+    }
+
+    @Test
+    void parsesFormats() {
+        assertEquals(MemoryTraceWriter.Format.DIN, MemoryTraceWriter.format("DIN"));
+        assertEquals(MemoryTraceWriter.Format.BINARY, MemoryTraceWriter.format("bin"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> MemoryTraceWriter.format("csv"));
+        assertEquals("trace format expected as din or bin, not csv", e.getMessage());
+    }
+}
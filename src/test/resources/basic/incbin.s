@@ -0,0 +1,37 @@
+.globl main
+.data
+all:   .incbin "incbin.bin"
+part:  .incbin "incbin.bin", 12, 3
+after: .word 0x5A5A5A5A
+.text
+main:
+	la t0, all
+	lw t1, 4(t0)
+	li t2, 0x08070605
+	bne t1, t2, failure
+	lbu t1, 15(t0)
+	li t2, 16
+	bne t1, t2, failure
+	la t0, part
+	lbu t1, 0(t0)
+	li t2, 13
+	bne t1, t2, failure
+	lbu t1, 2(t0)
+	li t2, 15
+	bne t1, t2, failure
+	la t0, after
+	lw t1, 0(t0)
+	li t2, 0x5A5A5A5A
+	bne t1, t2, failure
+	la t1, part
+	sub t0, t0, t1
+	li t2, 4
+	bne t0, t2, failure
+success:
+	li a0, 42
+	li a7, 93
+	ecall
+failure:
+	li a0, 0
+	li a7, 93
+	ecall
@@ -0,0 +1,541 @@
+# Dhrystone 2.1: records, strings, arrays and procedure calls, with the reference results printed
+	.eqv	RUNS, 20000
+	.eqv	IDENT_1, 0
+	.eqv	IDENT_2, 1
+	.eqv	IDENT_3, 2
+	.eqv	IDENT_4, 3
+	.eqv	IDENT_5, 4
+	# A record is Ptr_Comp, Discr, Enum_Comp, Int_Comp and Str_Comp[31], in 48 bytes
+	.data
+rec_1:		.space	48
+rec_2:		.space	48
+ptr_glob:	.word	0
+next_ptr_glob:	.word	0
+int_glob:	.word	0
+bool_glob:	.word	0
+ch_1_glob:	.word	0
+ch_2_glob:	.word	0
+int_1_loc:	.word	0
+int_3_loc:	.word	0
+enum_loc:	.word	0
+arr_1_glob:	.space	200		# int[50]
+arr_2_glob:	.space	10000		# int[50][50]
+str_1_loc:	.space	32
+str_2_loc:	.space	32
+some:		.asciz	"DHRYSTONE PROGRAM, SOME STRING"
+first:		.asciz	"DHRYSTONE PROGRAM, 1'ST STRING"
+second:		.asciz	"DHRYSTONE PROGRAM, 2'ND STRING"
+third:		.asciz	"DHRYSTONE PROGRAM, 3'RD STRING"
+l_int_glob:	.asciz	"Int_Glob: "
+l_bool_glob:	.asciz	"Bool_Glob: "
+l_ch_1_glob:	.asciz	"Ch_1_Glob: "
+l_ch_2_glob:	.asciz	"Ch_2_Glob: "
+l_arr_1:	.asciz	"Arr_1_Glob[8]: "
+l_arr_2:	.asciz	"Arr_2_Glob[8][7]: "
+l_ptr_glob:	.asciz	"Ptr_Glob: "
+l_next_ptr_glob:	.asciz	"Next_Ptr_Glob: "
+l_int_1_loc:	.asciz	"Int_1_Loc: "
+l_int_2_loc:	.asciz	"Int_2_Loc: "
+l_int_3_loc:	.asciz	"Int_3_Loc: "
+l_enum_loc:	.asciz	"Enum_Loc: "
+l_str_1_loc:	.asciz	"Str_1_Loc: "
+l_str_2_loc:	.asciz	"Str_2_Loc: "
+	.text
+main:
+	la	t0, rec_1
+	la	t1, rec_2
+	la	t2, ptr_glob
+	sw	t0, 0(t2)
+	la	t2, next_ptr_glob
+	sw	t1, 0(t2)
+	sw	t1, 0(t0)		# Ptr_Glob->Ptr_Comp = Next_Ptr_Glob
+	sw	zero, 4(t0)		# Discr = Ident_1
+	li	t2, IDENT_3
+	sw	t2, 8(t0)
+	li	t2, 40
+	sw	t2, 12(t0)
+	addi	a0, t0, 16
+	la	a1, some
+	jal	strcpy
+	la	a0, str_1_loc
+	la	a1, first
+	jal	strcpy
+	la	t0, arr_2_glob
+	li	t1, 10
+	sw	t1, 1628(t0)		# Arr_2_Glob[8][7] = 10
+
+	# s0 = Run_Index, s1 = Int_1_Loc, s2 = Int_2_Loc, s5 = Ch_Index, s6 = RUNS
+	li	s0, 1
+	li	s6, RUNS
+run:
+	bgt	s0, s6, report
+	jal	proc_5
+	jal	proc_4
+	li	s1, 2
+	li	s2, 3
+	la	a0, str_2_loc
+	la	a1, second
+	jal	strcpy
+	li	t0, IDENT_2
+	la	t1, enum_loc
+	sw	t0, 0(t1)
+	la	a0, str_1_loc
+	la	a1, str_2_loc
+	jal	func_2
+	seqz	a0, a0
+	la	t0, bool_glob
+	sw	a0, 0(t0)		# Bool_Glob = !Func_2(Str_1_Loc, Str_2_Loc)
+while:
+	bge	s1, s2, end_while
+	slli	t0, s1, 2
+	add	t0, t0, s1
+	sub	t0, t0, s2
+	la	a2, int_3_loc
+	sw	t0, 0(a2)		# Int_3_Loc = 5 * Int_1_Loc - Int_2_Loc
+	mv	a0, s1
+	mv	a1, s2
+	jal	proc_7
+	addi	s1, s1, 1
+	j	while
+end_while:
+	la	a0, arr_1_glob
+	la	a1, arr_2_glob
+	mv	a2, s1
+	la	t0, int_3_loc
+	lw	a3, 0(t0)
+	jal	proc_8
+	la	t0, ptr_glob
+	lw	a0, 0(t0)
+	jal	proc_1
+	li	s5, 'A'
+for:
+	la	t0, ch_2_glob
+	lw	t0, 0(t0)
+	bgt	s5, t0, end_for
+	mv	a0, s5
+	li	a1, 'C'
+	jal	func_1
+	la	t0, enum_loc
+	lw	t1, 0(t0)
+	bne	a0, t1, next
+	li	a0, IDENT_1
+	la	a1, enum_loc
+	jal	proc_6
+	la	a0, str_2_loc
+	la	a1, third
+	jal	strcpy
+	mv	s2, s0
+	la	t0, int_glob
+	sw	s0, 0(t0)
+next:
+	addi	s5, s5, 1
+	j	for
+end_for:
+	mul	s2, s2, s1		# Int_2_Loc = Int_2_Loc * Int_1_Loc
+	la	t0, int_3_loc
+	lw	t1, 0(t0)
+	div	s1, s2, t1		# Int_1_Loc = Int_2_Loc / Int_3_Loc
+	sub	t0, s2, t1
+	slli	t1, t0, 3
+	sub	t0, t1, t0
+	sub	s2, t0, s1		# Int_2_Loc = 7 * (Int_2_Loc - Int_3_Loc) - Int_1_Loc
+	la	a0, int_1_loc
+	sw	s1, 0(a0)
+	jal	proc_2
+	la	t0, int_1_loc
+	lw	s1, 0(t0)
+	addi	s0, s0, 1
+	j	run
+
+report:
+	la	a0, l_int_glob
+	la	t0, int_glob
+	lw	a1, 0(t0)
+	jal	show_int
+	la	a0, l_bool_glob
+	la	t0, bool_glob
+	lw	a1, 0(t0)
+	jal	show_int
+	la	a0, l_ch_1_glob
+	la	t0, ch_1_glob
+	lw	a1, 0(t0)
+	jal	show_char
+	la	a0, l_ch_2_glob
+	la	t0, ch_2_glob
+	lw	a1, 0(t0)
+	jal	show_char
+	la	a0, l_arr_1
+	la	t0, arr_1_glob
+	lw	a1, 32(t0)
+	jal	show_int
+	la	a0, l_arr_2
+	la	t0, arr_2_glob
+	lw	a1, 1628(t0)
+	jal	show_int
+	la	a0, l_ptr_glob
+	la	t0, ptr_glob
+	lw	a1, 0(t0)
+	jal	show_record
+	la	a0, l_next_ptr_glob
+	la	t0, next_ptr_glob
+	lw	a1, 0(t0)
+	jal	show_record
+	la	a0, l_int_1_loc
+	mv	a1, s1
+	jal	show_int
+	la	a0, l_int_2_loc
+	mv	a1, s2
+	jal	show_int
+	la	a0, l_int_3_loc
+	la	t0, int_3_loc
+	lw	a1, 0(t0)
+	jal	show_int
+	la	a0, l_enum_loc
+	la	t0, enum_loc
+	lw	a1, 0(t0)
+	jal	show_int
+	la	a0, l_str_1_loc
+	la	a1, str_1_loc
+	jal	show_string
+	la	a0, l_str_2_loc
+	la	a1, str_2_loc
+	jal	show_string
+	li	a7, 10
+	ecall
+
+# a0 = Ptr_Val_Par
+proc_1:
+	addi	sp, sp, -12
+	sw	ra, 8(sp)
+	sw	s0, 4(sp)
+	sw	s1, 0(sp)
+	mv	s0, a0
+	lw	s1, 0(s0)		# Next_Record = Ptr_Val_Par->Ptr_Comp
+	mv	a0, s1
+	la	t0, ptr_glob
+	lw	a1, 0(t0)
+	jal	record_copy		# *Ptr_Val_Par->Ptr_Comp = *Ptr_Glob
+	li	t0, 5
+	sw	t0, 12(s0)
+	sw	t0, 12(s1)
+	lw	t0, 0(s0)
+	sw	t0, 0(s1)
+	mv	a0, s1
+	jal	proc_3			# Proc_3(&Next_Record->Ptr_Comp)
+	lw	t0, 4(s1)
+	bnez	t0, proc_1_copy
+	li	t0, 6
+	sw	t0, 12(s1)
+	lw	a0, 8(s0)
+	addi	a1, s1, 8
+	jal	proc_6
+	la	t0, ptr_glob
+	lw	t0, 0(t0)
+	lw	t0, 0(t0)
+	sw	t0, 0(s1)
+	lw	a0, 12(s1)
+	li	a1, 10
+	addi	a2, s1, 12
+	jal	proc_7
+	j	proc_1_return
+proc_1_copy:
+	mv	a0, s0
+	mv	a1, s1
+	jal	record_copy
+proc_1_return:
+	lw	ra, 8(sp)
+	lw	s0, 4(sp)
+	lw	s1, 0(sp)
+	addi	sp, sp, 12
+	ret
+
+# a0 = Int_Par_Ref
+proc_2:
+	lw	t0, 0(a0)
+	addi	t0, t0, 10		# Int_Loc
+	la	t1, ch_1_glob
+	lw	t1, 0(t1)
+	li	t2, 'A'
+proc_2_loop:
+	bne	t1, t2, proc_2_loop	# until Enum_Loc == Ident_1
+	addi	t0, t0, -1
+	la	t1, int_glob
+	lw	t1, 0(t1)
+	sub	t1, t0, t1
+	sw	t1, 0(a0)
+	ret
+
+# a0 = Ptr_Ref_Par
+proc_3:
+	addi	sp, sp, -4
+	sw	ra, 0(sp)
+	la	t0, ptr_glob
+	lw	t0, 0(t0)
+	beqz	t0, proc_3_call
+	lw	t1, 0(t0)
+	sw	t1, 0(a0)
+proc_3_call:
+	li	a0, 10
+	la	a1, int_glob
+	lw	a1, 0(a1)
+	addi	a2, t0, 12
+	jal	proc_7
+	lw	ra, 0(sp)
+	addi	sp, sp, 4
+	ret
+
+proc_4:
+	la	t0, ch_1_glob
+	lw	t0, 0(t0)
+	li	t1, 'A'
+	sub	t0, t0, t1
+	seqz	t0, t0
+	la	t1, bool_glob
+	lw	t2, 0(t1)
+	or	t0, t0, t2
+	sw	t0, 0(t1)
+	li	t0, 'B'
+	la	t1, ch_2_glob
+	sw	t0, 0(t1)
+	ret
+
+proc_5:
+	li	t0, 'A'
+	la	t1, ch_1_glob
+	sw	t0, 0(t1)
+	la	t1, bool_glob
+	sw	zero, 0(t1)
+	ret
+
+# a0 = Enum_Val_Par, a1 = Enum_Ref_Par
+proc_6:
+	addi	sp, sp, -12
+	sw	ra, 8(sp)
+	sw	a0, 4(sp)
+	sw	a1, 0(sp)
+	sw	a0, 0(a1)
+	jal	func_3
+	lw	a1, 0(sp)
+	lw	t0, 4(sp)
+	bnez	a0, proc_6_switch
+	li	t1, IDENT_4
+	sw	t1, 0(a1)
+proc_6_switch:
+	beqz	t0, proc_6_ident_1
+	li	t1, IDENT_2
+	beq	t0, t1, proc_6_ident_2
+	li	t1, IDENT_3
+	beq	t0, t1, proc_6_ident_3
+	li	t1, IDENT_5
+	beq	t0, t1, proc_6_ident_5
+	j	proc_6_return
+proc_6_ident_1:
+	sw	zero, 0(a1)
+	j	proc_6_return
+proc_6_ident_2:
+	la	t1, int_glob
+	lw	t1, 0(t1)
+	li	t2, 100
+	li	t3, IDENT_4
+	ble	t1, t2, proc_6_store
+	li	t3, IDENT_1
+proc_6_store:
+	sw	t3, 0(a1)
+	j	proc_6_return
+proc_6_ident_3:
+	li	t1, IDENT_2
+	sw	t1, 0(a1)
+	j	proc_6_return
+proc_6_ident_5:
+	li	t1, IDENT_3
+	sw	t1, 0(a1)
+proc_6_return:
+	lw	ra, 8(sp)
+	addi	sp, sp, 12
+	ret
+
+# a0 = Int_1_Par_Val, a1 = Int_2_Par_Val, a2 = Int_Par_Ref
+proc_7:
+	addi	t0, a0, 2
+	add	t0, a1, t0
+	sw	t0, 0(a2)
+	ret
+
+# a0 = Arr_1_Par_Ref, a1 = Arr_2_Par_Ref, a2 = Int_1_Par_Val, a3 = Int_2_Par_Val
+proc_8:
+	addi	t0, a2, 5		# Int_Loc
+	slli	t1, t0, 2
+	add	t1, a0, t1		# &Arr_1_Par_Ref[Int_Loc]
+	sw	a3, 0(t1)
+	sw	a3, 4(t1)
+	sw	t0, 120(t1)		# Arr_1_Par_Ref[Int_Loc + 30] = Int_Loc
+	li	t2, 200
+	mul	t2, t0, t2
+	add	t2, a1, t2
+	slli	t3, t0, 2
+	add	t3, t2, t3		# &Arr_2_Par_Ref[Int_Loc][Int_Loc]
+	mv	t4, t3
+	addi	t5, t3, 8
+proc_8_loop:
+	sw	t0, 0(t4)
+	addi	t4, t4, 4
+	bne	t4, t5, proc_8_loop
+	lw	t4, -4(t3)
+	addi	t4, t4, 1
+	sw	t4, -4(t3)
+	lw	t4, 0(t1)
+	li	t5, 4000
+	add	t5, t3, t5
+	sw	t4, 0(t5)		# Arr_2_Par_Ref[Int_Loc + 20][Int_Loc]
+	li	t0, 5
+	la	t1, int_glob
+	sw	t0, 0(t1)
+	ret
+
+# a0 = Ch_1_Par_Val, a1 = Ch_2_Par_Val
+func_1:
+	bne	a0, a1, func_1_ident_1
+	la	t0, ch_1_glob
+	sw	a0, 0(t0)
+	li	a0, IDENT_2
+	ret
+func_1_ident_1:
+	li	a0, IDENT_1
+	ret
+
+# a0 = Str_1_Par_Ref, a1 = Str_2_Par_Ref
+func_2:
+	addi	sp, sp, -20
+	sw	ra, 16(sp)
+	sw	s0, 12(sp)
+	sw	s1, 8(sp)
+	sw	s2, 4(sp)
+	sw	s3, 0(sp)
+	mv	s0, a0
+	mv	s1, a1
+	li	s2, 2			# Int_Loc
+func_2_loop:
+	li	t0, 2
+	bgt	s2, t0, func_2_chars
+	add	t0, s0, s2
+	lbu	a0, 0(t0)
+	add	t0, s1, s2
+	lbu	a1, 1(t0)
+	jal	func_1
+	bnez	a0, func_2_loop
+	li	s3, 'A'			# Ch_Loc
+	addi	s2, s2, 1
+	j	func_2_loop
+func_2_chars:
+	li	t0, 'W'
+	blt	s3, t0, func_2_r
+	li	t0, 'Z'
+	bge	s3, t0, func_2_r
+	li	s2, 7
+func_2_r:
+	li	t0, 'R'
+	li	a0, 1
+	beq	s3, t0, func_2_return
+	mv	a0, s0
+	mv	a1, s1
+	jal	strcmp
+	blez	a0, func_2_false
+	addi	s2, s2, 7
+	la	t0, int_glob
+	sw	s2, 0(t0)
+	li	a0, 1
+	j	func_2_return
+func_2_false:
+	li	a0, 0
+func_2_return:
+	lw	ra, 16(sp)
+	lw	s0, 12(sp)
+	lw	s1, 8(sp)
+	lw	s2, 4(sp)
+	lw	s3, 0(sp)
+	addi	sp, sp, 20
+	ret
+
+# a0 = Enum_Par_Val
+func_3:
+	addi	a0, a0, -IDENT_3
+	seqz	a0, a0
+	ret
+
+# Copies the record at a1 to a0
+record_copy:
+	addi	t2, a1, 48
+record_copy_loop:
+	lw	t0, 0(a1)
+	sw	t0, 0(a0)
+	addi	a1, a1, 4
+	addi	a0, a0, 4
+	bne	a1, t2, record_copy_loop
+	ret
+
+# Copies the string at a1 to a0
+strcpy:
+	lbu	t0, 0(a1)
+	sb	t0, 0(a0)
+	addi	a0, a0, 1
+	addi	a1, a1, 1
+	bnez	t0, strcpy
+	ret
+
+# Compares the strings at a0 and a1, returning the difference of the first unequal characters
+strcmp:
+	lbu	t0, 0(a0)
+	lbu	t1, 0(a1)
+	bne	t0, t1, strcmp_return
+	beqz	t0, strcmp_return
+	addi	a0, a0, 1
+	addi	a1, a1, 1
+	j	strcmp
+strcmp_return:
+	sub	a0, t0, t1
+	ret
+
+# Prints the string at a0, then the integer, character or string a1 and a newline
+show_int:
+	li	t0, 1			# PrintInt
+	j	show
+show_char:
+	li	t0, 11			# PrintChar
+	j	show
+show_string:
+	li	t0, 4			# PrintString
+show:
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, a1
+	mv	a7, t0
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret
+
+# Prints the string at a0, then the Discr, Enum_Comp, Int_Comp and Str_Comp of the record at a1
+show_record:
+	mv	t1, a1
+	li	a7, 4			# PrintString
+	ecall
+	li	t2, 4
+show_record_field:
+	add	t0, t1, t2
+	lw	a0, 0(t0)
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, ' '
+	li	a7, 11			# PrintChar
+	ecall
+	addi	t2, t2, 4
+	li	t0, 16
+	bne	t2, t0, show_record_field
+	addi	a0, t1, 16
+	li	a7, 4			# PrintString
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret
@@ -0,0 +1,39 @@
+# Calls and the stack: naive recursive Fibonacci
+	.data
+label:	.asciz	"fib(28) = "
+	.text
+main:
+	li	a0, 28
+	jal	fib
+	mv	s0, a0
+	la	a0, label
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, s0
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	li	a7, 10
+	ecall
+
+# a0 = n, returns fib(n) in a0
+fib:
+	li	t0, 2
+	blt	a0, t0, done
+	addi	sp, sp, -12
+	sw	ra, 8(sp)
+	sw	a0, 4(sp)
+	addi	a0, a0, -1
+	jal	fib
+	sw	a0, 0(sp)
+	lw	a0, 4(sp)
+	addi	a0, a0, -2
+	jal	fib
+	lw	t1, 0(sp)
+	add	a0, a0, t1
+	lw	ra, 8(sp)
+	addi	sp, sp, 12
+done:
+	ret
@@ -0,0 +1,115 @@
+# Single precision matrix multiply, C = A * B for 96 x 96 matrices, summarised by the bits of
+# the trace and of the sum of C
+	.eqv	N, 96
+	.eqv	ROW, 384		# N * 4 bytes
+	.data
+a:	.space	36864			# N * N floats
+b:	.space	36864
+c:	.space	36864
+quarter:	.float	0.25
+trace:	.asciz	"trace: "
+sum:	.asciz	"sum: "
+	.text
+main:
+	# A[i][j] = (3 * i - j) / 4 and B[i][j] = (i * j) % 7 - 3
+	la	t0, quarter
+	flw	ft2, 0(t0)
+	la	s0, a
+	la	s1, b
+	li	t0, 0			# i
+	li	t6, N
+	li	t5, 7
+fill_row:
+	li	t1, 0			# j
+fill:
+	slli	t2, t0, 1
+	add	t2, t2, t0
+	sub	t2, t2, t1
+	fcvt.s.w	ft0, t2
+	fmul.s	ft0, ft0, ft2
+	fsw	ft0, 0(s0)
+	mul	t2, t0, t1
+	rem	t2, t2, t5
+	addi	t2, t2, -3
+	fcvt.s.w	ft1, t2
+	fsw	ft1, 0(s1)
+	addi	s0, s0, 4
+	addi	s1, s1, 4
+	addi	t1, t1, 1
+	bne	t1, t6, fill
+	addi	t0, t0, 1
+	bne	t0, t6, fill_row
+
+	# C[i][j] is the sum over k of A[i][k] * B[k][j], added in order of k
+	la	s0, a			# row i of A
+	la	s2, c			# C[i][j]
+	li	t0, 0			# i
+multiply_row:
+	la	s1, b			# column j of B
+	li	t1, 0			# j
+multiply:
+	fmv.w.x	ft0, zero
+	mv	t3, s0
+	mv	t4, s1
+	li	t2, 0			# k
+dot:
+	flw	ft1, 0(t3)
+	flw	ft2, 0(t4)
+	fmul.s	ft1, ft1, ft2
+	fadd.s	ft0, ft0, ft1
+	addi	t3, t3, 4
+	addi	t4, t4, ROW
+	addi	t2, t2, 1
+	bne	t2, t6, dot
+	fsw	ft0, 0(s2)
+	addi	s2, s2, 4
+	addi	s1, s1, 4
+	addi	t1, t1, 1
+	bne	t1, t6, multiply
+	addi	s0, s0, ROW
+	addi	t0, t0, 1
+	bne	t0, t6, multiply_row
+
+	# The trace, and the sum of C in row order
+	fmv.w.x	ft0, zero
+	fmv.w.x	ft1, zero
+	la	t3, c
+	li	t0, 0			# i
+	li	t1, 0			# offset of C[i][i]
+	li	t2, 388			# ROW + 4
+	li	t4, 36864
+	add	t4, t3, t4
+total:
+	flw	ft2, 0(t3)
+	fadd.s	ft1, ft1, ft2
+	addi	t3, t3, 4
+	bne	t3, t4, total
+	la	t3, c
+diagonal:
+	add	t5, t3, t1
+	flw	ft2, 0(t5)
+	fadd.s	ft0, ft0, ft2
+	add	t1, t1, t2
+	addi	t0, t0, 1
+	bne	t0, t6, diagonal
+
+	la	a0, trace
+	fmv.x.w	a1, ft0
+	jal	show
+	la	a0, sum
+	fmv.x.w	a1, ft1
+	jal	show
+	li	a7, 10
+	ecall
+
+# Prints the string at a0, the integer a1 in hexadecimal and a newline
+show:
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, a1
+	li	a7, 34			# PrintIntHex
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret
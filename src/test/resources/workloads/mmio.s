@@ -0,0 +1,83 @@
+# Memory-mapped I/O: a driver polling the ready bits of the keyboard and display registers
+# Nothing else drives the registers when no tool is connected, so the program plays the device
+# too: it raises a ready bit, polls for it as a driver would, moves the data and clears the bit.
+	.eqv	RECEIVER_CONTROL, 0xffff0000
+	.eqv	RECEIVER_DATA, 0xffff0004
+	.eqv	TRANSMITTER_CONTROL, 0xffff0008
+	.eqv	TRANSMITTER_DATA, 0xffff000c
+	.eqv	TRANSFERS, 200000
+	.data
+received:	.asciz	"received: "
+sent:	.asciz	"sent: "
+polls:	.asciz	"polls: "
+	.text
+main:
+	li	s0, RECEIVER_CONTROL
+	li	s1, TRANSFERS
+	li	s2, 0			# checksum of the bytes received
+	li	s3, 0			# checksum of the bytes sent
+	li	s4, 0			# polls
+	li	s5, 0			# transfers
+transfer:
+	beq	s5, s1, report
+
+	# The device receives a byte and raises the receiver ready bit after a few polls
+	andi	t0, s5, 0xff
+	sw	t0, 4(s0)		# RECEIVER_DATA
+	andi	t2, s5, 3		# polls until ready
+wait_receiver:
+	addi	s4, s4, 1
+	lw	t1, 0(s0)		# RECEIVER_CONTROL
+	andi	t1, t1, 1
+	bnez	t1, read
+	addi	t2, t2, -1
+	bgez	t2, wait_receiver
+	li	t1, 1
+	sw	t1, 0(s0)		# the device is ready
+	j	wait_receiver
+read:
+	lbu	t3, 4(s0)		# RECEIVER_DATA
+	sw	zero, 0(s0)		# taken
+	add	s2, s2, t3
+
+	# Echo it through the display once the transmitter is ready
+	li	t1, 1
+	sw	t1, 8(s0)		# the device is ready
+wait_transmitter:
+	addi	s4, s4, 1
+	lw	t1, 8(s0)		# TRANSMITTER_CONTROL
+	andi	t1, t1, 1
+	beqz	t1, wait_transmitter
+	sb	t3, 12(s0)		# TRANSMITTER_DATA
+	sw	zero, 8(s0)		# busy
+	lbu	t4, 12(s0)
+	slli	t5, s3, 5
+	sub	t5, t5, s3
+	add	s3, t5, t4		# checksum * 31 + byte
+	addi	s5, s5, 1
+	j	transfer
+
+report:
+	la	a0, received
+	mv	a1, s2
+	jal	show
+	la	a0, sent
+	mv	a1, s3
+	jal	show
+	la	a0, polls
+	mv	a1, s4
+	jal	show
+	li	a7, 10
+	ecall
+
+# Prints the string at a0, the integer a1 and a newline
+show:
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, a1
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret
@@ -0,0 +1,138 @@
+# Quicksort of 100000 pseudo-random words on the heap, checked and summarised afterwards
+	.eqv	N, 100000
+	.data
+sorted:	.asciz	"sorted: "
+yes:	.asciz	"yes\n"
+no:	.asciz	"no\n"
+min:	.asciz	"min: "
+median:	.asciz	"median: "
+max:	.asciz	"max: "
+sum:	.asciz	"checksum: "
+	.text
+main:
+	li	a0, 400000		# N words
+	li	a7, 9			# Sbrk
+	ecall
+	mv	s0, a0			# first element
+	li	t0, 399996
+	add	s1, s0, t0		# last element
+
+	# Fill with a linear congruential generator
+	li	t0, 12345		# seed
+	li	t1, 1103515245
+	li	t2, 12345
+	mv	t3, s0
+fill:
+	mul	t0, t0, t1
+	add	t0, t0, t2
+	srai	t4, t0, 4
+	sw	t4, 0(t3)
+	addi	t3, t3, 4
+	ble	t3, s1, fill
+
+	mv	a0, s0
+	mv	a1, s1
+	jal	quicksort
+
+	# Check the order and sum a[i] * i
+	li	s2, 1			# sorted
+	li	s3, 0			# checksum
+	li	t0, 0			# i
+	mv	t1, s0
+	lw	t2, 0(t1)
+check:
+	addi	t1, t1, 4
+	addi	t0, t0, 1
+	bgt	t1, s1, report
+	lw	t3, 0(t1)
+	ble	t2, t3, ordered
+	li	s2, 0
+ordered:
+	mul	t4, t3, t0
+	add	s3, s3, t4
+	mv	t2, t3
+	j	check
+
+report:
+	la	a0, sorted
+	li	a7, 4			# PrintString
+	ecall
+	la	a0, yes
+	bnez	s2, print_sorted
+	la	a0, no
+print_sorted:
+	ecall
+	la	a0, min
+	lw	a1, 0(s0)
+	jal	show
+	la	a0, median
+	li	t0, 200000		# N / 2 words
+	add	t0, s0, t0
+	lw	a1, 0(t0)
+	jal	show
+	la	a0, max
+	lw	a1, 0(s1)
+	jal	show
+	la	a0, sum
+	mv	a1, s3
+	jal	show
+	li	a7, 10
+	ecall
+
+# Prints the string at a0, the integer a1 and a newline
+show:
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, a1
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret
+
+# Sorts the words from a0 to a1 inclusive, partitioning around the middle one
+quicksort:
+	bge	a0, a1, qs_return
+	addi	sp, sp, -12
+	sw	ra, 8(sp)
+	sw	s0, 4(sp)
+	sw	s1, 0(sp)
+	mv	s1, a1
+	sub	t0, a1, a0
+	srli	t0, t0, 3
+	slli	t0, t0, 2
+	add	t0, a0, t0
+	lw	t0, 0(t0)		# pivot
+	mv	t1, a0			# i
+	mv	t2, a1			# j
+qs_left:
+	lw	t3, 0(t1)
+	bge	t3, t0, qs_right
+	addi	t1, t1, 4
+	j	qs_left
+qs_right:
+	lw	t4, 0(t2)
+	ble	t4, t0, qs_swap
+	addi	t2, t2, -4
+	j	qs_right
+qs_swap:
+	bgt	t1, t2, qs_recurse
+	sw	t4, 0(t1)
+	sw	t3, 0(t2)
+	addi	t1, t1, 4
+	addi	t2, t2, -4
+	ble	t1, t2, qs_left
+qs_recurse:
+	mv	s0, t1
+	mv	a1, t2
+	jal	quicksort		# the words from the start to j
+	mv	a0, s0
+	mv	a1, s1
+	lw	ra, 8(sp)
+	lw	s0, 4(sp)
+	lw	s1, 0(sp)
+	addi	sp, sp, 12
+	j	quicksort		# and from i to the end
+qs_return:
+	ret
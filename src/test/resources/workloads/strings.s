@@ -0,0 +1,104 @@
+# String processing through system calls: reads lines, then prints each reversed in upper case
+# with its word count, and the totals at the end
+	.data
+buffer:	.space	256
+out:	.space	256
+lines:	.asciz	"lines: "
+words:	.asciz	"words: "
+chars:	.asciz	"characters: "
+	.text
+main:
+	li	a7, 5			# ReadInt: the number of lines
+	ecall
+	mv	s0, a0
+	li	s1, 0			# words
+	li	s2, 0			# characters
+	li	s3, 0			# lines
+line:
+	beq	s3, s0, report
+	la	a0, buffer
+	li	a1, 256
+	li	a7, 8			# ReadString
+	ecall
+
+	# Find the end of the line and count its words
+	la	t0, buffer
+	li	t1, 0			# in a word
+	li	t2, 0			# words in the line
+	li	t4, ' '
+	li	t5, '\n'
+scan:
+	lbu	t3, 0(t0)
+	beqz	t3, reverse
+	beq	t3, t5, reverse
+	addi	t0, t0, 1
+	bgt	t3, t4, letter
+	li	t1, 0
+	j	scan
+letter:
+	bnez	t1, scan
+	li	t1, 1
+	addi	t2, t2, 1
+	j	scan
+
+	# Copy it backwards into out, in upper case
+reverse:
+	la	t1, buffer
+	sub	t3, t0, t1
+	add	s2, s2, t3
+	add	s1, s1, t2
+	la	t1, out
+	mv	a0, t2
+	li	a7, 1			# PrintInt
+	ecall
+	li	t4, ' '
+	sb	t4, 0(t1)
+	addi	t1, t1, 1
+	la	t6, buffer
+	li	t4, 'a'
+	li	t5, 'z'
+copy:
+	beq	t0, t6, print
+	addi	t0, t0, -1
+	lbu	t3, 0(t0)
+	blt	t3, t4, upper
+	bgt	t3, t5, upper
+	addi	t3, t3, -32
+upper:
+	sb	t3, 0(t1)
+	addi	t1, t1, 1
+	j	copy
+print:
+	li	t3, '\n'
+	sb	t3, 0(t1)
+	sb	zero, 1(t1)
+	la	a0, out
+	li	a7, 4			# PrintString
+	ecall
+	addi	s3, s3, 1
+	j	line
+
+report:
+	la	a0, lines
+	mv	a1, s3
+	jal	show
+	la	a0, words
+	mv	a1, s1
+	jal	show
+	la	a0, chars
+	mv	a1, s2
+	jal	show
+	li	a7, 10
+	ecall
+
+# Prints the string at a0, the integer a1 and a newline
+show:
+	li	a7, 4			# PrintString
+	ecall
+	mv	a0, a1
+	li	a7, 1			# PrintInt
+	ecall
+	li	a0, '\n'
+	li	a7, 11			# PrintChar
+	ecall
+	ret